@@ -0,0 +1,252 @@
+package com.beacon;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CollectionConfiguration;
+import com.couchbase.lite.ConcurrencyControl;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.ReplicatedDocument;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorActivityLevel;
+import com.couchbase.lite.ReplicatorConfiguration;
+import com.couchbase.lite.ReplicatorType;
+import com.couchbase.lite.URLEndpoint;
+import com.couchbase.lite.URLEndpointListener;
+import com.couchbase.lite.URLEndpointListenerConfiguration;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Several responders accept the same requests at once while out of touch, then sync through a
+ * hub database behind a local URL endpoint listener, the way they would through Sync Gateway.
+ * Accepting by editing the request document, as older clients do, is the baseline; claim
+ * documents are the current schema. The test counts conflicting revisions and resolver calls
+ * and checks that every database agrees on who holds each request. Larger runs only with
+ * {@code -e benchmark true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ClaimConflictBenchmarkTest {
+    private static final String TAG = "ClaimConflictBenchmark";
+    private static final int SYNC_ROUNDS = 2;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        deleteAll();
+    }
+
+    @Test
+    public void claimDocumentsNeverConflict() throws Exception {
+        Run run = run(3, 20, false);
+        assertEquals(run.toString(), 0, run.resolverCalls);
+        assertEquals(run.toString(), 0, run.rejectedPushes);
+        assertEquals(run.toString(), 20, run.agreed);
+    }
+
+    @Test
+    public void benchmarkRequestEditsVersusClaimDocuments() throws Exception {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+
+        for (int responders : new int[]{2, 5, 10}) {
+            Run legacy = run(responders, 200, true);
+            Run claims = run(responders, 200, false);
+            Log.i(TAG, String.format("responders=%d requests=200 request-edits %s | claim-documents %s",
+                    responders, legacy, claims));
+        }
+    }
+
+    private Run run(int responders, int requests, boolean legacy) throws Exception {
+        deleteAll();
+        for (int i = 0; i <= responders; i++) nodes.add(new Node("claim-conflict-" + i));
+        Node hub = nodes.get(0);
+        long now = System.currentTimeMillis();
+        hub.database.inBatch(() -> {
+            for (int r = 0; r < requests; r++) {
+                MutableDocument doc = new MutableDocument("request::" + r);
+                doc.setString(DocumentKeys.TYPE, "emergency_request");
+                doc.setString(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+                doc.setString(DocumentKeys.STATUS, RequestLifecycle.STATUS_OPEN);
+                doc.setString(DocumentKeys.REQUESTED_BY, "requester");
+                doc.setString(DocumentKeys.GEOHASH, "u6sce0t4w");
+                doc.setLong(DocumentKeys.REQUESTED_AT, now + r);
+                hub.collection.save(doc);
+            }
+        });
+        for (Node node : nodes) {
+            if (node != hub) node.sync(hub.uri, ReplicatorType.PULL);
+        }
+
+        // Every responder accepts every request before hearing from the others
+        ExecutorService pool = Executors.newFixedThreadPool(responders);
+        Random random = new Random(responders);
+        for (Node node : nodes) {
+            if (node == hub) continue;
+            long claimedAt = now + 1_000 + random.nextInt(5_000);
+            pool.execute(() -> {
+                try {
+                    for (int r = 0; r < requests; r++) {
+                        if (legacy) {
+                            legacyClaim(node.collection, "request::" + r, node.responderId, claimedAt + r);
+                        } else {
+                            RequestClaims.claim(node.collection, "request::" + r, node.responderId, claimedAt + r);
+                        }
+                    }
+                } catch (CouchbaseLiteException e) {
+                    Log.e(TAG, "Claim failed on " + node.responderId, e);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES));
+
+        long start = System.currentTimeMillis();
+        for (int round = 0; round < SYNC_ROUNDS; round++) {
+            for (Node node : nodes) {
+                if (node != hub) node.sync(hub.uri, ReplicatorType.PUSH_AND_PULL);
+            }
+        }
+        Run run = new Run();
+        run.syncMs = System.currentTimeMillis() - start;
+        for (Node node : nodes) {
+            run.resolverCalls += node.stats.conflictsResolved();
+            run.rejectedPushes += node.rejectedPushes.get();
+        }
+        for (int r = 0; r < requests; r++) {
+            String holder = null;
+            boolean agreed = true;
+            for (Node node : nodes) {
+                String nodeHolder = holder(node.collection, "request::" + r, legacy);
+                if (holder == null) holder = nodeHolder;
+                agreed &= nodeHolder != null && nodeHolder.equals(holder);
+            }
+            if (agreed) run.agreed++;
+        }
+        return run;
+    }
+
+    /** How clients before claim documents accepted a request. */
+    private static void legacyClaim(Collection collection, String requestId, String responderId, long nowMs)
+            throws CouchbaseLiteException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Document doc = collection.getDocument(requestId);
+            if (doc == null || !RequestLifecycle.STATUS_OPEN.equals(doc.getString(DocumentKeys.STATUS))) return;
+            MutableDocument claim = doc.toMutable();
+            claim.setString(DocumentKeys.STATUS, RequestLifecycle.STATUS_RESPONDED);
+            claim.setString(DocumentKeys.RESPONDED_BY, responderId);
+            claim.setLong(DocumentKeys.RESPONDED_AT, nowMs);
+            if (collection.save(claim, ConcurrencyControl.FAIL_ON_CONFLICT)) return;
+        }
+    }
+
+    private static String holder(Collection collection, String requestId, boolean legacy)
+            throws CouchbaseLiteException {
+        if (legacy) {
+            Document doc = collection.getDocument(requestId);
+            return doc == null ? null : doc.getString(DocumentKeys.RESPONDED_BY);
+        }
+        RequestLifecycle.Claim winner = RequestClaims.winner(collection, requestId);
+        return winner == null ? null : winner.responderId;
+    }
+
+    private void deleteAll() throws CouchbaseLiteException {
+        for (Node node : nodes) {
+            node.listener.stop();
+            node.database.delete();
+        }
+        nodes.clear();
+    }
+
+    private static final class Node {
+        final String responderId;
+        final Database database;
+        final Collection collection;
+        final URLEndpointListener listener;
+        final URI uri;
+        final ReplicatorStats stats;
+        final AtomicLong rejectedPushes = new AtomicLong();
+
+        Node(String name) throws Exception {
+            responderId = name;
+            database = new Database(name);
+            collection = database.getDefaultCollection();
+            QueryIndexes.ensure(collection);
+            URLEndpointListenerConfiguration config = new URLEndpointListenerConfiguration(Set.of(collection));
+            config.setPort(0);
+            config.setDisableTls(true);
+            listener = new URLEndpointListener(config);
+            listener.start();
+            uri = new URI("ws://localhost:" + listener.getPort() + "/" + name);
+            stats = new ReplicatorStats(name, System.currentTimeMillis());
+        }
+
+        /** One-shot replication with the hub, counting resolver calls and pushes it rejected. */
+        void sync(URI hub, ReplicatorType type) throws InterruptedException {
+            CollectionConfiguration collectionConfig = new CollectionConfiguration();
+            collectionConfig.setConflictResolver(new P2PConflictResolver(stats));
+            ReplicatorConfiguration config = new ReplicatorConfiguration(new URLEndpoint(hub));
+            config.setType(type);
+            config.setContinuous(false);
+            config.addCollection(collection, collectionConfig);
+            Replicator replicator = new Replicator(config);
+            CountDownLatch stopped = new CountDownLatch(1);
+            replicator.addChangeListener(change -> {
+                if (change.getStatus().getActivityLevel() == ReplicatorActivityLevel.STOPPED) stopped.countDown();
+            });
+            replicator.addDocumentReplicationListener(replication -> {
+                if (!replication.isPush()) return;
+                for (ReplicatedDocument doc : replication.getDocuments()) {
+                    if (doc.getError() != null) rejectedPushes.incrementAndGet();
+                }
+            });
+            replicator.start();
+            assertTrue(stopped.await(2, TimeUnit.MINUTES));
+            replicator.close();
+        }
+    }
+
+    private static final class Run {
+        long resolverCalls;
+        long rejectedPushes;
+        int agreed;
+        long syncMs;
+
+        @Override
+        public String toString() {
+            return String.format("resolver-calls=%d rejected-pushes=%d agreed=%d sync=%dms",
+                    resolverCalls, rejectedPushes, agreed, syncMs);
+        }
+    }
+}
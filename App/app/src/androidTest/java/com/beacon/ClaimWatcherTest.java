@@ -0,0 +1,122 @@
+package com.beacon;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.MutableDocument;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class ClaimWatcherTest {
+    private static final String DB_NAME = "claim-watcher-test";
+
+    private Database database;
+    private Collection collection;
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final ClaimWatcher.Listener listener = new ClaimWatcher.Listener() {
+        @Override
+        public void onClaimResult(@NonNull String requestId, @NonNull RequestClaims.Result result) {
+            events.add(result + " " + requestId);
+        }
+
+        @Override
+        public void onClaimLost(@NonNull String requestId, @NonNull String winnerId) {
+            events.add("lost " + requestId + " to " + winnerId);
+        }
+    };
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+        database = new Database(DB_NAME);
+        collection = database.getDefaultCollection();
+
+        MutableDocument request = new MutableDocument("req");
+        request.setString(DocumentKeys.TYPE, "emergency_request");
+        request.setString(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+        request.setString(DocumentKeys.STATUS, "open");
+        request.setString(DocumentKeys.REQUESTED_BY, "alice");
+        request.setLong(DocumentKeys.REQUESTED_AT, 1_000);
+        collection.save(request);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void loserIsToldWhenAnEarlierClaimReplicatesIn() throws Exception {
+        ClaimWatcher watcher = new ClaimWatcher(collection, "7", listener);
+        watcher.start();
+        try {
+            watcher.claim("req", 2_000);
+            assertEquals("CLAIMED req", events.poll(5, TimeUnit.SECONDS));
+
+            // Responder 9 claimed first while the devices were apart
+            collection.save(claim("9", 1_500));
+            assertEquals("lost req to 9", events.poll(5, TimeUnit.SECONDS));
+            assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    public void laterClaimsDoNotUnseatTheHolder() throws Exception {
+        ClaimWatcher watcher = new ClaimWatcher(collection, "7", listener);
+        watcher.start();
+        try {
+            watcher.claim("req", 2_000);
+            assertEquals("CLAIMED req", events.poll(5, TimeUnit.SECONDS));
+
+            collection.save(claim("9", 2_500));
+            assertNull(events.poll(500, TimeUnit.MILLISECONDS));
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    public void claimsFromBeforeARestartAreCheckedAtStart() throws Exception {
+        assertEquals(RequestClaims.Result.CLAIMED, RequestClaims.claim(collection, "req", "7", 2_000));
+        collection.save(claim("9", 1_500));
+
+        ClaimWatcher watcher = new ClaimWatcher(collection, "7", listener);
+        watcher.start();
+        try {
+            assertEquals("lost req to 9", events.poll(5, TimeUnit.SECONDS));
+        } finally {
+            watcher.stop();
+        }
+        // Dropped rather than rejected once stopped
+        watcher.claim("req", 3_000);
+    }
+
+    private static MutableDocument claim(String responderId, long claimedAt) {
+        MutableDocument claim = new MutableDocument(RequestLifecycle.claimId("req", responderId));
+        claim.setString(DocumentKeys.TYPE, RequestLifecycle.CLAIM_TYPE);
+        claim.setString(DocumentKeys.REQUEST_ID, "req");
+        claim.setString(DocumentKeys.RESPONDER_ID, responderId);
+        claim.setLong(DocumentKeys.CLAIMED_AT, claimedAt);
+        return claim;
+    }
+}
@@ -0,0 +1,305 @@
+package com.beacon;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CollectionConfiguration;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.ReplicatedDocument;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorActivityLevel;
+import com.couchbase.lite.ReplicatorConfiguration;
+import com.couchbase.lite.ReplicatorType;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+import com.couchbase.lite.URLEndpoint;
+import com.couchbase.lite.URLEndpointListener;
+import com.couchbase.lite.URLEndpointListenerConfiguration;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The move out of the default collection, and the scoped layout against the single collection
+ * it replaced. Query latency and the cost of the request replicator's window run only with
+ * {@code -e benchmark true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CollectionLayoutBenchmarkTest {
+    private static final String TAG = "CollectionBenchmark";
+    private static final String[] TYPES = {"Ambulance", "Doctor", "Fire Truck", "Rescue Team", "Generator", "Water Supply"};
+    private static final String[] STATUSES = {"open", "responded", "responded", "responded"};
+
+    private final List<Database> databases = new ArrayList<>();
+    private final List<URLEndpointListener> listeners = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        for (URLEndpointListener listener : listeners) listener.stop();
+        for (Database database : databases) database.delete();
+    }
+
+    @Test
+    public void migrationMovesDocumentsIntoTheirCollections() throws CouchbaseLiteException {
+        Database database = open("collection-migration");
+        Collection legacy = database.getDefaultCollection();
+        // This device is user-1; request 2, user 2 and location 2 were written by others
+        for (int i = 1; i <= 2; i++) {
+            MutableDocument request = request(i);
+            request.setString(DocumentKeys.REQUESTED_BY, "user-" + i);
+            legacy.save(request);
+            MutableDocument user = user(i);
+            user.setString(DocumentKeys.USER_ID, "user-" + i);
+            legacy.save(user);
+            MutableDocument location = location(i, 0);
+            location.setString(DocumentKeys.RESPONDER_ID, "user-" + i);
+            legacy.save(location);
+        }
+        MutableDocument other = new MutableDocument("user_credentials::1");
+        other.setString(DocumentKeys.TYPE, "user_credentials");
+        legacy.save(other);
+        Date expiration = new Date(System.currentTimeMillis() + 3_600_000L);
+        legacy.setDocumentExpiration("responder_location::1", expiration);
+
+        BeaconCollections collections = BeaconCollections.open(database);
+        assertEquals(3, CollectionMigration.migrate(database, collections, "user-1"));
+
+        assertEquals(TYPES[1], collections.requests.getDocument("request::1").getString(DocumentKeys.EMERGENCY_TYPE));
+        assertNotNull(collections.responders.getDocument("user::1"));
+        assertNotNull(collections.locations.getDocument("responder_location::1"));
+        assertEquals(expiration, collections.locations.getDocumentExpiration("responder_location::1"));
+        assertNull(legacy.getDocument("request::1"));
+        // Other users' documents come back by replication from their own devices
+        assertNull(collections.requests.getDocument("request::2"));
+        assertNull(collections.responders.getDocument("user::2"));
+        assertNull(collections.locations.getDocument("responder_location::2"));
+        assertNull(legacy.getDocument("request::2"));
+        // Unknown types stay put
+        assertEquals(1, legacy.getCount());
+        assertEquals(0, CollectionMigration.migrate(database, collections, "user-1"));
+    }
+
+    @Test
+    public void resetEmptiesEveryCollection() throws CouchbaseLiteException {
+        Database database = open("collection-reset");
+        BeaconCollections collections = BeaconCollections.open(database);
+        collections.requests.save(request(1));
+        collections.locations.save(location(1, 0));
+        database.getDefaultCollection().save(user(1));
+
+        DatabaseResetter.ResetResult result = DatabaseResetter.reset(database, DatabaseResetter.Strategy.PURGE_IN_BATCH, null);
+
+        assertEquals(3, result.documents);
+        assertEquals(0, collections.requests.getCount());
+        assertEquals(0, collections.locations.getCount());
+        assertEquals(0, database.getDefaultCollection().getCount());
+    }
+
+    /**
+     * The hot queries over the same documents in each layout. Locations are updated in place,
+     * so their collection stays small however often responders move.
+     */
+    @Test
+    public void benchmarkQueries() throws CouchbaseLiteException {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+
+        for (int requests : new int[]{10_000, 100_000}) {
+            for (boolean scoped : new boolean[]{false, true}) {
+                Database database = open("collection-queries-" + scoped);
+                BeaconCollections collections = layout(database, scoped);
+                QueryIndexes.ensure(collections);
+                seed(database, collections, requests, requests / 20, requests / 20);
+
+                StringBuilder line = new StringBuilder();
+                for (Map.Entry<String, Query> query : RequestQueries.hotQueries(collections, "Ambulance", "99").entrySet()) {
+                    line.append(' ').append(query.getKey()).append('=')
+                            .append(String.format("%.2fms", p50Ns(query.getValue()) / 1e6));
+                }
+                Log.i(TAG, String.format("%s requests=%d p50:%s", scoped ? "scoped" : "single", requests, line));
+                databases.remove(database);
+                database.delete();
+            }
+        }
+    }
+
+    /**
+     * A device joins after a busy hour: the hub holds open and answered requests, responders
+     * and positions that moved many times. The request replicator's first window pulls the
+     * whole collection in the single layout, and leaves positions to their own replicator in
+     * the scoped one.
+     */
+    @Test
+    public void benchmarkRequestReplicationWindow() throws Exception {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+
+        for (boolean scoped : new boolean[]{false, true}) {
+            Database hub = open("collection-hub-" + scoped);
+            BeaconCollections hubCollections = layout(hub, scoped);
+            seed(hub, hubCollections, 2_000, 500, 500);
+            // Each position moved twenty times
+            for (int move = 1; move < 20; move++) {
+                int step = move;
+                hub.inBatch(() -> {
+                    for (int i = 0; i < 500; i++) hubCollections.locations.save(location(i, step));
+                });
+            }
+            URLEndpointListenerConfiguration listenerConfig =
+                    new URLEndpointListenerConfiguration(new HashSet<>(hubCollections.all()));
+            listenerConfig.setPort(0);
+            listenerConfig.setDisableTls(true);
+            URLEndpointListener listener = new URLEndpointListener(listenerConfig);
+            listener.start();
+            listeners.add(listener);
+
+            Database device = open("collection-device-" + scoped);
+            BeaconCollections deviceCollections = layout(device, scoped);
+            List<Collection> requestReplicator = deviceCollections.all();
+            if (scoped) requestReplicator.remove(deviceCollections.locations);
+
+            long[] pulled = new long[1];
+            long start = System.nanoTime();
+            pull(new URI("ws://localhost:" + listener.getPort() + "/" + hub.getName()), requestReplicator, pulled);
+            long windowMs = (System.nanoTime() - start) / 1_000_000;
+
+            long bytes = 0;
+            for (Collection collection : requestReplicator) bytes += jsonBytes(collection);
+            assertEquals(2_000 / 4, count(RequestQueries.openRequests(deviceCollections.requests)));
+            Log.i(TAG, String.format("%s request window: docs=%d bytes=%dKB time=%dms",
+                    scoped ? "scoped" : "single", pulled[0], bytes / 1024, windowMs));
+        }
+    }
+
+    private Database open(String name) throws CouchbaseLiteException {
+        Database database = new Database(name);
+        databases.add(database);
+        return database;
+    }
+
+    private static BeaconCollections layout(Database database, boolean scoped) throws CouchbaseLiteException {
+        return scoped ? BeaconCollections.open(database) : BeaconCollections.single(database.getDefaultCollection());
+    }
+
+    private static void seed(Database database, BeaconCollections collections, int requests, int users, int locations)
+            throws CouchbaseLiteException {
+        database.inBatch(() -> {
+            for (int i = 0; i < requests; i++) collections.requests.save(request(i));
+            for (int i = 0; i < users; i++) collections.responders.save(user(i));
+            for (int i = 0; i < locations; i++) collections.locations.save(location(i, 0));
+        });
+    }
+
+    private static void pull(URI hub, List<Collection> collections, long[] pulled) throws InterruptedException {
+        ReplicatorConfiguration config = new ReplicatorConfiguration(new URLEndpoint(hub));
+        config.setType(ReplicatorType.PULL);
+        config.setContinuous(false);
+        config.addCollections(collections, new CollectionConfiguration());
+        Replicator replicator = new Replicator(config);
+        CountDownLatch stopped = new CountDownLatch(1);
+        replicator.addChangeListener(change -> {
+            if (change.getStatus().getActivityLevel() == ReplicatorActivityLevel.STOPPED) stopped.countDown();
+        });
+        replicator.addDocumentReplicationListener(replication -> {
+            for (ReplicatedDocument ignored : replication.getDocuments()) pulled[0]++;
+        });
+        replicator.start();
+        assertTrue(stopped.await(5, TimeUnit.MINUTES));
+        replicator.close();
+    }
+
+    private static long jsonBytes(Collection collection) throws CouchbaseLiteException {
+        long bytes = 0;
+        try (ResultSet results = QueryBuilder
+                .select(SelectResult.expression(Meta.id))
+                .from(DataSource.collection(collection))
+                .execute()) {
+            for (Result result : results) {
+                Document doc = collection.getDocument(result.getString(0));
+                if (doc != null) bytes += doc.toJSON().length();
+            }
+        }
+        return bytes;
+    }
+
+    private static long p50Ns(Query query) throws CouchbaseLiteException {
+        long[] samples = new long[11];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            count(query);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    private static int count(Query query) throws CouchbaseLiteException {
+        try (ResultSet results = query.execute()) {
+            return results.allResults().size();
+        }
+    }
+
+    private static MutableDocument request(int i) {
+        MutableDocument doc = new MutableDocument("request::" + i);
+        doc.setString(DocumentKeys.TYPE, "emergency_request");
+        doc.setString(DocumentKeys.EMERGENCY_TYPE, TYPES[i % TYPES.length]);
+        doc.setString(DocumentKeys.STATUS, STATUSES[i % STATUSES.length]);
+        doc.setString(DocumentKeys.REQUESTED_BY, "user-" + (i % 500));
+        doc.setLong(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L + i);
+        doc.setString(DocumentKeys.GEOHASH, "u6sce0t4w");
+        return doc;
+    }
+
+    private static MutableDocument user(int i) {
+        MutableDocument doc = new MutableDocument("user::" + i);
+        doc.setString(DocumentKeys.TYPE, "user");
+        doc.setString(DocumentKeys.USER_ID, String.valueOf(i));
+        doc.setString(DocumentKeys.USER_TYPE, i % 2 == 0 ? "responder" : "requester");
+        doc.setString(DocumentKeys.RESPONDER_TYPE, TYPES[i % TYPES.length]);
+        doc.setString(DocumentKeys.USER_STATUS, "available");
+        return doc;
+    }
+
+    private static MutableDocument location(int i, int move) {
+        MutableDocument doc = new MutableDocument("responder_location::" + i);
+        doc.setString(DocumentKeys.TYPE, LocationThrottle.DOC_TYPE);
+        doc.setString(DocumentKeys.RESPONDER_ID, "user::" + i);
+        doc.setDouble(DocumentKeys.LATITUDE, 59.33 + move * 1e-4);
+        doc.setDouble(DocumentKeys.LONGITUDE, 18.06 + (i % 100) * 1e-3);
+        doc.setString(DocumentKeys.GEOHASH, GeoChannels.documentGeohash(59.33 + move * 1e-4, 18.06 + (i % 100) * 1e-3));
+        doc.setLong(DocumentKeys.UPDATED_AT, 1_700_000_000_000L + move * 5_000L);
+        return doc;
+    }
+}
@@ -0,0 +1,113 @@
+package com.beacon;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the reset strategies against the old per-document delete loop.
+ * The timing runs only with {@code -e benchmark true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseResetBenchmarkTest {
+    private static final String TAG = "ResetBenchmark";
+    private static final String DB_NAME = "reset-benchmark";
+
+    private Database database;
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+        database = new Database(DB_NAME);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void everyStrategyLeavesAnEmptyDatabase() throws CouchbaseLiteException {
+        for (DatabaseResetter.Strategy strategy : DatabaseResetter.Strategy.values()) {
+            seed(250);
+            DatabaseResetter.ResetResult result = DatabaseResetter.reset(database, strategy, null);
+            database = result.database;
+
+            assertEquals(250, result.documents);
+            assertEquals(0, database.getDefaultCollection().getCount());
+        }
+    }
+
+    @Test
+    public void benchmarkResetStrategies() throws CouchbaseLiteException {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+
+        for (int size : new int[]{1_000, 10_000, 100_000}) {
+            seed(size);
+            long start = System.nanoTime();
+            deleteOneByOne();
+            Log.i(TAG, String.format("docs=%d legacy-delete=%dms", size, (System.nanoTime() - start) / 1_000_000));
+            // Tombstones left by the legacy loop would skew the next run
+            database = DatabaseResetter.reset(database, DatabaseResetter.Strategy.RECREATE, null).database;
+
+            for (DatabaseResetter.Strategy strategy : new DatabaseResetter.Strategy[]{
+                    DatabaseResetter.Strategy.PURGE_IN_BATCH, DatabaseResetter.Strategy.RECREATE}) {
+                seed(size);
+                DatabaseResetter.ResetResult result = DatabaseResetter.reset(database, strategy, null);
+                database = result.database;
+                Log.i(TAG, String.format("docs=%d %s=%dms", size, strategy, result.elapsedMs));
+            }
+        }
+    }
+
+    /** The reset the app used to run on the main thread. */
+    private void deleteOneByOne() throws CouchbaseLiteException {
+        Collection collection = database.getDefaultCollection();
+        try (ResultSet results = QueryBuilder
+                .select(SelectResult.expression(Meta.id))
+                .from(DataSource.collection(collection))
+                .execute()) {
+            for (Result result : results) {
+                collection.delete(collection.getDocument(result.getString(0)));
+            }
+        }
+    }
+
+    private void seed(int count) throws CouchbaseLiteException {
+        Collection collection = database.getDefaultCollection();
+        database.inBatch(() -> {
+            for (int i = 0; i < count; i++) {
+                MutableDocument doc = new MutableDocument("request::" + i);
+                doc.setString(DocumentKeys.TYPE, "emergency_request");
+                doc.setString(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+                doc.setString(DocumentKeys.STATUS, "open");
+                doc.setString(DocumentKeys.REQUESTED_BY, "user-" + (i % 500));
+                doc.setLong(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L + i);
+                collection.save(doc);
+            }
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package com.beacon;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.Query;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the open-request view follows document changes, and compares process CPU per
+ * incoming document for the view against the live query it replaced. The timing runs only
+ * with {@code -e benchmark true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OpenRequestViewBenchmarkTest {
+    private static final String TAG = "OpenRequestBenchmark";
+    private static final String DB_NAME = "open-request-benchmark";
+    private static final String[] TYPES = {"Ambulance", "Doctor", "Fire Truck", "Rescue Team"};
+
+    private Database database;
+    private Collection collection;
+    private int nextId;
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+        database = new Database(DB_NAME);
+        collection = database.getDefaultCollection();
+        QueryIndexes.ensure(collection);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void viewFollowsInsertsAndClaims() throws Exception {
+        seed(100);
+        OpenRequestView view = new OpenRequestView();
+        CountDownLatch loaded = new CountDownLatch(1);
+        List<Set<String>> batches = new CopyOnWriteArrayList<>();
+        OpenRequestViewUpdater updater = new OpenRequestViewUpdater(collection, view, (v, changedIds) -> {
+            if (changedIds != null) batches.add(changedIds);
+            loaded.countDown();
+        });
+        updater.start();
+        try {
+            assertTrue(loaded.await(10, TimeUnit.SECONDS));
+            assertEquals(100, view.size());
+
+            MutableDocument severe = request(nextId++, "Ambulance");
+            severe.setInt(DocumentKeys.SEVERITY, 3);
+            collection.save(severe);
+            awaitCondition(() -> view.snapshot("Ambulance").get(0).id.equals(severe.getId()));
+            // Each batch names just the request it touched
+            assertEquals(List.of(Set.of(severe.getId())), batches);
+
+            assertEquals(RequestClaims.Result.CLAIMED, RequestClaims.claim(collection, severe.getId(), "7", 1));
+            awaitCondition(() -> view.get(severe.getId()) == null);
+            assertEquals(Set.of(severe.getId()), batches.get(batches.size() - 1));
+        } finally {
+            updater.stop();
+        }
+    }
+
+    @Test
+    public void benchmarkCpuPerIncomingDocument() throws Exception {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+        seed(5_000);
+        int incoming = 1_000;
+
+        long baseline = ingestCpuMs(incoming);
+
+        Query query = RequestQueries.openRequestsForType(collection, "Ambulance", "99");
+        AtomicInteger rows = new AtomicInteger();
+        ListenerToken token = query.addChangeListener(change -> {
+            if (change.getResults() != null) rows.set(change.getResults().allResults().size());
+        });
+        long liveQuery = ingestCpuMs(incoming);
+        token.remove();
+
+        OpenRequestView view = new OpenRequestView();
+        OpenRequestViewUpdater updater = new OpenRequestViewUpdater(collection, view,
+                (v, changedIds) -> v.offeredTo("Ambulance", "99"));
+        updater.start();
+        long materialized = ingestCpuMs(incoming);
+        updater.stop();
+
+        Log.i(TAG, String.format("incoming=%d cpu/doc: none=%.3fms live-query=+%.3fms view=+%.3fms",
+                incoming, (double) baseline / incoming,
+                (double) (liveQuery - baseline) / incoming, (double) (materialized - baseline) / incoming));
+    }
+
+    /** Process CPU to save documents one at a time, as replication delivers them, and let observers settle. */
+    private long ingestCpuMs(int count) throws Exception {
+        Thread.sleep(1_000);
+        long start = Process.getElapsedCpuTime();
+        for (int i = 0; i < count; i++) {
+            collection.save(request(nextId++, TYPES[i % TYPES.length]));
+        }
+        Thread.sleep(2_000);
+        return Process.getElapsedCpuTime() - start;
+    }
+
+    private void seed(int count) throws CouchbaseLiteException {
+        database.inBatch(() -> {
+            for (int i = 0; i < count; i++) {
+                collection.save(request(nextId++, TYPES[i % TYPES.length]));
+            }
+        });
+    }
+
+    private static MutableDocument request(int i, String type) {
+        MutableDocument doc = new MutableDocument("request::" + i);
+        doc.setString(DocumentKeys.TYPE, "emergency_request");
+        doc.setString(DocumentKeys.EMERGENCY_TYPE, type);
+        doc.setString(DocumentKeys.STATUS, "open");
+        doc.setString(DocumentKeys.REQUESTED_BY, "user-" + (i % 500));
+        doc.setLong(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L + i);
+        return doc;
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    private static void awaitCondition(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (condition.met()) return;
+            Thread.sleep(20);
+        }
+        fail("Condition not met in time");
+    }
+}
@@ -0,0 +1,165 @@
+package com.beacon;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableArray;
+import com.couchbase.lite.MutableDocument;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class RequestClaimsTest {
+    private static final String DB_NAME = "request-claims-test";
+
+    private Database database;
+    private Collection collection;
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+        database = new Database(DB_NAME);
+        collection = database.getDefaultCollection();
+
+        MutableDocument request = new MutableDocument("req");
+        request.setString(DocumentKeys.TYPE, "emergency_request");
+        request.setString(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+        request.setString(DocumentKeys.STATUS, "open");
+        request.setString(DocumentKeys.REQUESTED_BY, "alice");
+        request.setString(DocumentKeys.GEOHASH, "u6sce0t4w");
+        request.setLong(DocumentKeys.REQUESTED_AT, 1_000);
+        collection.save(request);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void onlyTheFirstClaimWinsAndTheRequestIsNotEdited() throws CouchbaseLiteException {
+        String revision = collection.getDocument("req").getRevisionID();
+        assertEquals(RequestClaims.Result.CLAIMED, RequestClaims.claim(collection, "req", "7", 2_000));
+        assertEquals(RequestClaims.Result.TAKEN, RequestClaims.claim(collection, "req", "9", 2_001));
+        assertEquals(RequestClaims.Result.CLAIMED, RequestClaims.claim(collection, "req", "7", 2_002));
+
+        assertEquals(revision, collection.getDocument("req").getRevisionID());
+        Document claim = collection.getDocument(RequestLifecycle.claimId("req", "7"));
+        assertEquals("req", claim.getString(DocumentKeys.REQUEST_ID));
+        assertEquals(2_000, claim.getLong(DocumentKeys.CLAIMED_AT));
+        assertEquals("alice", claim.getString(DocumentKeys.REQUESTED_BY));
+        assertNull(collection.getDocument(RequestLifecycle.claimId("req", "9")));
+    }
+
+    @Test
+    public void claimsMadeApartSettleOnTheEarliest() throws CouchbaseLiteException {
+        assertEquals(RequestClaims.Result.CLAIMED, RequestClaims.claim(collection, "req", "7", 2_000));
+        // Responder 9 claimed first on another device; its claim replicates in beside ours
+        MutableDocument replicated = new MutableDocument(RequestLifecycle.claimId("req", "9"));
+        replicated.setString(DocumentKeys.TYPE, RequestLifecycle.CLAIM_TYPE);
+        replicated.setString(DocumentKeys.REQUEST_ID, "req");
+        replicated.setString(DocumentKeys.RESPONDER_ID, "9");
+        replicated.setLong(DocumentKeys.CLAIMED_AT, 1_500);
+        collection.save(replicated);
+
+        assertEquals("9", RequestClaims.winner(collection, "req").responderId);
+        assertEquals(RequestClaims.Result.TAKEN, RequestClaims.claim(collection, "req", "7", 2_100));
+    }
+
+    @Test
+    public void responsesWrittenByOlderClientsStillCount() throws CouchbaseLiteException {
+        MutableDocument legacy = collection.getDocument("req").toMutable();
+        legacy.setString(DocumentKeys.STATUS, RequestLifecycle.STATUS_RESPONDED);
+        legacy.setString(DocumentKeys.RESPONDED_BY, "5");
+        legacy.setLong(DocumentKeys.RESPONDED_AT, 1_800);
+        collection.save(legacy);
+
+        assertEquals(RequestClaims.Result.TAKEN, RequestClaims.claim(collection, "req", "7", 2_000));
+        assertEquals("5", RequestClaims.winner(collection, "req").responderId);
+    }
+
+    @Test
+    public void requesterClosesItsClaimedRequestWithTheWinner() throws CouchbaseLiteException {
+        assertFalse(RequestClaims.close(collection, "req", "alice"));
+        assertEquals(RequestClaims.Result.CLAIMED, RequestClaims.claim(collection, "req", "7", 2_000));
+        // Only the requester writes the request
+        assertFalse(RequestClaims.close(collection, "req", "7"));
+        assertTrue(RequestClaims.close(collection, "req", "alice"));
+
+        Document closed = collection.getDocument("req");
+        assertEquals(RequestLifecycle.STATUS_RESPONDED, closed.getString(DocumentKeys.STATUS));
+        assertEquals("7", closed.getString(DocumentKeys.RESPONDED_BY));
+        assertEquals(2_000, closed.getLong(DocumentKeys.RESPONDED_AT));
+        assertFalse(RequestClaims.close(collection, "req", "alice"));
+
+        // An earlier claim from a responder apart replicates in afterwards
+        MutableDocument replicated = new MutableDocument(RequestLifecycle.claimId("req", "9"));
+        replicated.setString(DocumentKeys.TYPE, RequestLifecycle.CLAIM_TYPE);
+        replicated.setString(DocumentKeys.REQUEST_ID, "req");
+        replicated.setString(DocumentKeys.RESPONDER_ID, "9");
+        replicated.setLong(DocumentKeys.CLAIMED_AT, 1_500);
+        collection.save(replicated);
+        assertTrue(RequestClaims.close(collection, "req", "alice"));
+        assertEquals("9", collection.getDocument("req").getString(DocumentKeys.RESPONDED_BY));
+    }
+
+    @Test
+    public void offersRestrictWhoMayClaim() throws CouchbaseLiteException {
+        String revision = collection.getDocument("req").getRevisionID();
+        DispatchEngine engine = new DispatchEngine(responderAt("7"));
+        DispatchEngine.Offer offer = engine.start("req", "Ambulance", 59.33, 18.07, 0);
+        assertTrue(RequestClaims.publishOffer(collection, offer));
+        assertEquals(List.of("7"), RequestClaims.offeredTo(collection, collection.getDocument("req")));
+        assertEquals(revision, collection.getDocument("req").getRevisionID());
+
+        assertEquals(RequestClaims.Result.NOT_OFFERED, RequestClaims.claim(collection, "req", "9", 2_000));
+        assertEquals(RequestClaims.Result.CLAIMED, RequestClaims.claim(collection, "req", "7", 2_000));
+        // The requester's next wave sees the claim and stops
+        assertFalse(RequestClaims.publishOffer(collection, offer));
+    }
+
+    @Test
+    public void migrationMovesOnlyWhatThisDeviceWrote() throws CouchbaseLiteException {
+        // Schema version 1: long names, with the response and the wave inside the request
+        MutableDocument legacy = collection.getDocument("req").toMutable();
+        legacy.setData(DocumentKeys.expand(legacy.toMap()));
+        legacy.setString("status", RequestLifecycle.STATUS_RESPONDED);
+        legacy.setString("responded_by", "7");
+        legacy.setLong("responded_at", 1_800);
+        legacy.setArray("offered_to", new MutableArray(new ArrayList<>(List.of("7"))));
+        legacy.setInt("dispatch_wave", 1);
+        collection.save(legacy);
+
+        // Another responder's device has nothing of its own to move
+        assertEquals(0, RequestMigration.migrate(database, "9"));
+        assertEquals(1, RequestMigration.migrate(database, "7"));
+        assertEquals(1_800, collection.getDocument(RequestLifecycle.claimId("req", "7")).getLong(DocumentKeys.CLAIMED_AT));
+        assertEquals(1, RequestMigration.migrate(database, "alice"));
+        Document offer = collection.getDocument(RequestLifecycle.offerId("req"));
+        assertEquals(List.of("7"), RequestClaims.offeredTo(offer));
+        // Running again creates nothing
+        assertEquals(0, RequestMigration.migrate(database, "7"));
+    }
+
+    private static ResponderSpatialIndex responderAt(String id) {
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        index.upsert(id, "Ambulance", true, 59.33, 18.07);
+        return index;
+    }
+}
@@ -0,0 +1,197 @@
+package com.beacon;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Expression;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.MutableDictionary;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the spatial index against a QueryBuilder scan of responder documents and compares
+ * nearest-responder latency. The timing runs only with {@code -e benchmark true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ResponderIndexBenchmarkTest {
+    private static final String TAG = "ResponderBenchmark";
+    private static final String DB_NAME = "responder-benchmark";
+    private static final String[] TYPES = {"Ambulance", "Doctor", "Fire Truck", "Rescue Team"};
+    private static final double LAT = 59.3293;
+    private static final double LON = 18.0686;
+    private static final int K = 5;
+
+    private Database database;
+    private Collection collection;
+    private final Random random = new Random(11);
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+        database = new Database(DB_NAME);
+        collection = database.getDefaultCollection();
+        QueryIndexes.ensure(collection);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void updaterLoadsAndFollowsChanges() throws Exception {
+        seed(0, 500);
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        ResponderIndexUpdater updater = new ResponderIndexUpdater(collection, index);
+        updater.start();
+        try {
+            awaitSize(index, availableCount());
+            assertEquals(scanNearest("Ambulance"), idsOf(index.nearest("Ambulance", LAT, LON, K)));
+
+            // A responder right at the query point becomes available
+            MutableDocument doc = collection.getDocument("user::0").toMutable();
+            doc.setString("responderType", "Ambulance");
+            doc.setString("status", "available");
+            doc.setDictionary("location", new MutableDictionary().setDouble("lat", LAT).setDouble("lon", LON));
+            collection.save(doc);
+            awaitNearest(index, "user::0");
+        } finally {
+            updater.stop();
+        }
+    }
+
+    @Test
+    public void benchmarkNearestResponders() throws CouchbaseLiteException {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+
+        int seeded = 0;
+        for (int size : new int[]{100, 10_000, 1_000_000}) {
+            seed(seeded, size - seeded);
+            seeded = size;
+
+            ResponderSpatialIndex index = new ResponderSpatialIndex();
+            long loadStart = System.nanoTime();
+            try (ResultSet results = RequestQueries.responders(collection).execute()) {
+                for (Result r : results) {
+                    index.upsert(r.getString(0), r.getString(1), "available".equals(r.getString(2)),
+                            r.getDouble(3), r.getDouble(4));
+                }
+            }
+            long loadMs = (System.nanoTime() - loadStart) / 1_000_000;
+
+            int queries = 1_000;
+            long indexStart = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                index.nearest(TYPES[i % TYPES.length], LAT + (i % 50) * 0.002, LON, K);
+            }
+            long indexUs = (System.nanoTime() - indexStart) / 1_000 / queries;
+
+            int scans = size >= 1_000_000 ? 3 : 20;
+            long scanStart = System.nanoTime();
+            for (int i = 0; i < scans; i++) scanNearest(TYPES[i % TYPES.length]);
+            long scanUs = (System.nanoTime() - scanStart) / 1_000 / scans;
+
+            Log.i(TAG, String.format("responders=%d load=%dms index-knn=%dus query-scan=%dus",
+                    size, loadMs, indexUs, scanUs));
+        }
+    }
+
+    /** The query a lookup needed before the index: every available responder of a type, ranked in Java. */
+    private List<String> scanNearest(String type) throws CouchbaseLiteException {
+        Query query = QueryBuilder
+                .select(SelectResult.expression(Meta.id),
+                        SelectResult.property("location.lat"),
+                        SelectResult.property("location.lon"))
+                .from(DataSource.collection(collection))
+                .where(Expression.property("type").equalTo(Expression.string("user"))
+                        .and(Expression.property("userType").equalTo(Expression.string("responder")))
+                        .and(Expression.property("responderType").equalTo(Expression.string(type)))
+                        .and(Expression.property("status").equalTo(Expression.string("available"))));
+        List<Object[]> ranked = new ArrayList<>();
+        try (ResultSet results = query.execute()) {
+            for (Result r : results) {
+                ranked.add(new Object[]{r.getString(0),
+                        ResponderSpatialIndex.distanceMeters(LAT, LON, r.getDouble(1), r.getDouble(2))});
+            }
+        }
+        ranked.sort((a, b) -> Double.compare((Double) a[1], (Double) b[1]));
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < Math.min(K, ranked.size()); i++) ids.add((String) ranked.get(i)[0]);
+        return ids;
+    }
+
+    private static List<String> idsOf(List<ResponderSpatialIndex.Hit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (ResponderSpatialIndex.Hit hit : hits) ids.add(hit.responderId);
+        return ids;
+    }
+
+    private int availableCount() throws CouchbaseLiteException {
+        int count = 0;
+        try (ResultSet results = RequestQueries.responders(collection).execute()) {
+            for (Result r : results) if ("available".equals(r.getString(2))) count++;
+        }
+        return count;
+    }
+
+    private static void awaitSize(ResponderSpatialIndex index, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (index.size() != size && System.nanoTime() < deadline) Thread.sleep(20);
+        assertEquals(size, index.size());
+    }
+
+    private static void awaitNearest(ResponderSpatialIndex index, String id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            List<ResponderSpatialIndex.Hit> hits = index.nearest("Ambulance", LAT, LON, 1);
+            if (!hits.isEmpty() && id.equals(hits.get(0).responderId)) return;
+            Thread.sleep(20);
+        }
+        fail(id + " never became the nearest responder");
+    }
+
+    /** Responders spread over roughly 50 x 50 km around Stockholm; two in three are available. */
+    private void seed(int from, int count) throws CouchbaseLiteException {
+        database.inBatch(() -> {
+            for (int i = from; i < from + count; i++) {
+                MutableDocument doc = new MutableDocument("user::" + i);
+                doc.setString("type", "user");
+                doc.setString("userId", String.valueOf(i));
+                doc.setString("userType", "responder");
+                doc.setString("responderType", TYPES[i % TYPES.length]);
+                doc.setString("status", i % 3 == 0 ? "occupied" : "available");
+                doc.setDictionary("location", new MutableDictionary()
+                        .setDouble("lat", LAT + (random.nextDouble() - 0.5) * 0.45)
+                        .setDouble("lon", LON + (random.nextDouble() - 0.5) * 0.8));
+                collection.save(doc);
+            }
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package com.beacon;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.MutableDocument;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Expiration stamping and compaction on a real database. The size and query-latency report
+ * over a disaster's worth of requests runs only with {@code -e benchmark true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RetentionBenchmarkTest {
+    private static final String TAG = "RetentionBenchmark";
+    private static final String DB_NAME = "retention-benchmark";
+
+    private Database database;
+    private Collection collection;
+    private RetentionManager manager;
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+        database = new Database(DB_NAME);
+        collection = database.getDefaultCollection();
+        QueryIndexes.ensure(collection);
+        manager = new RetentionManager(database, new RetentionPolicy(),
+                RequestQueries.hotQueries(collection, "Ambulance", "99"));
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (manager != null) manager.stop();
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void respondedRequestsGetAnExpiration() throws Exception {
+        long respondedAt = System.currentTimeMillis();
+        manager.start();
+        collection.save(request(1, RequestLifecycle.STATUS_OPEN, 0));
+        collection.save(request(2, RequestLifecycle.STATUS_RESPONDED, respondedAt));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (collection.getDocumentExpiration("request::2") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(respondedAt + RetentionPolicy.DEFAULT_RESPONDED_TTL_MS,
+                collection.getDocumentExpiration("request::2").getTime());
+        assertNull(collection.getDocumentExpiration("request::1"));
+    }
+
+    /**
+     * Each request is saved open, offered in two waves and responded, then responded ones are
+     * purged as expiry would; the report shows what compaction gives back.
+     */
+    @Test
+    public void benchmarkCompactionAfterExpiry() throws CouchbaseLiteException {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+
+        for (int size : new int[]{10_000, 100_000}) {
+            database.inBatch(() -> {
+                for (int i = 0; i < size; i++) {
+                    collection.save(request(i, RequestLifecycle.STATUS_OPEN, 0));
+                }
+            });
+            database.inBatch(() -> {
+                for (int i = 0; i < size; i++) {
+                    MutableDocument doc = collection.getDocument("request::" + i).toMutable();
+                    doc.setInt(DocumentKeys.DISPATCH_WAVE, 2);
+                    collection.save(doc);
+                    // Nine in ten get answered
+                    if (i % 10 != 0) {
+                        doc = collection.getDocument("request::" + i).toMutable();
+                        doc.setString(DocumentKeys.STATUS, RequestLifecycle.STATUS_RESPONDED);
+                        doc.setString(DocumentKeys.RESPONDED_BY, "responder-" + (i % 300));
+                        doc.setLong(DocumentKeys.RESPONDED_AT, 1_700_000_000_000L + i);
+                        collection.save(doc);
+                    }
+                }
+            });
+            RetentionManager.Report beforeExpiry = manager.compact();
+            database.inBatch(() -> {
+                for (int i = 0; i < size; i++) {
+                    if (i % 10 != 0) collection.purge("request::" + i);
+                }
+            });
+            RetentionManager.Report afterExpiry = manager.compact();
+            Log.i(TAG, String.format("docs=%d revisions only: %s", size, beforeExpiry));
+            Log.i(TAG, String.format("docs=%d after expiry: %s", size, afterExpiry));
+            assertTrue(afterExpiry.sizeAfterBytes < beforeExpiry.sizeBeforeBytes);
+
+            database = DatabaseResetter.reset(database, DatabaseResetter.Strategy.RECREATE, null).database;
+            collection = database.getDefaultCollection();
+            QueryIndexes.ensure(collection);
+            manager = new RetentionManager(database, new RetentionPolicy(),
+                    RequestQueries.hotQueries(collection, "Ambulance", "99"));
+        }
+    }
+
+    private static MutableDocument request(int i, String status, long respondedAt) {
+        MutableDocument doc = new MutableDocument("request::" + i);
+        doc.setString(DocumentKeys.TYPE, "emergency_request");
+        doc.setString(DocumentKeys.EMERGENCY_TYPE, i % 2 == 0 ? "Ambulance" : "Doctor");
+        doc.setString(DocumentKeys.STATUS, status);
+        doc.setString(DocumentKeys.REQUESTED_BY, "user-" + (i % 500));
+        doc.setLong(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L + i);
+        doc.setString(DocumentKeys.GEOHASH, "u6sce0t4w");
+        if (respondedAt > 0) {
+            doc.setString(DocumentKeys.RESPONDED_BY, "responder-" + (i % 300));
+            doc.setLong(DocumentKeys.RESPONDED_AT, respondedAt);
+        }
+        return doc;
+    }
+}
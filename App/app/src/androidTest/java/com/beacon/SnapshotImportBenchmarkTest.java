@@ -0,0 +1,125 @@
+package com.beacon;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Snapshot import and export on the device. Importing a million documents, with one parser
+ * thread against the default pool, runs only with {@code -e benchmark true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SnapshotImportBenchmarkTest {
+    private static final String TAG = "SnapshotBenchmark";
+    private static final String[] TYPES = {"Ambulance", "Doctor", "Fire Truck", "Rescue Team", "Generator", "Water Supply"};
+
+    private final List<Database> databases = new ArrayList<>();
+    private File directory;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CouchbaseLite.init(context);
+        directory = context.getCacheDir();
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        for (Database database : databases) database.delete();
+    }
+
+    @Test
+    public void exportedSnapshotImportsIntoAnEmptyDevice() throws Exception {
+        File snapshot = new File(directory, "snapshot-small.jsonl");
+        write(snapshot, 2_000);
+        Database source = open("snapshot-source");
+        BeaconCollections sourceCollections = BeaconCollections.open(source);
+        SnapshotImporter.Report imported = new SnapshotImporter(source, sourceCollections, 2, 250).importFrom(snapshot);
+        assertEquals(2_000, imported.imported);
+
+        File exported = new File(directory, "snapshot-export.jsonl");
+        assertEquals(2_000, SnapshotExporter.exportTo(sourceCollections, exported).docs);
+        Database device = open("snapshot-device");
+        BeaconCollections deviceCollections = BeaconCollections.open(device);
+        SnapshotImporter.Report report = new SnapshotImporter(device, deviceCollections).importFrom(exported);
+
+        assertEquals(2_000, report.imported);
+        assertEquals(0, report.rejected);
+        assertEquals(sourceCollections.requests.getCount(), deviceCollections.requests.getCount());
+        assertEquals(sourceCollections.locations.getCount(), deviceCollections.locations.getCount());
+        assertEquals(sourceCollections.requests.getDocument("request::42").toMap(),
+                deviceCollections.requests.getDocument("request::42").toMap());
+        assertTrue(snapshot.delete() && exported.delete());
+    }
+
+    @Test
+    public void benchmarkMillionDocumentImport() throws Exception {
+        Assume.assumeTrue("true".equals(InstrumentationRegistry.getArguments().getString("benchmark")));
+
+        File snapshot = new File(directory, "snapshot-1m.jsonl");
+        write(snapshot, 1_000_000);
+        int pool = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        for (int parsers : new int[]{1, pool}) {
+            Database database = open("snapshot-benchmark-" + parsers);
+            SnapshotImporter.Report report = new SnapshotImporter(database, BeaconCollections.open(database),
+                    parsers, SnapshotImporter.DEFAULT_BATCH_SIZE).importFrom(snapshot);
+            assertEquals(1_000_000, report.imported);
+            Log.i(TAG, String.format("parsers=%d file=%dMB %d docs/s elapsed=%dms heap=%dMB->%dMB",
+                    parsers, snapshot.length() / (1024 * 1024), report.docsPerSecond(), report.elapsedMs,
+                    report.heapBeforeBytes / (1024 * 1024), report.peakHeapBytes / (1024 * 1024)));
+            databases.remove(database);
+            database.delete();
+        }
+        assertTrue(snapshot.delete());
+    }
+
+    private Database open(String name) throws CouchbaseLiteException {
+        Database database = new Database(name);
+        databases.add(database);
+        return database;
+    }
+
+    /** Requests, with a user and a position for every tenth. */
+    private static void write(File snapshot, int documents) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(snapshot), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < documents; i++) {
+                if (i % 10 == 1) {
+                    out.write("{\"_id\":\"user::" + i + "\",\"type\":\"user\",\"userId\":\"" + i
+                            + "\",\"userType\":\"responder\",\"responderType\":\"" + TYPES[i % TYPES.length] + "\"}\n");
+                } else if (i % 10 == 2) {
+                    out.write("{\"_id\":\"responder_location::" + i + "\",\"type\":\"" + LocationThrottle.DOC_TYPE
+                            + "\",\"responder_id\":\"user::" + i + "\",\"latitude\":59.33,\"longitude\":18.06,\"updated_at\":"
+                            + (1_700_000_000_000L + i) + "}\n");
+                } else {
+                    out.write("{\"_id\":\"request::" + i + "\",\"type\":\"emergency_request\",\"emergency_type\":\""
+                            + TYPES[i % TYPES.length] + "\",\"status\":\"open\",\"requested_by\":\"user-" + (i % 500)
+                            + "\",\"requested_at\":" + (1_700_000_000_000L + i) + ",\"geohash\":\"u6sce0t4w\"}\n");
+                }
+            }
+        }
+    }
+}
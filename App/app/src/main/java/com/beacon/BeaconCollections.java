@@ -0,0 +1,84 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The collections of the {@value #SCOPE} scope, one per kind of data, so each replicates on
+ * its own cadence and channels and each query scans only its own documents: requests with
+ * their claims and offers, user documents, and live responder positions. {@link #single}
+ * puts everything in one collection, the layout before scopes; the benchmarks compare the two.
+ */
+public final class BeaconCollections {
+    public static final String SCOPE = "beacon";
+    /** emergency_request, request_claim and request_offer documents. */
+    public static final String REQUESTS = "requests";
+    /** user documents. */
+    public static final String RESPONDERS = "responders";
+    /** responder_location documents. */
+    public static final String LOCATIONS = "locations";
+
+    @NonNull public final Collection requests;
+    @NonNull public final Collection responders;
+    @NonNull public final Collection locations;
+
+    private BeaconCollections(@NonNull Collection requests, @NonNull Collection responders,
+                              @NonNull Collection locations) {
+        this.requests = requests;
+        this.responders = responders;
+        this.locations = locations;
+    }
+
+    /** Opens the scoped collections, creating any that do not exist yet. */
+    @NonNull
+    public static BeaconCollections open(@NonNull Database database) throws CouchbaseLiteException {
+        return new BeaconCollections(database.createCollection(REQUESTS, SCOPE),
+                database.createCollection(RESPONDERS, SCOPE), database.createCollection(LOCATIONS, SCOPE));
+    }
+
+    /** Every kind of document in one collection. */
+    @NonNull
+    public static BeaconCollections single(@NonNull Collection collection) {
+        return new BeaconCollections(collection, collection, collection);
+    }
+
+    public boolean isSingle() {
+        return requests == responders && requests == locations;
+    }
+
+    /** Each collection once. */
+    @NonNull
+    public List<Collection> all() {
+        List<Collection> all = new ArrayList<>(3);
+        all.add(requests);
+        if (!all.contains(responders)) all.add(responders);
+        if (!all.contains(locations)) all.add(locations);
+        return all;
+    }
+
+    /** The collection for a document type, or null for types the app does not store. */
+    public Collection forType(String type) {
+        String name = collectionFor(type);
+        if (REQUESTS.equals(name)) return requests;
+        if (RESPONDERS.equals(name)) return responders;
+        if (LOCATIONS.equals(name)) return locations;
+        return null;
+    }
+
+    /** The collection a document type belongs in, or null for types the app does not store. */
+    public static String collectionFor(String type) {
+        if ("emergency_request".equals(type) || RequestLifecycle.CLAIM_TYPE.equals(type)
+                || RequestLifecycle.OFFER_TYPE.equals(type)) {
+            return REQUESTS;
+        }
+        if ("user".equals(type)) return RESPONDERS;
+        if (LocationThrottle.DOC_TYPE.equals(type)) return LOCATIONS;
+        return null;
+    }
+}
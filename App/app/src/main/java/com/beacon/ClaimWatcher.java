@@ -0,0 +1,119 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A responder's claims, made off the main thread and watched afterwards. Two responders
+ * apart from each other can both claim a request; when the other claim replicates in and
+ * {@link RequestClaims#winner} picks it, the listener is told so this responder can stand
+ * down. Claims made before a restart are loaded and checked again at start. Claiming and
+ * watching share one thread, as in {@link OpenRequestViewUpdater}.
+ */
+public class ClaimWatcher {
+    private static final String TAG = "CLAIM_WATCHER";
+
+    public interface Listener {
+        /** The outcome of {@link #claim}; not called when the claim could not be written. */
+        void onClaimResult(@NonNull String requestId, @NonNull RequestClaims.Result result);
+
+        /** Another responder's claim on a request this responder claimed won. */
+        void onClaimLost(@NonNull String requestId, @NonNull String winnerId);
+    }
+
+    private final Collection collection;
+    private final String responderId;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /** Requests this responder claimed and still holds, as far as this device knows. */
+    private final Set<String> held = new HashSet<>();
+    private ListenerToken token;
+
+    public ClaimWatcher(@NonNull Collection collection, @NonNull String responderId, @NonNull Listener listener) {
+        this.collection = collection;
+        this.responderId = responderId;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        token = collection.addChangeListener(executor, change -> {
+            for (String docId : change.getDocumentIDs()) {
+                try {
+                    apply(docId);
+                } catch (CouchbaseLiteException e) {
+                    Log.e(TAG, "Could not read " + docId, e);
+                }
+            }
+        });
+        executor.execute(this::load);
+    }
+
+    public synchronized void stop() {
+        if (token != null) token.remove();
+        executor.shutdown();
+    }
+
+    /**
+     * Claim a request for this responder; safe to call from the main thread. Dropped once
+     * stopped.
+     */
+    public synchronized void claim(@NonNull String requestId, long nowMs) {
+        if (executor.isShutdown()) return;
+        executor.execute(() -> {
+            try {
+                RequestClaims.Result result = RequestClaims.claim(collection, requestId, responderId, nowMs);
+                if (result == RequestClaims.Result.CLAIMED) held.add(requestId);
+                listener.onClaimResult(requestId, result);
+            } catch (CouchbaseLiteException e) {
+                Log.e(TAG, "Could not claim " + requestId, e);
+            }
+        });
+    }
+
+    private void load() {
+        List<String> claimed = new ArrayList<>();
+        try (ResultSet results = RequestQueries.claims(collection).execute()) {
+            for (Result result : results) {
+                if (responderId.equals(result.getString(1))) claimed.add(result.getString(0));
+            }
+            held.addAll(claimed);
+            for (String requestId : claimed) check(requestId);
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not load claims", e);
+        }
+    }
+
+    private void apply(String docId) throws CouchbaseLiteException {
+        // A claim document, or a request an older client marked responded in place
+        String requestId = held.contains(docId) ? docId : null;
+        if (requestId == null && RequestLifecycle.isClaimId(docId)) {
+            Document doc = collection.getDocument(docId);
+            String claimed = doc != null ? DocumentFields.getString(doc, DocumentKeys.REQUEST_ID) : null;
+            if (held.contains(claimed)) requestId = claimed;
+        }
+        if (requestId != null) check(requestId);
+    }
+
+    private void check(String requestId) throws CouchbaseLiteException {
+        RequestLifecycle.Claim winner = RequestClaims.winner(collection, requestId);
+        if (winner == null || winner.responderId.equals(responderId)) return;
+        held.remove(requestId);
+        Log.i(TAG, "Request " + requestId + " went to " + winner.responderId);
+        listener.onClaimLost(requestId, winner.responderId);
+    }
+}
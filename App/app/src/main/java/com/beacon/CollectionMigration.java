@@ -0,0 +1,72 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Moves documents written under schema version 2 or earlier out of the default collection into
+ * their {@link BeaconCollections}. As in {@link RequestMigration}, each device copies only what
+ * it wrote itself, so no two devices create the same document: its requests, the offers on
+ * them, its claims, its location and its user document. Each is copied with its expiration;
+ * the copies start a new revision history and replicate as new documents. Everyone else's
+ * documents arrive in the new collections by replication from their authors. Every document of
+ * a known type is purged from the default collection, so nothing replicates a deletion;
+ * documents of unknown types stay where they are.
+ */
+public final class CollectionMigration {
+    private static final String TAG = "CollectionMigration";
+    /** The last layout with every document in the default collection. */
+    public static final int FROM_VERSION = 2;
+
+    private CollectionMigration() {}
+
+    /** Runs once per database. Returns how many documents were copied. */
+    public static int migrate(@NonNull Database database, @NonNull BeaconCollections collections,
+                              @NonNull String userId) throws CouchbaseLiteException {
+        Collection source = database.getDefaultCollection();
+        long start = System.nanoTime();
+        List<String> ids = new ArrayList<>((int) Math.min(source.getCount(), Integer.MAX_VALUE));
+        try (ResultSet results = QueryBuilder
+                .select(SelectResult.expression(Meta.id))
+                .from(DataSource.collection(source))
+                .execute()) {
+            for (Result result : results) ids.add(result.getString(0));
+        }
+        int[] copied = {0};
+        database.inBatch(() -> {
+            for (String id : ids) {
+                Document doc = source.getDocument(id);
+                Collection target = doc == null ? null : collections.forType(doc.getString(DocumentKeys.TYPE));
+                if (target == null) continue;
+                // An offer's request is in either collection, depending on which was reached first
+                if (userId.equals(CompactKeysMigration.author(doc, source, collections.requests))) {
+                    Date expiration = source.getDocumentExpiration(id);
+                    target.save(new MutableDocument(id, doc.toMap()));
+                    if (expiration != null) target.setDocumentExpiration(id, expiration);
+                    copied[0]++;
+                }
+                source.purge(id);
+            }
+        });
+        Log.i(TAG, "Copied " + copied[0] + " of " + ids.size() + " documents in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return copied[0];
+    }
+}
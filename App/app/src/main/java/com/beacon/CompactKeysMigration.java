@@ -0,0 +1,89 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites documents stored under schema version 3 with the short keys of
+ * {@link DocumentKeys}. Each is saved as a new revision of itself, so it keeps its history
+ * and expiration and replicates as an ordinary update. As in {@link RequestMigration}, each
+ * device rewrites only what it wrote itself: its requests, the offers on them, its claims and
+ * its location. Everyone else's documents keep their long names and are read through
+ * {@link DocumentFields} until their author's device compacts them.
+ */
+public final class CompactKeysMigration {
+    private static final String TAG = "CompactKeysMigration";
+    /** The last layout with long property names. */
+    public static final int FROM_VERSION = 3;
+
+    private CompactKeysMigration() {}
+
+    /** Runs once per database. Returns how many documents were rewritten. */
+    public static int migrate(@NonNull Database database, @NonNull BeaconCollections collections,
+                              @NonNull String userId) throws CouchbaseLiteException {
+        long start = System.nanoTime();
+        int[] rewritten = {0};
+        for (Collection collection : collections.all()) {
+            List<String> ids = new ArrayList<>((int) Math.min(collection.getCount(), Integer.MAX_VALUE));
+            try (ResultSet results = QueryBuilder
+                    .select(SelectResult.expression(Meta.id))
+                    .from(DataSource.collection(collection))
+                    .execute()) {
+                for (Result result : results) ids.add(result.getString(0));
+            }
+            database.inBatch(() -> {
+                for (String id : ids) {
+                    Document doc = collection.getDocument(id);
+                    if (doc == null) continue;
+                    Map<String, Object> body = doc.toMap();
+                    if (!DocumentKeys.needsCompacting(body) || !userId.equals(author(doc, collections.requests))) continue;
+                    MutableDocument compacted = doc.toMutable();
+                    compacted.setData(DocumentKeys.compact(body));
+                    collection.save(compacted);
+                    rewritten[0]++;
+                }
+            });
+        }
+        Log.i(TAG, "Rewrote " + rewritten[0] + " documents in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return rewritten[0];
+    }
+
+    /**
+     * Who wrote a document, in either form of the keys, or null if that is unknown; the
+     * migrations keep to the documents this device wrote. An offer's requester is looked up in
+     * {@code requests}, in order. {@link CollectionMigration} uses it too.
+     */
+    static String author(@NonNull Document doc, @NonNull Collection... requests) throws CouchbaseLiteException {
+        String type = doc.getString(DocumentKeys.TYPE);
+        if (RequestLifecycle.OFFER_TYPE.equals(type)) {
+            // The requester's device writes the offers on its requests
+            String requestId = DocumentFields.getString(doc, DocumentKeys.REQUEST_ID);
+            if (requestId == null) return null;
+            for (Collection collection : requests) {
+                Document request = collection.getDocument(requestId);
+                if (request != null) return DocumentFields.getString(request, DocumentKeys.REQUESTED_BY);
+            }
+            return null;
+        }
+        if ("emergency_request".equals(type)) return DocumentFields.getString(doc, DocumentKeys.REQUESTED_BY);
+        if ("user".equals(type)) return doc.getString(DocumentKeys.USER_ID);
+        return DocumentFields.getString(doc, DocumentKeys.RESPONDER_ID);
+    }
+}
@@ -0,0 +1,130 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Empties the local database without leaving tombstones behind to replicate: the default
+ * collection and the {@link BeaconCollections} scope. Small databases are purged in one
+ * transaction; large ones are closed, deleted and reopened, which costs the same regardless
+ * of document count. Purging keeps the replicators' checkpoints while recreating drops them,
+ * so after either one the next replicators should start with {@code start(true)} and pull
+ * everything again.
+ */
+public final class DatabaseResetter {
+    /** Above this many documents, dropping the database file beats purging row by row. */
+    public static final long RECREATE_THRESHOLD = 5_000;
+    private static final int PROGRESS_STEP = 1_000;
+
+    public enum Strategy { AUTO, PURGE_IN_BATCH, RECREATE }
+
+    private DatabaseResetter() {}
+
+    public interface ProgressListener {
+        void onProgress(long done, long total);
+    }
+
+    public static final class ResetResult {
+        /** The database to use from now on; the one passed in may have been closed. */
+        public final Database database;
+        public final Strategy strategy;
+        public final long documents;
+        public final long elapsedMs;
+
+        ResetResult(Database database, Strategy strategy, long documents, long elapsedMs) {
+            this.database = database;
+            this.strategy = strategy;
+            this.documents = documents;
+            this.elapsedMs = elapsedMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return strategy + ": " + documents + " documents in " + elapsedMs + " ms";
+        }
+    }
+
+    /**
+     * Empty the database. Runs on the calling thread, which must not be the UI thread.
+     */
+    @WorkerThread
+    public static ResetResult reset(@NonNull Database database, @NonNull Strategy strategy,
+                                    ProgressListener progress) throws CouchbaseLiteException {
+        long start = System.nanoTime();
+        List<Collection> collections = new ArrayList<>();
+        collections.add(database.getDefaultCollection());
+        collections.addAll(database.getCollections(BeaconCollections.SCOPE));
+        long total = 0;
+        for (Collection collection : collections) total += collection.getCount();
+
+        Strategy chosen = strategy;
+        if (chosen == Strategy.AUTO) {
+            chosen = total > RECREATE_THRESHOLD ? Strategy.RECREATE : Strategy.PURGE_IN_BATCH;
+        }
+
+        Database result = database;
+        if (chosen == Strategy.RECREATE) {
+            result = recreate(database);
+            if (progress != null) progress.onProgress(total, total);
+        } else {
+            purgeAll(database, collections, total, progress);
+        }
+        return new ResetResult(result, chosen, total, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void purgeAll(Database database, List<Collection> collections, long total,
+                                 ProgressListener progress) throws CouchbaseLiteException {
+        Map<Collection, List<String>> ids = new LinkedHashMap<>();
+        for (Collection collection : collections) {
+            List<String> collectionIds = new ArrayList<>((int) Math.min(collection.getCount(), Integer.MAX_VALUE));
+            try (ResultSet results = QueryBuilder
+                    .select(SelectResult.expression(Meta.id))
+                    .from(DataSource.collection(collection))
+                    .execute()) {
+                for (Result result : results) {
+                    collectionIds.add(result.getString(0));
+                }
+            }
+            ids.put(collection, collectionIds);
+        }
+
+        long[] done = {0};
+        database.inBatch(() -> {
+            for (Map.Entry<Collection, List<String>> entry : ids.entrySet()) {
+                for (String id : entry.getValue()) {
+                    entry.getKey().purge(id);
+                    if (progress != null && ++done[0] % PROGRESS_STEP == 0) progress.onProgress(done[0], total);
+                }
+            }
+        });
+        if (progress != null) progress.onProgress(done[0], total);
+    }
+
+    private static Database recreate(Database database) throws CouchbaseLiteException {
+        String name = database.getName();
+        DatabaseConfiguration config = database.getConfig();
+        File directory = new File(config.getDirectory());
+
+        database.close();
+        Database.delete(name, directory);
+        return new Database(name, config);
+    }
+}
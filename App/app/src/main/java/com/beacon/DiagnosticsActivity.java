@@ -0,0 +1,51 @@
+package com.beacon;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.CheckBox;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Shows the live replication metrics snapshot, refreshed every second while visible.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+    private static final long REFRESH_INTERVAL_MS = 1_000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private TextView diagnosticsText;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            diagnosticsText.setText(ReplicationMetrics.get().toJson());
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+        diagnosticsText = findViewById(R.id.diagnostics_text);
+
+        CheckBox verboseLogging = findViewById(R.id.verbose_logging);
+        verboseLogging.setChecked(ReplicationMetrics.get().isVerboseLogging());
+        verboseLogging.setOnCheckedChangeListener(
+                (button, checked) -> ReplicationMetrics.get().setVerboseLogging(checked));
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+}
@@ -0,0 +1,166 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offers each request to a shortlist of the nearest available responders instead of to every
+ * responder of the type. Each wave adds the next-nearest responders to the offer; a request
+ * nobody claims after the last wave is opened to everyone. Not thread-safe: the caller
+ * drives it from one thread, passing the clock in so simulations can run it.
+ */
+public class DispatchEngine {
+    public static final int[] DEFAULT_WAVE_SIZES = {3, 5, 10};
+    public static final long DEFAULT_WAVE_TIMEOUT_MS = 30_000;
+
+    /** What to write into the request: who may claim it, or everyone when broadcast. */
+    public static final class Offer {
+        public final String requestId;
+        public final int wave;
+        public final List<String> responderIds;
+        public final boolean broadcast;
+
+        Offer(String requestId, int wave, List<String> responderIds, boolean broadcast) {
+            this.requestId = requestId;
+            this.wave = wave;
+            this.responderIds = responderIds;
+            this.broadcast = broadcast;
+        }
+    }
+
+    private final ResponderSpatialIndex responders;
+    private final int[] waveSizes;
+    private final long waveTimeoutMs;
+    private final Map<String, Dispatch> active = new LinkedHashMap<>();
+
+    public DispatchEngine(@NonNull ResponderSpatialIndex responders) {
+        this(responders, DEFAULT_WAVE_SIZES, DEFAULT_WAVE_TIMEOUT_MS);
+    }
+
+    public DispatchEngine(@NonNull ResponderSpatialIndex responders, @NonNull int[] waveSizes, long waveTimeoutMs) {
+        if (waveSizes.length == 0) throw new IllegalArgumentException("At least one wave is needed");
+        this.responders = responders;
+        this.waveSizes = waveSizes.clone();
+        this.waveTimeoutMs = waveTimeoutMs;
+    }
+
+    /**
+     * Start dispatching a request and return its first wave.
+     */
+    @NonNull
+    public Offer start(@NonNull String requestId, @NonNull String responderType,
+                       double latitude, double longitude, long nowMs) {
+        Dispatch dispatch = new Dispatch(requestId, responderType, latitude, longitude);
+        Offer offer = nextWave(dispatch, nowMs);
+        // Nobody indexed nearby: fall back to offering it to everyone straight away
+        if (offer.responderIds.isEmpty()) return new Offer(requestId, offer.wave, offer.responderIds, true);
+        active.put(requestId, dispatch);
+        return offer;
+    }
+
+    /**
+     * Pick up a dispatch after a restart from the wave its offer document holds. The wave's
+     * clock starts again at {@code nowMs}, since the document does not say when it went out;
+     * a dispatch that was on its last wave is broadcast when that runs out.
+     */
+    public void resume(@NonNull String requestId, @NonNull String responderType, double latitude, double longitude,
+                       int wave, @NonNull List<String> offeredTo, long nowMs) {
+        Dispatch dispatch = new Dispatch(requestId, responderType, latitude, longitude);
+        dispatch.wave = Math.min(Math.max(wave, 1), waveSizes.length);
+        dispatch.waveStartedAtMs = nowMs;
+        dispatch.offered.addAll(offeredTo);
+        active.put(requestId, dispatch);
+    }
+
+    /**
+     * Next waves for requests whose current wave timed out. Requests that went past their
+     * last wave come back once as a broadcast and are then dropped.
+     */
+    @NonNull
+    public List<Offer> due(long nowMs) {
+        List<Offer> offers = new ArrayList<>();
+        for (Iterator<Dispatch> it = active.values().iterator(); it.hasNext(); ) {
+            Dispatch dispatch = it.next();
+            if (nowMs < dispatch.waveStartedAtMs + waveTimeoutMs) continue;
+            if (dispatch.wave < waveSizes.length) {
+                offers.add(nextWave(dispatch, nowMs));
+            } else {
+                it.remove();
+                offers.add(new Offer(dispatch.requestId, dispatch.wave + 1,
+                        Collections.unmodifiableList(new ArrayList<>(dispatch.offered)), true));
+            }
+        }
+        return offers;
+    }
+
+    /**
+     * Hand back a wave that could not be written. A dispatch still in progress needs nothing:
+     * its next wave offers the same responders and more. A broadcast comes back from
+     * {@link #due} once the wave timeout has passed again.
+     */
+    public void retry(@NonNull Offer offer, long nowMs) {
+        if (!offer.broadcast || active.containsKey(offer.requestId)) return;
+        Dispatch dispatch = new Dispatch(offer.requestId, "", 0, 0);
+        dispatch.wave = waveSizes.length;
+        dispatch.waveStartedAtMs = nowMs;
+        dispatch.offered.addAll(offer.responderIds);
+        active.put(offer.requestId, dispatch);
+    }
+
+    /** Stop dispatching a request that has been claimed or withdrawn. */
+    public void finish(@NonNull String requestId) {
+        active.remove(requestId);
+    }
+
+    public boolean isActive(@NonNull String requestId) {
+        return active.containsKey(requestId);
+    }
+
+    public int activeCount() {
+        return active.size();
+    }
+
+    private Offer nextWave(Dispatch dispatch, long nowMs) {
+        dispatch.wave++;
+        dispatch.waveStartedAtMs = nowMs;
+        int shortlist = 0;
+        for (int i = 0; i < dispatch.wave; i++) shortlist += waveSizes[i];
+
+        // Re-ranked every wave: responders move and change availability between waves
+        List<ResponderSpatialIndex.Hit> nearest = responders.nearest(
+                dispatch.responderType, dispatch.latitude, dispatch.longitude, shortlist);
+        for (ResponderSpatialIndex.Hit hit : nearest) {
+            if (dispatch.offered.size() >= shortlist) break;
+            dispatch.offered.add(hit.responderId);
+        }
+        return new Offer(dispatch.requestId, dispatch.wave,
+                Collections.unmodifiableList(new ArrayList<>(dispatch.offered)), false);
+    }
+
+    private static final class Dispatch {
+        final String requestId;
+        final String responderType;
+        final double latitude;
+        final double longitude;
+        // Earlier offers stay valid, so the set only grows
+        final Set<String> offered = new LinkedHashSet<>();
+        // Published waves start at 1 so a document without dispatch_wave sorts first
+        int wave;
+        long waveStartedAtMs;
+
+        Dispatch(String requestId, String responderType, double latitude, double longitude) {
+            this.requestId = requestId;
+            this.responderType = responderType;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
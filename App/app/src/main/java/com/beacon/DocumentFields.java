@@ -0,0 +1,79 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.couchbase.lite.Array;
+import com.couchbase.lite.DictionaryInterface;
+import com.couchbase.lite.MutableDocument;
+
+/**
+ * Reads {@link DocumentKeys} properties of the compact types whichever names they were
+ * written with. Clients from before the short keys replicate documents with the long names,
+ * and write responses with them into requests they pulled with the short ones, so a document
+ * can hold either form or both. The short key is read first; the status is the further of the
+ * two, since an older client marks a request responded under {@code status} while its
+ * {@code st} still says open.
+ */
+public final class DocumentFields {
+
+    private DocumentFields() {}
+
+    public static boolean contains(@NonNull DictionaryInterface doc, @NonNull String key) {
+        return doc.contains(nameIn(doc, key));
+    }
+
+    @Nullable
+    public static String getString(@NonNull DictionaryInterface doc, @NonNull String key) {
+        return doc.getString(nameIn(doc, key));
+    }
+
+    public static long getLong(@NonNull DictionaryInterface doc, @NonNull String key) {
+        return doc.getLong(nameIn(doc, key));
+    }
+
+    public static int getInt(@NonNull DictionaryInterface doc, @NonNull String key) {
+        return doc.getInt(nameIn(doc, key));
+    }
+
+    public static double getDouble(@NonNull DictionaryInterface doc, @NonNull String key) {
+        return doc.getDouble(nameIn(doc, key));
+    }
+
+    @Nullable
+    public static Array getArray(@NonNull DictionaryInterface doc, @NonNull String key) {
+        return doc.getArray(nameIn(doc, key));
+    }
+
+    /** A request's stored status: the further of the two forms. */
+    @Nullable
+    public static String status(@NonNull DictionaryInterface doc) {
+        return RequestLifecycle.mergeStatus(doc.getString(DocumentKeys.STATUS),
+                doc.getString(DocumentKeys.longName(DocumentKeys.STATUS)));
+    }
+
+    /**
+     * Set a value under every name the document holds it by, so readers of either form see
+     * the same, or under the short key when it has neither.
+     */
+    public static void set(@NonNull MutableDocument doc, @NonNull String key, @Nullable Object value) {
+        String longName = DocumentKeys.longName(key);
+        boolean hasLong = longName != null && doc.contains(longName);
+        if (hasLong) doc.setValue(longName, value);
+        if (!hasLong || doc.contains(key)) doc.setValue(key, value);
+    }
+
+    /** Remove a property under both names. */
+    public static void remove(@NonNull MutableDocument doc, @NonNull String key) {
+        doc.remove(key);
+        String longName = DocumentKeys.longName(key);
+        if (longName != null) doc.remove(longName);
+    }
+
+    /** The name {@code key} is stored under: the short key, unless only the long name is there. */
+    private static String nameIn(DictionaryInterface doc, String key) {
+        if (doc.contains(key)) return key;
+        String longName = DocumentKeys.longName(key);
+        return longName != null && doc.contains(longName) ? longName : key;
+    }
+}
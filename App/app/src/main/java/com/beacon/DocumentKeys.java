@@ -0,0 +1,157 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Property names of the documents the app writes, in one place. Requests, claims, offers and
+ * positions use short keys: every revision carries its keys over the link, and on a
+ * constrained network the long names were most of each document. The same field has the same
+ * key in every type. {@code type} and the values keep their names, since channels, indexes
+ * and collections are chosen by them.
+ * <p>
+ * User documents keep the names the server-side tools, N1QL indexes and cbimport data use;
+ * the app only reads them, and after the first pull delta sync sends just what changed.
+ * <p>
+ * Clients from before this encoding still replicate documents with the long names, and
+ * write responses with them into requests they pulled with the short ones; read these
+ * properties through {@link DocumentFields}, which falls back to the long names.
+ * {@link #compact} rewrites a document written with the long names, for this device's own
+ * data from before this encoding and for imports; {@link #expand} is its inverse. Keep in
+ * step with the sync functions and the data seeder.
+ */
+public final class DocumentKeys {
+    public static final String TYPE = "type";
+
+    // emergency_request
+    public static final String EMERGENCY_TYPE = "et";
+    public static final String STATUS = "st";
+    public static final String REQUESTED_BY = "rb";
+    public static final String REQUESTED_AT = "ra";
+    public static final String SEVERITY = "sv";
+    /**
+     * The claim a requester closed its request with ({@link RequestClaims#close}). Clients from
+     * before claim documents write their response into the request as responded_by and
+     * responded_at instead.
+     */
+    public static final String RESPONDED_BY = "sb";
+    public static final String RESPONDED_AT = "sa";
+
+    // request_claim and request_offer
+    public static final String REQUEST_ID = "rq";
+    public static final String RESPONDER_ID = "rs";
+    public static final String CLAIMED_AT = "ca";
+    public static final String OFFERED_TO = "ot";
+    public static final String DISPATCH_WAVE = "dw";
+
+    // Positions, on requests and responder_location
+    public static final String LATITUDE = "lat";
+    public static final String LONGITUDE = "lon";
+    public static final String GEOHASH = "gh";
+    public static final String ACCURACY = "acc";
+    public static final String UPDATED_AT = "ua";
+
+    // user, with the server's names
+    public static final String USER_ID = "userId";
+    public static final String USER_TYPE = "userType";
+    public static final String RESPONDER_TYPE = "responderType";
+    public static final String USER_STATUS = "status";
+    public static final String USER_LOCATION = "location";
+    public static final String USER_LATITUDE = "lat";
+    public static final String USER_LONGITUDE = "lon";
+    public static final String USER_LAST_UPDATED = "lastUpdated";
+
+    /**
+     * Long names older clients write that short-key documents never carry: every document of
+     * a compact type they wrote has at least one, and so does a request they responded to.
+     */
+    static final List<String> LEGACY_NAMES = List.of("status", "request_id", "responder_id");
+
+    /** Long name to short key, for the types below. */
+    private static final Map<String, String> SHORT = new LinkedHashMap<>();
+    private static final Map<String, String> LONG = new HashMap<>();
+    private static final Set<String> COMPACT_TYPES = Set.of("emergency_request",
+            RequestLifecycle.CLAIM_TYPE, RequestLifecycle.OFFER_TYPE, LocationThrottle.DOC_TYPE);
+
+    static {
+        SHORT.put("emergency_type", EMERGENCY_TYPE);
+        SHORT.put("status", STATUS);
+        SHORT.put("requested_by", REQUESTED_BY);
+        SHORT.put("requested_at", REQUESTED_AT);
+        SHORT.put("severity", SEVERITY);
+        SHORT.put("responded_by", RESPONDED_BY);
+        SHORT.put("responded_at", RESPONDED_AT);
+        SHORT.put("request_id", REQUEST_ID);
+        SHORT.put("responder_id", RESPONDER_ID);
+        SHORT.put("claimed_at", CLAIMED_AT);
+        SHORT.put("offered_to", OFFERED_TO);
+        SHORT.put("dispatch_wave", DISPATCH_WAVE);
+        SHORT.put("latitude", LATITUDE);
+        SHORT.put("longitude", LONGITUDE);
+        SHORT.put("geohash", GEOHASH);
+        SHORT.put("accuracy", ACCURACY);
+        SHORT.put("updated_at", UPDATED_AT);
+        for (Map.Entry<String, String> key : SHORT.entrySet()) LONG.put(key.getValue(), key.getKey());
+    }
+
+    private DocumentKeys() {}
+
+    /** The long name older clients write for a short key, or null for other keys. */
+    public static String longName(@NonNull String key) {
+        return LONG.get(key);
+    }
+
+    /** The types whose documents use short keys. */
+    @NonNull
+    public static Set<String> compactTypes() {
+        return COMPACT_TYPES;
+    }
+
+    /** Whether documents of this type use short keys. */
+    public static boolean isCompact(String type) {
+        return COMPACT_TYPES.contains(type);
+    }
+
+    /** Whether a document of a compact type still has any long name. */
+    public static boolean needsCompacting(@NonNull Map<String, Object> body) {
+        if (!isCompact((String) body.get(TYPE))) return false;
+        for (String key : body.keySet()) {
+            if (SHORT.containsKey(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The same properties with long names replaced by short keys, in their order. Other types
+     * and unknown properties are returned as they are; a short key already present wins.
+     */
+    @NonNull
+    public static Map<String, Object> compact(@NonNull Map<String, Object> body) {
+        return rename(body, SHORT);
+    }
+
+    /** The inverse of {@link #compact}. */
+    @NonNull
+    public static Map<String, Object> expand(@NonNull Map<String, Object> body) {
+        return rename(body, LONG);
+    }
+
+    private static Map<String, Object> rename(Map<String, Object> body, Map<String, String> names) {
+        if (!isCompact((String) body.get(TYPE))) return body;
+        Map<String, Object> renamed = new LinkedHashMap<>(body.size() * 2);
+        for (Map.Entry<String, Object> property : body.entrySet()) {
+            String key = names.get(property.getKey());
+            if (key == null) {
+                renamed.put(property.getKey(), property.getValue());
+            } else if (!body.containsKey(key)) {
+                renamed.put(key, property.getValue());
+            }
+        }
+        return renamed;
+    }
+}
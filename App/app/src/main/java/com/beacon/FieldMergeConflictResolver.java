@@ -0,0 +1,106 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Array;
+import com.couchbase.lite.Conflict;
+import com.couchbase.lite.ConflictResolver;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableDocument;
+
+import java.util.List;
+
+/**
+ * Merges conflicting revisions field by field instead of picking a whole document.
+ * The result starts from the local revision and takes any field only the remote has, so
+ * concurrent edits on both sides survive. Each {@link FieldRule} then reads just the fields
+ * it owns from both revisions and writes the winner; no revision is copied into a map.
+ */
+public class FieldMergeConflictResolver implements ConflictResolver {
+
+    public interface FieldRule {
+        void merge(@NonNull Document local, @NonNull Document remote, @NonNull MutableDocument merged);
+    }
+
+    private final ReplicatorStats stats;
+    private final List<FieldRule> rules;
+
+    public FieldMergeConflictResolver(ReplicatorStats stats, @NonNull List<FieldRule> rules) {
+        this.stats = stats;
+        this.rules = rules;
+    }
+
+    @Override
+    public Document resolve(Conflict conflict) {
+        if (stats != null) stats.onConflictResolved();
+        return merge(conflict.getLocalDocument(), conflict.getRemoteDocument());
+    }
+
+    Document merge(Document local, Document remote) {
+        // A deleted side loses to the surviving revision
+        if (local == null) return remote;
+        if (remote == null) return local;
+
+        MutableDocument merged = local.toMutable();
+        for (String key : remote) {
+            if (!local.contains(key)) merged.setValue(key, remote.getValue(key));
+        }
+        for (FieldRule rule : rules) {
+            rule.merge(local, remote, merged);
+        }
+        return merged;
+    }
+
+    /**
+     * Rules for emergency requests: status only moves forward, the first response wins, the
+     * latest dispatch wave's offer stands, a location added late is kept whole and the
+     * original request time is kept. See {@link RequestLifecycle}. Current clients only edit a
+     * request to give it its first location; these rules settle that edit and the ones older
+     * clients still write into. Older clients use the long names, so each rule reads both
+     * forms with {@link DocumentFields} and writes the winner under every name the merged
+     * revision holds.
+     */
+    public static List<FieldRule> requestLifecycleRules() {
+        return List.of(
+                (local, remote, merged) -> {
+                    String status = RequestLifecycle.mergeStatus(DocumentFields.status(local), DocumentFields.status(remote));
+                    if (status != null) DocumentFields.set(merged, DocumentKeys.STATUS, status);
+                },
+                (local, remote, merged) -> {
+                    String localBy = DocumentFields.getString(local, DocumentKeys.RESPONDED_BY);
+                    String remoteBy = DocumentFields.getString(remote, DocumentKeys.RESPONDED_BY);
+                    if (localBy == null && remoteBy == null) return;
+                    long localAt = DocumentFields.getLong(local, DocumentKeys.RESPONDED_AT);
+                    long remoteAt = DocumentFields.getLong(remote, DocumentKeys.RESPONDED_AT);
+                    boolean remoteWins = RequestLifecycle.remoteResponseWins(localBy, localAt, remoteBy, remoteAt);
+                    DocumentFields.set(merged, DocumentKeys.RESPONDED_BY, remoteWins ? remoteBy : localBy);
+                    DocumentFields.set(merged, DocumentKeys.RESPONDED_AT, remoteWins ? remoteAt : localAt);
+                },
+                (local, remote, merged) -> {
+                    // The dispatch offer comes from the later wave; a broadcast has no offered_to
+                    Document winner = DocumentFields.getInt(remote, DocumentKeys.DISPATCH_WAVE)
+                            > DocumentFields.getInt(local, DocumentKeys.DISPATCH_WAVE) ? remote : local;
+                    Array offeredTo = DocumentFields.getArray(winner, DocumentKeys.OFFERED_TO);
+                    if (offeredTo != null) DocumentFields.set(merged, DocumentKeys.OFFERED_TO, offeredTo.toMutable());
+                    else if (DocumentFields.contains(merged, DocumentKeys.OFFERED_TO)) DocumentFields.remove(merged, DocumentKeys.OFFERED_TO);
+                    if (DocumentFields.contains(winner, DocumentKeys.DISPATCH_WAVE)) {
+                        DocumentFields.set(merged, DocumentKeys.DISPATCH_WAVE, DocumentFields.getInt(winner, DocumentKeys.DISPATCH_WAVE));
+                    }
+                },
+                (local, remote, merged) -> {
+                    // Latitude, longitude and geohash come from the same revision
+                    if (!DocumentFields.contains(remote, DocumentKeys.LATITUDE)) return;
+                    Document winner = RequestLifecycle.remoteLocationWins(DocumentFields.getString(local, DocumentKeys.GEOHASH),
+                            DocumentFields.getString(remote, DocumentKeys.GEOHASH)) ? remote : local;
+                    if (!DocumentFields.contains(winner, DocumentKeys.LATITUDE)) return;
+                    DocumentFields.set(merged, DocumentKeys.LATITUDE, DocumentFields.getDouble(winner, DocumentKeys.LATITUDE));
+                    DocumentFields.set(merged, DocumentKeys.LONGITUDE, DocumentFields.getDouble(winner, DocumentKeys.LONGITUDE));
+                    DocumentFields.set(merged, DocumentKeys.GEOHASH, DocumentFields.getString(winner, DocumentKeys.GEOHASH));
+                },
+                (local, remote, merged) -> {
+                    long requestedAt = RequestLifecycle.earliest(DocumentFields.getLong(local, DocumentKeys.REQUESTED_AT),
+                            DocumentFields.getLong(remote, DocumentKeys.REQUESTED_AT));
+                    if (requestedAt > 0) DocumentFields.set(merged, DocumentKeys.REQUESTED_AT, requestedAt);
+                });
+    }
+}
@@ -0,0 +1,213 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Geohash-cell channels for emergency requests. Requests carry a full-precision
+ * {@code geohash}; the sync function routes each open one to the channel of its
+ * {@link #CELL_PRECISION}-character cell, and devices subscribe to the cells around them,
+ * so a device pulls what is near it rather than every request everywhere. The Sync Gateway
+ * subscription is anchored on a cell and reaches {@link #SUBSCRIPTION_RADIUS} cells out, one
+ * more than a device needs, so moving into a neighbouring cell keeps the channel list and the
+ * replicator checkpoint that goes with it; what is shown is narrowed to the device's own
+ * cell and neighbours when it is read, with {@link #isNear}.
+ * A request's claims travel through the same cell channel and tell devices there it is taken.
+ * Its requester's device then marks it responded ({@link RequestClaims#close}), which moves it
+ * out of the cell channel to the personal channels of its requester and responder, as a
+ * response an older client wrote into the request does. Sync Gateway expires a responded
+ * request and an offer {@link #SERVER_TTL_MS} after they were written, and a claim
+ * {@link #CLAIM_SERVER_TTL_MS} after, so the cell channels do not keep every request ever made.
+ * An open request never expires there: an emergency nobody answered still reaches devices
+ * that subscribe later.
+ */
+public final class GeoChannels {
+    /** Stored on each request; longer than the cell so the precision can change later. */
+    public static final int DOCUMENT_PRECISION = 9;
+    /** Channel cell size: 5 characters is roughly 5 x 5 km. */
+    public static final int CELL_PRECISION = 5;
+    public static final String CHANNEL_PREFIX = "geo_";
+    /** Requests saved without a location fix still reach everyone. */
+    public static final String UNLOCATED_CHANNEL = "emergency_requests";
+    public static final String USER_CHANNEL_PREFIX = "user_";
+    /** Responder user documents, in the responders collection; they are few and change rarely. */
+    public static final String RESPONDERS_CHANNEL = "responders";
+    /** Cells the Sync Gateway subscription reaches from its anchor in each direction. */
+    public static final int SUBSCRIPTION_RADIUS = 2;
+    /** How long Sync Gateway keeps a responded request or an offer after it was written. */
+    public static final long SERVER_TTL_MS = 24 * 3_600_000L;
+    /** Longer, so a claim outlives a request whose requester is away when it comes in. */
+    public static final long CLAIM_SERVER_TTL_MS = 7 * SERVER_TTL_MS;
+
+    private GeoChannels() {}
+
+    public static String documentGeohash(double latitude, double longitude) {
+        return GeoHash.encode(latitude, longitude, DOCUMENT_PRECISION);
+    }
+
+    public static String cellOf(double latitude, double longitude) {
+        return GeoHash.encode(latitude, longitude, CELL_PRECISION);
+    }
+
+    /**
+     * Channels a device in {@code cell} subscribes to: the cell, its neighbours and the
+     * unlocated channel.
+     */
+    @NonNull
+    public static List<String> subscriptionFor(@NonNull String cell) {
+        List<String> channels = new ArrayList<>(10);
+        channels.add(CHANNEL_PREFIX + cell);
+        for (String neighbour : GeoHash.neighbours(cell)) {
+            channels.add(CHANNEL_PREFIX + neighbour);
+        }
+        channels.add(UNLOCATED_CHANNEL);
+        return channels;
+    }
+
+    /**
+     * The cell to anchor the Sync Gateway subscription on for a device in {@code cell}: the
+     * current anchor while the cell is the anchor or one of its neighbours, whose own
+     * neighbours are then still inside the subscribed block, otherwise the cell itself. Either
+     * may be null before the first fix.
+     */
+    public static String anchorFor(String cell, String anchor) {
+        if (cell == null || cell.equals(anchor)) return anchor;
+        if (anchor != null && Arrays.asList(GeoHash.neighbours(anchor)).contains(cell)) return anchor;
+        return cell;
+    }
+
+    /**
+     * Channels a device subscribes to on Sync Gateway: the {@link #SUBSCRIPTION_RADIUS} block
+     * around {@code anchor}, the unlocated channel and the user's own channel. The order is
+     * fixed, so returning to an anchor resumes the checkpoint kept for its list; without an
+     * anchor only the unlocated and personal channels.
+     */
+    @NonNull
+    public static List<String> subscriptionAround(String anchor, @NonNull String userId) {
+        List<String> channels = new ArrayList<>();
+        if (anchor != null) {
+            for (String cell : GeoHash.block(anchor, SUBSCRIPTION_RADIUS)) channels.add(CHANNEL_PREFIX + cell);
+        }
+        channels.add(UNLOCATED_CHANNEL);
+        channels.add(userChannel(userId));
+        return channels;
+    }
+
+    /** Channels for the responders collection: every responder plus the user's own document. */
+    @NonNull
+    public static List<String> responderSubscription(@NonNull String userId) {
+        return List.of(RESPONDERS_CHANNEL, userChannel(userId));
+    }
+
+    /**
+     * Java mirror of the responders collection's sync function: responders are visible to
+     * everyone, and every user sees their own document.
+     */
+    @NonNull
+    public static List<String> channelsForUser(String userType, String userId) {
+        List<String> channels = new ArrayList<>(2);
+        if ("responder".equals(userType)) channels.add(RESPONDERS_CHANNEL);
+        if (userId != null) channels.add(userChannel(userId));
+        return channels;
+    }
+
+    /** Where a user's own responded requests and claims go. */
+    @NonNull
+    public static String userChannel(@NonNull String userId) {
+        return USER_CHANNEL_PREFIX + userId;
+    }
+
+    /**
+     * Whether a document geohash falls in {@code cell} or one of its neighbours; used to
+     * narrow what replication brought in when it is read.
+     */
+    public static boolean isNear(String geohash, @NonNull String cell) {
+        if (geohash == null || geohash.length() < CELL_PRECISION) return true;
+        String docCell = geohash.substring(0, CELL_PRECISION);
+        if (docCell.equals(cell)) return true;
+        for (String neighbour : GeoHash.neighbours(cell)) {
+            if (docCell.equals(neighbour)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@link #isNear(String, String)} for a position; one without a location is near
+     * everywhere, as it is on the unlocated channel.
+     */
+    public static boolean isNear(double latitude, double longitude, @NonNull String cell) {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) return true;
+        return isNear(cellOf(latitude, longitude), cell);
+    }
+
+    /**
+     * Java mirror of how the sync function reads a request's status from its short and long
+     * forms: the further of the two, as {@link DocumentFields#status} reads it on devices.
+     */
+    public static String documentStatus(String st, String status) {
+        return RequestLifecycle.mergeStatus(st, status);
+    }
+
+    /**
+     * Java mirror of the sync function in the Sync Gateway configs; keep the two in step.
+     */
+    @NonNull
+    public static List<String> channelsForDocument(String type, String status, String geohash) {
+        return channelsForDocument(type, status, geohash, null, null);
+    }
+
+    /**
+     * Java mirror of the sync function in the Sync Gateway configs; keep the two in step.
+     * For a claim, {@code respondedBy} is its responder_id.
+     */
+    @NonNull
+    public static List<String> channelsForDocument(String type, String status, String geohash,
+                                                   String requestedBy, String respondedBy) {
+        if (LocationThrottle.DOC_TYPE.equals(type)) {
+            return geohash != null && geohash.length() >= CELL_PRECISION
+                    ? List.of(CHANNEL_PREFIX + geohash.substring(0, CELL_PRECISION)) : List.of();
+        }
+        if (RequestLifecycle.OFFER_TYPE.equals(type)) return List.of(requestChannel(geohash));
+        if (RequestLifecycle.CLAIM_TYPE.equals(type)) {
+            // Responders in the cell drop the request; both parties keep the claim
+            List<String> channels = new ArrayList<>(3);
+            channels.add(requestChannel(geohash));
+            if (requestedBy != null) channels.add(userChannel(requestedBy));
+            if (respondedBy != null && !respondedBy.equals(requestedBy)) channels.add(userChannel(respondedBy));
+            return channels;
+        }
+        if (!"emergency_request".equals(type)) return List.of();
+        if (RequestLifecycle.STATUS_RESPONDED.equals(status)) {
+            // Written by clients from before claim documents
+            List<String> channels = new ArrayList<>(2);
+            if (requestedBy != null) channels.add(userChannel(requestedBy));
+            if (respondedBy != null && !respondedBy.equals(requestedBy)) channels.add(userChannel(respondedBy));
+            return channels;
+        }
+        if (!RequestLifecycle.STATUS_OPEN.equals(status)) return List.of();
+        return List.of(requestChannel(geohash));
+    }
+
+    /**
+     * Java mirror of the expiry the sync function sets: when Sync Gateway drops a document
+     * of the requests collection last written at {@code writtenAt}, or 0 when it keeps it, as
+     * it does every open request.
+     */
+    public static long serverExpiresAt(String type, String status, long writtenAt) {
+        if ("emergency_request".equals(type)) {
+            return RequestLifecycle.STATUS_RESPONDED.equals(status) ? writtenAt + SERVER_TTL_MS : 0;
+        }
+        if (RequestLifecycle.CLAIM_TYPE.equals(type)) return writtenAt + CLAIM_SERVER_TTL_MS;
+        return writtenAt + SERVER_TTL_MS;
+    }
+
+    private static String requestChannel(String geohash) {
+        if (geohash != null && geohash.length() >= CELL_PRECISION) {
+            return CHANNEL_PREFIX + geohash.substring(0, CELL_PRECISION);
+        }
+        return UNLOCATED_CHANNEL;
+    }
+}
@@ -0,0 +1,101 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Standard base-32 geohash encoding and neighbour lookup. A geohash names a lat/lon cell;
+ * every extra character subdivides it by 32, and a prefix of a hash is the enclosing cell.
+ */
+public final class GeoHash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    // Neighbour and border tables indexed by [direction][hash length parity]
+    private static final String[][] NEIGHBOURS = {
+            {"p0r21436x8zb9dcf5h7kjnmqesgutwvy", "bc01fg45238967deuvhjyznpkmstqrwx"}, // north
+            {"14365h7k9dcfesgujnmqp0r2twvyx8zb", "238967debc01fg45kmstqrwxuvhjyznp"}, // south
+            {"bc01fg45238967deuvhjyznpkmstqrwx", "p0r21436x8zb9dcf5h7kjnmqesgutwvy"}, // east
+            {"238967debc01fg45kmstqrwxuvhjyznp", "14365h7k9dcfesgujnmqp0r2twvyx8zb"}, // west
+    };
+    private static final String[][] BORDERS = {
+            {"prxz", "bcfguvyz"},
+            {"028b", "0145hjnp"},
+            {"bcfguvyz", "prxz"},
+            {"0145hjnp", "028b"},
+    };
+    private static final int NORTH = 0;
+    private static final int SOUTH = 1;
+    private static final int EAST = 2;
+    private static final int WEST = 3;
+
+    private GeoHash() {}
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        char[] hash = new char[precision];
+        boolean evenBit = true;
+        int bit = 0, index = 0;
+
+        for (int i = 0; i < precision; ) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) { index = index * 2 + 1; minLon = mid; } else { index *= 2; maxLon = mid; }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) { index = index * 2 + 1; minLat = mid; } else { index *= 2; maxLat = mid; }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash[i++] = BASE32.charAt(index);
+                bit = 0;
+                index = 0;
+            }
+        }
+        return new String(hash);
+    }
+
+    /**
+     * The eight cells surrounding {@code hash}, at the same precision, clockwise from north.
+     */
+    @NonNull
+    public static String[] neighbours(@NonNull String hash) {
+        String north = adjacent(hash, NORTH);
+        String south = adjacent(hash, SOUTH);
+        return new String[]{
+                north, adjacent(north, EAST), adjacent(hash, EAST), adjacent(south, EAST),
+                south, adjacent(south, WEST), adjacent(hash, WEST), adjacent(north, WEST),
+        };
+    }
+
+    /**
+     * The {@code (2 * radius + 1)^2} cells within {@code radius} steps of {@code hash}, row by
+     * row from the north-west corner, so the same centre always gives the same order.
+     */
+    @NonNull
+    public static String[] block(@NonNull String hash, int radius) {
+        String corner = hash;
+        for (int i = 0; i < radius; i++) corner = adjacent(adjacent(corner, NORTH), WEST);
+        int side = 2 * radius + 1;
+        String[] cells = new String[side * side];
+        String rowStart = corner;
+        for (int row = 0; row < side; row++) {
+            String cell = rowStart;
+            for (int column = 0; column < side; column++) {
+                cells[row * side + column] = cell;
+                cell = adjacent(cell, EAST);
+            }
+            rowStart = adjacent(rowStart, SOUTH);
+        }
+        return cells;
+    }
+
+    static String adjacent(String hash, int direction) {
+        char last = hash.charAt(hash.length() - 1);
+        String parent = hash.substring(0, hash.length() - 1);
+        int parity = hash.length() % 2;
+
+        if (BORDERS[direction][parity].indexOf(last) >= 0 && !parent.isEmpty()) {
+            parent = adjacent(parent, direction);
+        }
+        return parent + BASE32.charAt(NEIGHBOURS[direction][parity].indexOf(last));
+    }
+}
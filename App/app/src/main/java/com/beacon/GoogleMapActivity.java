@@ -7,9 +7,15 @@ import androidx.core.content.ContextCompat;
 
 import android.Manifest;
 import android.app.AlertDialog;
+import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.location.Location;
 import android.os.Bundle;
+import android.os.Looper;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Toast;
@@ -17,7 +23,11 @@ import android.widget.Toast;
 import com.couchbase.lite.*;
 import com.couchbase.lite.Collection;
 import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
@@ -26,9 +36,14 @@ import com.google.android.gms.maps.model.LatLng;
 import com.beacon.databinding.ActivityGoogleMapBinding;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class GoogleMapActivity extends AppCompatActivity implements OnMapReadyCallback {
 
@@ -39,43 +54,94 @@ public class GoogleMapActivity extends AppCompatActivity implements OnMapReadyCa
     private static final String USER_TYPE = "responder"; // requester
     private static final String RESPONDER_TYPE = "Ambulance"; // if we use responder user
 
+    // very dangerous, remember this part before starting the app for demo:
+    // true wipes every local document (and the replication checkpoints) on each launch
+    private static final boolean WIPE_LOCAL_DATA_ON_STARTUP = false;
+
+    // Outgoing P2P replicators per device; the set rotates so documents spread by gossip
+    private static final int P2P_FANOUT = GossipTopology.DEFAULT_FANOUT;
+    private static final long P2P_ROTATION_MS = GossipTopology.DEFAULT_ROTATION_MS;
+    private static final long P2P_REBALANCE_MS = 15_000;
+    private static final long P2P_RECONNECT_BASE_MS = 2_000;
+    private static final long P2P_RECONNECT_MAX_MS = 120_000;
+    private static final int P2P_REPLICATOR_MAX_ATTEMPTS = 5;
+    private static final long METRICS_EXPORT_INTERVAL_MS = 60_000;
+    private static final long LOCATION_INTERVAL_MS = 30_000;
+    private static final float LOCATION_MIN_DISTANCE_M = 250;
+    // Responders stream their position; LocationThrottle decides what gets written
+    private static final long RESPONDER_LOCATION_INTERVAL_MS = 5_000;
+    private static final long DISPATCH_TICK_MS = 5_000;
+    // Positions go to Sync Gateway in one-shot windows, never on a continuous socket
+    private static final long LOCATION_SYNC_WINDOW_MS = 60_000;
+    private static final long LOCATION_SYNC_LOW_BATTERY_WINDOW_MS = 300_000;
+    // Taps this close together share one commit
+    private static final long REQUEST_FLUSH_DELAY_MS = 250;
+    private static final int MENU_DIAGNOSTICS = 1;
+    private static final int MENU_EXPORT_SNAPSHOT = 2;
+    // Read at startup and written by the export menu item, in getExternalFilesDir
+    private static final String SNAPSHOT_FILE = "snapshot.jsonl";
+
     private GoogleMap mMap;
     private ActivityGoogleMapBinding binding;
-    private Database database;
+    private volatile Database database;
+    private volatile BeaconCollections collections;
     private FusedLocationProviderClient fusedLocationClient;
     private FloatingActionButton floatingActionButton;
-    private Replicator sgwReplicator;
+    private volatile ReplicationScheduler sgwScheduler;
+    private volatile ReplicationScheduler locationScheduler;
     private URLEndpointListener p2pListener;
-    private SyncGatewayConflictResolver syncGatewayConflictResolver = new SyncGatewayConflictResolver();
-    private P2PConflictResolver p2PConflictResolver = new P2PConflictResolver();
     private PeerDiscoveryManager peerDiscovery;
+    private P2PReplicatorPool p2pReplicatorPool;
+    private final RequestDeltaTracker requestDeltaTracker = new RequestDeltaTracker();
+    private final OpenRequestView openRequestView = new OpenRequestView();
+    private OpenRequestViewUpdater openRequestViewUpdater;
+    private volatile ClaimWatcher claimWatcher;
+    private final Map<String, AlertDialog> responderDialogs = new HashMap<>();
+    private final ExecutorService startupExecutor = Executors.newFixedThreadPool(3);
+    private final TlsIdentities tlsIdentities = new TlsIdentities();
+    private final ResponderSpatialIndex responderIndex = new ResponderSpatialIndex();
+    private ResponderIndexUpdater responderIndexUpdater;
+    private final MapPoints mapPoints = new MapPoints();
+    private volatile MapRenderer mapRenderer;
+    private volatile ResponderLocationPublisher locationPublisher;
+    private RetentionManager retentionManager;
+    // Only touched on dispatchExecutor
+    private final DispatchEngine dispatchEngine = new DispatchEngine(responderIndex);
+    private final ScheduledExecutorService dispatchExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final RequestOutbox requestOutbox = new RequestOutbox();
+    private RequestOutboxWriter requestOutboxWriter;
+    private StartupPipeline startupPipeline;
+    // Held while a stage hands over what it started and while onDestroy stops it
+    private final Object teardownLock = new Object();
+    private StartupMetrics startupMetrics;
+    private volatile boolean databaseReady;
+    // Replicators start from scratch after a reset, whether it purged or recreated the database
+    private volatile boolean resetCheckpoints;
+    private SharedPreferences geoPreferences;
+    private LocationCallback locationCallback;
+    private volatile Location lastLocation;
+    // Geohash cell the device is in, and the one Sync Gateway replication is subscribed
+    // around; null until the first fix
+    private volatile String currentCell;
+    private volatile String subscriptionAnchor;
 
 
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        CouchbaseLite.init(getApplicationContext());
-
+        startupMetrics = new StartupMetrics(getSharedPreferences("startup_metrics", MODE_PRIVATE));
+        geoPreferences = getSharedPreferences("geo", MODE_PRIVATE);
+        // Subscribe around the last known cell until a fresh fix arrives
+        currentCell = geoPreferences.getString("last_cell", null);
+        subscriptionAnchor = geoPreferences.getString("last_anchor", currentCell);
+        ReplicationMetrics.get().start(new File(getFilesDir(), "replication-metrics.json"), METRICS_EXPORT_INTERVAL_MS);
+
+        // The map goes up first; everything that touches the database runs in startup stages
         binding = ActivityGoogleMapBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
         peerDiscovery = new PeerDiscoveryManager(this);
-        try {
-            DatabaseConfiguration config = new DatabaseConfiguration();
-            database = new Database("beacon", config);
-
-            deleteCouchbaseLiteDataOnStartup();
-
-            startP2pListener();
-            startContinuousP2pReplicationToPeers();
-            startSyncGatewayReplication();
-
-            peerDiscovery.registerService(p2pListener.getPort());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
 
         SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager()
@@ -87,21 +153,156 @@ public class GoogleMapActivity extends AppCompatActivity implements OnMapReadyCa
         if("responder".equals(USER_TYPE)){
             floatingActionButton.setVisibility(View.INVISIBLE);
             setTitle("Responder - "+USER_ID);
-            try {
-                startResponderRequestListener(RESPONDER_TYPE, USER_ID);
-            } catch (CouchbaseLiteException e) {
-                Log.e("RESPONDER Request Listener", "Request Listening error", e);
-            }
         }else {
             setTitle("Requester - "+USER_ID);
             floatingActionButton.setVisibility(View.VISIBLE);
             floatingActionButton.setOnClickListener(v -> showEmergencyDialog());
+            dispatchExecutor.scheduleWithFixedDelay(this::dispatchNextWaves,
+                    DISPATCH_TICK_MS, DISPATCH_TICK_MS, TimeUnit.MILLISECONDS);
+        }
+
+        startupPipeline = buildStartupPipeline();
+        startupPipeline.start(new StartupPipeline.Listener() {
+            @Override public void onStageFinished(@NonNull String name, long durationMs, Throwable error) {
+                startupMetrics.recordStage(name, durationMs);
+                if (error != null) {
+                    Log.e("STARTUP", "Stage " + name + " failed", error);
+                    if ("prepare_database".equals(name)) {
+                        runOnUiThread(() -> Toast.makeText(GoogleMapActivity.this,
+                                "Could not open local data", Toast.LENGTH_LONG).show());
+                    }
+                }
+            }
+
+            @Override public void onFinished(@NonNull Map<String, Long> durationsMs) {
+                Log.i("STARTUP", "Startup stages finished after " + startupMetrics.elapsedMs()
+                        + " ms: " + startupPipeline.getStageFinishedAtMs());
+            }
+        });
+    }
+
+    /**
+     * Startup work as dependency-ordered background stages. TLS key generation overlaps with
+     * opening and preparing the database; listener and replication start once both are ready.
+     */
+    private StartupPipeline buildStartupPipeline() {
+        StartupPipeline pipeline = new StartupPipeline(startupExecutor)
+                .add("couchbase_init", () -> CouchbaseLite.init(getApplicationContext()))
+                .add("open_database", () -> database = new Database("beacon", new DatabaseConfiguration()),
+                        "couchbase_init")
+                .add("prepare_database", this::prepareLocalDatabase, "open_database")
+                .add("snapshot_import", this::importSnapshot, "prepare_database")
+                .add("indexes", () -> QueryIndexes.ensure(collections), "snapshot_import")
+                .add("server_identity", () -> tlsIdentities.server(), "couchbase_init")
+                .add("client_identity", () -> tlsIdentities.client(), "couchbase_init")
+                .add("p2p_listener", this::startP2pListener, "snapshot_import", "server_identity")
+                .add("sgw_replication", this::startSyncGatewayReplication, "snapshot_import")
+                .add("p2p_replication", this::startP2pReplicatorPool, "snapshot_import", "client_identity")
+                .add("responder_index", this::startResponderIndex, "indexes")
+                .add("retention", this::startRetention, "indexes");
+        if ("responder".equals(USER_TYPE)) {
+            pipeline.add("responder_query",
+                    () -> startResponderRequestListener(RESPONDER_TYPE, USER_ID), "indexes");
+            pipeline.add("claim_watcher", () -> startClaimWatcher(USER_ID), "indexes");
+            pipeline.add("location_publisher", this::startLocationPublisher, "prepare_database");
+        } else {
+            pipeline.add("resume_dispatch", this::resumeDispatch, "indexes");
+        }
+        return pipeline;
+    }
+
+    /**
+     * Keep the local database and its replication checkpoints when the stored schema matches,
+     * so replicators resume from their last sequence instead of re-pulling every channel.
+     */
+    private void prepareLocalDatabase() throws CouchbaseLiteException {
+        int stored = WIPE_LOCAL_DATA_ON_STARTUP ? 0 : LocalSchema.storedVersion(database);
+        if (stored == RequestMigration.FROM_VERSION) {
+            // Version 1 only lacks claim and offer documents; add them rather than re-pull everything
+            RequestMigration.migrate(database, USER_ID);
+            stored = CollectionMigration.FROM_VERSION;
+        }
+        if (stored == CollectionMigration.FROM_VERSION) {
+            CollectionMigration.migrate(database, BeaconCollections.open(database), USER_ID);
+            stored = CompactKeysMigration.FROM_VERSION;
         }
+        if (stored == CompactKeysMigration.FROM_VERSION) {
+            CompactKeysMigration.migrate(database, BeaconCollections.open(database), USER_ID);
+            LocalSchema.stamp(database);
+        }
+        boolean warm = !WIPE_LOCAL_DATA_ON_STARTUP && LocalSchema.isCurrent(database);
+        if (!warm) {
+            // An incompatible layout is dropped wholesale, checkpoints included
+            DatabaseResetter.Strategy strategy = WIPE_LOCAL_DATA_ON_STARTUP
+                    ? DatabaseResetter.Strategy.AUTO : DatabaseResetter.Strategy.RECREATE;
+            // No new requests while the database is being emptied underneath them
+            runOnUiThread(() -> floatingActionButton.setEnabled(false));
+            try {
+                DatabaseResetter.ResetResult result = DatabaseResetter.reset(database, strategy,
+                        (done, total) -> Log.d("DB_RESET", "Reset progress " + done + "/" + total));
+                Log.i("DB_RESET", "Local database reset, " + result);
+                database = result.database;
+            } finally {
+                runOnUiThread(() -> floatingActionButton.setEnabled(true));
+            }
+            resetCheckpoints = true;
+            LocalSchema.stamp(database);
+        }
+        collections = BeaconCollections.open(database);
+        startupMetrics.setMode(warm ? StartupMetrics.Mode.WARM : StartupMetrics.Mode.COLD);
+        long localDocuments = 0;
+        for (Collection collection : collections.all()) localDocuments += collection.getCount();
+        Log.i("STARTUP", (warm ? "Warm" : "Cold") + " start, " + localDocuments
+                + " local documents after " + startupMetrics.elapsedMs() + " ms");
+        if (warm && localDocuments > 0) startupMetrics.markFirstUsableData("local_database");
+        RequestOutboxWriter writer = new RequestOutboxWriter(database, collections.requests, requestOutbox,
+                USER_ID, REQUEST_FLUSH_DELAY_MS, this::onRequestsCommitted);
+        writer.start();
+        adopt(() -> {
+            requestOutboxWriter = writer;
+            databaseReady = true;
+        }, writer::stop);
+    }
+
+    /**
+     * Hands what a stage started over to the activity, or stops it if the activity was
+     * destroyed while the stage ran. onDestroy cancels the pipeline before it takes the same
+     * lock, so a component is either stopped there or here, never leaked.
+     *
+     * @return false if the component was stopped
+     */
+    private boolean adopt(Runnable publish, Runnable stop) {
+        synchronized (teardownLock) {
+            if (startupPipeline.isCancelled()) {
+                stop.run();
+                return false;
+            }
+            publish.run();
+            return true;
+        }
+    }
+
+    /**
+     * Loads a seed or recovery snapshot left in the app's external files directory, such as one
+     * pushed with adb, before indexes are built and replication starts, so neither competes with
+     * the bulk load. The file is renamed afterwards so it is imported once.
+     */
+    private void importSnapshot() throws Exception {
+        File snapshot = new File(getExternalFilesDir(null), SNAPSHOT_FILE);
+        if (!snapshot.isFile()) return;
+        SnapshotImporter.Report report = new SnapshotImporter(database, collections).importFrom(snapshot);
+        Log.i("SNAPSHOT", "Imported " + snapshot + ": " + report);
+        if (!snapshot.renameTo(new File(snapshot.getPath() + ".imported"))) {
+            Log.w("SNAPSHOT", "Could not rename " + snapshot + ", it will be imported again");
+        }
+        if (report.imported > 0) startupMetrics.markFirstUsableData("snapshot");
     }
 
     @Override
     public void onMapReady(GoogleMap googleMap) {
         mMap = googleMap;
+        mapRenderer = new MapRenderer(mMap, mapPoints);
+        mapRenderer.start();
 
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
             mMap.setMyLocationEnabled(true);
@@ -109,8 +310,10 @@ public class GoogleMapActivity extends AppCompatActivity implements OnMapReadyCa
                 if (location != null) {
                     LatLng userLoc = new LatLng(location.getLatitude(), location.getLongitude());
                     mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(userLoc, 13));
+                    onDeviceLocation(location);
                 }
             });
+            startLocationUpdates();
             peerDiscovery.discoverPeers();
         } else {
             ActivityCompat.requestPermissions(this,
@@ -126,6 +329,7 @@ public class GoogleMapActivity extends AppCompatActivity implements OnMapReadyCa
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
 //                onMapReady(mMap);
                 Log.i("PERMISSION", "Location permission granted");
+                startLocationUpdates();
             } else {
                 Toast.makeText(this, "Location permission is required", Toast.LENGTH_SHORT).show();
             }
@@ -144,219 +348,588 @@ public class GoogleMapActivity extends AppCompatActivity implements OnMapReadyCa
     }
 
     private void saveAndSendEmergencyRequest(String emergencyType) {
+        if (!databaseReady) {
+            Toast.makeText(this, "Still starting up, try again in a moment", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Queued, not saved: the outbox folds repeated taps into one request and commits off
+        // the main thread
+        Location location = lastLocation;
+        RequestOutbox.Outcome outcome = requestOutboxWriter.submit(USER_ID, emergencyType, System.currentTimeMillis(),
+                location != null ? location.getLatitude() : null,
+                location != null ? location.getLongitude() : null);
+        Log.d("EMERGENCY_DOC", "Emergency type: " + emergencyType + " " + outcome
+                + " as " + requestOutbox.lastId(USER_ID, emergencyType));
+        Toast.makeText(this, outcome == RequestOutbox.Outcome.QUEUED
+                ? "Emergency Request saved & ready for sync!"
+                : "Emergency Request already sent", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Called on the outbox thread once new requests are committed. They are urgent, so the
+     * scheduler pushes them now instead of waiting for the next replication window.
+     */
+    private void onRequestsCommitted(List<RequestOutbox.Request> created) {
+        for (RequestOutbox.Request request : created) {
+            if (request.hasLocation()) {
+                startDispatch(request.id, request.emergencyType, request.latitude, request.longitude);
+            }
+            onLocalChange(true);
+        }
+    }
+
+    /** Tell the Sync Gateway scheduler about a local save; a no-op until it has started. */
+    private void onLocalChange(boolean urgent) {
+        ReplicationScheduler scheduler = sgwScheduler;
+        if (scheduler != null) scheduler.onLocalChange(urgent);
+    }
+
+    /** The same for a saved position, which goes out with the next location window. */
+    private void onLocationChange() {
+        ReplicationScheduler scheduler = locationScheduler;
+        if (scheduler != null) scheduler.onLocalChange(false);
+    }
+
+    /**
+     * Nearest-available-responder lookups are served from memory; the updater keeps the
+     * index in step with responder documents as they replicate in.
+     */
+    private void startResponderIndex() throws CouchbaseLiteException {
+        ResponderIndexUpdater updater = new ResponderIndexUpdater(collections, responderIndex,
+                new ResponderIndexUpdater.Listener() {
+                    @Override
+                    public void onResponderChanged(@NonNull String responderId, String responderType, boolean available,
+                                                   double latitude, double longitude) {
+                        mapPoints.put(new MarkerClusterer.Point(responderId, latitude, longitude, available
+                                ? MarkerClusterer.Style.AVAILABLE : MarkerClusterer.Style.OCCUPIED));
+                        onMapDataChanged();
+                    }
+
+                    @Override
+                    public void onResponderRemoved(@NonNull String responderId) {
+                        mapPoints.remove(responderId);
+                        onMapDataChanged();
+                    }
+                });
+        updater.start();
+        adopt(() -> responderIndexUpdater = updater, updater::stop);
+    }
+
+    private void onMapDataChanged() {
+        MapRenderer renderer = mapRenderer;
+        if (renderer != null) renderer.onDataChanged();
+    }
+
+    /**
+     * Offer a new request to the nearest available responders first rather than to everyone;
+     * see {@link DispatchEngine}.
+     */
+    private void startDispatch(String requestId, String emergencyType, double latitude, double longitude) {
+        long now = System.currentTimeMillis();
+        postDispatch(() -> publishOffer(dispatchEngine.start(requestId, emergencyType, latitude, longitude, now)));
+    }
+
+    /** Hand work to the dispatch thread; dropped once onDestroy has shut it down. */
+    private void postDispatch(Runnable task) {
+        synchronized (teardownLock) {
+            if (!dispatchExecutor.isShutdown()) dispatchExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Dispatch waves live in memory, so after a restart pick up this requester's open
+     * requests where their offer documents left off; otherwise a shortlist would stay frozen
+     * and the request never widen. A request whose first wave never went out starts now.
+     */
+    private void resumeDispatch() throws CouchbaseLiteException {
+        List<Runnable> resumed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        try (ResultSet results = RequestQueries.openRequestsBy(collections.requests, USER_ID).execute()) {
+            for (Result result : results) {
+                String requestId = result.getString(0);
+                String emergencyType = result.getString(1);
+                if (emergencyType == null || result.getValue(2) == null || result.getValue(3) == null
+                        || RequestClaims.winner(collections.requests, requestId) != null) {
+                    continue;
+                }
+                double latitude = result.getDouble(2);
+                double longitude = result.getDouble(3);
+                Document offer = collections.requests.getDocument(RequestLifecycle.offerId(requestId));
+                if (offer == null) {
+                    resumed.add(() -> publishOffer(dispatchEngine.start(requestId, emergencyType, latitude, longitude, now)));
+                    continue;
+                }
+                List<String> offeredTo = RequestClaims.offeredTo(offer);
+                // Already open to everyone
+                if (offeredTo == null) continue;
+                int wave = offer.getInt(DocumentKeys.DISPATCH_WAVE);
+                resumed.add(() -> dispatchEngine.resume(requestId, emergencyType, latitude, longitude, wave, offeredTo, now));
+            }
+        }
+        Log.i("DISPATCH", "Resuming dispatch of " + resumed.size() + " open requests");
+        for (Runnable task : resumed) postDispatch(task);
+    }
+
+    private void dispatchNextWaves() {
+        // An exception escaping a fixed-delay task cancels every later run
+        try {
+            for (DispatchEngine.Offer offer : dispatchEngine.due(System.currentTimeMillis())) {
+                publishOffer(offer);
+            }
+        } catch (RuntimeException e) {
+            Log.e("DISPATCH", "Dispatch tick failed", e);
+        }
+    }
+
+    private void publishOffer(DispatchEngine.Offer offer) {
         try {
-            Collection collection = database.getDefaultCollection();
-            MutableDocument doc = new MutableDocument();
-            doc.setString("type", "emergency_request");
-            doc.setString("emergency_type", emergencyType);
-            doc.setString("city", "stockholm");
-            doc.setString("status", "open");
-            doc.setString("requested_by", USER_ID);
-            doc.setLong("requested_at", System.currentTimeMillis());
-            collection.save(doc);
-            Log.d("EMERGENCY_DOC", "Emergency type: " + doc.getString("emergency_type"));
-            Toast.makeText(this, "Emergency Request saved & ready for sync!", Toast.LENGTH_SHORT).show();
-        } catch (Exception e) { Log.e("EMERGENCY", "Save error", e); }
+            if (!RequestClaims.publishOffer(collections.requests, offer)) {
+                // Claimed (or gone) since the last wave
+                dispatchEngine.finish(offer.requestId);
+                return;
+            }
+            Log.i("DISPATCH", "Request " + offer.requestId + " wave " + offer.wave + ": "
+                    + (offer.broadcast ? "all responders" : offer.responderIds));
+        } catch (CouchbaseLiteException | RuntimeException e) {
+            // A half-synced request must not stop the waves that follow it
+            Log.e("DISPATCH", "Could not publish offer for " + offer.requestId, e);
+            dispatchEngine.retry(offer, System.currentTimeMillis());
+        }
     }
 
     private void startP2pListener() throws CouchbaseLiteException {
-        TLSIdentity serverIdentity = createServerIdentity();
-        URLEndpointListenerConfiguration config = new URLEndpointListenerConfiguration(Set.of(database.getDefaultCollection()));
+        TLSIdentity serverIdentity = tlsIdentities.server();
+        URLEndpointListenerConfiguration config = new URLEndpointListenerConfiguration(new HashSet<>(collections.all()));
         config.setPort(55990);
         config.setDisableTls(false);
         config.setTlsIdentity(serverIdentity);
         config.setAuthenticator(new ListenerCertificateAuthenticator(List.of(serverIdentity.getCerts().get(0))));
-
-        p2pListener = new URLEndpointListener(config);
-        p2pListener.start();
-        Log.i("P2P_LISTENER", "P2P Listener running: " + p2pListener.getUrls());
+        // Off by default on a listener; peers then send only the properties a revision changed
+        config.setEnableDeltaSync(true);
+
+        URLEndpointListener listener = new URLEndpointListener(config);
+        listener.start();
+        adopt(() -> {
+            p2pListener = listener;
+            Log.i("P2P_LISTENER", "P2P Listener running: " + listener.getUrls());
+            peerDiscovery.registerService(listener.getPort());
+        }, listener::stop);
     }
 
-    private void startContinuousP2pReplicationToPeers() throws CouchbaseLiteException {
-        TLSIdentity clientIdentity = createClientIdentity();
+    private void startP2pReplicatorPool() throws CouchbaseLiteException {
+        TLSIdentity clientIdentity = tlsIdentities.client();
+        GossipTopology<URI> topology = new GossipTopology<>(P2P_FANOUT, P2P_ROTATION_MS,
+                P2P_RECONNECT_BASE_MS, P2P_RECONNECT_MAX_MS, new Random());
+        P2PReplicatorPool.ReplicatorFactory factory = new P2PReplicatorPool.ReplicatorFactory() {
+            @Override public Replicator create(URI peerUri) throws CouchbaseLiteException {
+                return createP2pReplicator(peerUri, clientIdentity);
+            }
+
+            @Override public void released(URI peerUri) {
+                ReplicationMetrics.get().detach(p2pMetricsName(peerUri));
+            }
+        };
+        P2PReplicatorPool pool = new P2PReplicatorPool(factory, topology, P2P_REBALANCE_MS, resetCheckpoints);
+        if (!adopt(() -> p2pReplicatorPool = pool, pool::shutdown)) return;
+
+        // Discovery feeds the candidates: added on resolve, released when the peer is lost
+        peerDiscovery.getRegistry().addListener(new PeerRegistry.Listener() {
+            @Override public void onPeerAdded(@NonNull URI peerUri) {
+                pool.addPeer(peerUri);
+            }
+
+            @Override public void onPeerRemoved(@NonNull URI peerUri) {
+                pool.removePeer(peerUri);
+            }
+        });
+        // Peers resolved before this stage ran
         for (URI peerUri : peerDiscovery.getNearbyPeerUris()) {
-            URLEndpoint endpoint = new URLEndpoint(peerUri);
-            ReplicatorConfiguration config = new ReplicatorConfiguration(endpoint);
-            Collection collection = database.getDefaultCollection();
-
-            config.addCollection(collection, null);
-            config.setType(ReplicatorType.PUSH_AND_PULL);
-            config.setContinuous(true);
-            config.setAuthenticator(new ClientCertificateAuthenticator(clientIdentity));
-
-            // Configuring the channel to read from
-            CollectionConfiguration collectionConfiguration = new CollectionConfiguration();
-            // TODO: update the channel names once sync-gateway is configured properly with city based channel names
-            collectionConfiguration.setChannels(List.of("emergency_requests"));
-            // conflict resolver
-            collectionConfiguration.setConflictResolver(p2PConflictResolver);
-            config.addCollection(collection, collectionConfiguration);
-
-
-
-            Replicator repl = new Replicator(config);
-//            repl.addChangeListener(change -> Log.i("P2P_REPL", "Status: " + change.getStatus()));
-            repl.addChangeListener(change -> {
-                ReplicatorStatus status = change.getStatus();
-                Log.i("P2P_REPLICATOR", "ActivityLevel: " + status.getActivityLevel());
-                if (status.getError() != null) {
-                    Log.e("P2P_REPLICATOR", "Replication error: " + status.getError());
-                }
-            });
-            repl.start();
+            pool.addPeer(peerUri);
         }
     }
 
-    private void startSyncGatewayReplication() throws URISyntaxException, CouchbaseLiteException {
-        URI sgwUri = new URI("ws://"+SYNC_GATEWAY_IP+":4984/beacon");
-        URLEndpoint endpoint = new URLEndpoint(sgwUri);
+    private Replicator createP2pReplicator(URI peerUri, TLSIdentity clientIdentity) throws CouchbaseLiteException {
+        URLEndpoint endpoint = new URLEndpoint(peerUri);
         ReplicatorConfiguration config = new ReplicatorConfiguration(endpoint);
-        config.addCollection(database.getDefaultCollection(), null);
+
         config.setType(ReplicatorType.PUSH_AND_PULL);
         config.setContinuous(true);
-
-        // Configuring the channel to read from
-        Collection collection = database.getDefaultCollection();
-        CollectionConfiguration collectionConfiguration = new CollectionConfiguration();
-        collectionConfiguration.setChannels(List.of("emergency_requests"));
-        // conflict resolver
-        collectionConfiguration.setConflictResolver(syncGatewayConflictResolver);
-        config.addCollection(collection, collectionConfiguration);
-
-
-        sgwReplicator = new Replicator(config);
-        sgwReplicator.addChangeListener(change -> {
-            ReplicatorStatus status = change.getStatus();
-            Log.i("SGW_REPL", "Activity Level: " + status.getActivityLevel());
-            Log.i("SGW_REPL", "Last Sequence: " + status.getProgress().getCompleted());
-            Log.i("SGW_REPL", String.format("Progress: %d / %d",
-                    status.getProgress().getCompleted(),
-                    status.getProgress().getTotal()));
-            if (change.getStatus().getError() != null) {
-                Log.e("SGW_REPL", "Error: " + change.getStatus().getError());
+        config.setAuthenticator(new ClientCertificateAuthenticator(clientIdentity));
+        config.setAcceptOnlySelfSignedServerCertificate(true);
+        // Give up after a few attempts so a dead peer frees its slot; the pool handles the backoff
+        config.setMaxAttempts(P2P_REPLICATOR_MAX_ATTEMPTS);
+
+        // No pull filter: the checkpoint would move past what it rejected, and a request left
+        // behind would never arrive once the device moved nearer. Peers are on the same network
+        // anyway, and the view narrows to the current cell when it is read
+        String metricsName = p2pMetricsName(peerUri);
+        ReplicatorStats stats = ReplicationMetrics.get().stats(metricsName);
+        // Only requests are edited by more than one writer; the lifecycle merge is for them alone
+        CollectionConfiguration requestConfiguration = new CollectionConfiguration();
+        requestConfiguration.setConflictResolver(new P2PConflictResolver(stats));
+        CollectionConfiguration replacedWholeConfiguration = new CollectionConfiguration();
+        replacedWholeConfiguration.setConflictResolver(new NewestRevisionConflictResolver(stats));
+        // Peers nearby are the fastest path for every kind of document, so all of them go
+        config.addCollection(collections.requests, requestConfiguration);
+        config.addCollections(List.of(collections.responders, collections.locations), replacedWholeConfiguration);
+
+        Replicator repl = new Replicator(config);
+        ReplicationMetrics.get().attach(metricsName, repl);
+        repl.addChangeListener(change -> {
+            ReplicatorActivityLevel level = change.getStatus().getActivityLevel();
+            if (level == ReplicatorActivityLevel.IDLE || level == ReplicatorActivityLevel.BUSY) {
+                peerDiscovery.markPeerSeen(peerUri);
             }
         });
-        sgwReplicator.start();
+        return repl;
     }
 
-    private TLSIdentity createServerIdentity() throws CouchbaseLiteException {
-        TLSIdentity existingIdentity = TLSIdentity.getIdentity("server-key");
-        if (existingIdentity != null) {
-            Log.i("TLS_IDENTITY", "Existing server identity found, reusing it");
-            return existingIdentity;
+    private static String p2pMetricsName(URI peerUri) {
+        return "p2p:" + peerUri.getHost() + ":" + peerUri.getPort();
+    }
+
+    private void startLocationUpdates() {
+        if (locationCallback != null || ContextCompat.checkSelfPermission(this,
+                Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return;
         }
+        boolean responder = "responder".equals(USER_TYPE);
+        LocationRequest request = responder
+                ? new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, RESPONDER_LOCATION_INTERVAL_MS).build()
+                : new LocationRequest.Builder(Priority.PRIORITY_BALANCED_POWER_ACCURACY, LOCATION_INTERVAL_MS)
+                        .setMinUpdateDistanceMeters(LOCATION_MIN_DISTANCE_M)
+                        .build();
+        locationCallback = new LocationCallback() {
+            @Override
+            public void onLocationResult(@NonNull LocationResult result) {
+                Location location = result.getLastLocation();
+                if (location != null) onDeviceLocation(location);
+            }
+        };
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+    }
 
-        Map<String, String> attrs = Map.of(TLSIdentity.CERT_ATTRIBUTE_COMMON_NAME, "BeaconServer");
-        Calendar cal = Calendar.getInstance(); cal.add(Calendar.YEAR, 5);
-        return TLSIdentity.createIdentity(true, attrs, cal.getTime(), "server-key");
+    /**
+     * Live position for requesters and dispatch, written to a small per-responder document
+     * so the user document is not re-replicated on every move.
+     */
+    private void startLocationPublisher() throws CouchbaseLiteException {
+        ResponderLocationPublisher publisher = new ResponderLocationPublisher(
+                collections.locations, USER_ID, new LocationThrottle(), this::onLocationChange);
+        publisher.start();
+        adopt(() -> locationPublisher = publisher, publisher::stop);
     }
 
-    private TLSIdentity createClientIdentity() throws CouchbaseLiteException {
-        TLSIdentity existingIdentity = TLSIdentity.getIdentity("client-key");
-        if (existingIdentity != null) {
-            Log.i("TLS_IDENTITY", "Existing client identity found, reusing it");
-            return existingIdentity;
-        }
+    /**
+     * Responded requests and stale positions expire; the database is compacted in the
+     * background, timing the hot queries around it.
+     */
+    private void startRetention() throws CouchbaseLiteException {
+        RetentionManager manager = new RetentionManager(database, collections, new RetentionPolicy(),
+                RequestQueries.hotQueries(collections, RESPONDER_TYPE, USER_ID));
+        manager.start();
+        adopt(() -> retentionManager = manager, manager::stop);
+    }
 
-        Map<String, String> attrs = Map.of(TLSIdentity.CERT_ATTRIBUTE_COMMON_NAME, "BeaconClient");
-        Calendar cal = Calendar.getInstance(); cal.add(Calendar.YEAR, 5);
-        return TLSIdentity.createIdentity(false, attrs, cal.getTime(), "client-key");
+    /**
+     * Track the device's geohash cell. Moving to another cell re-reads the open requests
+     * around it; Sync Gateway replication is re-subscribed only when the cell leaves the
+     * neighbourhood of the subscription's anchor, see {@link GeoChannels#anchorFor}.
+     */
+    private void onDeviceLocation(Location location) {
+        lastLocation = location;
+        ResponderLocationPublisher publisher = locationPublisher;
+        if (publisher != null) publisher.onFix(location);
+        String cell = GeoChannels.cellOf(location.getLatitude(), location.getLongitude());
+        if (cell.equals(currentCell)) return;
+
+        Log.i("GEO", "Moved to cell " + cell + " from " + currentCell);
+        currentCell = cell;
+        OpenRequestViewUpdater updater = openRequestViewUpdater;
+        if (updater != null) updater.republish();
+        String anchor = GeoChannels.anchorFor(cell, subscriptionAnchor);
+        geoPreferences.edit().putString("last_cell", cell).putString("last_anchor", anchor).apply();
+        if (anchor.equals(subscriptionAnchor)) return;
+
+        subscriptionAnchor = anchor;
+        startupExecutor.execute(() -> {
+            try {
+                resubscribeSyncGateway();
+            } catch (Exception e) {
+                Log.e("GEO", "Could not re-subscribe replication", e);
+            }
+        });
     }
 
+    private void resubscribeSyncGateway() {
+        // Not started yet: the startup stage will subscribe around the new cell
+        ReplicationScheduler scheduler = sgwScheduler;
+        if (scheduler != null) scheduler.restart();
+        scheduler = locationScheduler;
+        if (scheduler != null) scheduler.restart();
+    }
 
-    private void startResponderRequestListener(String responderType, String responderId) throws CouchbaseLiteException {
-        Query query = QueryBuilder
-                .select(SelectResult.expression(Meta.id), SelectResult.all())
-                .from(DataSource.collection(database.getDefaultCollection()))
-                .where(
-                        Expression.property("type").equalTo(Expression.string("emergency_request"))
-                                .and(Expression.property("status").equalTo(Expression.string("open")))
-                                .and(Expression.property("emergency_type").equalTo(Expression.string(responderType)))
-                );
-
-        // 1. Query existing matching documents immediately on startup
-        ResultSet resultSet = query.execute();
-        for (Result result : resultSet) {
-            String docId = result.getString("id");
-            Log.i("RESPONDER", "Matching emergency found on startup: " + docId);
-            runOnUiThread(() -> showResponderNotification(docId, responderId));
-        }
+    /**
+     * Continuous or in one-shot windows depending on battery, network and pending urgent
+     * work; see {@link ReplicationPolicy}. Positions have a replicator of their own that only
+     * runs in windows, so frequent moves never keep the request socket busy.
+     */
+    private void startSyncGatewayReplication() throws URISyntaxException {
+        URI sgwUri = new URI("ws://"+SYNC_GATEWAY_IP+":4984/beacon");
+        ReplicationScheduler scheduler = new ReplicationScheduler(this,
+                continuous -> createSyncGatewayReplicator(sgwUri, continuous),
+                new ReplicationPolicy("responder".equals(USER_TYPE)));
+        scheduler.start(resetCheckpoints);
+        if (!adopt(() -> sgwScheduler = scheduler, scheduler::stop)) return;
+
+        ReplicationScheduler locations = new ReplicationScheduler(this,
+                continuous -> createLocationReplicator(sgwUri, continuous),
+                ReplicationPolicy.batchedOnly(LOCATION_SYNC_WINDOW_MS, LOCATION_SYNC_LOW_BATTERY_WINDOW_MS,
+                        ReplicationPolicy.DEFAULT_MAX_PENDING));
+        locations.start(resetCheckpoints);
+        adopt(() -> locationScheduler = locations, locations::stop);
+    }
 
-        // Add listener: runs whenever a matching doc changes
-        query.addChangeListener(change -> {
-            for (Result result : change.getResults()) {
-                String docId = result.getString("id");
-                Log.i("RESPONDER", "[ChangeListener] New/changed emergency: " + docId);
-                runOnUiThread(() -> showResponderNotification(docId, responderId));
+    /** Requests with their claims and offers, and user documents. */
+    private Replicator createSyncGatewayReplicator(URI sgwUri, boolean continuous) throws CouchbaseLiteException {
+        ReplicatorConfiguration config = syncGatewayConfiguration(sgwUri, continuous);
+        ReplicatorStats stats = ReplicationMetrics.get().stats("sgw");
+        // Without a cell yet only the unlocated and personal channels; an empty list would mean
+        // every channel
+        config.addCollection(collections.requests,
+                syncGatewayCollection(GeoChannels.subscriptionAround(subscriptionAnchor, USER_ID),
+                        new SyncGatewayConflictResolver(stats)));
+        config.addCollection(collections.responders,
+                syncGatewayCollection(GeoChannels.responderSubscription(USER_ID),
+                        new NewestRevisionConflictResolver(stats)));
+
+        Replicator replicator = new Replicator(config);
+        // Status, progress and errors go to ReplicationMetrics; see the diagnostics screen
+        ReplicationMetrics.get().attach("sgw", replicator);
+        replicator.addChangeListener(change -> {
+            ReplicatorActivityLevel level = change.getStatus().getActivityLevel();
+            // A one-shot window ends STOPPED rather than IDLE once it has caught up
+            if (level == ReplicatorActivityLevel.IDLE
+                    || (!continuous && level == ReplicatorActivityLevel.STOPPED && change.getStatus().getError() == null)) {
+                startupMetrics.markFirstUsableData("sgw_caught_up");
             }
         });
+        // The scheduler starts it, resuming from the checkpoint stored with the database unless it was reset
+        return replicator;
     }
 
+    /** Responder positions in the cells around the device. */
+    private Replicator createLocationReplicator(URI sgwUri, boolean continuous) throws CouchbaseLiteException {
+        ReplicatorConfiguration config = syncGatewayConfiguration(sgwUri, continuous);
+        ReplicatorStats stats = ReplicationMetrics.get().stats("sgw_locations");
+        config.addCollection(collections.locations,
+                syncGatewayCollection(GeoChannels.subscriptionAround(subscriptionAnchor, USER_ID),
+                        new NewestRevisionConflictResolver(stats)));
+        Replicator replicator = new Replicator(config);
+        ReplicationMetrics.get().attach("sgw_locations", replicator);
+        return replicator;
+    }
 
-    private void showResponderNotification(String docId, String responderId) {
-        new AlertDialog.Builder(this)
+    private static ReplicatorConfiguration syncGatewayConfiguration(URI sgwUri, boolean continuous) {
+        ReplicatorConfiguration config = new ReplicatorConfiguration(new URLEndpoint(sgwUri));
+        config.setType(ReplicatorType.PUSH_AND_PULL);
+        config.setContinuous(continuous);
+        return config;
+    }
+
+    private static CollectionConfiguration syncGatewayCollection(List<String> channels, ConflictResolver resolver) {
+        CollectionConfiguration collectionConfiguration = new CollectionConfiguration();
+        collectionConfiguration.setChannels(channels);
+        collectionConfiguration.setConflictResolver(resolver);
+        return collectionConfiguration;
+    }
+
+    private void startResponderRequestListener(String responderType, String responderId) throws CouchbaseLiteException {
+        // The view is loaded once and then kept current from collection changes, so replicated
+        // documents cost one read each instead of a full re-query. Each batch names the requests
+        // it touched, so only their prompts and map points are updated; the initial load comes
+        // through the same callback
+        OpenRequestViewUpdater updater = new OpenRequestViewUpdater(collections.requests, openRequestView, (view, changedIds) -> {
+            String cell = currentCell;
+            Set<String> touched = changedIds;
+            if (touched == null) {
+                // The first load, or a move to another cell: every request shown or of this type
+                touched = new HashSet<>(requestDeltaTracker.ids());
+                for (OpenRequestView.Entry entry : view.snapshot(responderType)) touched.add(entry.id);
+            }
+            requestDeltaTracker.begin();
+            for (String id : touched) {
+                OpenRequestView.Entry entry = view.get(id);
+                if (entry == null || !OpenRequestView.isOfferedTo(entry, responderType, responderId, cell)) {
+                    requestDeltaTracker.drop(id);
+                    mapPoints.removeRequest(id);
+                    continue;
+                }
+                requestDeltaTracker.offer(id, entry.revisionId);
+                if (entry.hasLocation()) {
+                    mapPoints.put(new MarkerClusterer.Point(id, entry.latitude, entry.longitude,
+                            MarkerClusterer.Style.REQUEST));
+                } else {
+                    mapPoints.removeRequest(id);
+                }
+            }
+            onMapDataChanged();
+            RequestDeltaTracker.Delta delta = requestDeltaTracker.finish();
+            if (delta.isEmpty()) return;
+            startupMetrics.markFirstUsableData("responder_query");
+            if (!delta.added.isEmpty()) {
+                ReplicationScheduler scheduler = sgwScheduler;
+                if (scheduler != null) scheduler.onRemoteUrgent();
+            }
+
+            Log.i("RESPONDER", "Open requests: +" + delta.added.size()
+                    + " ~" + delta.changed.size() + " -" + delta.removed.size());
+            runOnUiThread(() -> applyResponderDelta(delta));
+        });
+        updater.start();
+        adopt(() -> openRequestViewUpdater = updater, updater::stop);
+    }
+
+    private void applyResponderDelta(RequestDeltaTracker.Delta delta) {
+        // Requests that are no longer open were taken by someone else; drop their prompts
+        for (String docId : delta.removed) {
+            AlertDialog dialog = responderDialogs.remove(docId);
+            if (dialog != null) dialog.dismiss();
+        }
+        for (String docId : delta.added) {
+            showResponderNotification(docId);
+        }
+    }
+
+    private void showResponderNotification(String docId) {
+        if (responderDialogs.containsKey(docId)) return;
+        AlertDialog dialog = new AlertDialog.Builder(this)
                 .setTitle("Emergency Request")
                 .setMessage("A new request needs your response. Accept?")
-                .setPositiveButton("Accept", (dialog, which) -> acceptEmergencyRequest(docId, responderId))
-                .setNegativeButton("Reject", (dialog, which) -> Log.i("RESPONDER", "Request rejected"))
+                .setPositiveButton("Accept", (d, which) -> acceptEmergencyRequest(docId))
+                .setNegativeButton("Reject", (d, which) -> Log.i("RESPONDER", "Request rejected"))
+                .setOnDismissListener(d -> responderDialogs.remove(docId))
                 .show();
+        responderDialogs.put(docId, dialog);
     }
 
 
-    private void acceptEmergencyRequest(String docId, String responderId) {
-        try {
-            Collection collection = database.getDefaultCollection();
-            Document doc = collection.getDocument(docId);
-            if (doc == null) {
-                Log.e("RESPONDER", "Request doc not found: " + docId);
-                return;
+    /**
+     * Claims go through the watcher's thread, which also tells this responder to stand down
+     * when a claim made elsewhere, while the two devices were apart, wins the request.
+     */
+    private void startClaimWatcher(String responderId) {
+        ClaimWatcher watcher = new ClaimWatcher(collections.requests, responderId, new ClaimWatcher.Listener() {
+            @Override
+            public void onClaimResult(@NonNull String requestId, @NonNull RequestClaims.Result result) {
+                switch (result) {
+                    case CLAIMED:
+                        Log.i("RESPONDER", "Accepted request " + requestId);
+                        onLocalChange(true);
+                        break;
+                    case MISSING:
+                        Log.e("RESPONDER", "Request doc not found: " + requestId);
+                        break;
+                    default:
+                        runOnUiThread(() -> Toast.makeText(GoogleMapActivity.this,
+                                "Another responder already took this request", Toast.LENGTH_SHORT).show());
+                        Log.i("RESPONDER", "Request " + requestId + " not claimed: " + result);
+                }
             }
 
-            MutableDocument updated = doc.toMutable();
-            updated.setString("status", "responded");
-            updated.setString("responded_by", responderId);
-            updated.setLong("responded_at", System.currentTimeMillis());
-
-            collection.save(updated);
-            Log.i("RESPONDER", "Accepted request " + docId);
+            @Override
+            public void onClaimLost(@NonNull String requestId, @NonNull String winnerId) {
+                Log.i("RESPONDER", "Standing down from " + requestId + ", taken by " + winnerId);
+                runOnUiThread(() -> {
+                    AlertDialog dialog = responderDialogs.remove(requestId);
+                    if (dialog != null) dialog.dismiss();
+                    new AlertDialog.Builder(GoogleMapActivity.this)
+                            .setTitle("Request taken")
+                            .setMessage("Another responder claimed this request first. Stand down.")
+                            .setPositiveButton("OK", null)
+                            .show();
+                });
+            }
+        });
+        watcher.start();
+        adopt(() -> claimWatcher = watcher, watcher::stop);
+    }
 
-        } catch (CouchbaseLiteException e) {
-            Log.e("RESPONDER", "Error updating request", e);
+    private void acceptEmergencyRequest(String docId) {
+        ClaimWatcher watcher = claimWatcher;
+        if (watcher == null) {
+            Toast.makeText(this, "Still starting up, try again in a moment", Toast.LENGTH_SHORT).show();
+            return;
         }
+        // A query and a save; off the main thread
+        watcher.claim(docId, System.currentTimeMillis());
     }
 
 
 
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (sgwReplicator != null) sgwReplicator.stop();
-        if (p2pListener != null) p2pListener.stop();
+    /** Writes the local data as a snapshot another device can import at startup. */
+    private void exportSnapshot() {
+        File snapshot = new File(getExternalFilesDir(null), SNAPSHOT_FILE + ".export");
+        startupExecutor.execute(() -> {
+            try {
+                SnapshotExporter.Report report = SnapshotExporter.exportTo(collections, snapshot);
+                Log.i("SNAPSHOT", "Exported " + snapshot + ": " + report);
+                runOnUiThread(() -> Toast.makeText(this, report.docs + " documents exported", Toast.LENGTH_SHORT).show());
+            } catch (Exception e) {
+                Log.e("SNAPSHOT", "Export failed", e);
+            }
+        });
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(Menu.NONE, MENU_DIAGNOSTICS, Menu.NONE, "Diagnostics");
+        menu.add(Menu.NONE, MENU_EXPORT_SNAPSHOT, Menu.NONE, "Export snapshot");
+        return true;
+    }
 
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == MENU_DIAGNOSTICS) {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
+            return true;
+        }
+        if (item.getItemId() == MENU_EXPORT_SNAPSHOT && databaseReady) {
+            exportSnapshot();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
 
-    // very dangerous, remember this part before starting the app for demo
-    private void deleteCouchbaseLiteDataOnStartup(){
-        try {
-            Collection collection = database.getDefaultCollection();
-
-            Query allDocs = QueryBuilder
-                    .select(SelectResult.expression(Meta.id))
-                    .from(DataSource.collection(collection));
-
-            ResultSet results = allDocs.execute();
-            int count = 0;
-            for (Result result : results) {
-                String docId = result.getString("id");
-                Document doc = collection.getDocument(docId);
-                collection.delete(doc);
-                count++;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Stages still running see this and stop what they started instead of handing it over
+        startupPipeline.cancel();
+        peerDiscovery.stopDiscovery();
+        if (locationCallback != null) fusedLocationClient.removeLocationUpdates(locationCallback);
+        synchronized (teardownLock) {
+            if (p2pReplicatorPool != null) p2pReplicatorPool.shutdown();
+            if (sgwScheduler != null) sgwScheduler.stop();
+            if (locationScheduler != null) locationScheduler.stop();
+            if (p2pListener != null) {
+                peerDiscovery.unregisterService();
+                p2pListener.stop();
             }
-            Log.i("DB_RESET", "Deleted " + count + " documents from local database on startup.");
-        } catch (CouchbaseLiteException e) {
-            Log.e("DB_RESET", "Error deleting documents on startup", e);
+            if (responderIndexUpdater != null) responderIndexUpdater.stop();
+            if (locationPublisher != null) locationPublisher.stop();
+            if (retentionManager != null) retentionManager.stop();
+            if (openRequestViewUpdater != null) openRequestViewUpdater.stop();
+            if (claimWatcher != null) claimWatcher.stop();
+            if (requestOutboxWriter != null) requestOutboxWriter.stop();
+            dispatchExecutor.shutdown();
         }
+        if (mapRenderer != null) mapRenderer.stop();
+        startupExecutor.shutdown();
+        ReplicationMetrics.get().stop();
     }
+
+
+
 }
@@ -0,0 +1,162 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Chooses which peers to replicate with. Instead of a replicator to every peer, each device
+ * keeps {@code fanout} of them and swaps the longest-held one for another peer every rotation
+ * interval; since every device does the same, documents spread by gossip over a random,
+ * changing overlay. Candidates are ranked by link quality (share of successful connections)
+ * and checkpoint freshness (a peer synced recently resumes with a small delta), with some
+ * randomness so the overlay keeps mixing. Failed peers back off exponentially. Not
+ * thread-safe; {@link P2PReplicatorPool} drives it from its scheduler thread.
+ *
+ * @param <P> peer key, such as a peer URI
+ */
+public class GossipTopology<P> {
+    public static final int DEFAULT_FANOUT = 3;
+    public static final long DEFAULT_ROTATION_MS = 90_000;
+    /** A checkpoint this old is worth about half a fresh one. */
+    private static final long FRESHNESS_HALF_LIFE_MS = 10 * 60_000;
+    private static final double QUALITY_WEIGHT = 1.0;
+    private static final double FRESHNESS_WEIGHT = 0.5;
+    private static final double JITTER_WEIGHT = 0.5;
+
+    private static final class PeerState {
+        int successes;
+        int failures;
+        int failuresInRow;
+        long lastSyncedMs = -1;
+        long connectedAtMs = -1;
+        long notBeforeMs;
+    }
+
+    private final int fanout;
+    private final long rotationMs;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final Random random;
+    private final Map<P, PeerState> peers = new HashMap<>();
+    private final Set<P> active = new LinkedHashSet<>();
+    private long lastRotationMs;
+    // The rotation interval counts from the first selection, not from time zero
+    private boolean rotationStarted;
+
+    public GossipTopology(int fanout, long rotationMs, long baseBackoffMs, long maxBackoffMs, @NonNull Random random) {
+        this.fanout = fanout;
+        this.rotationMs = rotationMs;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.random = random;
+    }
+
+    public void addPeer(@NonNull P peer) {
+        peers.putIfAbsent(peer, new PeerState());
+    }
+
+    public void removePeer(@NonNull P peer) {
+        peers.remove(peer);
+        active.remove(peer);
+    }
+
+    /** The replicator to {@code peer} connected and is exchanging changes. */
+    public void onConnected(@NonNull P peer, long nowMs) {
+        PeerState state = peers.get(peer);
+        if (state == null) return;
+        state.failuresInRow = 0;
+        if (state.connectedAtMs < 0) {
+            state.connectedAtMs = nowMs;
+            state.successes++;
+        }
+    }
+
+    /** The replicator to {@code peer} caught up; its checkpoint is now current. */
+    public void onSynced(@NonNull P peer, long nowMs) {
+        onConnected(peer, nowMs);
+        PeerState state = peers.get(peer);
+        if (state != null) state.lastSyncedMs = nowMs;
+    }
+
+    /** The replicator to {@code peer} stopped with an error; it is dropped and backs off. */
+    public void onFailed(@NonNull P peer, long nowMs) {
+        PeerState state = peers.get(peer);
+        if (state == null) return;
+        state.failures++;
+        state.notBeforeMs = nowMs + Math.min(maxBackoffMs, baseBackoffMs << Math.min(state.failuresInRow, 20));
+        state.failuresInRow++;
+        state.connectedAtMs = -1;
+        active.remove(peer);
+    }
+
+    /**
+     * The peers to replicate with now: tops the active set up to the fanout and, once per
+     * rotation interval, replaces the longest-held peer when another candidate is available.
+     */
+    @NonNull
+    public Set<P> select(long nowMs) {
+        if (rotationStarted && active.size() >= fanout && nowMs - lastRotationMs >= rotationMs) {
+            P oldest = null;
+            for (P peer : active) {
+                if (oldest == null || connectedAt(peer) < connectedAt(oldest)) oldest = peer;
+            }
+            if (oldest != null && !candidates(nowMs).isEmpty()) {
+                active.remove(oldest);
+                PeerState state = peers.get(oldest);
+                state.connectedAtMs = -1;
+                // Sit out one interval so the slot goes to someone else
+                state.notBeforeMs = nowMs + rotationMs;
+            }
+            lastRotationMs = nowMs;
+        }
+        if (active.size() < fanout) {
+            for (P peer : candidates(nowMs)) {
+                if (active.size() >= fanout) break;
+                active.add(peer);
+            }
+            if (!rotationStarted && !active.isEmpty()) {
+                rotationStarted = true;
+                lastRotationMs = nowMs;
+            }
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(active));
+    }
+
+    public int size() {
+        return peers.size();
+    }
+
+    /** Eligible peers that are not active, best first. */
+    private List<P> candidates(long nowMs) {
+        List<P> candidates = new ArrayList<>();
+        Map<P, Double> scores = new HashMap<>();
+        for (Map.Entry<P, PeerState> entry : peers.entrySet()) {
+            if (active.contains(entry.getKey()) || entry.getValue().notBeforeMs > nowMs) continue;
+            candidates.add(entry.getKey());
+            scores.put(entry.getKey(), score(entry.getValue(), nowMs) + JITTER_WEIGHT * random.nextDouble());
+        }
+        candidates.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        return candidates;
+    }
+
+    private static double score(PeerState state, long nowMs) {
+        double quality = (state.successes + 1.0) / (state.successes + state.failures + 2.0);
+        double freshness = state.lastSyncedMs < 0 ? 0
+                : Math.pow(0.5, (double) (nowMs - state.lastSyncedMs) / FRESHNESS_HALF_LIFE_MS);
+        return QUALITY_WEIGHT * quality + FRESHNESS_WEIGHT * freshness;
+    }
+
+    private long connectedAt(P peer) {
+        long connectedAtMs = peers.get(peer).connectedAtMs;
+        // Not connected yet counts as just connected, so it is not rotated out before it starts
+        return connectedAtMs < 0 ? Long.MAX_VALUE : connectedAtMs;
+    }
+}
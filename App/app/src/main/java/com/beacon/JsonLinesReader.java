@@ -0,0 +1,115 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a JSON Lines file one line at a time through memory-mapped windows, so a snapshot of
+ * any size is never loaded whole: only the current window is mapped, and each line is decoded
+ * on its own. A line that runs past the end of a window is re-read from a window starting at
+ * that line. Not thread-safe.
+ */
+public final class JsonLinesReader implements Closeable {
+    public static final int DEFAULT_WINDOW_BYTES = 32 << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowBytes;
+    private MappedByteBuffer window;
+    /** File offset of the window's first byte. */
+    private long windowStart;
+    private long lineNumber;
+    private byte[] scratch = new byte[4096];
+
+    public JsonLinesReader(@NonNull File file) throws IOException {
+        this(file, DEFAULT_WINDOW_BYTES);
+    }
+
+    /** @param windowBytes how much of the file is mapped at once; also the longest line allowed */
+    public JsonLinesReader(@NonNull File file, int windowBytes) throws IOException {
+        // RandomAccessFile rather than FileChannel.open, which needs API 26
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        this.size = channel.size();
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * The next line that is not blank, without its line terminator, or null at the end of the
+     * file. The last line needs no terminator.
+     */
+    public String next() throws IOException {
+        while (true) {
+            if ((window == null || !window.hasRemaining()) && !map(window == null ? 0 : windowStart + window.limit())) {
+                return null;
+            }
+            int start = window.position();
+            int end = indexOfNewline(start);
+            if (end < 0) {
+                if (windowStart + window.limit() < size) {
+                    if (start == 0) {
+                        throw new IOException("Line " + (lineNumber + 1) + " is longer than " + windowBytes + " bytes");
+                    }
+                    map(windowStart + start);
+                    continue;
+                }
+                end = window.limit();
+            }
+            lineNumber++;
+            window.position(Math.min(end + 1, window.limit()));
+            int length = end - start;
+            if (length > 0 && window.get(start + length - 1) == '\r') length--;
+            if (isBlank(start, length)) continue;
+            return decode(start, length);
+        }
+    }
+
+    /** Lines read so far, blank ones included; the number of the line {@link #next} last returned. */
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private boolean map(long position) throws IOException {
+        if (position >= size) return false;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowBytes, size - position));
+        windowStart = position;
+        return true;
+    }
+
+    private int indexOfNewline(int from) {
+        int limit = window.limit();
+        for (int i = from; i < limit; i++) {
+            if (window.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    private boolean isBlank(int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            byte b = window.get(i);
+            if (b != ' ' && b != '\t') return false;
+        }
+        return true;
+    }
+
+    private String decode(int start, int length) {
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+        int position = window.position();
+        window.position(start);
+        window.get(scratch, 0, length);
+        window.position(position);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,54 @@
+package com.beacon;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with power-of-two buckets: bucket 0 holds 0, bucket i holds
+ * values in [2^(i-1), 2^i). Recording is a few atomic adds; percentiles are approximate.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        sum.add(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0-100), or 0 when empty.
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) return i == 0 ? 0 : (1L << i) - 1;
+        }
+        return (1L << (BUCKETS - 1)) - 1;
+    }
+}
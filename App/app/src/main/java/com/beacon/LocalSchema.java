@@ -0,0 +1,53 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableDocument;
+
+/**
+ * Version stamp of the local document layout, kept in a collection that is never replicated.
+ * A database written by an older layout is not reused across restarts, unless a migration
+ * brings it forward.
+ */
+public final class LocalSchema {
+
+    /**
+     * Bump whenever the shape of locally stored documents changes incompatibly. Version 2
+     * moved responses and offers into claim and offer documents ({@link RequestMigration});
+     * version 3 moved everything out of the default collection ({@link CollectionMigration});
+     * version 4 shortened property names ({@link CompactKeysMigration}).
+     */
+    public static final int CURRENT_VERSION = 4;
+
+    static final String COLLECTION = "local_meta";
+    private static final String DOC_ID = "schema";
+    private static final String KEY_VERSION = "version";
+
+    private LocalSchema() {}
+
+    /**
+     * @return the stored schema version, or 0 if the database was never stamped
+     */
+    public static int storedVersion(@NonNull Database database) throws CouchbaseLiteException {
+        Collection meta = database.getCollection(COLLECTION);
+        if (meta == null) return 0;
+        Document doc = meta.getDocument(DOC_ID);
+        return doc == null ? 0 : doc.getInt(KEY_VERSION);
+    }
+
+    public static boolean isCurrent(@NonNull Database database) throws CouchbaseLiteException {
+        return storedVersion(database) == CURRENT_VERSION;
+    }
+
+    public static void stamp(@NonNull Database database) throws CouchbaseLiteException {
+        Collection meta = database.createCollection(COLLECTION);
+        MutableDocument doc = new MutableDocument(DOC_ID);
+        doc.setInt(KEY_VERSION, CURRENT_VERSION);
+        doc.setLong("stamped_at", System.currentTimeMillis());
+        meta.save(doc);
+    }
+}
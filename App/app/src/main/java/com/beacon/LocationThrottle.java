@@ -0,0 +1,145 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides which location fixes are worth a revision. A fix is dropped when it is too
+ * inaccurate or has not moved past the distance threshold, which grows with speed so a
+ * moving responder is not written every few metres; what remains is coalesced to at most one
+ * revision per interval, keeping only the newest fix. A stationary responder is still
+ * re-published after the heartbeat so its position does not look stale. Pure Java; see
+ * {@link ResponderLocationPublisher}.
+ */
+public class LocationThrottle {
+    /** Type of the document the published fixes are written to. */
+    public static final String DOC_TYPE = "responder_location";
+    public static final long DEFAULT_MIN_INTERVAL_MS = 10_000;
+    public static final long DEFAULT_HEARTBEAT_MS = 300_000;
+    public static final double DEFAULT_MIN_DISTANCE_M = 25;
+    public static final double DEFAULT_MAX_DISTANCE_M = 250;
+    public static final double DEFAULT_MAX_ACCURACY_M = 100;
+    /** Distance threshold is the distance covered at the current speed in this long. */
+    private static final double THRESHOLD_SECONDS = 15;
+    // Weight of the newest sample in the speed estimate
+    private static final double SPEED_SMOOTHING = 0.3;
+
+    public static final class Fix {
+        public final double latitude;
+        public final double longitude;
+        public final float accuracyM;
+        public final long timeMs;
+
+        public Fix(double latitude, double longitude, float accuracyM, long timeMs) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracyM = accuracyM;
+            this.timeMs = timeMs;
+        }
+    }
+
+    private final long minIntervalMs;
+    private final long heartbeatMs;
+    private final double minDistanceM;
+    private final double maxDistanceM;
+    private final double maxAccuracyM;
+
+    private Fix lastPublished;
+    private Fix lastAccepted;
+    private Fix pending;
+    private double speedMps;
+    private long received;
+    private long dropped;
+    private long coalesced;
+    private long published;
+
+    public LocationThrottle() {
+        this(DEFAULT_MIN_INTERVAL_MS, DEFAULT_HEARTBEAT_MS, DEFAULT_MIN_DISTANCE_M, DEFAULT_MAX_DISTANCE_M,
+                DEFAULT_MAX_ACCURACY_M);
+    }
+
+    public LocationThrottle(long minIntervalMs, long heartbeatMs, double minDistanceM, double maxDistanceM,
+                            double maxAccuracyM) {
+        this.minIntervalMs = minIntervalMs;
+        this.heartbeatMs = heartbeatMs;
+        this.minDistanceM = minDistanceM;
+        this.maxDistanceM = maxDistanceM;
+        this.maxAccuracyM = maxAccuracyM;
+    }
+
+    /**
+     * Offer a new fix. Returns the fix to publish now, or null when it was dropped or is
+     * held until the interval has passed; see {@link #poll}.
+     */
+    public synchronized Fix offer(@NonNull Fix fix) {
+        received++;
+        // Checked before the first fix too, or a coarse one would be published as the position
+        if (fix.accuracyM > maxAccuracyM) {
+            dropped++;
+            return null;
+        }
+        if (lastPublished == null) return publish(fix);
+        if (fix.timeMs <= lastAccepted.timeMs) {
+            dropped++;
+            return null;
+        }
+
+        double step = ResponderSpatialIndex.distanceMeters(lastAccepted.latitude, lastAccepted.longitude,
+                fix.latitude, fix.longitude);
+        double sampleMps = step * 1000 / (fix.timeMs - lastAccepted.timeMs);
+        speedMps = SPEED_SMOOTHING * sampleMps + (1 - SPEED_SMOOTHING) * speedMps;
+        lastAccepted = fix;
+
+        double moved = ResponderSpatialIndex.distanceMeters(lastPublished.latitude, lastPublished.longitude,
+                fix.latitude, fix.longitude);
+        boolean significant = moved >= Math.max(distanceThresholdM(), fix.accuracyM);
+        boolean heartbeat = fix.timeMs - lastPublished.timeMs >= heartbeatMs;
+        if (!significant && !heartbeat) {
+            dropped++;
+            return null;
+        }
+        if (fix.timeMs - lastPublished.timeMs >= minIntervalMs) return publish(fix);
+        if (pending != null) coalesced++;
+        pending = fix;
+        return null;
+    }
+
+    /**
+     * The held fix, once the interval since the last revision has passed; call periodically.
+     */
+    public synchronized Fix poll(long nowMs) {
+        if (pending == null || nowMs - lastPublished.timeMs < minIntervalMs) return null;
+        return publish(pending);
+    }
+
+    /**
+     * Current distance threshold: the distance covered at the estimated speed in
+     * {@value #THRESHOLD_SECONDS} seconds, within the configured bounds.
+     */
+    public synchronized double distanceThresholdM() {
+        return Math.max(minDistanceM, Math.min(maxDistanceM, speedMps * THRESHOLD_SECONDS));
+    }
+
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    private Fix publish(Fix fix) {
+        if (lastAccepted == null) lastAccepted = fix;
+        lastPublished = fix;
+        pending = null;
+        published++;
+        return fix;
+    }
+}
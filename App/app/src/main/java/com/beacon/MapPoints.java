@@ -0,0 +1,40 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the map should show, keyed by document ID. Written from the data updaters' threads,
+ * read by {@link MapRenderer} on its own thread.
+ */
+public class MapPoints {
+    private final Map<String, MarkerClusterer.Point> points = new ConcurrentHashMap<>();
+
+    public void put(@NonNull MarkerClusterer.Point point) {
+        points.put(point.id, point);
+    }
+
+    public void remove(@NonNull String id) {
+        points.remove(id);
+    }
+
+    /**
+     * Remove {@code id} if it is a request point; a responder with the same ID is left alone.
+     */
+    public void removeRequest(@NonNull String id) {
+        points.computeIfPresent(id, (key, point) -> point.style == MarkerClusterer.Style.REQUEST ? null : point);
+    }
+
+    @NonNull
+    public List<MarkerClusterer.Point> values() {
+        return new ArrayList<>(points.values());
+    }
+
+    public int size() {
+        return points.size();
+    }
+}
@@ -0,0 +1,162 @@
+package com.beacon;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws {@link MapPoints} on the map. Clustering and diffing run on a background thread,
+ * limited to the visible region and debounced after camera moves and data changes; the UI
+ * thread only applies the resulting marker operations. Time spent on each side is kept per
+ * frame so slow frames show up in the log.
+ */
+public class MapRenderer {
+    private static final String TAG = "MAP_RENDER";
+    private static final long DEBOUNCE_MS = 150;
+    // Off-screen margin, as a fraction of the viewport on each side
+    private static final double VIEWPORT_PADDING = 0.25;
+    private static final long SLOW_FRAME_MS = 16;
+    private static final int LOG_EVERY_FRAMES = 50;
+
+    private final GoogleMap map;
+    private final MapPoints points;
+    private final MarkerClusterer clusterer = new MarkerClusterer();
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final LatencyHistogram clusterMs = new LatencyHistogram();
+    private final LatencyHistogram applyMs = new LatencyHistogram();
+    private volatile MarkerClusterer.Viewport viewport;
+    private volatile float zoom;
+    private boolean renderScheduled;
+    // Only touched on executor: what the UI has been told to show
+    private Map<String, MarkerClusterer.MarkerSpec> rendered = new HashMap<>();
+    // Only touched on the UI thread
+    private final Map<String, Marker> markers = new HashMap<>();
+
+    public MapRenderer(@NonNull GoogleMap map, @NonNull MapPoints points) {
+        this.map = map;
+        this.points = points;
+    }
+
+    /**
+     * Re-render once the camera settles. Call on the UI thread.
+     */
+    public void start() {
+        map.setOnCameraIdleListener(this::onCameraIdle);
+        onCameraIdle();
+    }
+
+    public void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Points were added, moved or removed; safe to call from any thread.
+     */
+    public void onDataChanged() {
+        scheduleRender();
+    }
+
+    private void onCameraIdle() {
+        LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+        CameraPosition camera = map.getCameraPosition();
+        viewport = new MarkerClusterer.Viewport(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude);
+        zoom = camera.zoom;
+        scheduleRender();
+    }
+
+    private synchronized void scheduleRender() {
+        if (renderScheduled || executor.isShutdown()) return;
+        renderScheduled = true;
+        executor.schedule(this::render, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void render() {
+        synchronized (this) {
+            renderScheduled = false;
+        }
+        MarkerClusterer.Viewport current = viewport;
+        if (current == null) return;
+
+        long start = System.nanoTime();
+        Map<String, MarkerClusterer.MarkerSpec> next = clusterer.cluster(points.values(),
+                current.padded(VIEWPORT_PADDING), zoom);
+        MarkerDiff diff = MarkerDiff.between(rendered, next);
+        rendered = next;
+        clusterMs.record((System.nanoTime() - start) / 1_000_000);
+        if (!diff.isEmpty()) uiHandler.post(() -> apply(diff));
+    }
+
+    private void apply(MarkerDiff diff) {
+        long start = System.nanoTime();
+        for (String key : diff.removed) {
+            Marker marker = markers.remove(key);
+            if (marker != null) marker.remove();
+        }
+        for (MarkerClusterer.MarkerSpec spec : diff.added) {
+            Marker marker = map.addMarker(new MarkerOptions()
+                    .position(new LatLng(spec.latitude, spec.longitude))
+                    .title(title(spec))
+                    .icon(BitmapDescriptorFactory.defaultMarker(hue(spec.style))));
+            if (marker != null) markers.put(spec.key, marker);
+        }
+        for (MarkerClusterer.MarkerSpec spec : diff.moved) {
+            Marker marker = markers.get(spec.key);
+            if (marker != null) marker.setPosition(new LatLng(spec.latitude, spec.longitude));
+        }
+        for (MarkerClusterer.MarkerSpec spec : diff.restyled) {
+            Marker marker = markers.get(spec.key);
+            if (marker == null) continue;
+            marker.setIcon(BitmapDescriptorFactory.defaultMarker(hue(spec.style)));
+            marker.setTitle(title(spec));
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        applyMs.record(elapsedMs);
+        if (elapsedMs > SLOW_FRAME_MS) Log.w(TAG, "Slow frame: " + elapsedMs + " ms for " + diff);
+        if (applyMs.count() % LOG_EVERY_FRAMES == 0) Log.i(TAG, metrics());
+    }
+
+    /**
+     * Frame times so far: clustering off the UI thread, marker updates on it.
+     */
+    @NonNull
+    public String metrics() {
+        return "frames=" + applyMs.count() + " markers=" + markers.size()
+                + " cluster p50/p95=" + clusterMs.percentile(50) + "/" + clusterMs.percentile(95) + "ms"
+                + " apply p50/p95=" + applyMs.percentile(50) + "/" + applyMs.percentile(95) + "ms";
+    }
+
+    private static String title(MarkerClusterer.MarkerSpec spec) {
+        if (spec.isCluster()) return spec.count + " nearby";
+        switch (spec.style) {
+            case REQUEST: return "Emergency request";
+            case AVAILABLE: return "Responder (available)";
+            default: return "Responder (occupied)";
+        }
+    }
+
+    private static float hue(MarkerClusterer.Style style) {
+        switch (style) {
+            case REQUEST: return BitmapDescriptorFactory.HUE_RED;
+            case AVAILABLE: return BitmapDescriptorFactory.HUE_GREEN;
+            default: return BitmapDescriptorFactory.HUE_ORANGE;
+        }
+    }
+}
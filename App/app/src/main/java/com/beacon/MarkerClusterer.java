@@ -0,0 +1,207 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Grid clustering of map points in screen space. Points are projected to Web Mercator pixels
+ * at the integer zoom level and bucketed into square cells; a cell with one point becomes that
+ * point's marker and a fuller cell becomes one cluster marker at the members' centroid. Only
+ * points inside the (padded) viewport are considered. Marker keys are stable across pans and
+ * data changes, so consecutive results can be diffed with {@link MarkerDiff}. Pure Java.
+ */
+public class MarkerClusterer {
+    public static final int DEFAULT_CELL_PX = 96;
+    /** From this zoom on every point gets its own marker. */
+    public static final int DEFAULT_MAX_CLUSTER_ZOOM = 17;
+    private static final int TILE_PX = 256;
+
+    public enum Style { AVAILABLE, OCCUPIED, REQUEST }
+
+    public static final class Point {
+        public final String id;
+        public final double latitude;
+        public final double longitude;
+        public final Style style;
+
+        public Point(@NonNull String id, double latitude, double longitude, @NonNull Style style) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.style = style;
+        }
+    }
+
+    /** Visible bounds; {@code west > east} when the view crosses the antimeridian. */
+    public static final class Viewport {
+        public final double south;
+        public final double west;
+        public final double north;
+        public final double east;
+
+        public Viewport(double south, double west, double north, double east) {
+            this.south = south;
+            this.west = west;
+            this.north = north;
+            this.east = east;
+        }
+
+        public boolean contains(double latitude, double longitude) {
+            if (latitude < south || latitude > north) return false;
+            return west <= east ? longitude >= west && longitude <= east : longitude >= west || longitude <= east;
+        }
+
+        /**
+         * The viewport grown by {@code fraction} of its size on every side, so markers just
+         * off screen are ready when the user pans.
+         */
+        @NonNull
+        public Viewport padded(double fraction) {
+            double height = north - south;
+            double width = west <= east ? east - west : 360 - west + east;
+            double paddedSouth = Math.max(-90, south - height * fraction);
+            double paddedNorth = Math.min(90, north + height * fraction);
+            if (width * (1 + 2 * fraction) >= 360) return new Viewport(paddedSouth, -180, paddedNorth, 180);
+            return new Viewport(paddedSouth, wrap(west - width * fraction), paddedNorth, wrap(east + width * fraction));
+        }
+
+        private static double wrap(double longitude) {
+            if (longitude < -180) return longitude + 360;
+            if (longitude > 180) return longitude - 360;
+            return longitude;
+        }
+    }
+
+    public static final class MarkerSpec {
+        public final String key;
+        public final double latitude;
+        public final double longitude;
+        /** 1 for a single point. */
+        public final int count;
+        public final Style style;
+
+        MarkerSpec(String key, double latitude, double longitude, int count, Style style) {
+            this.key = key;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.count = count;
+            this.style = style;
+        }
+
+        public boolean isCluster() {
+            return count > 1;
+        }
+
+        boolean samePosition(MarkerSpec other) {
+            return latitude == other.latitude && longitude == other.longitude;
+        }
+
+        boolean sameLook(MarkerSpec other) {
+            return count == other.count && style == other.style;
+        }
+    }
+
+    private final int cellPx;
+    private final int maxClusterZoom;
+
+    public MarkerClusterer() {
+        this(DEFAULT_CELL_PX, DEFAULT_MAX_CLUSTER_ZOOM);
+    }
+
+    public MarkerClusterer(int cellPx, int maxClusterZoom) {
+        this.cellPx = cellPx;
+        this.maxClusterZoom = maxClusterZoom;
+    }
+
+    /**
+     * Markers for the points inside {@code viewport} at {@code zoom}, keyed by marker key.
+     */
+    @NonNull
+    public Map<String, MarkerSpec> cluster(@NonNull Iterable<Point> points, @NonNull Viewport viewport, float zoom) {
+        int level = (int) Math.floor(zoom);
+        boolean clustering = level < maxClusterZoom;
+        double worldPx = TILE_PX * Math.pow(2, level);
+        Map<Long, Cell> cells = new HashMap<>();
+        Map<String, MarkerSpec> markers = new LinkedHashMap<>();
+
+        for (Point point : points) {
+            if (!viewport.contains(point.latitude, point.longitude)) continue;
+            if (!clustering) {
+                markers.put(pointKey(point.id), single(point));
+                continue;
+            }
+            long cx = (long) Math.floor(x(point.longitude) * worldPx / cellPx);
+            long cy = (long) Math.floor(y(point.latitude) * worldPx / cellPx);
+            long cellKey = (cx << 32) ^ (cy & 0xffffffffL);
+            Cell cell = cells.get(cellKey);
+            if (cell == null) {
+                cell = new Cell(cx, cy);
+                cells.put(cellKey, cell);
+            }
+            cell.add(point);
+        }
+        for (Cell cell : cells.values()) {
+            if (cell.count == 1) {
+                markers.put(pointKey(cell.first.id), single(cell.first));
+            } else {
+                String key = "c:" + level + ":" + cell.cx + ":" + cell.cy;
+                markers.put(key, new MarkerSpec(key, cell.latSum / cell.count, cell.lonSum / cell.count,
+                        cell.count, cell.style()));
+            }
+        }
+        return markers;
+    }
+
+    private static String pointKey(String id) {
+        return "p:" + id;
+    }
+
+    private static MarkerSpec single(Point point) {
+        return new MarkerSpec(pointKey(point.id), point.latitude, point.longitude, 1, point.style);
+    }
+
+    /** Web Mercator x in [0, 1). */
+    private static double x(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    /** Web Mercator y in [0, 1), clamped near the poles. */
+    private static double y(double latitude) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.05, Math.min(85.05, latitude))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static final class Cell {
+        final long cx;
+        final long cy;
+        Point first;
+        int count;
+        double latSum;
+        double lonSum;
+        int requests;
+        int available;
+
+        Cell(long cx, long cy) {
+            this.cx = cx;
+            this.cy = cy;
+        }
+
+        void add(Point point) {
+            if (first == null) first = point;
+            count++;
+            latSum += point.latitude;
+            lonSum += point.longitude;
+            if (point.style == Style.REQUEST) requests++;
+            else if (point.style == Style.AVAILABLE) available++;
+        }
+
+        /** Requests stand out over responders; any free responder marks the cluster available. */
+        Style style() {
+            if (requests > 0) return Style.REQUEST;
+            return available > 0 ? Style.AVAILABLE : Style.OCCUPIED;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Marker operations that turn one clustering result into the next. A marker that both moved
+ * and changed look appears in {@link #moved} and {@link #restyled}.
+ */
+public final class MarkerDiff {
+    public final List<MarkerClusterer.MarkerSpec> added;
+    public final List<MarkerClusterer.MarkerSpec> moved;
+    public final List<MarkerClusterer.MarkerSpec> restyled;
+    public final List<String> removed;
+
+    private MarkerDiff(List<MarkerClusterer.MarkerSpec> added, List<MarkerClusterer.MarkerSpec> moved,
+                       List<MarkerClusterer.MarkerSpec> restyled, List<String> removed) {
+        this.added = Collections.unmodifiableList(added);
+        this.moved = Collections.unmodifiableList(moved);
+        this.restyled = Collections.unmodifiableList(restyled);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    @NonNull
+    public static MarkerDiff between(@NonNull Map<String, MarkerClusterer.MarkerSpec> before,
+                                     @NonNull Map<String, MarkerClusterer.MarkerSpec> after) {
+        List<MarkerClusterer.MarkerSpec> added = new ArrayList<>();
+        List<MarkerClusterer.MarkerSpec> moved = new ArrayList<>();
+        List<MarkerClusterer.MarkerSpec> restyled = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (MarkerClusterer.MarkerSpec spec : after.values()) {
+            MarkerClusterer.MarkerSpec old = before.get(spec.key);
+            if (old == null) {
+                added.add(spec);
+                continue;
+            }
+            if (!old.samePosition(spec)) moved.add(spec);
+            if (!old.sameLook(spec)) restyled.add(spec);
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) removed.add(key);
+        }
+        return new MarkerDiff(added, moved, restyled, removed);
+    }
+
+    /** Marker calls needed to apply the diff. */
+    public int operations() {
+        return added.size() + moved.size() + restyled.size() + removed.size();
+    }
+
+    public boolean isEmpty() {
+        return operations() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added.size() + " ~" + moved.size() + " *" + restyled.size() + " -" + removed.size();
+    }
+}
@@ -0,0 +1,59 @@
+package com.beacon;
+
+import androidx.annotation.Nullable;
+
+import com.couchbase.lite.Conflict;
+import com.couchbase.lite.ConflictResolver;
+import com.couchbase.lite.Document;
+
+/**
+ * Resolves conflicts on responder and location documents by keeping the newer revision whole.
+ * Each of these has a single writer that replaces it outright, so there is nothing to merge:
+ * a position's fix time or a user document's server timestamp says which revision is current.
+ * Ties go to the greater revision ID so both sides keep the same one.
+ */
+public class NewestRevisionConflictResolver implements ConflictResolver {
+
+    private final ReplicatorStats stats;
+
+    public NewestRevisionConflictResolver(ReplicatorStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public Document resolve(Conflict conflict) {
+        if (stats != null) stats.onConflictResolved();
+        return pick(conflict.getLocalDocument(), conflict.getRemoteDocument());
+    }
+
+    Document pick(Document local, Document remote) {
+        // A deleted side loses to the surviving revision
+        if (local == null) return remote;
+        if (remote == null) return local;
+        boolean remoteWins = remoteWins(
+                DocumentFields.getLong(local, DocumentKeys.UPDATED_AT),
+                local.getString(DocumentKeys.USER_LAST_UPDATED), local.getRevisionID(),
+                DocumentFields.getLong(remote, DocumentKeys.UPDATED_AT),
+                remote.getString(DocumentKeys.USER_LAST_UPDATED), remote.getRevisionID());
+        return remoteWins ? remote : local;
+    }
+
+    /**
+     * Whether the remote revision is the newer one: by fix time, then by the server's ISO-8601
+     * timestamp (always UTC, so it orders as text), then by revision ID. A missing time is older
+     * than any.
+     */
+    static boolean remoteWins(long localAt, @Nullable String localStamp, @Nullable String localRev,
+                              long remoteAt, @Nullable String remoteStamp, @Nullable String remoteRev) {
+        if (localAt != remoteAt) return remoteAt > localAt;
+        int byStamp = compare(remoteStamp, localStamp);
+        if (byStamp != 0) return byStamp > 0;
+        return compare(remoteRev, localRev) > 0;
+    }
+
+    private static int compare(@Nullable String a, @Nullable String b) {
+        if (a == null) return b == null ? 0 : -1;
+        if (b == null) return 1;
+        return a.compareTo(b);
+    }
+}
@@ -0,0 +1,173 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory view of open emergency requests, one ordered set per emergency type: highest
+ * severity first, then oldest first. Updates are O(log n) per document; reads return an
+ * immutable snapshot that is rebuilt only after a change, so the UI thread never touches
+ * the database.
+ */
+public class OpenRequestView {
+
+    /** One open request as the view keeps it. */
+    public static final class Entry {
+        public final String id;
+        public final String revisionId;
+        public final String emergencyType;
+        public final int severity;
+        public final long requestedAt;
+        /** Null when the request is offered to every responder. */
+        public final List<String> offeredTo;
+        /** NaN when the request was saved without a location. */
+        public final double latitude;
+        public final double longitude;
+
+        public Entry(@NonNull String id, String revisionId, @NonNull String emergencyType, int severity,
+                     long requestedAt, List<String> offeredTo) {
+            this(id, revisionId, emergencyType, severity, requestedAt, offeredTo, Double.NaN, Double.NaN);
+        }
+
+        public Entry(@NonNull String id, String revisionId, @NonNull String emergencyType, int severity,
+                     long requestedAt, List<String> offeredTo, double latitude, double longitude) {
+            this.id = id;
+            this.revisionId = revisionId;
+            this.emergencyType = emergencyType;
+            this.severity = severity;
+            this.requestedAt = requestedAt;
+            this.offeredTo = offeredTo;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public boolean hasLocation() {
+            return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+        }
+    }
+
+    static final Comparator<Entry> PRIORITY = (a, b) -> {
+        if (a.severity != b.severity) return Integer.compare(b.severity, a.severity);
+        if (a.requestedAt != b.requestedAt) return Long.compare(a.requestedAt, b.requestedAt);
+        return a.id.compareTo(b.id);
+    };
+
+    private final Map<String, Entry> byId = new HashMap<>();
+    private final Map<String, TreeSet<Entry>> byType = new HashMap<>();
+    private final Map<String, List<Entry>> snapshots = new HashMap<>();
+
+    /**
+     * Insert or replace an open request.
+     */
+    public synchronized void put(@NonNull Entry entry) {
+        Entry previous = byId.put(entry.id, entry);
+        if (previous != null) unlink(previous);
+        TreeSet<Entry> queue = byType.get(entry.emergencyType);
+        if (queue == null) {
+            queue = new TreeSet<>(PRIORITY);
+            byType.put(entry.emergencyType, queue);
+        }
+        queue.add(entry);
+        snapshots.remove(entry.emergencyType);
+    }
+
+    /**
+     * Drop a request that is no longer open, or was deleted or purged.
+     */
+    public synchronized void remove(@NonNull String id) {
+        Entry previous = byId.remove(id);
+        if (previous != null) unlink(previous);
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        byType.clear();
+        snapshots.clear();
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public synchronized Entry get(@NonNull String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Every open request, in no particular order.
+     */
+    @NonNull
+    public synchronized List<Entry> entries() {
+        return new ArrayList<>(byId.values());
+    }
+
+    /**
+     * Open requests of one type in priority order. The list is shared and immutable.
+     */
+    @NonNull
+    public synchronized List<Entry> snapshot(@NonNull String emergencyType) {
+        List<Entry> snapshot = snapshots.get(emergencyType);
+        if (snapshot == null) {
+            TreeSet<Entry> queue = byType.get(emergencyType);
+            snapshot = queue == null ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(queue));
+            snapshots.put(emergencyType, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Open requests of one type that a responder may claim, in priority order.
+     */
+    @NonNull
+    public List<Entry> offeredTo(@NonNull String emergencyType, @NonNull String responderId) {
+        List<Entry> all = snapshot(emergencyType);
+        List<Entry> offered = new ArrayList<>(all.size());
+        for (Entry entry : all) {
+            if (RequestLifecycle.canClaim(RequestLifecycle.STATUS_OPEN, entry.offeredTo, responderId)) {
+                offered.add(entry);
+            }
+        }
+        return offered;
+    }
+
+    /**
+     * Whether {@link #offeredTo(String, String, String)} would list {@code entry}, for
+     * checking the few requests a change touched without reading the whole type.
+     */
+    public static boolean isOfferedTo(@NonNull Entry entry, @NonNull String emergencyType,
+                                      @NonNull String responderId, String cell) {
+        return entry.emergencyType.equals(emergencyType)
+                && RequestLifecycle.canClaim(RequestLifecycle.STATUS_OPEN, entry.offeredTo, responderId)
+                && (cell == null || GeoChannels.isNear(entry.latitude, entry.longitude, cell));
+    }
+
+    /**
+     * {@link #offeredTo(String, String)} narrowed to requests in {@code cell} or its
+     * neighbours, and those without a location; a null cell narrows nothing.
+     */
+    @NonNull
+    public List<Entry> offeredTo(@NonNull String emergencyType, @NonNull String responderId, String cell) {
+        List<Entry> offered = offeredTo(emergencyType, responderId);
+        if (cell == null) return offered;
+        List<Entry> near = new ArrayList<>(offered.size());
+        for (Entry entry : offered) {
+            if (GeoChannels.isNear(entry.latitude, entry.longitude, cell)) near.add(entry);
+        }
+        return near;
+    }
+
+    private void unlink(Entry entry) {
+        TreeSet<Entry> queue = byType.get(entry.emergencyType);
+        queue.remove(entry);
+        if (queue.isEmpty()) byType.remove(entry.emergencyType);
+        snapshots.remove(entry.emergencyType);
+    }
+}
@@ -0,0 +1,201 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Feeds an {@link OpenRequestView} from one indexed query and then from collection change
+ * events, reading only the documents that changed instead of re-running a live query on
+ * every database change. Loading and updates share one thread, as in
+ * {@link ResponderIndexUpdater}; the listener is told after each batch which requests it put
+ * or took out, so it can update just those. A request leaves the
+ * view when any claim on it arrives, and its offer document, when there is one, replaces the
+ * offer an older client kept in the request.
+ */
+public class OpenRequestViewUpdater {
+    private static final String TAG = "OPEN_REQUEST_VIEW";
+
+    public interface Listener {
+        /**
+         * @param changedIds the requests this batch put into or took out of the view, or null
+         *                   when the listener should read the whole view: after the first load
+         *                   and on {@link #republish()}
+         */
+        void onViewChanged(@NonNull OpenRequestView view, @Nullable Set<String> changedIds);
+    }
+
+    private final Collection collection;
+    private final OpenRequestView view;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /** Open requests as stored, before their offer documents are applied. */
+    private final Map<String, OpenRequestView.Entry> requests = new HashMap<>();
+    private final Set<String> claimed = new HashSet<>();
+    private final Map<String, Offer> offers = new HashMap<>();
+    /** Requests put or removed since the listener was last told; only touched on the executor. */
+    private Set<String> changed = new HashSet<>();
+    private ListenerToken token;
+
+    private static final class Offer {
+        final String revisionId;
+        final List<String> offeredTo;
+
+        Offer(String revisionId, List<String> offeredTo) {
+            this.revisionId = revisionId;
+            this.offeredTo = offeredTo;
+        }
+    }
+
+    public OpenRequestViewUpdater(@NonNull Collection collection, @NonNull OpenRequestView view, Listener listener) {
+        this.collection = collection;
+        this.view = view;
+        this.listener = listener;
+    }
+
+    public void start() {
+        token = collection.addChangeListener(executor, change -> {
+            for (String docId : change.getDocumentIDs()) {
+                apply(docId);
+            }
+            Set<String> batch = changed;
+            changed = new HashSet<>();
+            if (listener != null && !batch.isEmpty()) listener.onViewChanged(view, batch);
+        });
+        executor.execute(() -> {
+            load();
+            changed.clear();
+            if (listener != null) listener.onViewChanged(view, null);
+        });
+    }
+
+    public synchronized void stop() {
+        if (token != null) token.remove();
+        executor.shutdown();
+    }
+
+    /**
+     * Hands the view to the listener again without a change, for when what the listener
+     * shows depends on something else, such as the device's cell.
+     */
+    public synchronized void republish() {
+        if (listener == null || executor.isShutdown()) return;
+        executor.execute(() -> listener.onViewChanged(view, null));
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try (ResultSet results = RequestQueries.openRequests(collection).execute()) {
+            for (Result result : results) {
+                String type = result.getString(2);
+                if (type == null) continue;
+                OpenRequestView.Entry entry = new OpenRequestView.Entry(result.getString(0), result.getString(1), type,
+                        result.getInt(3), result.getLong(4), RequestClaims.offeredTo(result.getArray(5)),
+                        result.getValue(6) != null ? result.getDouble(6) : Double.NaN,
+                        result.getValue(7) != null ? result.getDouble(7) : Double.NaN);
+                requests.put(entry.id, entry);
+            }
+            try (ResultSet claims = RequestQueries.claims(collection).execute()) {
+                for (Result result : claims) claimed.add(result.getString(0));
+            }
+            try (ResultSet offerResults = RequestQueries.offers(collection).execute()) {
+                for (Result result : offerResults) {
+                    offers.put(result.getString(0), new Offer(result.getString(1),
+                            RequestClaims.offeredTo(result.getArray(2))));
+                }
+            }
+            for (String id : requests.keySet()) refresh(id);
+            // What older clients wrote with the long names goes through the per-document path
+            try (ResultSet legacy = RequestQueries.legacyDocuments(collection).execute()) {
+                for (Result result : legacy) apply(result.getString(0));
+            }
+            Log.i(TAG, "Loaded " + view.size() + " open requests in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not load open requests", e);
+        }
+    }
+
+    private void apply(String docId) {
+        try {
+            Document doc = collection.getDocument(docId);
+            String type = doc != null ? doc.getString(DocumentKeys.TYPE) : null;
+            if (RequestLifecycle.CLAIM_TYPE.equals(type)) {
+                // Claims are never withdrawn, so the request is gone for good
+                String requestId = DocumentFields.getString(doc, DocumentKeys.REQUEST_ID);
+                claimed.add(requestId);
+                remove(requestId);
+                return;
+            }
+            if (RequestLifecycle.OFFER_TYPE.equals(type)) {
+                String requestId = DocumentFields.getString(doc, DocumentKeys.REQUEST_ID);
+                offers.put(requestId, new Offer(doc.getRevisionID(), RequestClaims.offeredTo(doc)));
+                refresh(requestId);
+                return;
+            }
+            if (doc == null && RequestLifecycle.requestIdOfOffer(docId) != null) {
+                offers.remove(RequestLifecycle.requestIdOfOffer(docId));
+                refresh(RequestLifecycle.requestIdOfOffer(docId));
+                return;
+            }
+            // An older client responds by marking the request itself
+            if (doc == null || !"emergency_request".equals(type)
+                    || !RequestLifecycle.STATUS_OPEN.equals(DocumentFields.status(doc))
+                    || DocumentFields.getString(doc, DocumentKeys.EMERGENCY_TYPE) == null) {
+                requests.remove(docId);
+                remove(docId);
+                return;
+            }
+            requests.put(docId, new OpenRequestView.Entry(docId, doc.getRevisionID(),
+                    DocumentFields.getString(doc, DocumentKeys.EMERGENCY_TYPE),
+                    DocumentFields.getInt(doc, DocumentKeys.SEVERITY), DocumentFields.getLong(doc, DocumentKeys.REQUESTED_AT),
+                    RequestClaims.offeredTo(doc),
+                    DocumentFields.contains(doc, DocumentKeys.LATITUDE) ? DocumentFields.getDouble(doc, DocumentKeys.LATITUDE) : Double.NaN,
+                    DocumentFields.contains(doc, DocumentKeys.LONGITUDE) ? DocumentFields.getDouble(doc, DocumentKeys.LONGITUDE) : Double.NaN));
+            refresh(docId);
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not read " + docId, e);
+        }
+    }
+
+    /** Puts a request into the view with its current offer, or takes it out once claimed. */
+    private void refresh(String requestId) {
+        OpenRequestView.Entry request = requests.get(requestId);
+        if (request == null || claimed.contains(requestId)) {
+            remove(requestId);
+            return;
+        }
+        changed.add(requestId);
+        Offer offer = offers.get(requestId);
+        if (offer == null) {
+            view.put(request);
+            return;
+        }
+        // Both revisions, so a new wave reads as a change to the request
+        view.put(new OpenRequestView.Entry(request.id, request.revisionId + "+" + offer.revisionId,
+                request.emergencyType, request.severity, request.requestedAt, offer.offeredTo,
+                request.latitude, request.longitude));
+    }
+
+    private void remove(String requestId) {
+        if (view.get(requestId) == null) return;
+        view.remove(requestId);
+        changed.add(requestId);
+    }
+}
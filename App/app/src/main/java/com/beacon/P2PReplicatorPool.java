@@ -0,0 +1,181 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorActivityLevel;
+import com.couchbase.lite.ReplicatorStatus;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs continuous replicators to the peers a {@link GossipTopology} selects, keyed by peer
+ * URI: a bounded, rotating set rather than one replicator per discovered peer. All state is
+ * touched only from a single scheduler thread, so discovery callbacks and replicator change
+ * listeners never race each other.
+ */
+public class P2PReplicatorPool {
+    private static final String TAG = "P2PReplicatorPool";
+
+    public interface ReplicatorFactory {
+        Replicator create(URI peerUri) throws CouchbaseLiteException;
+
+        /** The replicator created for {@code peerUri} was stopped and let go of. */
+        default void released(URI peerUri) {}
+    }
+
+    private final ReplicatorFactory factory;
+    private final GossipTopology<URI> topology;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final Map<URI, PeerReplication> running = new HashMap<>();
+    private final boolean resetCheckpoints;
+    // Peers whose checkpoint was reset already; later replicators to them resume from it
+    private final Set<URI> checkpointsReset = new HashSet<>();
+    private boolean shutdown;
+
+    /**
+     * @param rebalanceMs how often the topology is asked for rotations and backed-off peers
+     */
+    public P2PReplicatorPool(@NonNull ReplicatorFactory factory, @NonNull GossipTopology<URI> topology, long rebalanceMs) {
+        this(factory, topology, rebalanceMs, false);
+    }
+
+    /**
+     * @param resetCheckpoints pull everything again from each peer the first time, e.g. after
+     *                         the local database was reset
+     */
+    public P2PReplicatorPool(@NonNull ReplicatorFactory factory, @NonNull GossipTopology<URI> topology, long rebalanceMs,
+                             boolean resetCheckpoints) {
+        this.factory = factory;
+        this.resetCheckpoints = resetCheckpoints;
+        this.topology = topology;
+        scheduler.scheduleWithFixedDelay(this::rebalance, rebalanceMs, rebalanceMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Make a newly resolved peer a candidate; it is replicated with if the topology picks it.
+     */
+    public void addPeer(@NonNull URI peerUri) {
+        post(() -> {
+            if (shutdown) return;
+            topology.addPeer(peerUri);
+            rebalance();
+        });
+    }
+
+    /**
+     * Stop and release the replicator of a peer that went away.
+     */
+    public void removePeer(@NonNull URI peerUri) {
+        post(() -> {
+            topology.removePeer(peerUri);
+            PeerReplication peer = running.remove(peerUri);
+            if (peer != null) release(peer);
+            Log.i(TAG, "Peer removed: " + peerUri + " (active " + running.size() + ", known " + topology.size() + ")");
+            rebalance();
+        });
+    }
+
+    /**
+     * Stop every replicator; the pool cannot be reused afterwards. Discovery callbacks and
+     * replicator events that arrive later are dropped.
+     */
+    public synchronized void shutdown() {
+        if (scheduler.isShutdown()) return;
+        scheduler.execute(() -> {
+            shutdown = true;
+            for (PeerReplication peer : running.values()) release(peer);
+            running.clear();
+        });
+        scheduler.shutdown();
+    }
+
+    /** Runs {@code task} on the scheduler thread, unless the pool has been shut down. */
+    private synchronized void post(Runnable task) {
+        if (!scheduler.isShutdown()) scheduler.execute(task);
+    }
+
+    /** Stop replicators the topology dropped and start the ones it added. */
+    private void rebalance() {
+        if (shutdown) return;
+        Set<URI> wanted = topology.select(System.currentTimeMillis());
+        for (URI uri : new ArrayList<>(running.keySet())) {
+            if (!wanted.contains(uri)) {
+                release(running.remove(uri));
+                Log.i(TAG, "Rotated out " + uri);
+            }
+        }
+        for (URI uri : wanted) {
+            if (!running.containsKey(uri)) start(uri);
+        }
+    }
+
+    private void start(URI uri) {
+        try {
+            Replicator replicator = factory.create(uri);
+            PeerReplication peer = new PeerReplication(uri, replicator);
+            peer.listenerToken = replicator.addChangeListener(change -> {
+                ReplicatorStatus status = change.getStatus();
+                post(() -> onStatusChanged(peer, status));
+            });
+            running.put(uri, peer);
+            replicator.start(resetCheckpoints && checkpointsReset.add(uri));
+            Log.i(TAG, "Replicator started for " + uri + " (active " + running.size() + ", known " + topology.size() + ")");
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not create replicator for " + uri, e);
+            topology.onFailed(uri, System.currentTimeMillis());
+        }
+    }
+
+    private void onStatusChanged(PeerReplication peer, ReplicatorStatus status) {
+        // Ignore late events from a replicator the pool has already let go of
+        if (running.get(peer.uri) != peer) return;
+
+        long now = System.currentTimeMillis();
+        ReplicatorActivityLevel level = status.getActivityLevel();
+        if (level == ReplicatorActivityLevel.IDLE) {
+            topology.onSynced(peer.uri, now);
+        } else if (level == ReplicatorActivityLevel.BUSY) {
+            topology.onConnected(peer.uri, now);
+        } else if (level == ReplicatorActivityLevel.STOPPED) {
+            if (status.getError() != null) {
+                Log.w(TAG, "Replicator for " + peer.uri + " stopped: " + status.getError().getMessage());
+            }
+            running.remove(peer.uri);
+            release(peer);
+            // Backs the peer off and hands its slot to another one
+            topology.onFailed(peer.uri, now);
+            rebalance();
+        }
+    }
+
+    private void release(PeerReplication peer) {
+        if (peer.listenerToken != null) peer.listenerToken.remove();
+        peer.replicator.stop();
+        factory.released(peer.uri);
+    }
+
+    private static final class PeerReplication {
+        final URI uri;
+        final Replicator replicator;
+        ListenerToken listenerToken;
+
+        PeerReplication(URI uri, Replicator replicator) {
+            this.uri = uri;
+            this.replicator = replicator;
+        }
+    }
+}
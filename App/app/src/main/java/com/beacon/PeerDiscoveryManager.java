@@ -4,31 +4,66 @@ import android.content.Context;
 import android.net.nsd.NsdManager;
 import android.net.nsd.NsdServiceInfo;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PeerDiscoveryManager {
     private static final String TAG = "PeerDiscovery";
     private static final String SERVICE_TYPE = "_beaconp2p._tcp.";
+    private static final long RESOLVE_RETRY_DELAY_MS = 500;
+    // NSD reports a present service only once, so known services are resolved again to stay fresh
+    private static final long REFRESH_INTERVAL_MS = 60_000;
+    // A peer that misses three refreshes in a row is gone
+    private static final long PEER_TTL_MS = 3 * REFRESH_INTERVAL_MS;
 
     private final Context context;
     private final NsdManager nsdManager;
-    private final List<URI> discoveredUris = new ArrayList<>();
+    private final PeerRegistry registry = new PeerRegistry(PEER_TTL_MS);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Services found and not lost since, by name, for the refresh to resolve again
+    private final Map<String, NsdServiceInfo> knownServices = new ConcurrentHashMap<>();
+
+    // NSD only resolves one service at a time, so resolves are queued and run serially
+    private final ArrayDeque<NsdServiceInfo> resolveQueue = new ArrayDeque<>();
+    private final Set<String> queuedServiceNames = new HashSet<>();
+    private boolean resolving;
 
     private NsdManager.RegistrationListener registrationListener;
     private NsdManager.DiscoveryListener discoveryListener;
+    private volatile String registeredServiceName;
+
+    private final Runnable refresh = new Runnable() {
+        @Override public void run() {
+            int evicted = registry.evictStale(System.currentTimeMillis());
+            if (evicted > 0) Log.i(TAG, "Evicted " + evicted + " stale peers");
+            for (NsdServiceInfo serviceInfo : knownServices.values()) enqueueResolve(serviceInfo);
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
 
     public PeerDiscoveryManager(@NonNull Context context) {
         this.context = context;
         this.nsdManager = (NsdManager) context.getSystemService(Context.NSD_SERVICE);
     }
 
+    /**
+     * Registry of resolved peers; subscribe to it to follow peers as they come and go.
+     */
+    public PeerRegistry getRegistry() {
+        return registry;
+    }
+
     /**
      * Publish your own P2P listener over mDNS.
      */
@@ -41,6 +76,7 @@ public class PeerDiscoveryManager {
         registrationListener = new NsdManager.RegistrationListener() {
             @Override public void onServiceRegistered(NsdServiceInfo si) {
                 Log.i(TAG, "Service registered: " + si);
+                registeredServiceName = si.getServiceName();
             }
             @Override public void onRegistrationFailed(NsdServiceInfo si, int errorCode) {
                 Log.e(TAG, "Registration failed: " + errorCode);
@@ -56,12 +92,23 @@ public class PeerDiscoveryManager {
         nsdManager.registerService(serviceInfo, NsdManager.PROTOCOL_DNS_SD, registrationListener);
     }
 
+    /**
+     * Withdraw the listener published by {@link #registerService(int)}.
+     */
+    public void unregisterService() {
+        if (registrationListener == null) return;
+        try {
+            nsdManager.unregisterService(registrationListener);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Service already unregistered or never registered");
+        }
+        registrationListener = null;
+    }
+
     /**
      * Discover nearby peers using mDNS / NSD.
      */
     public void discoverPeers() {
-        discoveredUris.clear();
-
         discoveryListener = new NsdManager.DiscoveryListener() {
             @Override public void onDiscoveryStarted(String regType) {
                 Log.i(TAG, "Discovery started");
@@ -69,27 +116,17 @@ public class PeerDiscoveryManager {
 
             @Override public void onServiceFound(NsdServiceInfo serviceInfo) {
                 Log.i(TAG, "Service found: " + serviceInfo);
-                nsdManager.resolveService(serviceInfo, new NsdManager.ResolveListener() {
-                    @Override public void onServiceResolved(NsdServiceInfo resolvedInfo) {
-                        String host = resolvedInfo.getHost().getHostAddress();
-                        int port = resolvedInfo.getPort();
-                        try {
-                            URI uri = new URI("ws://" + host + ":" + port + "/");
-                            Log.i(TAG, "Discovered peer URI: " + uri);
-                            discoveredUris.add(uri);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error building URI", e);
-                        }
-                    }
-
-                    @Override public void onResolveFailed(NsdServiceInfo si, int errorCode) {
-                        Log.e(TAG, "Resolve failed: " + si + " error: " + errorCode);
-                    }
-                });
+                if (serviceInfo.getServiceName().equals(registeredServiceName)) {
+                    return; // our own listener
+                }
+                knownServices.put(serviceInfo.getServiceName(), serviceInfo);
+                enqueueResolve(serviceInfo);
             }
 
             @Override public void onServiceLost(NsdServiceInfo serviceInfo) {
                 Log.i(TAG, "Service lost: " + serviceInfo);
+                knownServices.remove(serviceInfo.getServiceName());
+                registry.remove(serviceInfo.getServiceName());
             }
 
             @Override public void onDiscoveryStopped(String serviceType) {
@@ -108,19 +145,79 @@ public class PeerDiscoveryManager {
         };
 
         nsdManager.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, discoveryListener);
+        handler.removeCallbacks(refresh);
+        handler.postDelayed(refresh, REFRESH_INTERVAL_MS);
+    }
+
+    /**
+     * Mark a peer as alive, e.g. because a replicator is talking to it.
+     */
+    public void markPeerSeen(URI peerUri) {
+        registry.touch(peerUri, System.currentTimeMillis());
     }
 
     /**
      * Return the current list of discovered peer URIs.
      */
     public List<URI> getNearbyPeerUris() {
-        return Collections.unmodifiableList(discoveredUris);
+        return registry.snapshot();
+    }
+
+    private synchronized void enqueueResolve(NsdServiceInfo serviceInfo) {
+        if (!queuedServiceNames.add(serviceInfo.getServiceName())) return;
+        resolveQueue.addLast(serviceInfo);
+        resolveNext();
+    }
+
+    private synchronized void resolveNext() {
+        if (resolving || resolveQueue.isEmpty()) return;
+        resolving = true;
+        NsdServiceInfo next = resolveQueue.pollFirst();
+        nsdManager.resolveService(next, new NsdManager.ResolveListener() {
+            @Override public void onServiceResolved(NsdServiceInfo resolvedInfo) {
+                String host = resolvedInfo.getHost().getHostAddress();
+                int port = resolvedInfo.getPort();
+                try {
+                    URI uri = new URI("wss://" + host + ":" + port + "/beacon");
+                    Log.i(TAG, "Discovered peer URI: " + uri);
+                    registry.upsert(resolvedInfo.getServiceName(), uri, System.currentTimeMillis());
+                } catch (Exception e) {
+                    Log.e(TAG, "Error building URI", e);
+                }
+                onResolveFinished(next, false);
+            }
+
+            @Override public void onResolveFailed(NsdServiceInfo si, int errorCode) {
+                Log.e(TAG, "Resolve failed: " + si + " error: " + errorCode);
+                // A peer that keeps failing to resolve is evicted once its TTL runs out
+                onResolveFinished(next, errorCode == NsdManager.FAILURE_ALREADY_ACTIVE);
+            }
+        });
+    }
+
+    private void onResolveFinished(NsdServiceInfo serviceInfo, boolean retry) {
+        synchronized (this) {
+            resolving = false;
+            if (!retry) {
+                queuedServiceNames.remove(serviceInfo.getServiceName());
+                resolveNext();
+                return;
+            }
+        }
+        // Another resolve was still in flight inside NSD; try this one again shortly
+        handler.postDelayed(() -> {
+            synchronized (this) {
+                resolveQueue.addLast(serviceInfo);
+                resolveNext();
+            }
+        }, RESOLVE_RETRY_DELAY_MS);
     }
 
     /**
      * Stop peer discovery if needed.
      */
     public void stopDiscovery() {
+        handler.removeCallbacks(refresh);
         if (discoveryListener != null) {
             try {
                 nsdManager.stopServiceDiscovery(discoveryListener);
@@ -128,5 +225,8 @@ public class PeerDiscoveryManager {
                 Log.w(TAG, "Discovery already stopped or never started");
             }
         }
+        // Lost services are no longer reported, so the peers cannot be kept current
+        knownServices.clear();
+        registry.clear();
     }
 }
@@ -0,0 +1,169 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Thread-safe registry of resolved peers.
+ * Peers are deduplicated by host:port (a device that re-announces under a new service
+ * name replaces its old entry), carry a last-seen timestamp and are evicted on TTL. NSD does
+ * not report a service again while it stays present, so the discovery side re-resolves known
+ * services to refresh them; a peer is also removed straight away when its service is lost.
+ * Listeners are told about additions and removals instead of polling a list.
+ */
+public class PeerRegistry {
+
+    public interface Listener {
+        void onPeerAdded(@NonNull URI peerUri);
+        void onPeerRemoved(@NonNull URI peerUri);
+    }
+
+    public static final class Peer {
+        public final String serviceName;
+        public final URI uri;
+        public final long lastSeenMs;
+
+        Peer(String serviceName, URI uri, long lastSeenMs) {
+            this.serviceName = serviceName;
+            this.uri = uri;
+            this.lastSeenMs = lastSeenMs;
+        }
+    }
+
+    private final long ttlMs;
+    private final ConcurrentHashMap<String, Peer> peersByAddress = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> addressByService = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public PeerRegistry(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Record a resolved peer, refreshing its last-seen time if it is already known.
+     *
+     * @return true if the peer was not registered before
+     */
+    public boolean upsert(@NonNull String serviceName, @NonNull URI uri, long nowMs) {
+        String address = addressOf(uri);
+
+        String previousAddress = addressByService.put(serviceName, address);
+        if (previousAddress != null && !previousAddress.equals(address)) {
+            // Same service moved to a new host:port; drop the old endpoint
+            removeAddress(previousAddress, serviceName);
+        }
+
+        Peer[] replaced = new Peer[1];
+        peersByAddress.compute(address, (key, existing) -> {
+            replaced[0] = existing;
+            return new Peer(serviceName, uri, nowMs);
+        });
+
+        Peer existing = replaced[0];
+        if (existing == null) {
+            fireAdded(uri);
+            return true;
+        }
+        if (!existing.serviceName.equals(serviceName)) {
+            // Re-announced under a new name: keep one entry per host:port
+            addressByService.remove(existing.serviceName, address);
+        }
+        return false;
+    }
+
+    /**
+     * Refresh the last-seen time of a peer that is known to be alive, e.g. replicating.
+     */
+    public void touch(@NonNull URI uri, long nowMs) {
+        peersByAddress.computeIfPresent(addressOf(uri),
+                (key, peer) -> new Peer(peer.serviceName, peer.uri, Math.max(peer.lastSeenMs, nowMs)));
+    }
+
+    /**
+     * Remove a peer whose service was lost.
+     */
+    public void remove(@NonNull String serviceName) {
+        String address = addressByService.remove(serviceName);
+        if (address != null) removeAddress(address, serviceName);
+    }
+
+    /**
+     * Remove every peer not seen within the TTL.
+     *
+     * @return the number of peers evicted
+     */
+    public int evictStale(long nowMs) {
+        int evicted = 0;
+        for (Map.Entry<String, Peer> entry : peersByAddress.entrySet()) {
+            Peer peer = entry.getValue();
+            if (nowMs - peer.lastSeenMs > ttlMs && peersByAddress.remove(entry.getKey(), peer)) {
+                addressByService.remove(peer.serviceName, entry.getKey());
+                fireRemoved(peer.uri);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Remove every peer, e.g. when discovery stops and losses would no longer be reported.
+     */
+    public void clear() {
+        for (String serviceName : new ArrayList<>(addressByService.keySet())) remove(serviceName);
+    }
+
+    public boolean isKnownService(@NonNull String serviceName) {
+        return addressByService.containsKey(serviceName);
+    }
+
+    public int size() {
+        return peersByAddress.size();
+    }
+
+    /**
+     * Return the URIs of all currently registered peers.
+     */
+    public List<URI> snapshot() {
+        List<URI> uris = new ArrayList<>(peersByAddress.size());
+        for (Peer peer : peersByAddress.values()) {
+            uris.add(peer.uri);
+        }
+        return uris;
+    }
+
+    private void removeAddress(String address, String serviceName) {
+        Peer[] removed = new Peer[1];
+        peersByAddress.computeIfPresent(address, (key, peer) -> {
+            if (!peer.serviceName.equals(serviceName)) return peer;
+            removed[0] = peer;
+            return null;
+        });
+        if (removed[0] != null) fireRemoved(removed[0].uri);
+    }
+
+    private void fireAdded(URI uri) {
+        for (Listener listener : listeners) listener.onPeerAdded(uri);
+    }
+
+    private void fireRemoved(URI uri) {
+        for (Listener listener : listeners) listener.onPeerRemoved(uri);
+    }
+
+    private static String addressOf(URI uri) {
+        return uri.getHost() + ":" + uri.getPort();
+    }
+}
@@ -0,0 +1,92 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.ValueIndexConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the value indexes behind {@link RequestQueries}, each in the collection its queries
+ * read. The locations collection has none: every document in it is a position, so its queries
+ * read all of it anyway, and it is the most frequently written.
+ * Index names carry a version suffix; bump it when an index definition changes and the
+ * old version is dropped on the next start.
+ */
+public final class QueryIndexes {
+    private static final String TAG = "QueryIndexes";
+    private static final String PREFIX = "idx_";
+
+    public static final String OPEN_REQUESTS_BY_TYPE = "idx_request_type_status_emergency_v2";
+    public static final String USERS_BY_TYPE = "idx_user_type_v1";
+    public static final String BY_TYPE_AND_REQUEST = "idx_type_request_v2";
+
+    private QueryIndexes() {}
+
+    /** Every index, for the single-collection layout. */
+    static Map<String, ValueIndexConfiguration> definitions() {
+        Map<String, ValueIndexConfiguration> indexes = definitions(BeaconCollections.REQUESTS);
+        indexes.putAll(definitions(BeaconCollections.RESPONDERS));
+        return indexes;
+    }
+
+    /** The indexes of one collection of the {@link BeaconCollections#SCOPE} scope. */
+    static Map<String, ValueIndexConfiguration> definitions(@NonNull String collectionName) {
+        Map<String, ValueIndexConfiguration> indexes = new LinkedHashMap<>();
+        if (BeaconCollections.REQUESTS.equals(collectionName)) {
+            // Equality columns first, most selective last; matches openRequestsForType
+            indexes.put(OPEN_REQUESTS_BY_TYPE, new ValueIndexConfiguration(DocumentKeys.TYPE, DocumentKeys.STATUS, DocumentKeys.EMERGENCY_TYPE));
+            // Matches claims, claimsFor and offers
+            indexes.put(BY_TYPE_AND_REQUEST, new ValueIndexConfiguration(DocumentKeys.TYPE, DocumentKeys.REQUEST_ID));
+        } else if (BeaconCollections.RESPONDERS.equals(collectionName)) {
+            // Matches responders
+            indexes.put(USERS_BY_TYPE, new ValueIndexConfiguration(DocumentKeys.TYPE, DocumentKeys.USER_TYPE));
+        }
+        return indexes;
+    }
+
+    /**
+     * Create missing indexes in each collection and drop outdated versions of ours.
+     */
+    public static void ensure(@NonNull BeaconCollections collections) throws CouchbaseLiteException {
+        if (collections.isSingle()) {
+            ensure(collections.requests);
+            return;
+        }
+        ensure(collections.requests, definitions(BeaconCollections.REQUESTS));
+        ensure(collections.responders, definitions(BeaconCollections.RESPONDERS));
+        ensure(collections.locations, definitions(BeaconCollections.LOCATIONS));
+    }
+
+    /**
+     * Create missing indexes and drop outdated versions of ours, with every index in one
+     * collection. Cheap when nothing changed.
+     */
+    public static void ensure(@NonNull Collection collection) throws CouchbaseLiteException {
+        ensure(collection, definitions());
+    }
+
+    private static void ensure(Collection collection, Map<String, ValueIndexConfiguration> wanted)
+            throws CouchbaseLiteException {
+        Set<String> existing = collection.getIndexes();
+
+        for (String name : existing) {
+            if (name.startsWith(PREFIX) && !wanted.containsKey(name)) {
+                collection.deleteIndex(name);
+                Log.i(TAG, "Dropped outdated index " + name);
+            }
+        }
+        for (Map.Entry<String, ValueIndexConfiguration> index : wanted.entrySet()) {
+            if (!existing.contains(index.getKey())) {
+                collection.createIndex(index.getKey(), index.getValue());
+                Log.i(TAG, "Created index " + index.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.ReplicatedDocument;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorActivityLevel;
+import com.couchbase.lite.ReplicatorProgress;
+import com.couchbase.lite.ReplicatorStatus;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide replication telemetry. Replicators are attached by name and feed
+ * {@link ReplicatorStats} from their callbacks; a background tick samples rates and
+ * periodically writes a JSON snapshot. Per-change logging is off unless verbose logging is on.
+ */
+public final class ReplicationMetrics {
+    private static final String TAG = "REPL_METRICS";
+    private static final ReplicationMetrics INSTANCE = new ReplicationMetrics();
+
+    private final ConcurrentHashMap<String, ReplicatorStats> stats = new ConcurrentHashMap<>();
+    private volatile boolean verboseLogging;
+    private ScheduledExecutorService scheduler;
+
+    private ReplicationMetrics() {}
+
+    public static ReplicationMetrics get() {
+        return INSTANCE;
+    }
+
+    static long nowMs() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    public boolean isVerboseLogging() {
+        return verboseLogging;
+    }
+
+    public void setVerboseLogging(boolean verbose) {
+        verboseLogging = verbose;
+    }
+
+    public ReplicatorStats stats(@NonNull String name) {
+        return stats.computeIfAbsent(name, key -> new ReplicatorStats(key, nowMs()));
+    }
+
+    /**
+     * Start collecting metrics for a replicator. Call before {@code start()}.
+     */
+    public ReplicatorStats attach(@NonNull String name, @NonNull Replicator replicator) {
+        ReplicatorStats replicatorStats = stats(name);
+        replicator.addChangeListener(change -> {
+            ReplicatorStatus status = change.getStatus();
+            ReplicatorProgress progress = status.getProgress();
+            replicatorStats.onStatus(levelIndex(status.getActivityLevel()),
+                    progress.getCompleted(), progress.getTotal(), status.getError() != null, nowMs());
+            if (status.getError() != null) {
+                Log.w(TAG, name + " error: " + status.getError().getMessage());
+            }
+            if (verboseLogging) {
+                Log.v(TAG, name + " " + status.getActivityLevel() + " "
+                        + progress.getCompleted() + "/" + progress.getTotal());
+            }
+        });
+        replicator.addDocumentReplicationListener(replication -> {
+            List<ReplicatedDocument> documents = replication.getDocuments();
+            int failed = 0;
+            for (ReplicatedDocument document : documents) {
+                if (document.getError() != null) failed++;
+            }
+            replicatorStats.onDocumentsReplicated(replication.isPush(), documents.size(), failed);
+        });
+        return replicatorStats;
+    }
+
+    /**
+     * Stop tracking a replicator that was released, so names made per peer do not pile up;
+     * its counters go with it. Late callbacks from the replicator update a detached entry.
+     */
+    public void detach(@NonNull String name) {
+        stats.remove(name);
+    }
+
+    /**
+     * Sample push/pull rates every second and write a JSON snapshot to {@code exportFile}
+     * every {@code exportIntervalMs}.
+     */
+    public synchronized void start(@NonNull File exportFile, long exportIntervalMs) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(() -> {
+            long now = nowMs();
+            for (ReplicatorStats replicatorStats : stats.values()) replicatorStats.sample(now);
+        }, 1, 1, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(() -> export(exportFile), exportIntervalMs, exportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        scheduler = null;
+    }
+
+    /**
+     * Current snapshot of every replicator as a JSON object.
+     */
+    public String toJson() {
+        long now = nowMs();
+        List<ReplicatorStats> all = new ArrayList<>(stats.values());
+        Collections.sort(all, (a, b) -> a.name.compareTo(b.name));
+
+        StringBuilder json = new StringBuilder(256 + all.size() * 512);
+        json.append("{\"timestamp\":").append(System.currentTimeMillis())
+                .append(",\"replicators\":[");
+        for (int i = 0; i < all.size(); i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            all.get(i).appendJson(json, now);
+        }
+        json.append("\n]}");
+        return json.toString();
+    }
+
+    private void export(File exportFile) {
+        File tmp = new File(exportFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write metrics snapshot", e);
+            return;
+        }
+        if (!tmp.renameTo(exportFile)) Log.w(TAG, "Could not replace " + exportFile);
+    }
+
+    private static int levelIndex(ReplicatorActivityLevel level) {
+        switch (level) {
+            case OFFLINE: return ReplicatorStats.OFFLINE;
+            case CONNECTING: return ReplicatorStats.CONNECTING;
+            case IDLE: return ReplicatorStats.IDLE;
+            case BUSY: return ReplicatorStats.BUSY;
+            default: return ReplicatorStats.STOPPED;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides how the Sync Gateway replicator runs. A continuous replicator keeps its socket open
+ * and wakes the radio for every change in either direction; on battery most traffic can wait
+ * for a one-shot window instead, which pushes the latest revision of each changed document
+ * once and pulls everything new in the same wake-up. The replicator stays continuous while
+ * charging on an unmetered network, for a responder on duty, and for a while after any
+ * emergency activity, since claims and responses follow a new request within minutes.
+ * {@link #batchedOnly} never goes continuous, for data that can lag behind such as positions.
+ * Not thread-safe; {@link ReplicationScheduler} drives it from its own thread.
+ */
+public class ReplicationPolicy {
+    public static final long DEFAULT_WINDOW_MS = 120_000;
+    public static final long DEFAULT_LOW_BATTERY_WINDOW_MS = 600_000;
+    public static final long DEFAULT_HOT_MS = 300_000;
+    public static final int DEFAULT_MAX_PENDING = 50;
+    public static final int LOW_BATTERY_PERCENT = 20;
+
+    public enum Mode { CONTINUOUS, BATCHED, OFFLINE }
+
+    public enum Network { NONE, METERED, UNMETERED }
+
+    public static final class Conditions {
+        public final boolean charging;
+        public final int batteryPercent;
+        @NonNull public final Network network;
+
+        public Conditions(boolean charging, int batteryPercent, @NonNull Network network) {
+            this.charging = charging;
+            this.batteryPercent = batteryPercent;
+            this.network = network;
+        }
+
+        public boolean lowBattery() {
+            return !charging && batteryPercent <= LOW_BATTERY_PERCENT;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return (charging ? "charging" : "battery") + " " + batteryPercent + "% " + network;
+        }
+    }
+
+    private final long windowMs;
+    private final long lowBatteryWindowMs;
+    private final long hotMs;
+    private final int maxPending;
+    private final boolean onDuty;
+    private final boolean batchedOnly;
+
+    private Conditions conditions = new Conditions(false, 100, Network.UNMETERED);
+    private int pending;
+    private long hotUntilMs = Long.MIN_VALUE;
+    private long lastSyncMs;
+
+    /**
+     * @param onDuty a responder waiting for requests; stays continuous unless the battery is low
+     */
+    public ReplicationPolicy(boolean onDuty) {
+        this(DEFAULT_WINDOW_MS, DEFAULT_LOW_BATTERY_WINDOW_MS, DEFAULT_HOT_MS, DEFAULT_MAX_PENDING, onDuty);
+    }
+
+    public ReplicationPolicy(long windowMs, long lowBatteryWindowMs, long hotMs, int maxPending, boolean onDuty) {
+        this(windowMs, lowBatteryWindowMs, hotMs, maxPending, onDuty, false);
+    }
+
+    private ReplicationPolicy(long windowMs, long lowBatteryWindowMs, long hotMs, int maxPending, boolean onDuty,
+                              boolean batchedOnly) {
+        this.windowMs = windowMs;
+        this.lowBatteryWindowMs = lowBatteryWindowMs;
+        this.hotMs = hotMs;
+        this.maxPending = maxPending;
+        this.onDuty = onDuty;
+        this.batchedOnly = batchedOnly;
+    }
+
+    /** One-shot windows only, whatever the battery, network or urgency. */
+    @NonNull
+    public static ReplicationPolicy batchedOnly(long windowMs, long lowBatteryWindowMs, int maxPending) {
+        return new ReplicationPolicy(windowMs, lowBatteryWindowMs, 0, maxPending, false, true);
+    }
+
+    public void setConditions(@NonNull Conditions conditions) {
+        this.conditions = conditions;
+    }
+
+    @NonNull
+    public Conditions getConditions() {
+        return conditions;
+    }
+
+    /**
+     * A document was saved locally. Urgent changes (a new open request, a claim) go out now
+     * and keep the replicator continuous for the hot period.
+     */
+    public void onLocalChange(boolean urgent, long nowMs) {
+        pending++;
+        if (urgent) hotUntilMs = Math.max(hotUntilMs, nowMs + hotMs);
+    }
+
+    /** A new open request arrived from elsewhere; follow-ups are likely soon. */
+    public void onRemoteUrgent(long nowMs) {
+        hotUntilMs = Math.max(hotUntilMs, nowMs + hotMs);
+    }
+
+    /** Everything saved locally before {@code startedMs} has been pushed. */
+    public void onSynced(long startedMs, int pushed) {
+        pending = Math.max(0, pending - pushed);
+        lastSyncMs = Math.max(lastSyncMs, startedMs);
+    }
+
+    public int pending() {
+        return pending;
+    }
+
+    @NonNull
+    public Mode mode(long nowMs) {
+        if (conditions.network == Network.NONE) return Mode.OFFLINE;
+        if (batchedOnly) return Mode.BATCHED;
+        if (nowMs < hotUntilMs) return Mode.CONTINUOUS;
+        if (conditions.charging && conditions.network == Network.UNMETERED) return Mode.CONTINUOUS;
+        if (onDuty && !conditions.lowBattery()) return Mode.CONTINUOUS;
+        return Mode.BATCHED;
+    }
+
+    /**
+     * When the next one-shot window should start in {@link Mode#BATCHED}: a full window after
+     * the last one, or now if enough local changes piled up.
+     */
+    public long nextWindowMs(long nowMs) {
+        if (pending >= maxPending) return nowMs;
+        // A responder on duty keeps the short window even on a low battery
+        return lastSyncMs + (conditions.lowBattery() && !onDuty ? lowBatteryWindowMs : windowMs);
+    }
+}
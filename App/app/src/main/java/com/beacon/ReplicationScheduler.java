@@ -0,0 +1,239 @@
+package com.beacon;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorActivityLevel;
+import com.couchbase.lite.ReplicatorStatus;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the Sync Gateway replicator the way {@link ReplicationPolicy} says: one continuous
+ * replicator, one-shot windows, or nothing while offline. Battery and connectivity come from
+ * the system; local changes and incoming requests are reported by the app. The policy and the
+ * current replicator are only touched on the scheduler thread.
+ */
+public class ReplicationScheduler {
+    private static final String TAG = "ReplicationScheduler";
+    private static final long TICK_MS = 5_000;
+    private static final long ERROR_RETRY_MS = 30_000;
+
+    public interface ReplicatorFactory {
+        Replicator create(boolean continuous) throws CouchbaseLiteException;
+    }
+
+    private final Context context;
+    private final ReplicatorFactory factory;
+    private final ReplicationPolicy policy;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onBattery(intent);
+        }
+    };
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            onNetwork(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)
+                    ? ReplicationPolicy.Network.UNMETERED : ReplicationPolicy.Network.METERED);
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            onNetwork(ReplicationPolicy.Network.NONE);
+        }
+    };
+
+    private Replicator replicator;
+    private ListenerToken listenerToken;
+    private boolean continuous;
+    private long windowStartedMs;
+    private int windowPending;
+    private long notBeforeMs;
+    private ReplicationPolicy.Mode lastMode;
+    private boolean stopped;
+    private boolean resetCheckpoint;
+
+    public ReplicationScheduler(@NonNull Context context, @NonNull ReplicatorFactory factory,
+                                @NonNull ReplicationPolicy policy) {
+        this.context = context.getApplicationContext();
+        this.factory = factory;
+        this.policy = policy;
+    }
+
+    public void start() {
+        start(false);
+    }
+
+    /**
+     * @param resetCheckpoint pull everything again on the first run, e.g. after the local
+     *                        database was reset
+     */
+    public void start(boolean resetCheckpoint) {
+        this.resetCheckpoint = resetCheckpoint;
+        // The battery broadcast is sticky: registering returns the current state
+        Intent battery = context.registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) onBattery(battery);
+        ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        connectivity.registerDefaultNetworkCallback(networkCallback);
+        scheduler.scheduleWithFixedDelay(this::evaluate, 0, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop replicating; broadcasts, replicator events and app calls that arrive later are
+     * dropped.
+     */
+    public void stop() {
+        synchronized (this) {
+            // Unregistering twice throws, so only the first call does it
+            if (scheduler.isShutdown()) return;
+            context.unregisterReceiver(batteryReceiver);
+            ((ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE))
+                    .unregisterNetworkCallback(networkCallback);
+            scheduler.execute(() -> {
+                stopped = true;
+                release();
+            });
+            scheduler.shutdown();
+        }
+    }
+
+    /** A document was saved locally; urgent ones are pushed without waiting for a window. */
+    public void onLocalChange(boolean urgent) {
+        post(() -> {
+            policy.onLocalChange(urgent, System.currentTimeMillis());
+            if (urgent) evaluate();
+        });
+    }
+
+    /** A new open request replicated in. */
+    public void onRemoteUrgent() {
+        post(() -> {
+            policy.onRemoteUrgent(System.currentTimeMillis());
+            evaluate();
+        });
+    }
+
+    /** Drop the current replicator so the next one picks up a changed configuration. */
+    public void restart() {
+        post(() -> {
+            release();
+            notBeforeMs = 0;
+            evaluate();
+        });
+    }
+
+    /** Runs {@code task} on the scheduler thread, unless the scheduler has been stopped. */
+    private synchronized void post(Runnable task) {
+        if (!scheduler.isShutdown()) scheduler.execute(task);
+    }
+
+    private void onBattery(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+        boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        int percent = level < 0 || scale <= 0 ? 100 : level * 100 / scale;
+        post(() -> {
+            ReplicationPolicy.Conditions old = policy.getConditions();
+            policy.setConditions(new ReplicationPolicy.Conditions(charging, percent, old.network));
+            evaluate();
+        });
+    }
+
+    private void onNetwork(ReplicationPolicy.Network network) {
+        post(() -> {
+            ReplicationPolicy.Conditions old = policy.getConditions();
+            policy.setConditions(new ReplicationPolicy.Conditions(old.charging, old.batteryPercent, network));
+            // A new network is worth trying straight away
+            if (network != ReplicationPolicy.Network.NONE) notBeforeMs = 0;
+            evaluate();
+        });
+    }
+
+    private void evaluate() {
+        if (stopped) return;
+        long now = System.currentTimeMillis();
+        ReplicationPolicy.Mode mode = policy.mode(now);
+        if (mode != lastMode) {
+            Log.i(TAG, "Mode " + lastMode + " -> " + mode + " (" + policy.getConditions()
+                    + ", pending " + policy.pending() + ")");
+            lastMode = mode;
+        }
+        switch (mode) {
+            case OFFLINE:
+                release();
+                break;
+            case CONTINUOUS:
+                if (replicator != null && !continuous) release();
+                if (replicator == null && now >= notBeforeMs) launch(true, now);
+                break;
+            case BATCHED:
+                if (replicator != null && continuous) release();
+                if (replicator == null && now >= notBeforeMs && now >= policy.nextWindowMs(now)) launch(false, now);
+                break;
+        }
+    }
+
+    private void launch(boolean continuousRun, long now) {
+        try {
+            Replicator next = factory.create(continuousRun);
+            listenerToken = next.addChangeListener(change -> {
+                ReplicatorStatus status = change.getStatus();
+                post(() -> onStatusChanged(next, status));
+            });
+            replicator = next;
+            continuous = continuousRun;
+            windowStartedMs = now;
+            windowPending = policy.pending();
+            next.start(resetCheckpoint);
+            resetCheckpoint = false;
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not create Sync Gateway replicator", e);
+            notBeforeMs = now + ERROR_RETRY_MS;
+        }
+    }
+
+    private void onStatusChanged(Replicator source, ReplicatorStatus status) {
+        // Late events from a replicator that was already replaced
+        if (source != replicator) return;
+        long now = System.currentTimeMillis();
+        ReplicatorActivityLevel level = status.getActivityLevel();
+        if (level == ReplicatorActivityLevel.IDLE && continuous) {
+            policy.onSynced(now, policy.pending());
+        } else if (level == ReplicatorActivityLevel.STOPPED) {
+            if (status.getError() == null) {
+                policy.onSynced(windowStartedMs, windowPending);
+            } else {
+                Log.w(TAG, "Sync Gateway replication stopped: " + status.getError().getMessage());
+                notBeforeMs = now + ERROR_RETRY_MS;
+            }
+            release();
+            evaluate();
+        }
+    }
+
+    private void release() {
+        if (replicator == null) return;
+        if (listenerToken != null) listenerToken.remove();
+        replicator.stop();
+        replicator = null;
+        listenerToken = null;
+    }
+}
@@ -0,0 +1,164 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one replicator. Updated from replicator callbacks without locking on the
+ * hot path; only activity-level transitions, which are rare, take the object lock.
+ */
+public class ReplicatorStats {
+
+    /** Activity levels in Couchbase Lite order. */
+    public static final String[] LEVELS = {"stopped", "offline", "connecting", "idle", "busy"};
+    public static final int STOPPED = 0;
+    public static final int OFFLINE = 1;
+    public static final int CONNECTING = 2;
+    public static final int IDLE = 3;
+    public static final int BUSY = 4;
+
+    public final String name;
+
+    final LongAdder docsPushed = new LongAdder();
+    final LongAdder docsPulled = new LongAdder();
+    final LongAdder documentErrors = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder conflictsResolved = new LongAdder();
+    /** Time from leaving IDLE until the replicator is caught up again. */
+    final LatencyHistogram syncCycleMs = new LatencyHistogram();
+
+    private final long[] levelTimeMs = new long[LEVELS.length];
+    private volatile int level = STOPPED;
+    private long levelSinceMs;
+    private long busySinceMs = -1;
+    private volatile long pendingChanges;
+    private volatile long lastIdleAtMs = -1;
+
+    // Rates from the last sample tick
+    private long lastSampleAtMs = -1;
+    private long lastPushed;
+    private long lastPulled;
+    private volatile double pushPerSecond;
+    private volatile double pullPerSecond;
+
+    ReplicatorStats(@NonNull String name, long nowMs) {
+        this.name = name;
+        this.levelSinceMs = nowMs;
+    }
+
+    public void onStatus(int newLevel, long completed, long total, boolean hasError, long nowMs) {
+        pendingChanges = Math.max(0, total - completed);
+        if (hasError) errors.increment();
+        // Progress within a level is most callbacks and needs no lock
+        if (newLevel == level) return;
+
+        synchronized (this) {
+            if (newLevel == level) return;
+            levelTimeMs[level] += nowMs - levelSinceMs;
+            levelSinceMs = nowMs;
+            if (newLevel == IDLE) {
+                if (busySinceMs >= 0) syncCycleMs.record(nowMs - busySinceMs);
+                busySinceMs = -1;
+                lastIdleAtMs = nowMs;
+            } else if (level == IDLE || busySinceMs < 0) {
+                busySinceMs = nowMs;
+                // Caught up until this moment
+                if (level == IDLE) lastIdleAtMs = nowMs;
+            }
+            level = newLevel;
+        }
+    }
+
+    public void onDocumentsReplicated(boolean push, int count, int failed) {
+        (push ? docsPushed : docsPulled).add(count - failed);
+        if (failed > 0) documentErrors.add(failed);
+    }
+
+    /**
+     * Update per-second rates; called on a fixed tick so readers never disturb each other.
+     */
+    synchronized void sample(long nowMs) {
+        long pushed = docsPushed.sum();
+        long pulled = docsPulled.sum();
+        if (lastSampleAtMs >= 0 && nowMs > lastSampleAtMs) {
+            double seconds = (nowMs - lastSampleAtMs) / 1000.0;
+            pushPerSecond = (pushed - lastPushed) / seconds;
+            pullPerSecond = (pulled - lastPulled) / seconds;
+        }
+        lastSampleAtMs = nowMs;
+        lastPushed = pushed;
+        lastPulled = pulled;
+    }
+
+    public void onConflictResolved() {
+        conflictsResolved.increment();
+    }
+
+    public long docsPushed() {
+        return docsPushed.sum();
+    }
+
+    public long docsPulled() {
+        return docsPulled.sum();
+    }
+
+    public long conflictsResolved() {
+        return conflictsResolved.sum();
+    }
+
+    public long errors() {
+        return errors.sum();
+    }
+
+    public synchronized String level() {
+        return LEVELS[level];
+    }
+
+    /**
+     * Milliseconds spent in each activity level so far, including the current one.
+     */
+    public synchronized long[] levelTimesMs(long nowMs) {
+        long[] times = levelTimeMs.clone();
+        times[level] += nowMs - levelSinceMs;
+        return times;
+    }
+
+    /**
+     * Replication lag: how long since the replicator was last caught up (0 while idle),
+     * or -1 if it never has been.
+     */
+    public synchronized long lagMs(long nowMs) {
+        if (level == IDLE) return 0;
+        return lastIdleAtMs < 0 ? -1 : nowMs - lastIdleAtMs;
+    }
+
+    synchronized void appendJson(StringBuilder json, long nowMs) {
+        json.append("{\"name\":\"").append(name).append('"')
+                .append(",\"level\":\"").append(LEVELS[level]).append('"')
+                .append(",\"docs_pushed\":").append(docsPushed.sum())
+                .append(",\"docs_pulled\":").append(docsPulled.sum())
+                .append(",\"push_per_sec\":").append(round(pushPerSecond))
+                .append(",\"pull_per_sec\":").append(round(pullPerSecond))
+                .append(",\"pending_changes\":").append(pendingChanges)
+                .append(",\"lag_ms\":").append(lagMs(nowMs))
+                .append(",\"errors\":").append(errors.sum())
+                .append(",\"document_errors\":").append(documentErrors.sum())
+                .append(",\"conflicts_resolved\":").append(conflictsResolved.sum())
+                .append(",\"sync_cycle_ms\":{\"count\":").append(syncCycleMs.count())
+                .append(",\"mean\":").append(round(syncCycleMs.mean()))
+                .append(",\"p50\":").append(syncCycleMs.percentile(50))
+                .append(",\"p99\":").append(syncCycleMs.percentile(99)).append('}')
+                .append(",\"time_in_level_ms\":{");
+        long[] times = levelTimesMs(nowMs);
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(LEVELS[i]).append("\":").append(times[i]);
+        }
+        json.append("}}");
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,180 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.couchbase.lite.Array;
+import com.couchbase.lite.CBLError;
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.ConcurrencyControl;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableArray;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.ResultSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Claims and offers on a request. Neither edits the request document: a responder writes its
+ * own claim document and the requester's dispatcher writes the request's offer document, so
+ * no two devices ever save the same document and replication has nothing to resolve. When
+ * two responders claim the same request while apart, both claims replicate and
+ * {@link RequestLifecycle#winner} picks the same one on every device.
+ */
+public final class RequestClaims {
+    private static final int MAX_ATTEMPTS = 3;
+
+    public enum Result { CLAIMED, TAKEN, NOT_OFFERED, MISSING }
+
+    private RequestClaims() {}
+
+    /**
+     * Claim an open request for a responder. Exactly one local claim can succeed; claiming
+     * again a request this responder already holds is CLAIMED.
+     */
+    @NonNull
+    public static Result claim(@NonNull Collection collection, @NonNull String requestId,
+                               @NonNull String responderId, long nowMs) throws CouchbaseLiteException {
+        Document request = collection.getDocument(requestId);
+        if (request == null) return Result.MISSING;
+        RequestLifecycle.Claim winner = RequestLifecycle.winner(claims(collection, request));
+        if (winner != null) return winner.responderId.equals(responderId) ? Result.CLAIMED : Result.TAKEN;
+        if (!RequestLifecycle.canClaim(RequestLifecycle.STATUS_OPEN, offeredTo(collection, request), responderId)) {
+            return Result.NOT_OFFERED;
+        }
+
+        MutableDocument claim = new MutableDocument(RequestLifecycle.claimId(requestId, responderId));
+        claim.setString(DocumentKeys.TYPE, RequestLifecycle.CLAIM_TYPE);
+        claim.setString(DocumentKeys.REQUEST_ID, requestId);
+        claim.setString(DocumentKeys.RESPONDER_ID, responderId);
+        claim.setLong(DocumentKeys.CLAIMED_AT, nowMs);
+        // Copied so the sync function can route the claim without reading the request
+        claim.setString(DocumentKeys.REQUESTED_BY, DocumentFields.getString(request, DocumentKeys.REQUESTED_BY));
+        claim.setString(DocumentKeys.GEOHASH, DocumentFields.getString(request, DocumentKeys.GEOHASH));
+        collection.save(claim);
+        return Result.CLAIMED;
+    }
+
+    /**
+     * Write a dispatch wave into the request's offer document. Returns false once the request
+     * has a claim, which ends its dispatch, and throws when the wave could not be written.
+     */
+    public static boolean publishOffer(@NonNull Collection collection, @NonNull DispatchEngine.Offer offer)
+            throws CouchbaseLiteException {
+        String offerId = RequestLifecycle.offerId(offer.requestId);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Document request = collection.getDocument(offer.requestId);
+            if (request == null || RequestLifecycle.winner(claims(collection, request)) != null) return false;
+
+            Document existing = collection.getDocument(offerId);
+            MutableDocument updated = existing != null ? existing.toMutable() : new MutableDocument(offerId);
+            updated.setString(DocumentKeys.TYPE, RequestLifecycle.OFFER_TYPE);
+            updated.setString(DocumentKeys.REQUEST_ID, offer.requestId);
+            updated.setString(DocumentKeys.GEOHASH, DocumentFields.getString(request, DocumentKeys.GEOHASH));
+            if (offer.broadcast) {
+                updated.remove(DocumentKeys.OFFERED_TO);
+            } else {
+                updated.setArray(DocumentKeys.OFFERED_TO, new MutableArray(new ArrayList<>(offer.responderIds)));
+            }
+            updated.setInt(DocumentKeys.DISPATCH_WAVE, offer.wave);
+            // Only this device writes the offer; a conflict here is a racing local wave
+            if (collection.save(updated, ConcurrencyControl.FAIL_ON_CONFLICT)) return true;
+        }
+        throw new CouchbaseLiteException("Offer " + offerId + " still conflicted after " + MAX_ATTEMPTS
+                + " attempts", CBLError.Domain.CBLITE, CBLError.Code.CONFLICT);
+    }
+
+    /**
+     * Mark a request as responded by the claim that holds it, so Sync Gateway takes it out of
+     * its cell channel and expires it. Only the requester's device calls this, for its own
+     * requests, so the request keeps a single writer; a later claim that wins instead is
+     * written over the earlier one. Returns false when there was nothing to write.
+     */
+    public static boolean close(@NonNull Collection collection, @NonNull String requestId, @NonNull String requesterId)
+            throws CouchbaseLiteException {
+        Document request = collection.getDocument(requestId);
+        if (request == null || !requesterId.equals(DocumentFields.getString(request, DocumentKeys.REQUESTED_BY))) {
+            return false;
+        }
+        RequestLifecycle.Claim winner = RequestLifecycle.winner(claims(collection, request));
+        if (winner == null || RequestLifecycle.STATUS_RESPONDED.equals(DocumentFields.status(request))
+                && winner.responderId.equals(DocumentFields.getString(request, DocumentKeys.RESPONDED_BY))) {
+            return false;
+        }
+        MutableDocument closed = request.toMutable();
+        DocumentFields.set(closed, DocumentKeys.STATUS, RequestLifecycle.STATUS_RESPONDED);
+        DocumentFields.set(closed, DocumentKeys.RESPONDED_BY, winner.responderId);
+        DocumentFields.set(closed, DocumentKeys.RESPONDED_AT, winner.claimedAt);
+        // A racing local edit is picked up by the next claim change or start
+        return collection.save(closed, ConcurrencyControl.FAIL_ON_CONFLICT);
+    }
+
+    /** The claim holding a request, or null while it is open or unknown. */
+    @Nullable
+    public static RequestLifecycle.Claim winner(@NonNull Collection collection, @NonNull String requestId)
+            throws CouchbaseLiteException {
+        Document request = collection.getDocument(requestId);
+        List<RequestLifecycle.Claim> claims = request != null
+                ? claims(collection, request) : claimDocuments(collection, requestId);
+        return RequestLifecycle.winner(claims);
+    }
+
+    /**
+     * Every claim on a request: its claim documents, plus the response an older client wrote
+     * into the request document itself, under either form of the keys.
+     */
+    static List<RequestLifecycle.Claim> claims(@NonNull Collection collection, @NonNull Document request)
+            throws CouchbaseLiteException {
+        List<RequestLifecycle.Claim> claims = claimDocuments(collection, request.getId());
+        String legacyResponder = DocumentFields.getString(request, DocumentKeys.RESPONDED_BY);
+        long legacyAt = DocumentFields.getLong(request, DocumentKeys.RESPONDED_AT);
+        if (legacyResponder != null) {
+            claims.add(new RequestLifecycle.Claim(legacyResponder, legacyAt));
+        } else if (RequestLifecycle.STATUS_RESPONDED.equals(DocumentFields.status(request))) {
+            claims.add(new RequestLifecycle.Claim("", legacyAt));
+        }
+        return claims;
+    }
+
+    private static List<RequestLifecycle.Claim> claimDocuments(@NonNull Collection collection,
+                                                               @NonNull String requestId)
+            throws CouchbaseLiteException {
+        List<RequestLifecycle.Claim> claims = new ArrayList<>();
+        try (ResultSet results = RequestQueries.claimsFor(collection, requestId).execute()) {
+            for (com.couchbase.lite.Result result : results) {
+                claims.add(new RequestLifecycle.Claim(result.getString(1), result.getLong(2)));
+            }
+        }
+        // Claims older clients wrote with the long names
+        try (ResultSet results = RequestQueries.legacyClaimsFor(collection, requestId).execute()) {
+            for (com.couchbase.lite.Result result : results) {
+                claims.add(new RequestLifecycle.Claim(result.getString(1), result.getLong(2)));
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Responders the request is offered to, or null when it is open to all. The offer
+     * document wins over waves an older client wrote into the request.
+     */
+    static List<String> offeredTo(@NonNull Collection collection, @NonNull Document request)
+            throws CouchbaseLiteException {
+        Document offer = collection.getDocument(RequestLifecycle.offerId(request.getId()));
+        return offeredTo(offer != null ? offer : request);
+    }
+
+    /** Responders the request is offered to, or null when it is open to all. */
+    static List<String> offeredTo(@NonNull Document doc) {
+        return offeredTo(DocumentFields.getArray(doc, DocumentKeys.OFFERED_TO));
+    }
+
+    static List<String> offeredTo(Array array) {
+        if (array == null) return null;
+        List<String> ids = new ArrayList<>(array.count());
+        for (int i = 0; i < array.count(); i++) ids.add(array.getString(i));
+        return ids;
+    }
+}
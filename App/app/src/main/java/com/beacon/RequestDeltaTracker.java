@@ -0,0 +1,89 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the requests a batch of changes touched into the ones that were added, changed or
+ * removed, remembering only doc IDs and revision IDs of those currently shown. A batch is
+ * {@link #begin()}, one {@link #offer} or {@link #drop} per touched request, then
+ * {@link #finish()}; requests the batch did not touch are never visited.
+ */
+public class RequestDeltaTracker {
+
+    public static final class Delta {
+        public final List<String> added;
+        public final List<String> changed;
+        public final List<String> removed;
+
+        Delta(List<String> added, List<String> changed, List<String> removed) {
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private final Map<String, String> shown = new HashMap<>();
+    private List<String> added;
+    private List<String> changed;
+    private List<String> removed;
+
+    public synchronized void begin() {
+        added = null;
+        changed = null;
+        removed = null;
+    }
+
+    /** A touched request that should be shown, at {@code revisionId}. */
+    public synchronized void offer(@NonNull String docId, String revisionId) {
+        if (!shown.containsKey(docId)) {
+            shown.put(docId, revisionId);
+            added = append(added, docId);
+            return;
+        }
+        if (revisionId != null && !revisionId.equals(shown.get(docId))) {
+            shown.put(docId, revisionId);
+            changed = append(changed, docId);
+        }
+    }
+
+    /** A touched request that should no longer be shown; nothing when it was not. */
+    public synchronized void drop(@NonNull String docId) {
+        if (!shown.containsKey(docId)) return;
+        shown.remove(docId);
+        removed = append(removed, docId);
+    }
+
+    public synchronized Delta finish() {
+        return new Delta(orEmpty(added), orEmpty(changed), orEmpty(removed));
+    }
+
+    public synchronized int size() {
+        return shown.size();
+    }
+
+    /** The requests shown now, for a batch that has to revisit every one of them. */
+    @NonNull
+    public synchronized List<String> ids() {
+        return new ArrayList<>(shown.keySet());
+    }
+
+    private static List<String> append(List<String> list, String docId) {
+        if (list == null) list = new ArrayList<>();
+        list.add(docId);
+        return list;
+    }
+
+    private static List<String> orEmpty(List<String> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+}
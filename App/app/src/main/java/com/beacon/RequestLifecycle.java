@@ -0,0 +1,138 @@
+package com.beacon;
+
+import java.util.Collection;
+
+/**
+ * Lifecycle rules for emergency requests, kept free of Couchbase Lite so they can be unit
+ * tested. A request only moves forward: open, then responded. The request document itself is
+ * never edited after it is created; each responder's acceptance is its own claim document and
+ * the requester's dispatch waves go to one offer document, so every document has exactly one
+ * writer. The status is derived from the claims on read.
+ * <p>
+ * Two exceptions, both made by the requester's own device, so the request still has a single
+ * writer. A request saved before the requester had a location fix is given the first one
+ * later, once ({@link RequestOutboxWriter}); that edit moves the request from the unlocated
+ * channel to its cell. And once a claim holds the request, the requester marks it responded
+ * ({@link RequestClaims#close}) so Sync Gateway takes it out of its cell and expires it. Either
+ * edit can meet a response an older client wrote into the request, or the same request saved
+ * from the user's other device; {@link #mergeStatus}, {@link #remoteResponseWins} and
+ * {@link #remoteLocationWins} settle those.
+ */
+public final class RequestLifecycle {
+    public static final String STATUS_OPEN = "open";
+    public static final String STATUS_RESPONDED = "responded";
+    public static final String CLAIM_TYPE = "request_claim";
+    public static final String OFFER_TYPE = "request_offer";
+    private static final String CLAIM_PREFIX = "claim::";
+    private static final String OFFER_PREFIX = "offer::";
+
+    /** One responder's claim on a request. */
+    public static final class Claim {
+        public final String responderId;
+        public final long claimedAt;
+
+        public Claim(String responderId, long claimedAt) {
+            this.responderId = responderId;
+            this.claimedAt = claimedAt;
+        }
+    }
+
+    private RequestLifecycle() {}
+
+    /** Written only by {@code responderId}, so two responders never edit the same document. */
+    public static String claimId(String requestId, String responderId) {
+        return CLAIM_PREFIX + requestId + "::" + responderId;
+    }
+
+    public static boolean isClaimId(String docId) {
+        return docId != null && docId.startsWith(CLAIM_PREFIX);
+    }
+
+    /** Written only by the requester's device, which runs the dispatch. */
+    public static String offerId(String requestId) {
+        return OFFER_PREFIX + requestId;
+    }
+
+    /** The request an offer document belongs to, or null for other IDs. */
+    public static String requestIdOfOffer(String docId) {
+        return docId != null && docId.startsWith(OFFER_PREFIX) ? docId.substring(OFFER_PREFIX.length()) : null;
+    }
+
+    /**
+     * The claim that holds the request, picked with {@link #remoteResponseWins} so every
+     * device that has the same claims agrees; null while there are none.
+     */
+    public static Claim winner(Iterable<Claim> claims) {
+        Claim winner = null;
+        for (Claim claim : claims) {
+            if (winner == null || remoteResponseWins(winner.responderId, winner.claimedAt,
+                    claim.responderId, claim.claimedAt)) {
+                winner = claim;
+            }
+        }
+        return winner;
+    }
+
+    public static String status(Iterable<Claim> claims) {
+        return claims.iterator().hasNext() ? STATUS_RESPONDED : STATUS_OPEN;
+    }
+
+    /**
+     * Position of a status in the lifecycle; unknown statuses rank below open.
+     */
+    public static int rank(String status) {
+        if (STATUS_OPEN.equals(status)) return 0;
+        if (STATUS_RESPONDED.equals(status)) return 1;
+        return -1;
+    }
+
+    /**
+     * The further of two statuses, or null if neither side has one.
+     */
+    public static String mergeStatus(String local, String remote) {
+        return rank(remote) > rank(local) ? remote : local;
+    }
+
+    /**
+     * Whether the remote response should replace the local one. The earliest response wins;
+     * ties go to the smaller responder id so both sides of a conflict pick the same winner.
+     * A missing timestamp (0) sorts last.
+     */
+    public static boolean remoteResponseWins(String localBy, long localAt, String remoteBy, long remoteAt) {
+        if (remoteBy == null) return false;
+        if (localBy == null) return true;
+        long local = localAt > 0 ? localAt : Long.MAX_VALUE;
+        long remote = remoteAt > 0 ? remoteAt : Long.MAX_VALUE;
+        if (remote != local) return remote < local;
+        return remoteBy.compareTo(localBy) < 0;
+    }
+
+    /**
+     * Whether the remote revision's location should replace the local one. A location is
+     * only ever added, so a side without one loses; two different ones (the same request
+     * saved on two of the user's devices) go to the smaller geohash so both sides of a
+     * conflict pick the same.
+     */
+    public static boolean remoteLocationWins(String localGeohash, String remoteGeohash) {
+        if (remoteGeohash == null) return false;
+        if (localGeohash == null) return true;
+        return remoteGeohash.compareTo(localGeohash) < 0;
+    }
+
+    /**
+     * Whether a responder may claim a request. {@code offeredTo} is null when the request is
+     * open to every responder of its type.
+     */
+    public static boolean canClaim(String status, Collection<String> offeredTo, String responderId) {
+        return STATUS_OPEN.equals(status) && (offeredTo == null || offeredTo.contains(responderId));
+    }
+
+    /**
+     * The earlier of two timestamps, ignoring missing ones (0).
+     */
+    public static long earliest(long local, long remote) {
+        if (local <= 0) return remote;
+        if (remote <= 0) return local;
+        return Math.min(local, remote);
+    }
+}
@@ -0,0 +1,107 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.Expression;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.MutableArray;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves responses and dispatch waves out of request documents written under schema version 1
+ * into claim and offer documents. Each device converts only what it wrote itself, its own
+ * responses and the offers on its own requests, so no two devices create the same document.
+ * The request documents are left as they are, with their long property names, until
+ * {@link CompactKeysMigration}; the new documents are written with {@link DocumentKeys}.
+ */
+public final class RequestMigration {
+    private static final String TAG = "RequestMigration";
+    /** The layout that kept responses and offers inside the request document. */
+    public static final int FROM_VERSION = 1;
+
+    private RequestMigration() {}
+
+    /**
+     * Runs once per database; the queries are not indexed. Returns how many documents were
+     * created.
+     */
+    public static int migrate(@NonNull Database database, @NonNull String userId) throws CouchbaseLiteException {
+        Collection collection = database.getDefaultCollection();
+        long start = System.nanoTime();
+        List<String> responded = ids(collection, "responded_by", userId);
+        List<String> requested = ids(collection, "requested_by", userId);
+        int[] created = {0};
+        database.inBatch(() -> {
+            for (String requestId : responded) {
+                if (migrateResponse(collection, requestId, userId)) created[0]++;
+            }
+            for (String requestId : requested) {
+                if (migrateOffer(collection, requestId)) created[0]++;
+            }
+        });
+        Log.i(TAG, "Created " + created[0] + " claim and offer documents in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return created[0];
+    }
+
+    private static boolean migrateResponse(Collection collection, String requestId, String userId)
+            throws CouchbaseLiteException {
+        String claimId = RequestLifecycle.claimId(requestId, userId);
+        Document request = collection.getDocument(requestId);
+        if (request == null || collection.getDocument(claimId) != null) return false;
+        MutableDocument claim = new MutableDocument(claimId);
+        claim.setString(DocumentKeys.TYPE, RequestLifecycle.CLAIM_TYPE);
+        claim.setString(DocumentKeys.REQUEST_ID, requestId);
+        claim.setString(DocumentKeys.RESPONDER_ID, userId);
+        claim.setLong(DocumentKeys.CLAIMED_AT, request.getLong("responded_at"));
+        claim.setString(DocumentKeys.REQUESTED_BY, request.getString("requested_by"));
+        claim.setString(DocumentKeys.GEOHASH, request.getString("geohash"));
+        collection.save(claim);
+        return true;
+    }
+
+    private static boolean migrateOffer(Collection collection, String requestId) throws CouchbaseLiteException {
+        String offerId = RequestLifecycle.offerId(requestId);
+        Document request = collection.getDocument(requestId);
+        if (request == null || !request.contains("dispatch_wave") || collection.getDocument(offerId) != null) {
+            return false;
+        }
+        MutableDocument offer = new MutableDocument(offerId);
+        offer.setString(DocumentKeys.TYPE, RequestLifecycle.OFFER_TYPE);
+        offer.setString(DocumentKeys.REQUEST_ID, requestId);
+        offer.setString(DocumentKeys.GEOHASH, request.getString("geohash"));
+        List<String> offeredTo = RequestClaims.offeredTo(request.getArray("offered_to"));
+        if (offeredTo != null) offer.setArray(DocumentKeys.OFFERED_TO, new MutableArray(new ArrayList<>(offeredTo)));
+        offer.setInt(DocumentKeys.DISPATCH_WAVE, request.getInt("dispatch_wave"));
+        collection.save(offer);
+        return true;
+    }
+
+    private static List<String> ids(Collection collection, String property, String userId)
+            throws CouchbaseLiteException {
+        List<String> ids = new ArrayList<>();
+        try (ResultSet results = QueryBuilder
+                .select(SelectResult.expression(Meta.id))
+                .from(DataSource.collection(collection))
+                .where(Expression.property("type").equalTo(Expression.string("emergency_request"))
+                        .and(Expression.property(property).equalTo(Expression.string(userId))))
+                .execute()) {
+            for (Result result : results) ids.add(result.getString(0));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,201 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pending emergency requests waiting to be written. Request IDs are derived from the
+ * requester, emergency type and time bucket, so the same request saved twice (a repeated tap,
+ * a restart, a second device of the same user) lands on one document instead of many. Taps
+ * for the same requester and type within the coalescing window are folded into the request
+ * they repeat, unless that request has been claimed since. Pure Java;
+ * {@link RequestOutboxWriter} commits what is drained here.
+ */
+public class RequestOutbox {
+    public static final long DEFAULT_BUCKET_MS = 60_000;
+    public static final long DEFAULT_COALESCE_WINDOW_MS = 120_000;
+
+    /**
+     * LOCATED is a repeated tap that carries the first location for a request already
+     * committed without one; the writer adds it to the stored document.
+     */
+    public enum Outcome { QUEUED, COALESCED, LOCATED }
+
+    public static final class Request {
+        public final String id;
+        public final String requesterId;
+        public final String emergencyType;
+        public final long requestedAt;
+        // Null until a location is known; a coalesced tap may fill them in
+        public Double latitude;
+        public Double longitude;
+        /** Only the location, for a request that is already stored. */
+        public final boolean locationUpdate;
+
+        Request(String id, String requesterId, String emergencyType, long requestedAt, Double latitude, Double longitude,
+                boolean locationUpdate) {
+            this.id = id;
+            this.requesterId = requesterId;
+            this.emergencyType = emergencyType;
+            this.requestedAt = requestedAt;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.locationUpdate = locationUpdate;
+        }
+
+        public boolean hasLocation() {
+            return latitude != null && longitude != null;
+        }
+    }
+
+    private static final class Recent {
+        final String id;
+        final long firstTapMs;
+        boolean located;
+
+        Recent(String id, long firstTapMs, boolean located) {
+            this.id = id;
+            this.firstTapMs = firstTapMs;
+            this.located = located;
+        }
+    }
+
+    private final long bucketMs;
+    private final long coalesceWindowMs;
+    private final Map<String, Recent> recent = new HashMap<>();
+    private final Map<String, Request> pending = new LinkedHashMap<>();
+    /** Claimed requests by when they were claimed, until their time bucket is over. */
+    private final Map<String, Long> settled = new HashMap<>();
+    private long taps;
+    private long coalesced;
+
+    public RequestOutbox() {
+        this(DEFAULT_BUCKET_MS, DEFAULT_COALESCE_WINDOW_MS);
+    }
+
+    /**
+     * The window must cover at least one bucket, so a tap that is no longer coalesced always
+     * gets a new ID.
+     */
+    public RequestOutbox(long bucketMs, long coalesceWindowMs) {
+        if (bucketMs <= 0 || coalesceWindowMs < bucketMs) {
+            throw new IllegalArgumentException("Window " + coalesceWindowMs + " ms shorter than bucket " + bucketMs + " ms");
+        }
+        this.bucketMs = bucketMs;
+        this.coalesceWindowMs = coalesceWindowMs;
+    }
+
+    /**
+     * Deterministic document ID for a request, e.g. {@code request::alice::fire_truck::28333333}.
+     */
+    @NonNull
+    public static String requestId(@NonNull String requesterId, @NonNull String emergencyType, long bucket) {
+        return "request::" + requesterId + "::"
+                + emergencyType.trim().toLowerCase(Locale.ROOT).replace(' ', '_') + "::" + bucket;
+    }
+
+    /**
+     * Record a tap. Returns {@link Outcome#COALESCED} when it repeats a request made within
+     * the window; that request's ID is returned by {@link #lastId}.
+     */
+    @NonNull
+    public synchronized Outcome enqueue(@NonNull String requesterId, @NonNull String emergencyType, long nowMs,
+                                        Double latitude, Double longitude) {
+        taps++;
+        expire(nowMs);
+        String key = requesterId + "|" + emergencyType;
+        Recent last = recent.get(key);
+        boolean located = latitude != null && longitude != null;
+        if (last != null) {
+            coalesced++;
+            if (!located || last.located) return Outcome.COALESCED;
+            last.located = true;
+            Request request = pending.get(last.id);
+            if (request != null) {
+                request.latitude = latitude;
+                request.longitude = longitude;
+                return Outcome.COALESCED;
+            }
+            pending.put(last.id, new Request(last.id, requesterId, emergencyType, last.firstTapMs, latitude, longitude,
+                    true));
+            return Outcome.LOCATED;
+        }
+
+        String id = requestId(requesterId, emergencyType, nowMs / bucketMs);
+        // Same bucket as a request claimed moments ago: this is a new emergency, not a repeat
+        if (settled.containsKey(id)) id += "::" + nowMs;
+        recent.put(key, new Recent(id, nowMs, located));
+        pending.put(id, new Request(id, requesterId, emergencyType, nowMs, latitude, longitude, false));
+        return Outcome.QUEUED;
+    }
+
+    /**
+     * A request was claimed or responded to; the next tap for its requester and type starts
+     * a new request instead of folding into it.
+     */
+    public synchronized void settle(@NonNull String requestId, long nowMs) {
+        Iterator<Recent> it = recent.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().id.equals(requestId)) {
+                it.remove();
+                settled.put(requestId, nowMs);
+            }
+        }
+    }
+
+    /**
+     * ID of the request the last tap for this requester and type went to, or null.
+     */
+    public synchronized String lastId(@NonNull String requesterId, @NonNull String emergencyType) {
+        Recent last = recent.get(requesterId + "|" + emergencyType);
+        return last != null ? last.id : null;
+    }
+
+    /**
+     * Take every pending request, oldest first.
+     */
+    @NonNull
+    public synchronized List<Request> drain() {
+        List<Request> batch = new ArrayList<>(pending.values());
+        pending.clear();
+        return batch;
+    }
+
+    /**
+     * Put back requests whose commit failed, ahead of anything queued since.
+     */
+    public synchronized void restore(@NonNull List<Request> batch) {
+        Map<String, Request> merged = new LinkedHashMap<>();
+        for (Request request : batch) merged.put(request.id, request);
+        for (Request request : pending.values()) merged.putIfAbsent(request.id, request);
+        pending.clear();
+        pending.putAll(merged);
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getTaps() {
+        return taps;
+    }
+
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    private void expire(long nowMs) {
+        Iterator<Recent> it = recent.values().iterator();
+        while (it.hasNext()) {
+            if (nowMs - it.next().firstTapMs >= coalesceWindowMs) it.remove();
+        }
+        settled.values().removeIf(settledAt -> nowMs - settledAt >= bucketMs);
+    }
+}
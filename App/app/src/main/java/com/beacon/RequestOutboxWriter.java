@@ -0,0 +1,182 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commits a {@link RequestOutbox} off the main thread. The first tap schedules a flush a
+ * short delay later; everything queued by then is written in one {@code inBatch} transaction,
+ * so a burst of taps costs one commit and one round of change notifications. A request whose
+ * document already exists is left alone, which makes repeated saves of the same ID no-ops,
+ * except that a stored request without a location takes the first one a later tap brings;
+ * that is the one edit {@link RequestLifecycle} allows on a request.
+ * Claims arriving on the collection settle the outbox's requests, so a new emergency right
+ * after one is not folded into it, and close the requester's own requests with
+ * {@link RequestClaims#close}; requests claimed while this device was away are closed at start.
+ */
+public class RequestOutboxWriter {
+    private static final String TAG = "REQUEST_OUTBOX";
+
+    public interface Listener {
+        /**
+         * Requests created, or given their first location, by the batch just committed;
+         * replicators can push them now.
+         */
+        void onBatchCommitted(@NonNull List<RequestOutbox.Request> created);
+    }
+
+    private final Database database;
+    private final Collection collection;
+    private final RequestOutbox outbox;
+    private final String requesterId;
+    private final long flushDelayMs;
+    private final Listener listener;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private boolean flushScheduled;
+    private ListenerToken token;
+
+    public RequestOutboxWriter(@NonNull Database database, @NonNull Collection collection, @NonNull RequestOutbox outbox,
+                               @NonNull String requesterId, long flushDelayMs, Listener listener) {
+        this.database = database;
+        this.collection = collection;
+        this.outbox = outbox;
+        this.requesterId = requesterId;
+        this.flushDelayMs = flushDelayMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Queue a tap and schedule a flush. Safe to call from the main thread.
+     */
+    @NonNull
+    public RequestOutbox.Outcome submit(@NonNull String requesterId, @NonNull String emergencyType, long nowMs,
+                                        Double latitude, Double longitude) {
+        RequestOutbox.Outcome outcome = outbox.enqueue(requesterId, emergencyType, nowMs, latitude, longitude);
+        if (outcome != RequestOutbox.Outcome.COALESCED) scheduleFlush();
+        return outcome;
+    }
+
+    /** Watch for claims on the requests in the outbox and on the requester's own requests. */
+    public synchronized void start() {
+        token = collection.addChangeListener(executor, change -> {
+            for (String docId : change.getDocumentIDs()) {
+                if (!RequestLifecycle.isClaimId(docId)) continue;
+                try {
+                    Document claim = collection.getDocument(docId);
+                    String requestId = claim != null ? DocumentFields.getString(claim, DocumentKeys.REQUEST_ID) : null;
+                    if (requestId == null) continue;
+                    outbox.settle(requestId, System.currentTimeMillis());
+                    if (RequestClaims.close(collection, requestId, requesterId)) Log.i(TAG, "Closed " + requestId);
+                } catch (CouchbaseLiteException e) {
+                    Log.e(TAG, "Could not read " + docId, e);
+                }
+            }
+        });
+        executor.execute(this::closeClaimed);
+    }
+
+    private void closeClaimed() {
+        List<String> open = new ArrayList<>();
+        try {
+            try (ResultSet results = RequestQueries.openRequestsBy(collection, requesterId).execute()) {
+                for (Result result : results) open.add(result.getString(0));
+            }
+            int closed = 0;
+            for (String requestId : open) {
+                if (RequestClaims.close(collection, requestId, requesterId)) closed++;
+            }
+            if (closed > 0) Log.i(TAG, "Closed " + closed + " requests claimed while away");
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not close claimed requests", e);
+        }
+    }
+
+    /**
+     * Flush what is pending and stop; a flush already scheduled still runs.
+     */
+    public void stop() {
+        scheduleFlush();
+        synchronized (this) {
+            if (token != null) token.remove();
+        }
+        executor.shutdown();
+    }
+
+    private synchronized void scheduleFlush() {
+        if (flushScheduled || executor.isShutdown()) return;
+        flushScheduled = true;
+        executor.schedule(this::flush, flushDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        synchronized (this) {
+            flushScheduled = false;
+        }
+        List<RequestOutbox.Request> batch = outbox.drain();
+        if (batch.isEmpty()) return;
+
+        List<RequestOutbox.Request> created = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            database.inBatch(() -> {
+                for (RequestOutbox.Request request : batch) {
+                    Document existing = collection.getDocument(request.id);
+                    if (existing == null && !request.locationUpdate) {
+                        collection.save(toDocument(request));
+                        created.add(request);
+                    } else if (existing != null && request.hasLocation() && !existing.contains(DocumentKeys.LATITUDE)) {
+                        MutableDocument located = existing.toMutable();
+                        setLocation(located, request);
+                        collection.save(located);
+                        created.add(request);
+                    }
+                }
+            });
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not commit " + batch.size() + " requests, retrying", e);
+            outbox.restore(batch);
+            scheduleFlush();
+            return;
+        }
+        Log.i(TAG, "Committed " + created.size() + " of " + batch.size() + " requests in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        if (listener != null && !created.isEmpty()) listener.onBatchCommitted(created);
+    }
+
+    /** A new request's document; the load test harness saves its requests with this too. */
+    @NonNull
+    static MutableDocument toDocument(@NonNull RequestOutbox.Request request) {
+        MutableDocument doc = new MutableDocument(request.id);
+        doc.setString(DocumentKeys.TYPE, "emergency_request");
+        doc.setString(DocumentKeys.EMERGENCY_TYPE, request.emergencyType);
+        if (request.hasLocation()) setLocation(doc, request);
+        // Never changed after this; the sync function routes open requests to their cell
+        doc.setString(DocumentKeys.STATUS, RequestLifecycle.STATUS_OPEN);
+        doc.setString(DocumentKeys.REQUESTED_BY, request.requesterId);
+        doc.setLong(DocumentKeys.REQUESTED_AT, request.requestedAt);
+        return doc;
+    }
+
+    private static void setLocation(MutableDocument doc, RequestOutbox.Request request) {
+        doc.setDouble(DocumentKeys.LATITUDE, request.latitude);
+        doc.setDouble(DocumentKeys.LONGITUDE, request.longitude);
+        // Routes the request to its geohash-cell channel
+        doc.setString(DocumentKeys.GEOHASH, GeoChannels.documentGeohash(request.latitude, request.longitude));
+    }
+}
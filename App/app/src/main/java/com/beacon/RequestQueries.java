@@ -0,0 +1,245 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.ArrayFunction;
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Expression;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.SelectResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The queries the app runs on every start or keeps live. Each of them must be served by an
+ * index from {@link QueryIndexes}, except on the scoped locations collection, which they read
+ * whole; the instrumented query-plan tests enforce that. The type filters stay so the queries
+ * also work on the single-collection layout.
+ */
+public final class RequestQueries {
+
+    private RequestQueries() {}
+
+    /**
+     * Open emergency requests of one type that are offered to this responder, either by name
+     * in {@code offered_to} or to everyone when it is absent. Selects only the ID and revision;
+     * the index narrows the rows and the offer check runs on those. The responder screen now
+     * reads {@link OpenRequestView}; this live query remains as its benchmark baseline.
+     */
+    public static Query openRequestsForType(@NonNull Collection collection, @NonNull String emergencyType,
+                                            @NonNull String responderId) {
+        return QueryBuilder
+                .select(SelectResult.expression(Meta.id), SelectResult.expression(Meta.revisionID))
+                .from(DataSource.collection(collection))
+                .where(
+                        Expression.property(DocumentKeys.TYPE).equalTo(Expression.string("emergency_request"))
+                                .and(Expression.property(DocumentKeys.STATUS).equalTo(Expression.string(RequestLifecycle.STATUS_OPEN)))
+                                .and(Expression.property(DocumentKeys.EMERGENCY_TYPE).equalTo(Expression.string(emergencyType)))
+                                .and(Expression.property(DocumentKeys.OFFERED_TO).isNotValued()
+                                        .or(ArrayFunction.contains(Expression.property(DocumentKeys.OFFERED_TO), Expression.string(responderId))))
+                );
+    }
+
+    /**
+     * Every open emergency request with the fields {@link OpenRequestView} orders, filters and
+     * maps by. Columns: id, revision, emergency_type, severity, requested_at, offered_to,
+     * latitude, longitude.
+     */
+    public static Query openRequests(@NonNull Collection collection) {
+        return QueryBuilder
+                .select(SelectResult.expression(Meta.id),
+                        SelectResult.expression(Meta.revisionID),
+                        SelectResult.property(DocumentKeys.EMERGENCY_TYPE),
+                        SelectResult.property(DocumentKeys.SEVERITY),
+                        SelectResult.property(DocumentKeys.REQUESTED_AT),
+                        SelectResult.property(DocumentKeys.OFFERED_TO),
+                        SelectResult.property(DocumentKeys.LATITUDE),
+                        SelectResult.property(DocumentKeys.LONGITUDE))
+                .from(DataSource.collection(collection))
+                .where(
+                        Expression.property(DocumentKeys.TYPE).equalTo(Expression.string("emergency_request"))
+                                .and(Expression.property(DocumentKeys.STATUS).equalTo(Expression.string(RequestLifecycle.STATUS_OPEN)))
+                );
+    }
+
+    /**
+     * A requester's own open requests, to resume their dispatch after a restart. Columns: id,
+     * emergency_type, latitude, longitude.
+     */
+    public static Query openRequestsBy(@NonNull Collection collection, @NonNull String requesterId) {
+        return QueryBuilder
+                .select(SelectResult.expression(Meta.id),
+                        SelectResult.property(DocumentKeys.EMERGENCY_TYPE),
+                        SelectResult.property(DocumentKeys.LATITUDE),
+                        SelectResult.property(DocumentKeys.LONGITUDE))
+                .from(DataSource.collection(collection))
+                .where(
+                        Expression.property(DocumentKeys.TYPE).equalTo(Expression.string("emergency_request"))
+                                .and(Expression.property(DocumentKeys.STATUS).equalTo(Expression.string(RequestLifecycle.STATUS_OPEN)))
+                                .and(Expression.property(DocumentKeys.REQUESTED_BY).equalTo(Expression.string(requesterId)))
+                );
+    }
+
+    /**
+     * Every claim on every request, for {@link OpenRequestView}. Columns: request_id,
+     * responder_id, claimed_at.
+     */
+    public static Query claims(@NonNull Collection collection) {
+        return QueryBuilder
+                .select(SelectResult.property(DocumentKeys.REQUEST_ID),
+                        SelectResult.property(DocumentKeys.RESPONDER_ID),
+                        SelectResult.property(DocumentKeys.CLAIMED_AT))
+                .from(DataSource.collection(collection))
+                .where(Expression.property(DocumentKeys.TYPE).equalTo(Expression.string(RequestLifecycle.CLAIM_TYPE)));
+    }
+
+    /**
+     * The claims on one request, to decide who holds it. Columns: request_id, responder_id,
+     * claimed_at.
+     */
+    public static Query claimsFor(@NonNull Collection collection, @NonNull String requestId) {
+        return QueryBuilder
+                .select(SelectResult.property(DocumentKeys.REQUEST_ID),
+                        SelectResult.property(DocumentKeys.RESPONDER_ID),
+                        SelectResult.property(DocumentKeys.CLAIMED_AT))
+                .from(DataSource.collection(collection))
+                .where(
+                        Expression.property(DocumentKeys.TYPE).equalTo(Expression.string(RequestLifecycle.CLAIM_TYPE))
+                                .and(Expression.property(DocumentKeys.REQUEST_ID).equalTo(Expression.string(requestId)))
+                );
+    }
+
+    /**
+     * Every request's current dispatch wave. Columns: request_id, revision, offered_to.
+     */
+    public static Query offers(@NonNull Collection collection) {
+        return QueryBuilder
+                .select(SelectResult.property(DocumentKeys.REQUEST_ID),
+                        SelectResult.expression(Meta.revisionID),
+                        SelectResult.property(DocumentKeys.OFFERED_TO))
+                .from(DataSource.collection(collection))
+                .where(Expression.property(DocumentKeys.TYPE).equalTo(Expression.string(RequestLifecycle.OFFER_TYPE)));
+    }
+
+    /**
+     * Every responder with type, status and position, to load the responder spatial index.
+     * Columns: id, responderType, status, location.lat, location.lon.
+     */
+    public static Query responders(@NonNull Collection collection) {
+        return QueryBuilder
+                .select(SelectResult.expression(Meta.id),
+                        SelectResult.property(DocumentKeys.RESPONDER_TYPE),
+                        SelectResult.property(DocumentKeys.USER_STATUS),
+                        SelectResult.property(DocumentKeys.USER_LOCATION + "." + DocumentKeys.USER_LATITUDE),
+                        SelectResult.property(DocumentKeys.USER_LOCATION + "." + DocumentKeys.USER_LONGITUDE))
+                .from(DataSource.collection(collection))
+                .where(
+                        Expression.property(DocumentKeys.TYPE).equalTo(Expression.string("user"))
+                                .and(Expression.property(DocumentKeys.USER_TYPE).equalTo(Expression.string("responder")))
+                );
+    }
+
+    /**
+     * Live responder positions: responder_id, latitude, longitude.
+     */
+    public static Query responderLocations(@NonNull Collection collection) {
+        return QueryBuilder
+                .select(SelectResult.property(DocumentKeys.RESPONDER_ID),
+                        SelectResult.property(DocumentKeys.LATITUDE),
+                        SelectResult.property(DocumentKeys.LONGITUDE))
+                .from(DataSource.collection(collection))
+                .where(Expression.property(DocumentKeys.TYPE).equalTo(Expression.string(LocationThrottle.DOC_TYPE)));
+    }
+
+    /**
+     * Requests an older client marked responded, for {@link RetentionManager}. Columns: id,
+     * responded_at.
+     */
+    public static Query respondedRequests(@NonNull Collection collection) {
+        return QueryBuilder
+                .select(SelectResult.expression(Meta.id), SelectResult.property(DocumentKeys.RESPONDED_AT))
+                .from(DataSource.collection(collection))
+                .where(
+                        Expression.property(DocumentKeys.TYPE).equalTo(Expression.string("emergency_request"))
+                                .and(Expression.property(DocumentKeys.STATUS).equalTo(Expression.string(RequestLifecycle.STATUS_RESPONDED)))
+                );
+    }
+
+    /**
+     * Documents an older client wrote with the long property names, and short-key requests
+     * it responded to in place. Readers that load through the queries above pick these up
+     * one document at a time with {@link DocumentFields}; there are few, so the query only
+     * narrows by type. Columns: id.
+     */
+    public static Query legacyDocuments(@NonNull Collection collection) {
+        List<Expression> types = new ArrayList<>();
+        for (String type : DocumentKeys.compactTypes()) types.add(Expression.string(type));
+        Expression legacy = null;
+        for (String name : DocumentKeys.LEGACY_NAMES) {
+            Expression valued = Expression.property(name).isValued();
+            legacy = legacy == null ? valued : legacy.or(valued);
+        }
+        return QueryBuilder
+                .select(SelectResult.expression(Meta.id))
+                .from(DataSource.collection(collection))
+                .where(Expression.property(DocumentKeys.TYPE).in(types.toArray(new Expression[0])).and(legacy));
+    }
+
+    /**
+     * The claims an older client wrote on one request, with the long names. Columns:
+     * request_id, responder_id, claimed_at.
+     */
+    public static Query legacyClaimsFor(@NonNull Collection collection, @NonNull String requestId) {
+        return QueryBuilder
+                .select(SelectResult.property(DocumentKeys.longName(DocumentKeys.REQUEST_ID)),
+                        SelectResult.property(DocumentKeys.longName(DocumentKeys.RESPONDER_ID)),
+                        SelectResult.property(DocumentKeys.longName(DocumentKeys.CLAIMED_AT)))
+                .from(DataSource.collection(collection))
+                .where(
+                        Expression.property(DocumentKeys.TYPE).equalTo(Expression.string(RequestLifecycle.CLAIM_TYPE))
+                                .and(Expression.property(DocumentKeys.longName(DocumentKeys.REQUEST_ID))
+                                        .equalTo(Expression.string(requestId)))
+                );
+    }
+
+    /**
+     * Responder location documents for {@link RetentionManager}. Columns: id, updated_at.
+     */
+    public static Query responderLocationAges(@NonNull Collection collection) {
+        return QueryBuilder
+                .select(SelectResult.expression(Meta.id), SelectResult.property(DocumentKeys.UPDATED_AT))
+                .from(DataSource.collection(collection))
+                .where(Expression.property(DocumentKeys.TYPE).equalTo(Expression.string(LocationThrottle.DOC_TYPE)));
+    }
+
+    /**
+     * Every hot query by name, for plan checks and benchmarks, with all documents in one
+     * collection.
+     */
+    public static Map<String, Query> hotQueries(@NonNull Collection collection, @NonNull String emergencyType,
+                                                @NonNull String responderId) {
+        return hotQueries(BeaconCollections.single(collection), emergencyType, responderId);
+    }
+
+    /**
+     * Every hot query by name, each on the collection holding its documents.
+     */
+    public static Map<String, Query> hotQueries(@NonNull BeaconCollections collections, @NonNull String emergencyType,
+                                                @NonNull String responderId) {
+        Map<String, Query> queries = new LinkedHashMap<>();
+        queries.put("openRequestsForType", openRequestsForType(collections.requests, emergencyType, responderId));
+        queries.put("openRequests", openRequests(collections.requests));
+        queries.put("openRequestsBy", openRequestsBy(collections.requests, responderId));
+        queries.put("claims", claims(collections.requests));
+        queries.put("offers", offers(collections.requests));
+        queries.put("responders", responders(collections.responders));
+        queries.put("responderLocations", responderLocations(collections.locations));
+        return queries;
+    }
+}
@@ -0,0 +1,170 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Dictionary;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a {@link ResponderSpatialIndex} in step with responder user documents: one indexed
+ * query to load it, then a single document read per changed ID from the collection change
+ * listener. Loading and updates share one thread, so a change is never overwritten by an
+ * older loaded row. A live position from {@link ResponderLocationPublisher} takes precedence
+ * over the location stored in the user document.
+ */
+public class ResponderIndexUpdater {
+    private static final String TAG = "RESPONDER_INDEX";
+    public static final String STATUS_AVAILABLE = "available";
+
+    /** Told about every indexed change, on the updater thread. */
+    public interface Listener {
+        void onResponderChanged(@NonNull String responderId, String responderType, boolean available,
+                                double latitude, double longitude);
+        void onResponderRemoved(@NonNull String responderId);
+    }
+
+    private final BeaconCollections collections;
+    private final ResponderSpatialIndex index;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Responder ID to {lat, lon} from location documents; only touched on the executor
+    private final Map<String, double[]> livePositions = new HashMap<>();
+    private final List<ListenerToken> tokens = new ArrayList<>();
+
+    public ResponderIndexUpdater(@NonNull Collection collection, @NonNull ResponderSpatialIndex index) {
+        this(collection, index, null);
+    }
+
+    public ResponderIndexUpdater(@NonNull Collection collection, @NonNull ResponderSpatialIndex index,
+                                 Listener listener) {
+        this(BeaconCollections.single(collection), index, listener);
+    }
+
+    /** Reads user documents from the responders collection and positions from locations. */
+    public ResponderIndexUpdater(@NonNull BeaconCollections collections, @NonNull ResponderSpatialIndex index,
+                                 Listener listener) {
+        this.collections = collections;
+        this.index = index;
+        this.listener = listener;
+    }
+
+    public void start() {
+        for (Collection collection : collections.all()) {
+            if (collection != collections.responders && collection != collections.locations) continue;
+            tokens.add(collection.addChangeListener(executor, change -> {
+                for (String docId : change.getDocumentIDs()) {
+                    apply(collection, docId);
+                }
+            }));
+        }
+        executor.execute(this::load);
+    }
+
+    public void stop() {
+        for (ListenerToken token : tokens) token.remove();
+        executor.shutdown();
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try (ResultSet results = RequestQueries.responderLocations(collections.locations).execute()) {
+            for (Result result : results) {
+                if (result.getValue(1) == null || result.getValue(2) == null) continue;
+                livePositions.put(result.getString(0), new double[]{result.getDouble(1), result.getDouble(2)});
+            }
+            // Positions older clients wrote with the long names
+            try (ResultSet legacy = RequestQueries.legacyDocuments(collections.locations).execute()) {
+                for (Result result : legacy) {
+                    Document doc = collections.locations.getDocument(result.getString(0));
+                    if (doc != null && LocationThrottle.DOC_TYPE.equals(doc.getString(DocumentKeys.TYPE))) recordLocation(doc);
+                }
+            }
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not load responder locations", e);
+        }
+        try (ResultSet results = RequestQueries.responders(collections.responders).execute()) {
+            for (Result result : results) {
+                String responderId = result.getString(0);
+                double[] live = livePositions.get(responderId);
+                if (live == null && (result.getValue(3) == null || result.getValue(4) == null)) {
+                    remove(responderId);
+                    continue;
+                }
+                upsert(responderId, result.getString(1), STATUS_AVAILABLE.equals(result.getString(2)),
+                        live != null ? live[0] : result.getDouble(3), live != null ? live[1] : result.getDouble(4));
+            }
+            Log.i(TAG, "Indexed " + index.size() + " available responders in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not load responders", e);
+        }
+    }
+
+    private void apply(Collection collection, String docId) {
+        try {
+            Document doc = collection.getDocument(docId);
+            if (doc != null && LocationThrottle.DOC_TYPE.equals(doc.getString(DocumentKeys.TYPE))) {
+                applyLocation(doc);
+                return;
+            }
+            // An expired position keeps its last value until the responder's next update
+            if (collection != collections.responders) return;
+            Dictionary location = doc != null ? doc.getDictionary(DocumentKeys.USER_LOCATION) : null;
+            double[] live = livePositions.get(docId);
+            boolean hasStored = location != null && location.contains(DocumentKeys.USER_LATITUDE) && location.contains(DocumentKeys.USER_LONGITUDE);
+            if (doc == null || !"user".equals(doc.getString(DocumentKeys.TYPE))
+                    || !"responder".equals(doc.getString(DocumentKeys.USER_TYPE)) || (live == null && !hasStored)) {
+                remove(docId);
+                return;
+            }
+            upsert(docId, doc.getString(DocumentKeys.RESPONDER_TYPE),
+                    STATUS_AVAILABLE.equals(doc.getString(DocumentKeys.USER_STATUS)),
+                    live != null ? live[0] : location.getDouble(DocumentKeys.USER_LATITUDE),
+                    live != null ? live[1] : location.getDouble(DocumentKeys.USER_LONGITUDE));
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not read " + docId, e);
+        }
+    }
+
+    private void upsert(String responderId, String responderType, boolean available, double latitude, double longitude) {
+        index.upsert(responderId, responderType, available, latitude, longitude);
+        if (listener != null) listener.onResponderChanged(responderId, responderType, available, latitude, longitude);
+    }
+
+    private void remove(String responderId) {
+        index.remove(responderId);
+        if (listener != null) listener.onResponderRemoved(responderId);
+    }
+
+    /** Record a live position and re-apply the responder's user document with it. */
+    private void applyLocation(Document doc) {
+        String responderId = recordLocation(doc);
+        if (responderId != null) apply(collections.responders, responderId);
+    }
+
+    /** Record a live position; returns its responder, or null when it has none. */
+    private String recordLocation(Document doc) {
+        String responderId = DocumentFields.getString(doc, DocumentKeys.RESPONDER_ID);
+        if (responderId == null || !DocumentFields.contains(doc, DocumentKeys.LATITUDE)
+                || !DocumentFields.contains(doc, DocumentKeys.LONGITUDE)) {
+            return null;
+        }
+        livePositions.put(responderId, new double[]{DocumentFields.getDouble(doc, DocumentKeys.LATITUDE),
+                DocumentFields.getDouble(doc, DocumentKeys.LONGITUDE)});
+        return responderId;
+    }
+}
@@ -0,0 +1,94 @@
+package com.beacon;
+
+import android.location.Location;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableDocument;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a responder's position into its own small {@code location::<responderId>} document
+ * rather than the user document, so each update replicates a few hundred bytes instead of the
+ * whole profile. Fixes pass through a {@link LocationThrottle}; held fixes are flushed by a
+ * periodic tick on the same thread that writes.
+ */
+public class ResponderLocationPublisher {
+    private static final String TAG = "RESPONDER_LOCATION";
+    public static final String DOC_TYPE = LocationThrottle.DOC_TYPE;
+    private static final long TICK_MS = 2_000;
+
+    private final Collection collection;
+    private final String responderId;
+    private final LocationThrottle throttle;
+    private final Runnable onSaved;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    public ResponderLocationPublisher(@NonNull Collection collection, @NonNull String responderId,
+                                      @NonNull LocationThrottle throttle) {
+        this(collection, responderId, throttle, null);
+    }
+
+    /**
+     * @param onSaved run on the publisher thread after each saved revision
+     */
+    public ResponderLocationPublisher(@NonNull Collection collection, @NonNull String responderId,
+                                      @NonNull LocationThrottle throttle, @Nullable Runnable onSaved) {
+        this.collection = collection;
+        this.responderId = responderId;
+        this.throttle = throttle;
+        this.onSaved = onSaved;
+    }
+
+    @NonNull
+    public static String documentId(@NonNull String responderId) {
+        return "location::" + responderId;
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(() -> write(throttle.poll(System.currentTimeMillis())),
+                TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Hand over a fix from the location client; returns immediately. Dropped once stopped.
+     */
+    public synchronized void onFix(@NonNull Location location) {
+        if (executor.isShutdown()) return;
+        LocationThrottle.Fix fix = new LocationThrottle.Fix(location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE, location.getTime());
+        executor.execute(() -> write(throttle.offer(fix)));
+    }
+
+    private void write(LocationThrottle.Fix fix) {
+        if (fix == null) return;
+        try {
+            Document existing = collection.getDocument(documentId(responderId));
+            MutableDocument doc = existing != null ? existing.toMutable() : new MutableDocument(documentId(responderId));
+            doc.setString(DocumentKeys.TYPE, DOC_TYPE);
+            doc.setString(DocumentKeys.RESPONDER_ID, responderId);
+            doc.setDouble(DocumentKeys.LATITUDE, fix.latitude);
+            doc.setDouble(DocumentKeys.LONGITUDE, fix.longitude);
+            doc.setFloat(DocumentKeys.ACCURACY, fix.accuracyM);
+            // Routes the position to the same geohash-cell channels as nearby requests
+            doc.setString(DocumentKeys.GEOHASH, GeoChannels.documentGeohash(fix.latitude, fix.longitude));
+            doc.setLong(DocumentKeys.UPDATED_AT, fix.timeMs);
+            collection.save(doc);
+            if (onSaved != null) onSaved.run();
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not publish location for " + responderId, e);
+        }
+    }
+}
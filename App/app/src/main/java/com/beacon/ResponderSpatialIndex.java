@@ -0,0 +1,367 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory grid index of available responders, one grid per responder type. Positions live
+ * in primitive arrays and each grid cell holds an int array of slots, so a k-nearest query
+ * only touches the rings of cells around the query point.
+ * Distances use an equirectangular approximation, accurate to well under 1% at city scale.
+ */
+public class ResponderSpatialIndex {
+    /** Grid cell size; 0.01 degrees is about 1.1 km north-south. */
+    public static final double DEFAULT_CELL_DEGREES = 0.01;
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    public static final class Hit {
+        public final String responderId;
+        public final double distanceMeters;
+
+        Hit(String responderId, double distanceMeters) {
+            this.responderId = responderId;
+            this.distanceMeters = distanceMeters;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return responderId + "@" + Math.round(distanceMeters) + "m";
+        }
+    }
+
+    private final double cellDegrees;
+    private final Map<String, Grid> gridsByType = new HashMap<>();
+    private final Map<String, Grid> gridByResponder = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ResponderSpatialIndex() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    public ResponderSpatialIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * Insert, move or drop a responder. Only available responders are indexed, so a status
+     * change to anything else removes it.
+     */
+    public void upsert(@NonNull String responderId, String responderType, boolean available,
+                       double latitude, double longitude) {
+        lock.writeLock().lock();
+        try {
+            Grid current = gridByResponder.get(responderId);
+            if (!available || responderType == null) {
+                if (current != null) {
+                    current.remove(responderId);
+                    gridByResponder.remove(responderId);
+                }
+                return;
+            }
+            Grid grid = gridsByType.get(responderType);
+            if (grid == null) {
+                grid = new Grid(cellDegrees);
+                gridsByType.put(responderType, grid);
+            }
+            if (current != null && current != grid) current.remove(responderId);
+            grid.put(responderId, latitude, longitude);
+            gridByResponder.put(responderId, grid);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(@NonNull String responderId) {
+        lock.writeLock().lock();
+        try {
+            Grid grid = gridByResponder.remove(responderId);
+            if (grid != null) grid.remove(responderId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            gridsByType.clear();
+            gridByResponder.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Number of available responders indexed. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return gridByResponder.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code k} available responders of a type, nearest first.
+     */
+    @NonNull
+    public List<Hit> nearest(@NonNull String responderType, double latitude, double longitude, int k) {
+        lock.readLock().lock();
+        try {
+            Grid grid = gridsByType.get(responderType);
+            if (grid == null || k <= 0) return Collections.emptyList();
+            return grid.nearest(latitude, longitude, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Available responders of a type within {@code radiusMeters}, nearest first.
+     */
+    @NonNull
+    public List<Hit> withinRadius(@NonNull String responderType, double latitude, double longitude,
+                                  double radiusMeters) {
+        lock.readLock().lock();
+        try {
+            Grid grid = gridsByType.get(responderType);
+            if (grid == null) return Collections.emptyList();
+            return grid.withinRadius(latitude, longitude, radiusMeters);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = (lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /** One responder type. Slots are reused through a free list. */
+    private static final class Grid {
+        private final double cellDegrees;
+        private final Map<Long, Cell> cells = new HashMap<>();
+        private final Map<String, Integer> slotById = new HashMap<>();
+
+        private double[] latitudes = new double[16];
+        private double[] longitudes = new double[16];
+        private String[] ids = new String[16];
+        private long[] cellKeys = new long[16];
+        private int[] freeSlots = new int[16];
+        private int freeCount;
+        private int slotCount;
+
+        Grid(double cellDegrees) {
+            this.cellDegrees = cellDegrees;
+        }
+
+        void put(String id, double latitude, double longitude) {
+            long key = cellKey(row(latitude), column(longitude));
+            Integer existing = slotById.get(id);
+            int slot;
+            if (existing != null) {
+                slot = existing;
+                if (cellKeys[slot] != key) {
+                    removeFromCell(slot);
+                    cell(key).add(slot);
+                }
+            } else {
+                slot = allocate();
+                ids[slot] = id;
+                slotById.put(id, slot);
+                cell(key).add(slot);
+            }
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+            cellKeys[slot] = key;
+        }
+
+        void remove(String id) {
+            Integer slot = slotById.remove(id);
+            if (slot == null) return;
+            removeFromCell(slot);
+            ids[slot] = null;
+            if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            freeSlots[freeCount++] = slot;
+        }
+
+        List<Hit> nearest(double latitude, double longitude, int k) {
+            int size = slotById.size();
+            if (size == 0) return Collections.emptyList();
+            Best best = new Best(Math.min(k, size));
+            int row = row(latitude);
+            int column = column(longitude);
+
+            for (int ring = 0; ; ring++) {
+                // Once the ring has more cells than the grid has occupied ones, a full pass is cheaper
+                long side = 2L * ring + 1;
+                if (side * side > 4L * cells.size()) {
+                    scanAll(latitude, longitude, best);
+                    break;
+                }
+                visitRing(row, column, ring, latitude, longitude, best);
+                if (best.isFull() && best.worst() <= ringDistanceMeters(latitude, ring)) break;
+            }
+            return best.toHits(ids);
+        }
+
+        List<Hit> withinRadius(double latitude, double longitude, double radiusMeters) {
+            double latSpan = radiusMeters / METERS_PER_DEGREE;
+            double lonSpan = latSpan / Math.max(0.01, Math.cos(Math.toRadians(Math.min(89, Math.abs(latitude) + latSpan))));
+            List<Hit> hits = new ArrayList<>();
+            for (int row = row(latitude - latSpan); row <= row(latitude + latSpan); row++) {
+                for (int column = column(longitude - lonSpan); column <= column(longitude + lonSpan); column++) {
+                    Cell cell = cells.get(cellKey(row, column));
+                    if (cell == null) continue;
+                    for (int i = 0; i < cell.size; i++) {
+                        int slot = cell.slots[i];
+                        double distance = distanceMeters(latitude, longitude, latitudes[slot], longitudes[slot]);
+                        if (distance <= radiusMeters) hits.add(new Hit(ids[slot], distance));
+                    }
+                }
+            }
+            Collections.sort(hits, (a, b) -> Double.compare(a.distanceMeters, b.distanceMeters));
+            return hits;
+        }
+
+        private void visitRing(int row, int column, int ring, double latitude, double longitude, Best best) {
+            for (int r = row - ring; r <= row + ring; r++) {
+                boolean edgeRow = r == row - ring || r == row + ring;
+                // Interior rows only contribute their two edge cells
+                int step = edgeRow || ring == 0 ? 1 : 2 * ring;
+                for (int c = column - ring; c <= column + ring; c += step) {
+                    visitCell(cells.get(cellKey(r, c)), latitude, longitude, best);
+                }
+            }
+        }
+
+        private void scanAll(double latitude, double longitude, Best best) {
+            best.reset();
+            for (Cell cell : cells.values()) visitCell(cell, latitude, longitude, best);
+        }
+
+        private void visitCell(Cell cell, double latitude, double longitude, Best best) {
+            if (cell == null) return;
+            for (int i = 0; i < cell.size; i++) {
+                int slot = cell.slots[i];
+                best.offer(slot, distanceMeters(latitude, longitude, latitudes[slot], longitudes[slot]));
+            }
+        }
+
+        /** Lower bound on the distance to any point outside the first {@code ring} rings. */
+        private double ringDistanceMeters(double latitude, int ring) {
+            double farLatitude = Math.min(89, Math.abs(latitude) + (ring + 1) * cellDegrees);
+            return ring * cellDegrees * METERS_PER_DEGREE * Math.cos(Math.toRadians(farLatitude));
+        }
+
+        private void removeFromCell(int slot) {
+            Cell cell = cells.get(cellKeys[slot]);
+            cell.remove(slot);
+            if (cell.size == 0) cells.remove(cellKeys[slot]);
+        }
+
+        private int allocate() {
+            if (freeCount > 0) return freeSlots[--freeCount];
+            if (slotCount == ids.length) {
+                int capacity = slotCount * 2;
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                cellKeys = Arrays.copyOf(cellKeys, capacity);
+            }
+            return slotCount++;
+        }
+
+        private Cell cell(long key) {
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                cell = new Cell();
+                cells.put(key, cell);
+            }
+            return cell;
+        }
+
+        private int row(double latitude) {
+            return (int) Math.floor((latitude + 90) / cellDegrees);
+        }
+
+        private int column(double longitude) {
+            return (int) Math.floor((longitude + 180) / cellDegrees);
+        }
+
+        private static long cellKey(int row, int column) {
+            return ((long) row << 32) | (column & 0xffffffffL);
+        }
+    }
+
+    /** Slots in one grid cell, unordered. */
+    private static final class Cell {
+        int[] slots = new int[4];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /** The k smallest distances seen so far, kept sorted; k is small. */
+    private static final class Best {
+        final int[] slots;
+        final double[] distances;
+        int count;
+
+        Best(int k) {
+            slots = new int[k];
+            distances = new double[k];
+        }
+
+        boolean isFull() {
+            return count == slots.length;
+        }
+
+        double worst() {
+            return distances[count - 1];
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        void offer(int slot, double distance) {
+            if (isFull() && distance >= worst()) return;
+            int i = isFull() ? count - 1 : count++;
+            while (i > 0 && distances[i - 1] > distance) {
+                slots[i] = slots[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            slots[i] = slot;
+            distances[i] = distance;
+        }
+
+        List<Hit> toHits(String[] ids) {
+            List<Hit> hits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) hits.add(new Hit(ids[slots[i]], distances[i]));
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.beacon;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.ListenerToken;
+import com.couchbase.lite.MaintenanceType;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the local database from growing for the whole length of a disaster. Sets document
+ * expiration on claimed requests (with their claims and offers) and responder positions as
+ * they change (Couchbase Lite purges them when it passes), and compacts the database in the
+ * background when {@link RetentionPolicy} says so, logging the database size and hot-query
+ * latency before and after. Everything runs on one background thread.
+ */
+public class RetentionManager {
+    private static final String TAG = "RETENTION";
+    private static final long CHECK_INTERVAL_MS = 15 * 60_000L;
+    private static final String META_DOC_ID = "retention";
+    private static final int QUERY_RUNS = 3;
+
+    /** Size and query timings around one compaction. */
+    public static final class Report {
+        public final long sizeBeforeBytes;
+        public final long sizeAfterBytes;
+        public final long compactMs;
+        public final int removedSince;
+        /** Mean execute-and-iterate time per query, in microseconds. */
+        public final Map<String, Long> queryBeforeMicros;
+        public final Map<String, Long> queryAfterMicros;
+
+        Report(long sizeBeforeBytes, long sizeAfterBytes, long compactMs, int removedSince,
+               Map<String, Long> queryBeforeMicros, Map<String, Long> queryAfterMicros) {
+            this.sizeBeforeBytes = sizeBeforeBytes;
+            this.sizeAfterBytes = sizeAfterBytes;
+            this.compactMs = compactMs;
+            this.removedSince = removedSince;
+            this.queryBeforeMicros = queryBeforeMicros;
+            this.queryAfterMicros = queryAfterMicros;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            StringBuilder queries = new StringBuilder();
+            for (Map.Entry<String, Long> entry : queryBeforeMicros.entrySet()) {
+                queries.append(' ').append(entry.getKey()).append('=').append(entry.getValue())
+                        .append("->").append(queryAfterMicros.get(entry.getKey())).append("us");
+            }
+            return "size " + sizeBeforeBytes / 1024 + "KB->" + sizeAfterBytes / 1024 + "KB in " + compactMs
+                    + " ms after " + removedSince + " removals;" + queries;
+        }
+    }
+
+    private final Database database;
+    private final BeaconCollections collections;
+    private final RetentionPolicy policy;
+    private final Map<String, Query> measuredQueries;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final List<ListenerToken> tokens = new ArrayList<>();
+    private int removedSince;
+    private long lastCompactMs;
+    private volatile Report lastReport;
+
+    /**
+     * @param measuredQueries timed before and after each compaction, such as
+     *                        {@link RequestQueries#hotQueries}
+     */
+    public RetentionManager(@NonNull Database database, @NonNull RetentionPolicy policy,
+                            @NonNull Map<String, Query> measuredQueries) throws CouchbaseLiteException {
+        this(database, BeaconCollections.single(database.getDefaultCollection()), policy, measuredQueries);
+    }
+
+    public RetentionManager(@NonNull Database database, @NonNull BeaconCollections collections,
+                            @NonNull RetentionPolicy policy, @NonNull Map<String, Query> measuredQueries) {
+        this.database = database;
+        this.collections = collections;
+        this.policy = policy;
+        this.measuredQueries = measuredQueries;
+    }
+
+    public void start() {
+        for (Collection collection : collections.all()) {
+            tokens.add(collection.addChangeListener(executor, change -> {
+                long now = System.currentTimeMillis();
+                for (String docId : change.getDocumentIDs()) apply(collection, docId, now);
+            }));
+        }
+        executor.execute(() -> {
+            lastCompactMs = loadLastCompaction();
+            sweep();
+        });
+        executor.scheduleWithFixedDelay(this::maybeCompact, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        for (ListenerToken token : tokens) token.remove();
+        executor.shutdown();
+    }
+
+    /** The last compaction's report, or null if none ran in this process. */
+    public Report lastReport() {
+        return lastReport;
+    }
+
+    private void apply(Collection collection, String docId, long now) {
+        try {
+            Document doc = collection.getDocument(docId);
+            if (doc == null) {
+                // Deleted, purged or expired: space compaction can reclaim
+                removedSince++;
+                return;
+            }
+            String type = doc.getString(DocumentKeys.TYPE);
+            if (RequestLifecycle.CLAIM_TYPE.equals(type)) {
+                // A request that arrives after its claim is picked up by the next start's sweep
+                expireClaimed(DocumentFields.getString(doc, DocumentKeys.REQUEST_ID),
+                        DocumentFields.getString(doc, DocumentKeys.RESPONDER_ID),
+                        policy.expiresAt(type, null, DocumentFields.getLong(doc, DocumentKeys.CLAIMED_AT), 0, now));
+                return;
+            }
+            long expiresAt = policy.expiresAt(type, DocumentFields.status(doc),
+                    DocumentFields.getLong(doc, DocumentKeys.RESPONDED_AT), DocumentFields.getLong(doc, DocumentKeys.UPDATED_AT), now);
+            if (expiresAt == 0) return;
+            // A request's expiry is fixed once responded; positions move it forward on each update
+            if (!LocationThrottle.DOC_TYPE.equals(type) && collection.getDocumentExpiration(docId) != null) return;
+            collection.setDocumentExpiration(docId, new Date(expiresAt));
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Could not set expiration on " + docId, e);
+        }
+    }
+
+    /** Documents that were written before this ran, or while it was not running. */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        int stamped = 0;
+        try {
+            Collection requests = collections.requests;
+            try (ResultSet results = RequestQueries.respondedRequests(requests).execute()) {
+                for (Result result : results) {
+                    String docId = result.getString(0);
+                    if (requests.getDocumentExpiration(docId) != null) continue;
+                    long expiresAt = policy.expiresAt("emergency_request", RequestLifecycle.STATUS_RESPONDED,
+                            result.getLong(1), 0, now);
+                    requests.setDocumentExpiration(docId, new Date(expiresAt));
+                    stamped++;
+                }
+            }
+            try (ResultSet results = RequestQueries.claims(requests).execute()) {
+                for (Result result : results) {
+                    stamped += expireClaimed(result.getString(0), result.getString(1),
+                            policy.expiresAt(RequestLifecycle.CLAIM_TYPE, null, result.getLong(2), 0, now));
+                }
+            }
+            try (ResultSet results = RequestQueries.responderLocationAges(collections.locations).execute()) {
+                for (Result result : results) {
+                    long expiresAt = policy.expiresAt(LocationThrottle.DOC_TYPE, null, 0,
+                            result.getLong(1), now);
+                    collections.locations.setDocumentExpiration(result.getString(0), new Date(expiresAt));
+                    stamped++;
+                }
+            }
+            // Older clients' documents, with the long names, one at a time
+            for (Collection collection : collections.all()) {
+                try (ResultSet results = RequestQueries.legacyDocuments(collection).execute()) {
+                    for (Result result : results) apply(collection, result.getString(0), now);
+                }
+            }
+            Log.i(TAG, "Set expiration on " + stamped + " documents and checked older clients' documents");
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Retention sweep failed", e);
+        }
+    }
+
+    /**
+     * Expires a claim with its request and offer, leaving any that already have an
+     * expiration. Returns how many were set.
+     */
+    private int expireClaimed(String requestId, String responderId, long expiresAt) throws CouchbaseLiteException {
+        Collection collection = collections.requests;
+        int stamped = 0;
+        for (String docId : new String[]{RequestLifecycle.claimId(requestId, responderId), requestId,
+                RequestLifecycle.offerId(requestId)}) {
+            if (collection.getDocumentExpiration(docId) != null || collection.getDocument(docId) == null) continue;
+            collection.setDocumentExpiration(docId, new Date(expiresAt));
+            stamped++;
+        }
+        return stamped;
+    }
+
+    private void maybeCompact() {
+        if (!policy.shouldCompact(lastCompactMs, removedSince, System.currentTimeMillis())) return;
+        try {
+            compact();
+        } catch (CouchbaseLiteException e) {
+            Log.e(TAG, "Compaction failed", e);
+        }
+    }
+
+    /** Compacts on the calling thread; the benchmark calls it directly. */
+    @NonNull
+    Report compact() throws CouchbaseLiteException {
+        long sizeBefore = sizeBytes();
+        Map<String, Long> queryBefore = timeQueries();
+        long start = System.nanoTime();
+        database.performMaintenance(MaintenanceType.COMPACT);
+        long compactMs = (System.nanoTime() - start) / 1_000_000;
+        Report report = new Report(sizeBefore, sizeBytes(), compactMs, removedSince, queryBefore, timeQueries());
+        lastReport = report;
+        Log.i(TAG, "Compacted: " + report);
+        removedSince = 0;
+        lastCompactMs = System.currentTimeMillis();
+        saveLastCompaction(lastCompactMs);
+        return report;
+    }
+
+    private Map<String, Long> timeQueries() {
+        Map<String, Long> micros = new LinkedHashMap<>();
+        for (Map.Entry<String, Query> entry : measuredQueries.entrySet()) {
+            long start = System.nanoTime();
+            try {
+                for (int run = 0; run < QUERY_RUNS; run++) {
+                    try (ResultSet results = entry.getValue().execute()) {
+                        for (Result ignored : results) {
+                            // Iterating is part of the cost
+                        }
+                    }
+                }
+                micros.put(entry.getKey(), (System.nanoTime() - start) / 1_000 / QUERY_RUNS);
+            } catch (CouchbaseLiteException e) {
+                Log.w(TAG, "Could not time " + entry.getKey(), e);
+            }
+        }
+        return micros;
+    }
+
+    /** The database directory: the SQLite file, its WAL and any blobs. */
+    private long sizeBytes() {
+        String path = database.getPath();
+        return path == null ? 0 : sizeOf(new File(path));
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) return file.length();
+        File[] children = file.listFiles();
+        if (children == null) return 0;
+        long total = 0;
+        for (File child : children) total += sizeOf(child);
+        return total;
+    }
+
+    private long loadLastCompaction() {
+        try {
+            Collection meta = database.getCollection(LocalSchema.COLLECTION);
+            Document doc = meta == null ? null : meta.getDocument(META_DOC_ID);
+            return doc == null ? 0 : doc.getLong("last_compacted_at");
+        } catch (CouchbaseLiteException e) {
+            Log.w(TAG, "Could not read the last compaction time", e);
+            return 0;
+        }
+    }
+
+    private void saveLastCompaction(long nowMs) throws CouchbaseLiteException {
+        Collection meta = database.createCollection(LocalSchema.COLLECTION);
+        MutableDocument doc = new MutableDocument(META_DOC_ID);
+        doc.setLong("last_compacted_at", nowMs);
+        meta.save(doc);
+    }
+}
@@ -0,0 +1,62 @@
+package com.beacon;
+
+/**
+ * How long documents are kept on the device and when the database is compacted, kept free of
+ * Couchbase Lite so it can be unit tested. Responded requests and responder positions expire
+ * locally (expiry purges, it does not replicate a deletion); everything else is kept.
+ */
+public class RetentionPolicy {
+    /** Long enough for the requester and responder to finish with a handled request. */
+    public static final long DEFAULT_RESPONDED_TTL_MS = 6 * 3_600_000L;
+    /** A responder that has not published for this long has gone quiet. */
+    public static final long DEFAULT_LOCATION_TTL_MS = 3_600_000L;
+    public static final long DEFAULT_COMPACT_INTERVAL_MS = 6 * 3_600_000L;
+    /** Compact early once this many documents were removed... */
+    public static final int DEFAULT_COMPACT_AFTER_REMOVALS = 500;
+    /** ...but not more often than this. */
+    public static final long MIN_COMPACT_GAP_MS = 3_600_000L;
+
+    private final long respondedTtlMs;
+    private final long locationTtlMs;
+    private final long compactIntervalMs;
+    private final int compactAfterRemovals;
+
+    public RetentionPolicy() {
+        this(DEFAULT_RESPONDED_TTL_MS, DEFAULT_LOCATION_TTL_MS, DEFAULT_COMPACT_INTERVAL_MS,
+                DEFAULT_COMPACT_AFTER_REMOVALS);
+    }
+
+    public RetentionPolicy(long respondedTtlMs, long locationTtlMs, long compactIntervalMs, int compactAfterRemovals) {
+        this.respondedTtlMs = respondedTtlMs;
+        this.locationTtlMs = locationTtlMs;
+        this.compactIntervalMs = compactIntervalMs;
+        this.compactAfterRemovals = compactAfterRemovals;
+    }
+
+    /**
+     * Expiration time for a document, or 0 to keep it. A missing timestamp counts from now.
+     * A claim's {@code respondedAt} is its claimed_at; the claimed request and its offer
+     * expire with it.
+     */
+    public long expiresAt(String type, String status, long respondedAt, long updatedAt, long nowMs) {
+        if (RequestLifecycle.CLAIM_TYPE.equals(type)
+                || "emergency_request".equals(type) && RequestLifecycle.STATUS_RESPONDED.equals(status)) {
+            return (respondedAt > 0 ? respondedAt : nowMs) + respondedTtlMs;
+        }
+        if (LocationThrottle.DOC_TYPE.equals(type)) {
+            return (updatedAt > 0 ? updatedAt : nowMs) + locationTtlMs;
+        }
+        return 0;
+    }
+
+    /**
+     * Whether to compact now, given when the last compaction ran and how many documents were
+     * purged, expired or deleted since.
+     */
+    public boolean shouldCompact(long lastCompactMs, int removedSince, long nowMs) {
+        long sinceLast = nowMs - lastCompactMs;
+        // Updates leave old revisions behind too, so the interval alone is reason enough
+        if (sinceLast >= compactIntervalMs) return true;
+        return removedSince >= compactAfterRemovals && sinceLast >= MIN_COMPACT_GAP_MS;
+    }
+}
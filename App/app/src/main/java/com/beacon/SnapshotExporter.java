@@ -0,0 +1,111 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.DataSource;
+import com.couchbase.lite.Dictionary;
+import com.couchbase.lite.Meta;
+import com.couchbase.lite.QueryBuilder;
+import com.couchbase.lite.Result;
+import com.couchbase.lite.ResultSet;
+import com.couchbase.lite.SelectResult;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes every document of the {@link BeaconCollections} as a JSON Lines snapshot that
+ * {@link SnapshotImporter} reads back: one object per line, with the document ID under
+ * {@value SnapshotImporter#ID_KEY}. Results are streamed from the query to the file, so the
+ * export holds one document at a time.
+ */
+public final class SnapshotExporter {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /** Counts and speed for one export. */
+    public static final class Report {
+        public final long docs;
+        public final long bytes;
+        public final long elapsedMs;
+
+        Report(long docs, long bytes, long elapsedMs) {
+            this.docs = docs;
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return docs + " exported, " + bytes / 1024 + "KB in " + elapsedMs + " ms";
+        }
+    }
+
+    private SnapshotExporter() {
+    }
+
+    @WorkerThread
+    @NonNull
+    public static Report exportTo(@NonNull BeaconCollections collections, @NonNull File snapshot)
+            throws IOException, CouchbaseLiteException {
+        long start = System.nanoTime();
+        long docs = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(snapshot), StandardCharsets.UTF_8), BUFFER_BYTES)) {
+            for (Collection collection : collections.all()) {
+                try (ResultSet results = QueryBuilder
+                        .select(SelectResult.expression(Meta.id), SelectResult.all())
+                        .from(DataSource.collection(collection))
+                        .execute()) {
+                    for (Result result : results) {
+                        Dictionary body = result.getDictionary(1);
+                        if (body == null) continue;
+                        out.write(line(result.getString(0), body.toJSON()));
+                        out.write('\n');
+                        docs++;
+                    }
+                }
+            }
+        }
+        return new Report(docs, snapshot.length(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** One snapshot line: the document's JSON object with its ID added as the first key. */
+    static String line(String id, String json) {
+        StringBuilder line = new StringBuilder(json.length() + id.length() + 12);
+        line.append("{\"").append(SnapshotImporter.ID_KEY).append("\":");
+        appendString(line, id);
+        String rest = json.trim().substring(1);
+        if (!rest.trim().equals("}")) line.append(',');
+        return line.append(rest).toString();
+    }
+
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
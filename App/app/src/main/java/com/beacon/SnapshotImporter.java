@@ -0,0 +1,243 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.ConcurrencyControl;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.MutableDictionary;
+import com.couchbase.lite.MutableDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk-loads a JSON Lines snapshot into the {@link BeaconCollections}, for a handset that has
+ * been offline for long or is new, instead of waiting for replication to pull everything. One
+ * line per document with its ID under {@value #ID_KEY}, the format of {@link SnapshotExporter}
+ * and of {@code cbexport json --format lines --include-key _id}.
+ * <p>
+ * Three stages joined by bounded queues, so memory stays flat however large the file: one
+ * thread reads lines through {@link JsonLinesReader}, parser threads turn them into documents,
+ * and the calling thread saves them in large {@code inBatch} transactions, the only stage that
+ * touches the database. Documents already stored locally are kept, since they are at least
+ * as new as the snapshot as far as this device knows; imported documents start a local
+ * revision history and their first replication resolves against the server's like any
+ * concurrent edit.
+ */
+public final class SnapshotImporter {
+    public static final String ID_KEY = "_id";
+    public static final int DEFAULT_BATCH_SIZE = 5_000;
+    /** Parsed batches waiting for the writer; bounds memory together with the batch size. */
+    private static final int WRITE_QUEUE_BATCHES = 4;
+    private static final List<String> END_OF_LINES = new ArrayList<>();
+    private static final List<MutableDocument> END_OF_DOCUMENTS = new ArrayList<>();
+
+    /** Counts, speed and memory for one import. */
+    public static final class Report {
+        public final long imported;
+        /** Already stored locally and left as they were. */
+        public final long kept;
+        /** Types the app does not store. */
+        public final long skipped;
+        /** Not JSON, or without an ID. */
+        public final long rejected;
+        public final long elapsedMs;
+        public final long heapBeforeBytes;
+        public final long peakHeapBytes;
+
+        Report(long imported, long kept, long skipped, long rejected, long elapsedMs,
+               long heapBeforeBytes, long peakHeapBytes) {
+            this.imported = imported;
+            this.kept = kept;
+            this.skipped = skipped;
+            this.rejected = rejected;
+            this.elapsedMs = elapsedMs;
+            this.heapBeforeBytes = heapBeforeBytes;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        public long docsPerSecond() {
+            return elapsedMs == 0 ? imported : imported * 1000 / elapsedMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return imported + " imported, " + kept + " kept, " + skipped + " skipped, " + rejected
+                    + " rejected in " + elapsedMs + " ms (" + docsPerSecond() + " docs/s), heap "
+                    + heapBeforeBytes / (1024 * 1024) + "MB->" + peakHeapBytes / (1024 * 1024) + "MB peak";
+        }
+    }
+
+    private final Database database;
+    private final BeaconCollections collections;
+    private final int parsers;
+    private final int batchSize;
+
+    public SnapshotImporter(@NonNull Database database, @NonNull BeaconCollections collections) {
+        this(database, collections, Math.max(1, Runtime.getRuntime().availableProcessors() - 1), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param parsers   threads turning lines into documents
+     * @param batchSize documents per transaction, and lines per hand-off between stages
+     */
+    public SnapshotImporter(@NonNull Database database, @NonNull BeaconCollections collections,
+                            int parsers, int batchSize) {
+        this.database = database;
+        this.collections = collections;
+        this.parsers = parsers;
+        this.batchSize = batchSize;
+    }
+
+    /** Runs on the calling thread, which must not be the UI thread. */
+    @WorkerThread
+    @NonNull
+    public Report importFrom(@NonNull File snapshot) throws IOException, CouchbaseLiteException, InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long peakHeap = heapBefore;
+        long start = System.nanoTime();
+        BlockingQueue<List<String>> lines = new ArrayBlockingQueue<>(parsers * 2);
+        BlockingQueue<List<MutableDocument>> documents = new ArrayBlockingQueue<>(WRITE_QUEUE_BATCHES);
+        AtomicLong skipped = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        long imported = 0;
+        long kept = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(parsers + 1);
+        try {
+            Future<?> reading = pool.submit(() -> {
+                read(snapshot, lines);
+                return null;
+            });
+            List<Future<?>> parsing = new ArrayList<>(parsers);
+            for (int i = 0; i < parsers; i++) {
+                parsing.add(pool.submit(() -> {
+                    parse(lines, documents, skipped, rejected);
+                    return null;
+                }));
+            }
+
+            int finished = 0;
+            long[] saved = new long[2];
+            while (finished < parsers) {
+                List<MutableDocument> batch = documents.take();
+                if (batch == END_OF_DOCUMENTS) {
+                    finished++;
+                    continue;
+                }
+                saved[0] = 0;
+                saved[1] = 0;
+                database.inBatch(() -> {
+                    for (MutableDocument doc : batch) {
+                        Collection collection = collections.forType(doc.getString(DocumentKeys.TYPE));
+                        // A new document with an ID that exists is a conflict: the local one stays
+                        saved[collection.save(doc, ConcurrencyControl.FAIL_ON_CONFLICT) ? 0 : 1]++;
+                    }
+                });
+                imported += saved[0];
+                kept += saved[1];
+                peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+            }
+            rethrow(reading);
+            for (Future<?> parser : parsing) rethrow(parser);
+        } finally {
+            // Unblocks the other stages if the writer failed
+            pool.shutdownNow();
+        }
+        return new Report(imported, kept, skipped.get(), rejected.get(),
+                (System.nanoTime() - start) / 1_000_000, heapBefore, peakHeap);
+    }
+
+    private void read(File snapshot, BlockingQueue<List<String>> lines) throws IOException, InterruptedException {
+        boolean interrupted = false;
+        try (JsonLinesReader reader = new JsonLinesReader(snapshot)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.next()) != null) {
+                batch.add(line);
+                if (batch.size() == batchSize) {
+                    lines.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) lines.put(batch);
+        } catch (InterruptedException e) {
+            interrupted = true;
+            throw e;
+        } finally {
+            // Interrupted means the writer gave up and nobody is left to read the markers
+            if (!interrupted) {
+                for (int i = 0; i < parsers; i++) lines.put(END_OF_LINES);
+            }
+        }
+    }
+
+    private void parse(BlockingQueue<List<String>> lines, BlockingQueue<List<MutableDocument>> documents,
+                       AtomicLong skipped, AtomicLong rejected) throws InterruptedException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                List<String> batch = lines.take();
+                if (batch == END_OF_LINES) return;
+                List<MutableDocument> parsed = new ArrayList<>(batch.size());
+                for (String line : batch) {
+                    MutableDocument doc = toDocument(line);
+                    if (doc == null) {
+                        rejected.incrementAndGet();
+                    } else if (collections.forType(doc.getString(DocumentKeys.TYPE)) == null) {
+                        skipped.incrementAndGet();
+                    } else {
+                        parsed.add(doc);
+                    }
+                }
+                documents.put(parsed);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            throw e;
+        } finally {
+            if (!interrupted) documents.put(END_OF_DOCUMENTS);
+        }
+    }
+
+    /** The document on one snapshot line, or null if the line is not a JSON object with an ID. */
+    static MutableDocument toDocument(String line) {
+        MutableDictionary body;
+        try {
+            body = new MutableDictionary(line);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        String id = body.getString(ID_KEY);
+        if (id == null || id.isEmpty()) return null;
+        body.remove(ID_KEY);
+        // Snapshots exported before short keys load in the current encoding
+        return new MutableDocument(id, DocumentKeys.compact(body.toMap()));
+    }
+
+    private static void rethrow(Future<?> stage) throws IOException, InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof InterruptedException) throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.beacon;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures time-to-first-usable-data from activity creation, separately for cold starts
+ * (empty or reset database, full pull) and warm starts (local data and checkpoints kept).
+ * The last value of each kind is kept in preferences so the two can be compared.
+ * Startup stage durations are collected alongside.
+ */
+public class StartupMetrics {
+    private static final String TAG = "STARTUP";
+
+    public enum Mode { COLD, WARM }
+
+    private final SharedPreferences prefs;
+    private final long startMs;
+    private final AtomicBoolean firstUsableDataRecorded = new AtomicBoolean();
+    private final Map<String, Long> stageDurationsMs = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile Mode mode = Mode.COLD;
+
+    public StartupMetrics(@NonNull SharedPreferences prefs) {
+        this.prefs = prefs;
+        this.startMs = SystemClock.elapsedRealtime();
+    }
+
+    public void setMode(@NonNull Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long elapsedMs() {
+        return SystemClock.elapsedRealtime() - startMs;
+    }
+
+    public void recordStage(@NonNull String stage, long durationMs) {
+        stageDurationsMs.put(stage, durationMs);
+        Log.i(TAG, "stage=" + stage + " duration_ms=" + durationMs + " at_ms=" + elapsedMs());
+    }
+
+    /**
+     * Durations of the startup stages finished so far, in completion order.
+     */
+    public Map<String, Long> getStageDurationsMs() {
+        synchronized (stageDurationsMs) {
+            return new LinkedHashMap<>(stageDurationsMs);
+        }
+    }
+
+    /**
+     * Record the first moment the UI had data to work with. Only the first call counts.
+     */
+    public void markFirstUsableData(@NonNull String source) {
+        if (!firstUsableDataRecorded.compareAndSet(false, true)) return;
+        long elapsed = elapsedMs();
+        String key = "ttfud_" + mode.name().toLowerCase() + "_ms";
+        long previous = prefs.getLong(key, -1);
+        prefs.edit().putLong(key, elapsed).apply();
+        Log.i(TAG, "Time to first usable data (" + mode + ", via " + source + "): " + elapsed
+                + " ms, previous " + mode + " start: " + previous + " ms");
+    }
+
+    public long lastTimeToFirstUsableDataMs(@NonNull Mode mode) {
+        return prefs.getLong("ttfud_" + mode.name().toLowerCase() + "_ms", -1);
+    }
+}
@@ -0,0 +1,145 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs startup work as named stages on a background executor. A stage starts as soon as
+ * all of its dependencies have finished, so independent stages overlap; if a stage fails,
+ * everything that depends on it is skipped. Stage durations are kept for startup tracking.
+ */
+public class StartupPipeline {
+
+    public interface Stage {
+        void run() throws Exception;
+    }
+
+    public interface Listener {
+        void onStageFinished(@NonNull String name, long durationMs, Throwable error);
+        void onFinished(@NonNull Map<String, Long> durationsMs);
+    }
+
+    private final Executor executor;
+    private final Map<String, StageSpec> stages = new LinkedHashMap<>();
+    private final Map<String, Long> durationsMs = new ConcurrentHashMap<>();
+    private final Map<String, Long> finishedAtMs = new ConcurrentHashMap<>();
+    private long startNanos;
+    private volatile boolean cancelled;
+
+    public StartupPipeline(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Add a stage. Dependencies must have been added before it.
+     */
+    public StartupPipeline add(@NonNull String name, @NonNull Stage stage, String... dependsOn) {
+        for (String dependency : dependsOn) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + name + " depends on unknown stage " + dependency);
+            }
+        }
+        if (stages.put(name, new StageSpec(stage, dependsOn)) != null) {
+            throw new IllegalArgumentException("Duplicate stage " + name);
+        }
+        return this;
+    }
+
+    /**
+     * Start every stage and return a future that completes when all of them are done.
+     */
+    public CompletableFuture<Void> start(Listener listener) {
+        startNanos = System.nanoTime();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+
+        for (Map.Entry<String, StageSpec> entry : stages.entrySet()) {
+            String name = entry.getKey();
+            StageSpec spec = entry.getValue();
+
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[spec.dependsOn.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = futures.get(spec.dependsOn[i]);
+            }
+
+            CompletableFuture<Void> future = CompletableFuture.allOf(dependencies)
+                    .thenRunAsync(() -> runStage(name, spec.stage, listener), executor);
+            futures.put(name, future);
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> {
+                    if (listener != null) listener.onFinished(getStageDurationsMs());
+                    return null;
+                });
+    }
+
+    /**
+     * Skip every stage that has not started yet, e.g. because the activity is going away.
+     * Stages already running finish; they can check {@link #isCancelled()} before handing
+     * over what they started.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void runStage(String name, Stage stage, Listener listener) {
+        if (cancelled) throw new CancellationException("Startup cancelled before " + name);
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            stage.run();
+        } catch (Exception e) {
+            error = e;
+        }
+        long end = System.nanoTime();
+        durationsMs.put(name, (end - start) / 1_000_000);
+        finishedAtMs.put(name, (end - startNanos) / 1_000_000);
+        if (listener != null) listener.onStageFinished(name, durationsMs.get(name), error);
+        if (error != null) throw new CompletionException(error);
+    }
+
+    /**
+     * Wall time each finished stage took, in insertion order.
+     */
+    public Map<String, Long> getStageDurationsMs() {
+        return ordered(durationsMs);
+    }
+
+    /**
+     * Time from pipeline start until each finished stage completed, in insertion order.
+     */
+    public Map<String, Long> getStageFinishedAtMs() {
+        return ordered(finishedAtMs);
+    }
+
+    private Map<String, Long> ordered(Map<String, Long> values) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (String name : stages.keySet()) {
+            Long value = values.get(name);
+            if (value != null) result.put(name, value);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static final class StageSpec {
+        final Stage stage;
+        final String[] dependsOn;
+
+        StageSpec(Stage stage, String[] dependsOn) {
+            this.stage = stage;
+            this.dependsOn = dependsOn;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.beacon;
+
+import android.util.Log;
+
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.TLSIdentity;
+
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Server and client TLS identities for P2P replication, loaded or generated once on first use.
+ * Key generation can take hundreds of milliseconds, so startup warms these up in the background.
+ */
+public class TlsIdentities {
+    private static final String TAG = "TLS_IDENTITY";
+
+    // Separate locks so the two key pairs can be generated in parallel
+    private final Object serverLock = new Object();
+    private final Object clientLock = new Object();
+    private TLSIdentity serverIdentity;
+    private TLSIdentity clientIdentity;
+
+    public TLSIdentity server() throws CouchbaseLiteException {
+        synchronized (serverLock) {
+            if (serverIdentity == null) serverIdentity = loadOrCreate("server-key", "BeaconServer", true);
+            return serverIdentity;
+        }
+    }
+
+    public TLSIdentity client() throws CouchbaseLiteException {
+        synchronized (clientLock) {
+            if (clientIdentity == null) clientIdentity = loadOrCreate("client-key", "BeaconClient", false);
+            return clientIdentity;
+        }
+    }
+
+    private static TLSIdentity loadOrCreate(String label, String commonName, boolean isServer) throws CouchbaseLiteException {
+        TLSIdentity existingIdentity = TLSIdentity.getIdentity(label);
+        if (existingIdentity != null) {
+            Log.i(TAG, "Existing " + label + " identity found, reusing it");
+            return existingIdentity;
+        }
+
+        Map<String, String> attrs = Map.of(TLSIdentity.CERT_ATTRIBUTE_COMMON_NAME, commonName);
+        Calendar cal = Calendar.getInstance(); cal.add(Calendar.YEAR, 5);
+        return TLSIdentity.createIdentity(isServer, attrs, cal.getTime(), label);
+    }
+}
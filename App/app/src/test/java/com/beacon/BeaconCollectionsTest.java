@@ -0,0 +1,20 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BeaconCollectionsTest {
+
+    @Test
+    public void documentTypesMapToTheirCollection() {
+        assertEquals(BeaconCollections.REQUESTS, BeaconCollections.collectionFor("emergency_request"));
+        assertEquals(BeaconCollections.REQUESTS, BeaconCollections.collectionFor(RequestLifecycle.CLAIM_TYPE));
+        assertEquals(BeaconCollections.REQUESTS, BeaconCollections.collectionFor(RequestLifecycle.OFFER_TYPE));
+        assertEquals(BeaconCollections.RESPONDERS, BeaconCollections.collectionFor("user"));
+        assertEquals(BeaconCollections.LOCATIONS, BeaconCollections.collectionFor(LocationThrottle.DOC_TYPE));
+        // Left in the default collection
+        assertNull(BeaconCollections.collectionFor("user_credentials"));
+        assertNull(BeaconCollections.collectionFor(null));
+    }
+}
@@ -0,0 +1,129 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DispatchEngineTest {
+    private static final double LAT = 59.3293;
+    private static final double LON = 18.0686;
+
+    private static ResponderSpatialIndex responders(int count) {
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        // r0 is nearest, each next one 100 m further north
+        for (int i = 0; i < count; i++) {
+            index.upsert("r" + i, "Ambulance", true, LAT + i * 0.0009, LON);
+        }
+        return index;
+    }
+
+    @Test
+    public void wavesWidenTheShortlistNearestFirst() {
+        DispatchEngine engine = new DispatchEngine(responders(20), new int[]{2, 3}, 1_000);
+
+        DispatchEngine.Offer first = engine.start("req", "Ambulance", LAT, LON, 0);
+        assertEquals(1, first.wave);
+        assertEquals(List.of("r0", "r1"), first.responderIds);
+        assertTrue(engine.due(999).isEmpty());
+
+        DispatchEngine.Offer second = engine.due(1_000).get(0);
+        assertEquals(2, second.wave);
+        assertEquals(List.of("r0", "r1", "r2", "r3", "r4"), second.responderIds);
+        assertFalse(second.broadcast);
+
+        DispatchEngine.Offer last = engine.due(2_000).get(0);
+        assertTrue(last.broadcast);
+        assertFalse(engine.isActive("req"));
+        assertTrue(engine.due(10_000).isEmpty());
+    }
+
+    @Test
+    public void earlierOffersStayWhenRespondersBecomeUnavailable() {
+        ResponderSpatialIndex index = responders(10);
+        DispatchEngine engine = new DispatchEngine(index, new int[]{2, 2}, 1_000);
+        engine.start("req", "Ambulance", LAT, LON, 0);
+
+        index.upsert("r0", "Ambulance", false, LAT, LON);
+        DispatchEngine.Offer second = engine.due(1_000).get(0);
+
+        assertEquals(List.of("r0", "r1", "r2", "r3"), second.responderIds);
+    }
+
+    @Test
+    public void resumedDispatchWidensFromTheStoredWave() {
+        DispatchEngine engine = new DispatchEngine(responders(20), new int[]{2, 3}, 1_000);
+        engine.resume("req", "Ambulance", LAT, LON, 1, List.of("r0", "r1"), 5_000);
+
+        assertTrue(engine.isActive("req"));
+        assertTrue(engine.due(5_999).isEmpty());
+        DispatchEngine.Offer second = engine.due(6_000).get(0);
+        assertEquals(2, second.wave);
+        assertEquals(List.of("r0", "r1", "r2", "r3", "r4"), second.responderIds);
+        assertTrue(engine.due(7_000).get(0).broadcast);
+    }
+
+    @Test
+    public void resumedLastWaveIsBroadcastWhenItRunsOut() {
+        DispatchEngine engine = new DispatchEngine(responders(20), new int[]{2, 3}, 1_000);
+        engine.resume("req", "Ambulance", LAT, LON, 2, List.of("r0", "r1", "r7"), 0);
+
+        DispatchEngine.Offer last = engine.due(1_000).get(0);
+        assertTrue(last.broadcast);
+        assertEquals(List.of("r0", "r1", "r7"), last.responderIds);
+        assertFalse(engine.isActive("req"));
+    }
+
+    @Test
+    public void unwrittenBroadcastComesBackAfterTheTimeout() {
+        DispatchEngine engine = new DispatchEngine(responders(20), new int[]{2}, 1_000);
+        engine.start("req", "Ambulance", LAT, LON, 0);
+        DispatchEngine.Offer broadcast = engine.due(1_000).get(0);
+
+        engine.retry(broadcast, 1_500);
+        assertTrue(engine.due(2_499).isEmpty());
+        DispatchEngine.Offer again = engine.due(2_500).get(0);
+        assertTrue(again.broadcast);
+        assertEquals(List.of("r0", "r1"), again.responderIds);
+        assertFalse(engine.isActive("req"));
+    }
+
+    @Test
+    public void unwrittenWaveIsCoveredByTheNextOne() {
+        DispatchEngine engine = new DispatchEngine(responders(20), new int[]{2, 3}, 1_000);
+        DispatchEngine.Offer first = engine.start("req", "Ambulance", LAT, LON, 0);
+
+        engine.retry(first, 500);
+        DispatchEngine.Offer second = engine.due(1_000).get(0);
+        assertEquals(2, second.wave);
+        assertTrue(second.responderIds.containsAll(first.responderIds));
+    }
+
+    @Test
+    public void claimedRequestsStopDispatching() {
+        DispatchEngine engine = new DispatchEngine(responders(5));
+        engine.start("req", "Ambulance", LAT, LON, 0);
+        engine.finish("req");
+
+        assertTrue(engine.due(Long.MAX_VALUE / 2).isEmpty());
+        assertEquals(0, engine.activeCount());
+    }
+
+    @Test
+    public void noIndexedRespondersMeansBroadcastAtOnce() {
+        DispatchEngine engine = new DispatchEngine(new ResponderSpatialIndex());
+        DispatchEngine.Offer offer = engine.start("req", "Ambulance", LAT, LON, 0);
+
+        assertTrue(offer.broadcast);
+        assertFalse(engine.isActive("req"));
+    }
+
+    @Test
+    public void onlyOpenOfferedRequestsCanBeClaimed() {
+        assertTrue(RequestLifecycle.canClaim("open", null, "r1"));
+        assertTrue(RequestLifecycle.canClaim("open", List.of("r1"), "r1"));
+        assertFalse(RequestLifecycle.canClaim("open", List.of("r2"), "r1"));
+        assertFalse(RequestLifecycle.canClaim("responded", null, "r1"));
+    }
+}
@@ -0,0 +1,182 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 50 responders competing for one request, with and without targeted dispatch.
+ * Each responder sees the request after its own replication delay and, if willing, accepts
+ * after a reaction time. A claim succeeds locally unless another claim has already reached
+ * the device; every successful claim after the first is a conflicting revision that the
+ * resolvers must clean up.
+ */
+public class DispatchSimulationTest {
+    private static final int RESPONDERS = 50;
+    private static final int TRIALS = 300;
+    private static final long STEP_MS = 100;
+    private static final long HORIZON_MS = 300_000;
+    private static final long REQUESTER_DELAY_MS = 500;
+    private static final double LAT = 59.3293;
+    private static final double LON = 18.0686;
+
+    @Test
+    public void dispatchCutsConflictsWithoutDelayingAssignment() {
+        Random random = new Random(2024);
+        Outcome broadcast = new Outcome();
+        Outcome dispatched = new Outcome();
+        for (int trial = 0; trial < TRIALS; trial++) {
+            Responder[] responders = responders(random);
+            broadcast.add(run(responders, false));
+            dispatched.add(run(responders, true));
+        }
+
+        String report = "broadcast " + broadcast + " / dispatch " + dispatched;
+        assertEquals(report, TRIALS, broadcast.assigned);
+        assertEquals(report, TRIALS, dispatched.assigned);
+        // Broadcast produces a storm of conflicting claims; dispatch a fraction of them
+        assertTrue(report, broadcast.meanConflicts() > 2);
+        assertTrue(report, dispatched.meanConflicts() < broadcast.meanConflicts() / 5);
+        // Waves add a little latency only when the nearest responders do not answer
+        assertTrue(report, dispatched.medianAssignmentMs() < broadcast.medianAssignmentMs() + 15_000);
+        assertTrue(report, dispatched.percentileAssignmentMs(95) < 90_000);
+    }
+
+    private static Outcome.Trial run(Responder[] responders, boolean dispatch) {
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        for (Responder responder : responders) {
+            index.upsert(responder.id, "Ambulance", true, responder.lat, responder.lon);
+        }
+        DispatchEngine engine = new DispatchEngine(index);
+
+        long[] visibleAt = new long[responders.length];
+        Arrays.fill(visibleAt, Long.MAX_VALUE);
+        Set<String> offered = new HashSet<>();
+        if (dispatch) {
+            offer(engine.start("req", "Ambulance", LAT, LON, 0), 0, responders, offered, visibleAt);
+        } else {
+            for (int i = 0; i < responders.length; i++) visibleAt[i] = responders[i].delayMs;
+        }
+
+        boolean[] acted = new boolean[responders.length];
+        List<long[]> claims = new ArrayList<>(); // {time, responder}
+        for (long now = 0; now <= HORIZON_MS; now += STEP_MS) {
+            for (int i = 0; i < responders.length; i++) {
+                Responder responder = responders[i];
+                if (acted[i] || !responder.willing || visibleAt[i] == Long.MAX_VALUE) continue;
+                if (now < visibleAt[i] + responder.reactionMs) continue;
+                acted[i] = true;
+                if (!claimReached(claims, responders, i, now)) claims.add(new long[]{now, i});
+            }
+            if (dispatch && engine.isActive("req")) {
+                // The requester hears about a claim once it replicates back
+                if (!claims.isEmpty() && now >= claims.get(0)[0] + responders[(int) claims.get(0)[1]].delayMs + REQUESTER_DELAY_MS) {
+                    engine.finish("req");
+                } else {
+                    for (DispatchEngine.Offer next : engine.due(now)) offer(next, now, responders, offered, visibleAt);
+                }
+            }
+        }
+        return new Outcome.Trial(claims.isEmpty() ? -1 : claims.get(0)[0], Math.max(0, claims.size() - 1));
+    }
+
+    private static void offer(DispatchEngine.Offer offer, long now, Responder[] responders,
+                              Set<String> offered, long[] visibleAt) {
+        for (int i = 0; i < responders.length; i++) {
+            boolean eligible = offer.broadcast || offer.responderIds.contains(responders[i].id);
+            if (eligible && offered.add(responders[i].id)) {
+                visibleAt[i] = now + REQUESTER_DELAY_MS + responders[i].delayMs;
+            }
+        }
+    }
+
+    /** Whether an earlier claim has replicated to responder {@code i} by {@code now}. */
+    private static boolean claimReached(List<long[]> claims, Responder[] responders, int i, long now) {
+        for (long[] claim : claims) {
+            if (claim[0] + responders[(int) claim[1]].delayMs + responders[i].delayMs <= now) return true;
+        }
+        return false;
+    }
+
+    private static Responder[] responders(Random random) {
+        Responder[] responders = new Responder[RESPONDERS];
+        for (int i = 0; i < RESPONDERS; i++) {
+            responders[i] = new Responder("r" + i,
+                    LAT + (random.nextDouble() - 0.5) * 0.08,
+                    LON + (random.nextDouble() - 0.5) * 0.14,
+                    300 + random.nextInt(1_700),
+                    3_000 + random.nextInt(15_000),
+                    random.nextDouble() < 0.7);
+        }
+        return responders;
+    }
+
+    private static final class Responder {
+        final String id;
+        final double lat;
+        final double lon;
+        final long delayMs;
+        final long reactionMs;
+        final boolean willing;
+
+        Responder(String id, double lat, double lon, long delayMs, long reactionMs, boolean willing) {
+            this.id = id;
+            this.lat = lat;
+            this.lon = lon;
+            this.delayMs = delayMs;
+            this.reactionMs = reactionMs;
+            this.willing = willing;
+        }
+    }
+
+    private static final class Outcome {
+        static final class Trial {
+            final long assignmentMs;
+            final int conflicts;
+
+            Trial(long assignmentMs, int conflicts) {
+                this.assignmentMs = assignmentMs;
+                this.conflicts = conflicts;
+            }
+        }
+
+        final List<Long> assignmentMs = new ArrayList<>();
+        long conflicts;
+        int assigned;
+
+        void add(Trial trial) {
+            conflicts += trial.conflicts;
+            if (trial.assignmentMs >= 0) {
+                assigned++;
+                assignmentMs.add(trial.assignmentMs);
+            }
+        }
+
+        double meanConflicts() {
+            return (double) conflicts / TRIALS;
+        }
+
+        long medianAssignmentMs() {
+            return percentileAssignmentMs(50);
+        }
+
+        long percentileAssignmentMs(int percentile) {
+            List<Long> sorted = new ArrayList<>(assignmentMs);
+            sorted.sort(null);
+            return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("conflicts/request=%.2f p50=%dms p95=%dms",
+                    meanConflicts(), medianAssignmentMs(), percentileAssignmentMs(95));
+        }
+    }
+}
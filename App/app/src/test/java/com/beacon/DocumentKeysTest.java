@@ -0,0 +1,80 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DocumentKeysTest {
+
+    @Test
+    public void longNamesBecomeShortKeysInOrder() {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("type", "emergency_request");
+        request.put("emergency_type", "Ambulance");
+        request.put("requested_at", 1_700_000_000_000L);
+        request.put("geohash", "u6sce0t4w");
+        request.put("notes", "kept as is");
+
+        Map<String, Object> compact = DocumentKeys.compact(request);
+
+        assertEquals(List.of("type", DocumentKeys.EMERGENCY_TYPE, DocumentKeys.REQUESTED_AT, DocumentKeys.GEOHASH, "notes"),
+                new ArrayList<>(compact.keySet()));
+        assertEquals("Ambulance", compact.get(DocumentKeys.EMERGENCY_TYPE));
+        assertTrue(DocumentKeys.needsCompacting(request));
+        assertFalse(DocumentKeys.needsCompacting(compact));
+        assertEquals(request, DocumentKeys.expand(compact));
+    }
+
+    @Test
+    public void userDocumentsKeepTheirNames() {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("type", "user");
+        user.put("status", "available");
+        user.put(DocumentKeys.USER_TYPE, "responder");
+
+        assertSame(user, DocumentKeys.compact(user));
+        assertFalse(DocumentKeys.needsCompacting(user));
+    }
+
+    @Test
+    public void shortKeyAlreadyPresentWins() {
+        Map<String, Object> mixed = new LinkedHashMap<>();
+        mixed.put("type", LocationThrottle.DOC_TYPE);
+        mixed.put("updated_at", 1L);
+        mixed.put(DocumentKeys.UPDATED_AT, 2L);
+
+        Map<String, Object> compact = DocumentKeys.compact(mixed);
+
+        assertEquals(2, compact.size());
+        assertEquals(2L, compact.get(DocumentKeys.UPDATED_AT));
+    }
+
+    @Test
+    public void everyShortKeyIsDistinct() {
+        List<String> keys = List.of(DocumentKeys.EMERGENCY_TYPE, DocumentKeys.STATUS, DocumentKeys.REQUESTED_BY,
+                DocumentKeys.REQUESTED_AT, DocumentKeys.SEVERITY, DocumentKeys.RESPONDED_BY, DocumentKeys.RESPONDED_AT,
+                DocumentKeys.REQUEST_ID, DocumentKeys.RESPONDER_ID, DocumentKeys.CLAIMED_AT, DocumentKeys.OFFERED_TO,
+                DocumentKeys.DISPATCH_WAVE, DocumentKeys.LATITUDE, DocumentKeys.LONGITUDE, DocumentKeys.GEOHASH,
+                DocumentKeys.ACCURACY, DocumentKeys.UPDATED_AT, DocumentKeys.TYPE);
+        assertEquals(keys.size(), new HashSet<>(keys).size());
+    }
+
+    @Test
+    public void readersFindTheLongNameOfEveryShortKey() {
+        assertEquals("responded_by", DocumentKeys.longName(DocumentKeys.RESPONDED_BY));
+        assertEquals("status", DocumentKeys.longName(DocumentKeys.STATUS));
+        assertNull(DocumentKeys.longName(DocumentKeys.TYPE));
+        for (String name : DocumentKeys.LEGACY_NAMES) {
+            Map<String, Object> legacy = new LinkedHashMap<>();
+            legacy.put("type", RequestLifecycle.CLAIM_TYPE);
+            legacy.put(name, "x");
+            assertTrue(name, DocumentKeys.needsCompacting(legacy));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeoHashTest {
+
+    @Test
+    public void encodesKnownPoints() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("u6sce", GeoHash.encode(59.3293, 18.0686, 5));
+    }
+
+    @Test
+    public void neighboursRunClockwiseFromNorth() {
+        assertArrayEquals(new String[]{"dqcjw", "dqcjx", "dqcjr", "dqcjp", "dqcjn", "dqcjj", "dqcjm", "dqcjt"},
+                GeoHash.neighbours("dqcjq"));
+    }
+
+    @Test
+    public void neighboursCrossParentCellBorders() {
+        // "u6scg" sits on the northern edge of "u6sc", so its northern neighbours are in "u6sf"
+        assertArrayEquals(new String[]{"u6sf5", "u6sfh", "u6scu", "u6scs", "u6sce", "u6scd", "u6scf", "u6sf4"},
+                GeoHash.neighbours("u6scg"));
+    }
+
+    @Test
+    public void subscriptionCoversCellNeighboursAndUnlocated() {
+        List<String> channels = GeoChannels.subscriptionFor("u6sce");
+        assertEquals(10, channels.size());
+        assertEquals("geo_u6sce", channels.get(0));
+        assertTrue(channels.contains("geo_u6scg"));
+        assertTrue(channels.contains(GeoChannels.UNLOCATED_CHANNEL));
+    }
+
+    @Test
+    public void blockRunsRowByRowFromTheNorthWest() {
+        String[] block = GeoHash.block("dqcjq", 1);
+        assertEquals(9, block.length);
+        assertArrayEquals(new String[]{"dqcjt", "dqcjw", "dqcjx", "dqcjm", "dqcjq", "dqcjr", "dqcjj", "dqcjn", "dqcjp"},
+                block);
+        assertEquals(25, new HashSet<>(Arrays.asList(GeoHash.block("u6scg", 2))).size());
+    }
+
+    @Test
+    public void anchorHoldsWhileTheCellStaysBesideIt() {
+        assertEquals("u6sce", GeoChannels.anchorFor("u6sce", null));
+        assertEquals("u6sce", GeoChannels.anchorFor("u6scg", "u6sce"));
+        assertNull(GeoChannels.anchorFor(null, null));
+        // Two cells east of the anchor: its neighbours would fall outside the block
+        String twoEast = GeoHash.adjacent(GeoHash.adjacent("u6sce", 2), 2);
+        assertEquals(twoEast, GeoChannels.anchorFor(twoEast, "u6sce"));
+
+        // Every neighbour of a cell beside the anchor is still subscribed
+        List<String> channels = GeoChannels.subscriptionAround("u6sce", "alice");
+        assertEquals(27, channels.size());
+        for (String cell : GeoHash.neighbours("u6scg")) assertTrue(channels.contains("geo_" + cell));
+        assertEquals(channels, GeoChannels.subscriptionAround("u6sce", "alice"));
+        assertEquals(List.of(GeoChannels.UNLOCATED_CHANNEL, "user_alice"), GeoChannels.subscriptionAround(null, "alice"));
+    }
+
+    @Test
+    public void documentsRouteToTheirCellChannel() {
+        assertEquals(List.of("geo_u6sce"), GeoChannels.channelsForDocument("emergency_request", "open", "u6scew3kd"));
+        assertEquals(List.of("emergency_requests"), GeoChannels.channelsForDocument("emergency_request", "open", null));
+        assertEquals(List.of(), GeoChannels.channelsForDocument("emergency_request", "closed", "u6scew3kd"));
+        assertEquals(List.of(), GeoChannels.channelsForDocument("user", "open", "u6scew3kd"));
+        assertEquals(List.of("geo_u6sce"), GeoChannels.channelsForDocument("responder_location", null, "u6scew3kd"));
+        assertEquals(List.of(), GeoChannels.channelsForDocument("responder_location", null, null));
+    }
+
+    @Test
+    public void claimsReachTheCellAndBothParties() {
+        assertEquals(List.of("geo_u6sce", "user_alice", "user_7"),
+                GeoChannels.channelsForDocument("request_claim", null, "u6scew3kd", "alice", "7"));
+        assertEquals(List.of(GeoChannels.UNLOCATED_CHANNEL, "user_alice"),
+                GeoChannels.channelsForDocument("request_claim", null, null, "alice", null));
+        assertEquals(List.of("geo_u6sce"),
+                GeoChannels.channelsForDocument("request_offer", null, "u6scew3kd", "alice", null));
+    }
+
+    @Test
+    public void respondedRequestsLeaveTheCellChannel() {
+        assertEquals(List.of("user_alice", "user_7"),
+                GeoChannels.channelsForDocument("emergency_request", "responded", "u6scew3kd", "alice", "7"));
+        assertEquals(List.of("user_alice"),
+                GeoChannels.channelsForDocument("emergency_request", "responded", "u6scew3kd", "alice", null));
+        assertEquals(List.of("geo_u6sce"),
+                GeoChannels.channelsForDocument("emergency_request", "open", "u6scew3kd", "alice", null));
+    }
+
+    @Test
+    public void olderClientsResponseTakesARequestOutOfItsCell() {
+        // Pulled with short keys, then marked responded by a client that writes the long names
+        String status = GeoChannels.documentStatus("open", "responded");
+        assertEquals(RequestLifecycle.STATUS_RESPONDED, status);
+        assertEquals(List.of("user_alice", "user_7"),
+                GeoChannels.channelsForDocument("emergency_request", status, "u6scew3kd", "alice", "7"));
+        assertEquals(RequestLifecycle.STATUS_RESPONDED, GeoChannels.documentStatus("responded", "open"));
+        assertEquals(RequestLifecycle.STATUS_OPEN, GeoChannels.documentStatus(null, "open"));
+        assertEquals(RequestLifecycle.STATUS_OPEN, GeoChannels.documentStatus("open", null));
+    }
+
+    @Test
+    public void serverNeverExpiresAnOpenRequest() {
+        assertEquals(0, GeoChannels.serverExpiresAt("emergency_request", RequestLifecycle.STATUS_OPEN, 60_000));
+        // Even long after it was made, and whichever form the status came in
+        assertEquals(0, GeoChannels.serverExpiresAt("emergency_request",
+                GeoChannels.documentStatus("open", null), 60_000 + 30 * GeoChannels.SERVER_TTL_MS));
+        assertEquals(0, GeoChannels.serverExpiresAt("emergency_request", null, 60_000));
+    }
+
+    @Test
+    public void serverDropsClosedRequestsAfterTheirClaims() {
+        long day = GeoChannels.SERVER_TTL_MS;
+        assertEquals(60_000 + day, GeoChannels.serverExpiresAt("emergency_request",
+                GeoChannels.documentStatus("open", "responded"), 60_000));
+        assertEquals(60_000 + day, GeoChannels.serverExpiresAt("request_offer", null, 60_000));
+        // A claim written before its request was closed is still there when the request goes
+        long claimExpires = GeoChannels.serverExpiresAt("request_claim", null, 60_000);
+        assertEquals(60_000 + GeoChannels.CLAIM_SERVER_TTL_MS, claimExpires);
+        assertTrue(claimExpires > GeoChannels.serverExpiresAt("emergency_request", RequestLifecycle.STATUS_RESPONDED, 60_000));
+    }
+
+    @Test
+    public void respondersAreSharedAndUsersSeeTheirOwnDocument() {
+        assertEquals(List.of("responders", "user_7"), GeoChannels.channelsForUser("responder", "7"));
+        assertEquals(List.of("user_alice"), GeoChannels.channelsForUser("requester", "alice"));
+        assertEquals(GeoChannels.channelsForUser("responder", "7"), GeoChannels.responderSubscription("7"));
+    }
+}
@@ -0,0 +1,159 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Documents pulled per device with the old single channel versus geohash-cell channels,
+ * against an in-process stand-in for Sync Gateway that applies the sync-function routing.
+ */
+public class GeoPartitionSimulationTest {
+    private static final double[][] CITIES = {
+            {59.3293, 18.0686}, // Stockholm
+            {57.7089, 11.9746}, // Gothenburg
+            {55.6050, 13.0038}, // Malmo
+            {59.8586, 17.6389}, // Uppsala
+            {63.8258, 20.2630}, // Umea
+    };
+    private static final int DEVICES_PER_CITY = 20;
+
+    @Test
+    public void partitionedPullScalesWithLocalDensity() {
+        Random random = new Random(42);
+        int[] requestsPerCity = {2_000, 1_000, 1_000, 500, 500};
+        List<Request> requests = requests(random, requestsPerCity);
+        List<double[]> devices = devices(random);
+
+        Gateway single = new Gateway(request -> List.of("emergency_requests"));
+        Gateway partitioned = new Gateway(request ->
+                GeoChannels.channelsForDocument("emergency_request", "open", request.geohash));
+        for (Request request : requests) {
+            single.save(request);
+            partitioned.save(request);
+        }
+
+        long singlePulled = 0;
+        long partitionedPulled = 0;
+        for (double[] device : devices) {
+            String cell = GeoChannels.cellOf(device[0], device[1]);
+            singlePulled += single.pull(List.of("emergency_requests")).size();
+            Set<String> pulled = partitioned.pull(GeoChannels.subscriptionFor(cell));
+            partitionedPulled += pulled.size();
+
+            // Nothing nearby is lost: every request in the device's own cell arrives
+            for (Request request : requests) {
+                if (request.geohash != null && request.geohash.startsWith(cell)) {
+                    assertTrue(pulled.contains(request.id));
+                }
+            }
+        }
+
+        double singlePerDevice = (double) singlePulled / devices.size();
+        double partitionedPerDevice = (double) partitionedPulled / devices.size();
+        assertEquals(requests.size(), singlePerDevice, 0);
+        assertTrue("partitioned " + partitionedPerDevice + " vs single " + singlePerDevice,
+                partitionedPerDevice < singlePerDevice / 4);
+    }
+
+    @Test
+    public void loadElsewhereDoesNotReachOtherCities() {
+        Random random = new Random(7);
+        List<double[]> devices = devices(random);
+        Gateway quiet = gatewayWith(requests(random, new int[]{500, 500, 500, 500, 500}));
+        Gateway busyStockholm = gatewayWith(requests(random, new int[]{5_000, 500, 500, 500, 500}));
+
+        // Gothenburg devices pull about the same either way; Stockholm devices pull more
+        double[] quietPerCity = pulledPerCity(quiet, devices);
+        double[] busyPerCity = pulledPerCity(busyStockholm, devices);
+        assertTrue(busyPerCity[0] > quietPerCity[0] * 5);
+        assertEquals(quietPerCity[1], busyPerCity[1], quietPerCity[1] * 0.25 + 1);
+    }
+
+    private static double[] pulledPerCity(Gateway gateway, List<double[]> devices) {
+        double[] perCity = new double[CITIES.length];
+        for (int i = 0; i < devices.size(); i++) {
+            double[] device = devices.get(i);
+            String cell = GeoChannels.cellOf(device[0], device[1]);
+            perCity[i / DEVICES_PER_CITY] += (double) gateway.pull(GeoChannels.subscriptionFor(cell)).size() / DEVICES_PER_CITY;
+        }
+        return perCity;
+    }
+
+    private static Gateway gatewayWith(List<Request> requests) {
+        Gateway gateway = new Gateway(request ->
+                GeoChannels.channelsForDocument("emergency_request", "open", request.geohash));
+        for (Request request : requests) gateway.save(request);
+        return gateway;
+    }
+
+    /** Requests scattered up to ~5 km around each city; one in a hundred has no location fix. */
+    private static List<Request> requests(Random random, int[] perCity) {
+        List<Request> requests = new ArrayList<>();
+        for (int city = 0; city < CITIES.length; city++) {
+            for (int i = 0; i < perCity[city]; i++) {
+                String id = "request::" + city + "::" + i;
+                String geohash = random.nextInt(100) == 0 ? null : GeoChannels.documentGeohash(
+                        CITIES[city][0] + (random.nextDouble() - 0.5) * 0.09,
+                        CITIES[city][1] + (random.nextDouble() - 0.5) * 0.15);
+                requests.add(new Request(id, geohash));
+            }
+        }
+        return requests;
+    }
+
+    private static List<double[]> devices(Random random) {
+        List<double[]> devices = new ArrayList<>();
+        for (double[] city : CITIES) {
+            for (int i = 0; i < DEVICES_PER_CITY; i++) {
+                devices.add(new double[]{
+                        city[0] + (random.nextDouble() - 0.5) * 0.06,
+                        city[1] + (random.nextDouble() - 0.5) * 0.1});
+            }
+        }
+        return devices;
+    }
+
+    private static final class Request {
+        final String id;
+        final String geohash;
+
+        Request(String id, String geohash) {
+            this.id = id;
+            this.geohash = geohash;
+        }
+    }
+
+    /** Channel index of a gateway: the sync function assigns channels, pulls union them. */
+    private static final class Gateway {
+        private final Function<Request, List<String>> syncFunction;
+        private final Map<String, List<String>> docsByChannel = new HashMap<>();
+
+        Gateway(Function<Request, List<String>> syncFunction) {
+            this.syncFunction = syncFunction;
+        }
+
+        void save(Request request) {
+            for (String channel : syncFunction.apply(request)) {
+                docsByChannel.computeIfAbsent(channel, key -> new ArrayList<>()).add(request.id);
+            }
+        }
+
+        Set<String> pull(List<String> channels) {
+            Set<String> pulled = new HashSet<>();
+            for (String channel : channels) {
+                pulled.addAll(docsByChannel.getOrDefault(channel, List.of()));
+            }
+            return pulled;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Devices in one shelter on one LAN, each seeing every other, spreading 100 new documents
+ * created on random devices during the first minute. A replicator is push-and-pull: every
+ * second, each direction announces the changes it has not announced yet (resuming from the
+ * checkpoint it left with that peer) and sends the body of any document the other side does
+ * not have yet, so the same document arriving over two links in one second is sent twice.
+ * Full mesh runs a replicator from every device to every other; gossip runs the
+ * {@link GossipTopology} fanout, rebalanced every 15 seconds.
+ */
+public class GossipSimulationTest {
+    private static final int DOCUMENTS = 100;
+    private static final long CREATE_WINDOW_S = 60;
+    private static final long HORIZON_S = 1_800;
+    private static final long REBALANCE_S = 15;
+    private static final int CONNECT_BYTES = 8_000;
+    private static final int ANNOUNCE_BYTES = 120;
+    private static final int BODY_BYTES = 600;
+
+    @Test
+    public void gossipConvergesWithAFractionOfTheTraffic() {
+        for (int nodes : new int[]{10, 50, 100}) {
+            Result mesh = run(nodes, false, new Random(nodes));
+            Result gossip = run(nodes, true, new Random(nodes));
+            assertTrue("full mesh, n=" + nodes + ": " + mesh, mesh.convergedS >= 0);
+            assertTrue("gossip, n=" + nodes + ": " + gossip, gossip.convergedS >= 0);
+            // A few hops after the last document was created
+            assertTrue("gossip, n=" + nodes + ": " + gossip, gossip.convergedS - gossip.lastCreatedS <= 15);
+            assertTrue("gossip, n=" + nodes + ": " + gossip, gossip.maxReplicatorsPerNode <= GossipTopology.DEFAULT_FANOUT);
+            if (nodes == 100) {
+                assertTrue("full mesh " + mesh + " | gossip " + gossip, gossip.bytes * 5 < mesh.bytes);
+            }
+        }
+    }
+
+    private static Result run(int nodes, boolean gossip, Random random) {
+        List<Node> network = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) network.add(new Node(i));
+        List<GossipTopology<Integer>> topologies = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            GossipTopology<Integer> topology = new GossipTopology<>(GossipTopology.DEFAULT_FANOUT,
+                    GossipTopology.DEFAULT_ROTATION_MS, 2_000, 120_000, new Random(random.nextLong()));
+            for (int j = 0; j < nodes; j++) if (j != i) topology.addPeer(j);
+            topologies.add(topology);
+        }
+        Result result = new Result();
+        long[] createdAt = new long[DOCUMENTS];
+        int[] createdOn = new int[DOCUMENTS];
+        for (int d = 0; d < DOCUMENTS; d++) {
+            createdAt[d] = random.nextInt((int) CREATE_WINDOW_S);
+            createdOn[d] = random.nextInt(nodes);
+            result.lastCreatedS = Math.max(result.lastCreatedS, createdAt[d]);
+        }
+
+        // Outgoing replicators per node; checkpoints survive rotation
+        List<Set<Integer>> links = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) links.add(new HashSet<>());
+        Map<Long, Integer> checkpoints = new HashMap<>();
+        for (long t = 0; t <= HORIZON_S; t++) {
+            for (int d = 0; d < DOCUMENTS; d++) {
+                if (createdAt[d] == t) network.get(createdOn[d]).receive(d, t);
+            }
+            if (t % REBALANCE_S == 0) {
+                for (int i = 0; i < nodes; i++) {
+                    Set<Integer> wanted = new HashSet<>();
+                    if (gossip) {
+                        wanted.addAll(topologies.get(i).select(t * 1_000));
+                    } else {
+                        for (int j = 0; j < nodes; j++) if (j != i) wanted.add(j);
+                    }
+                    for (int peer : wanted) {
+                        if (!links.get(i).contains(peer)) result.bytes += CONNECT_BYTES;
+                    }
+                    links.set(i, wanted);
+                    result.maxReplicatorsPerNode = Math.max(result.maxReplicatorsPerNode, wanted.size());
+                }
+            }
+            for (int i = 0; i < nodes; i++) {
+                for (int peer : links.get(i)) {
+                    result.bytes += exchange(network.get(i), network.get(peer), t, checkpoints);
+                    result.bytes += exchange(network.get(peer), network.get(i), t, checkpoints);
+                    if (gossip) topologies.get(i).onSynced(peer, t * 1_000);
+                }
+            }
+            if (t >= result.lastCreatedS && converged(network)) {
+                result.convergedS = t;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** One second of one direction of a replicator; returns the bytes it moved. */
+    private static long exchange(Node from, Node to, long t, Map<Long, Integer> checkpoints) {
+        long key = (long) from.id << 32 | to.id;
+        int cursor = checkpoints.getOrDefault(key, 0);
+        long bytes = 0;
+        // Changes become visible to a replicator a second after they land
+        while (cursor < from.sequence.size() && from.arrivedAt[from.sequence.get(cursor)] < t) {
+            int doc = from.sequence.get(cursor++);
+            bytes += ANNOUNCE_BYTES;
+            if (!to.has(doc) || to.arrivedAt[doc] == t) {
+                bytes += BODY_BYTES;
+                to.receive(doc, t);
+            }
+        }
+        checkpoints.put(key, cursor);
+        return bytes;
+    }
+
+    private static boolean converged(List<Node> network) {
+        for (Node node : network) {
+            if (node.sequence.size() < DOCUMENTS) return false;
+        }
+        return true;
+    }
+
+    private static final class Node {
+        final int id;
+        final List<Integer> sequence = new ArrayList<>();
+        final long[] arrivedAt = new long[DOCUMENTS];
+
+        Node(int id) {
+            this.id = id;
+            Arrays.fill(arrivedAt, -1);
+        }
+
+        boolean has(int doc) {
+            return arrivedAt[doc] >= 0;
+        }
+
+        void receive(int doc, long t) {
+            if (has(doc)) return;
+            arrivedAt[doc] = t;
+            sequence.add(doc);
+        }
+    }
+
+    private static final class Result {
+        long lastCreatedS;
+        long convergedS = -1;
+        long bytes;
+        int maxReplicatorsPerNode;
+
+        @Override
+        public String toString() {
+            return String.format("converged %ds after the last write, moved=%dKB replicators/node=%d",
+                    convergedS - lastCreatedS, bytes / 1024, maxReplicatorsPerNode);
+        }
+    }
+}
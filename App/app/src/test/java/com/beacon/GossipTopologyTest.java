@@ -0,0 +1,85 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GossipTopologyTest {
+    private static final long ROTATION_MS = 60_000;
+
+    private static GossipTopology<String> topology(String... peers) {
+        GossipTopology<String> topology = new GossipTopology<>(2, ROTATION_MS, 1_000, 8_000, new Random(17));
+        for (String peer : peers) topology.addPeer(peer);
+        return topology;
+    }
+
+    @Test
+    public void selectsNoMoreThanTheFanout() {
+        GossipTopology<String> topology = topology("a", "b", "c", "d");
+        assertEquals(2, topology.select(0).size());
+        assertEquals(1, topology("a").select(0).size());
+    }
+
+    @Test
+    public void rotationSwapsTheLongestHeldPeer() {
+        GossipTopology<String> topology = topology("a", "b", "c");
+        Set<String> first = topology.select(0);
+        String[] held = first.toArray(new String[0]);
+        topology.onSynced(held[0], 1_000);
+        topology.onSynced(held[1], 2_000);
+
+        assertEquals(first, topology.select(ROTATION_MS - 1));
+        Set<String> rotated = topology.select(ROTATION_MS);
+        assertFalse(rotated.contains(held[0]));
+        assertTrue(rotated.contains(held[1]));
+        assertEquals(2, rotated.size());
+    }
+
+    @Test
+    public void rotationIntervalCountsFromTheFirstSelection() {
+        GossipTopology<String> topology = topology("a", "b", "c", "d");
+        String[] held = topology.select(0).toArray(new String[0]);
+        topology.onSynced(held[1], 1_000);
+        // Refilling a slot later does not restart the interval
+        topology.onFailed(held[0], 5_000);
+        Set<String> refilled = topology.select(5_000);
+        assertEquals(2, refilled.size());
+
+        assertEquals(refilled, topology.select(ROTATION_MS - 1));
+        assertNotEquals(refilled, topology.select(ROTATION_MS));
+    }
+
+    @Test
+    public void failedPeerBacksOffAndIsReplaced() {
+        GossipTopology<String> topology = topology("a", "b", "c");
+        Set<String> first = topology.select(0);
+        String failed = first.iterator().next();
+        topology.onFailed(failed, 0);
+
+        Set<String> next = topology.select(0);
+        assertFalse(next.contains(failed));
+        assertEquals(2, next.size());
+
+        // With every spare peer backing off the slot stays empty until a backoff ends
+        String other = null;
+        for (String peer : next) if (!first.contains(peer)) other = peer;
+        topology.onFailed(other, 0);
+        assertEquals(1, topology.select(999).size());
+        assertEquals(2, topology.select(1_000).size());
+    }
+
+    @Test
+    public void reliableFreshPeersArePreferred() {
+        for (int seed = 0; seed < 20; seed++) {
+            GossipTopology<String> topology = new GossipTopology<>(1, ROTATION_MS, 1, 1, new Random(seed));
+            topology.addPeer("flaky");
+            topology.addPeer("solid");
+            for (int i = 0; i < 3; i++) topology.onFailed("flaky", 0);
+            topology.onSynced("solid", 0);
+            assertEquals(Set.of("solid"), topology.select(10));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.beacon;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonLinesReaderTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void linesAcrossWindowsComeBackWhole() throws IOException {
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String line = "{\"_id\":\"request::" + i + "\",\"n\":" + i + "}";
+            expected.add(line);
+            content.append(line).append('\n');
+        }
+        // A window a little longer than a line, so most lines straddle two windows
+        assertEquals(expected, readAll(write(content.toString()), 40));
+    }
+
+    @Test
+    public void blankLinesAndCarriageReturnsAreDropped() throws IOException {
+        File file = write("{\"a\":1}\r\n\r\n  \n{\"b\":2}\n\n{\"c\":3}");
+        assertEquals(List.of("{\"a\":1}", "{\"b\":2}", "{\"c\":3}"), readAll(file, 16));
+    }
+
+    @Test
+    public void multiByteCharactersSurviveWindowBoundaries() throws IOException {
+        String line = "{\"name\":\"Malm\u00f6 \u00e5terv\u00e4ndning \u6551\u63f4\"}";
+        File file = write(line + "\n" + line + "\n");
+        assertEquals(List.of(line, line), readAll(file, 48));
+    }
+
+    @Test
+    public void lineNumbersCountBlankLines() throws IOException {
+        try (JsonLinesReader reader = new JsonLinesReader(write("\n{\"a\":1}\n\n{\"b\":2}\n"))) {
+            reader.next();
+            assertEquals(2, reader.lineNumber());
+            reader.next();
+            assertEquals(4, reader.lineNumber());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void emptyFileHasNoLines() throws IOException {
+        assertEquals(List.of(), readAll(write(""), 16));
+    }
+
+    @Test(expected = IOException.class)
+    public void lineLongerThanTheWindowIsAnError() throws IOException {
+        readAll(write("{\"a\":1}\n{\"long\":\"" + "x".repeat(64) + "\"}\n{\"b\":2}\n"), 32);
+    }
+
+    private File write(String content) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> readAll(File file, int windowBytes) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (JsonLinesReader reader = new JsonLinesReader(file, windowBytes)) {
+            String line;
+            while ((line = reader.next()) != null) lines.add(line);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,143 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocationThrottleTest {
+    private static final double LAT = 59.3326;
+    private static final double LON = 18.0649;
+    private static final double METRES_PER_DEGREE = 111_320;
+
+    @Test
+    public void firstFixIsPublishedAndJitterIsDropped() {
+        LocationThrottle throttle = new LocationThrottle();
+        assertNotNull(throttle.offer(fix(0, 0, 10, 0)));
+        for (int i = 1; i <= 30; i++) {
+            assertNull(throttle.offer(fix(i % 2 == 0 ? 5 : -5, 3, 10, i * 1_000L)));
+        }
+        assertEquals(1, throttle.getPublished());
+        assertEquals(30, throttle.getDropped());
+    }
+
+    @Test
+    public void inaccurateFixesAreDropped() {
+        LocationThrottle throttle = new LocationThrottle();
+        throttle.offer(fix(0, 0, 10, 0));
+        assertNull(throttle.offer(fix(500, 0, 150, 20_000)));
+        assertNotNull(throttle.offer(fix(500, 0, 10, 21_000)));
+    }
+
+    @Test
+    public void aCoarseFirstFixIsNotPublished() {
+        LocationThrottle throttle = new LocationThrottle();
+        // A network fix 2 km wide would place the responder anywhere in the district
+        assertNull(throttle.offer(fix(0, 0, 2_000, 0)));
+        assertEquals(0, throttle.getPublished());
+        assertNotNull(throttle.offer(fix(300, 0, 10, 1_000)));
+    }
+
+    @Test
+    public void movesWithinTheIntervalAreCoalescedToTheNewest() {
+        // Threshold capped at 50 m so both moves count
+        LocationThrottle throttle = new LocationThrottle(10_000, 300_000, 25, 50, 100);
+        throttle.offer(fix(0, 0, 5, 0));
+        assertNull(throttle.offer(fix(100, 0, 5, 4_000)));
+        assertNull(throttle.offer(fix(200, 0, 5, 8_000)));
+        assertNull(throttle.poll(9_000));
+
+        LocationThrottle.Fix held = throttle.poll(10_000);
+        assertNotNull(held);
+        assertEquals(8_000, held.timeMs);
+        assertEquals(1, throttle.getCoalesced());
+        assertNull(throttle.poll(20_000));
+    }
+
+    @Test
+    public void distanceThresholdGrowsWithSpeed() {
+        LocationThrottle throttle = new LocationThrottle();
+        throttle.offer(fix(0, 0, 5, 0));
+        assertEquals(LocationThrottle.DEFAULT_MIN_DISTANCE_M, throttle.distanceThresholdM(), 0.001);
+        for (int i = 1; i <= 20; i++) throttle.offer(fix(i * 15, 0, 5, i * 1_000L));
+        // Around 15 m/s the threshold is the distance covered in 15 seconds
+        assertTrue(String.valueOf(throttle.distanceThresholdM()), throttle.distanceThresholdM() > 150);
+    }
+
+    @Test
+    public void stationaryResponderIsRepublishedAfterTheHeartbeat() {
+        LocationThrottle throttle = new LocationThrottle();
+        throttle.offer(fix(0, 0, 10, 0));
+        assertNull(throttle.offer(fix(2, 0, 10, LocationThrottle.DEFAULT_HEARTBEAT_MS - 1)));
+        assertNotNull(throttle.offer(fix(2, 0, 10, LocationThrottle.DEFAULT_HEARTBEAT_MS)));
+    }
+
+    /**
+     * Replays a 1 Hz responder track (gps/responder-track.csv) and compares writing every fix
+     * into the user document with throttled writes to the location document. A 5 second
+     * publisher tick stands in for the scheduled poll.
+     */
+    @Test
+    public void replayedTrackWritesFewRevisionsAndStaysClose() throws IOException {
+        List<LocationThrottle.Fix> track = readTrack("gps/responder-track.csv");
+        int userDocBytes = 330;
+        int locationDocBytes = 240;
+
+        LocationThrottle throttle = new LocationThrottle();
+        LocationThrottle.Fix published = null;
+        List<Double> errorsM = new ArrayList<>();
+        long nextTickMs = track.get(0).timeMs;
+        for (LocationThrottle.Fix fix : track) {
+            while (nextTickMs <= fix.timeMs) {
+                LocationThrottle.Fix held = throttle.poll(nextTickMs);
+                if (held != null) published = held;
+                nextTickMs += 5_000;
+            }
+            LocationThrottle.Fix now = throttle.offer(fix);
+            if (now != null) published = now;
+            if (fix.accuracyM <= 20) {
+                errorsM.add(ResponderSpatialIndex.distanceMeters(fix.latitude, fix.longitude,
+                        published.latitude, published.longitude));
+            }
+        }
+        errorsM.sort(null);
+
+        long revisions = throttle.getPublished();
+        assertTrue("published " + revisions + " of " + track.size(), revisions * 10 < track.size());
+        // Each revision is a small location document instead of the whole user document
+        assertTrue(revisions * locationDocBytes * 10 < (long) track.size() * userDocBytes);
+        assertEquals(track.size(), throttle.getReceived());
+        // Requesters still see the responder within a couple of hundred metres
+        double p95ErrorM = errorsM.get(errorsM.size() * 95 / 100);
+        assertTrue("p95 lag " + p95ErrorM + " m", p95ErrorM < 250);
+    }
+
+    private static List<LocationThrottle.Fix> readTrack(String resource) throws IOException {
+        List<LocationThrottle.Fix> track = new ArrayList<>();
+        try (InputStream in = LocationThrottleTest.class.getClassLoader().getResourceAsStream(resource)) {
+            assertNotNull("missing " + resource, in);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] columns = line.split(",");
+                track.add(new LocationThrottle.Fix(Double.parseDouble(columns[1]), Double.parseDouble(columns[2]),
+                        Float.parseFloat(columns[3]), Long.parseLong(columns[0])));
+            }
+        }
+        return track;
+    }
+
+    /** A fix offset from a fixed point by metres north and east. */
+    private static LocationThrottle.Fix fix(double northM, double eastM, float accuracyM, long timeMs) {
+        return new LocationThrottle.Fix(LAT + northM / METRES_PER_DEGREE,
+                LON + eastM / (METRES_PER_DEGREE * Math.cos(Math.toRadians(LAT))), accuracyM, timeMs);
+    }
+}
@@ -0,0 +1,158 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MarkerClustererTest {
+    private static final MarkerClusterer.Viewport STOCKHOLM =
+            new MarkerClusterer.Viewport(59.20, 17.80, 59.45, 18.30);
+
+    @Test
+    public void nearbyPointsClusterAndDistantOnesStandAlone() {
+        List<MarkerClusterer.Point> points = List.of(
+                point("a", 59.3300, 18.0600, MarkerClusterer.Style.OCCUPIED),
+                point("b", 59.3301, 18.0601, MarkerClusterer.Style.AVAILABLE),
+                point("c", 59.4000, 18.2500, MarkerClusterer.Style.REQUEST));
+
+        Map<String, MarkerClusterer.MarkerSpec> markers = new MarkerClusterer().cluster(points, STOCKHOLM, 11);
+
+        assertEquals(2, markers.size());
+        assertTrue(markers.containsKey("p:c"));
+        MarkerClusterer.MarkerSpec cluster = markers.values().stream()
+                .filter(MarkerClusterer.MarkerSpec::isCluster).findFirst().orElseThrow(AssertionError::new);
+        assertEquals(2, cluster.count);
+        assertEquals(MarkerClusterer.Style.AVAILABLE, cluster.style);
+        assertEquals(59.33005, cluster.latitude, 1e-9);
+    }
+
+    @Test
+    public void highZoomShowsEveryPoint() {
+        List<MarkerClusterer.Point> points = List.of(
+                point("a", 59.3300, 18.0600, MarkerClusterer.Style.AVAILABLE),
+                point("b", 59.3300, 18.0600, MarkerClusterer.Style.AVAILABLE));
+        Map<String, MarkerClusterer.MarkerSpec> markers = new MarkerClusterer().cluster(points, STOCKHOLM,
+                MarkerClusterer.DEFAULT_MAX_CLUSTER_ZOOM);
+        assertEquals(List.of("p:a", "p:b"), new ArrayList<>(markers.keySet()));
+    }
+
+    @Test
+    public void pointsOutsideTheViewportAreCulled() {
+        List<MarkerClusterer.Point> points = List.of(
+                point("in", 59.33, 18.06, MarkerClusterer.Style.AVAILABLE),
+                point("out", 57.70, 11.97, MarkerClusterer.Style.AVAILABLE));
+        Map<String, MarkerClusterer.MarkerSpec> markers = new MarkerClusterer().cluster(points, STOCKHOLM, 12);
+        assertEquals(List.of("p:in"), new ArrayList<>(markers.keySet()));
+    }
+
+    @Test
+    public void viewportAcrossTheAntimeridian() {
+        MarkerClusterer.Viewport fiji = new MarkerClusterer.Viewport(-20, 175, -15, -178);
+        assertTrue(fiji.contains(-17, 179));
+        assertTrue(fiji.contains(-17, -179));
+        assertFalse(fiji.contains(-17, 170));
+        MarkerClusterer.Viewport padded = fiji.padded(0.25);
+        assertTrue(padded.contains(-17, 173.5));
+        assertTrue(padded.contains(-17, -176.5));
+    }
+
+    @Test
+    public void diffReportsOnlyWhatChanged() {
+        MarkerClusterer clusterer = new MarkerClusterer();
+        List<MarkerClusterer.Point> points = new ArrayList<>(List.of(
+                point("a", 59.30, 18.00, MarkerClusterer.Style.AVAILABLE),
+                point("b", 59.35, 18.10, MarkerClusterer.Style.AVAILABLE),
+                point("c", 59.40, 18.20, MarkerClusterer.Style.AVAILABLE)));
+        Map<String, MarkerClusterer.MarkerSpec> before = clusterer.cluster(points, STOCKHOLM, 12);
+
+        points.set(0, point("a", 59.301, 18.00, MarkerClusterer.Style.AVAILABLE));
+        points.set(1, point("b", 59.35, 18.10, MarkerClusterer.Style.OCCUPIED));
+        points.remove(2);
+        points.add(point("d", 59.25, 18.25, MarkerClusterer.Style.REQUEST));
+        MarkerDiff diff = MarkerDiff.between(before, clusterer.cluster(points, STOCKHOLM, 12));
+
+        assertEquals("p:d", diff.added.get(0).key);
+        assertEquals("p:a", diff.moved.get(0).key);
+        assertEquals("p:b", diff.restyled.get(0).key);
+        assertEquals(List.of("p:c"), diff.removed);
+        assertEquals(4, diff.operations());
+        assertTrue(MarkerDiff.between(before, before).isEmpty());
+    }
+
+    /**
+     * 10k responders and requests around Stockholm, rendered over a session of pans and zooms
+     * while 1% of the points move between frames. Compares the marker calls
+     * per frame with redrawing every marker, and times the background clustering step.
+     */
+    @Test
+    public void tenThousandPointsRenderInBoundedFrames() {
+        Random random = new Random(16);
+        List<MarkerClusterer.Point> points = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            MarkerClusterer.Style style = i % 5 == 0 ? MarkerClusterer.Style.REQUEST
+                    : random.nextBoolean() ? MarkerClusterer.Style.AVAILABLE : MarkerClusterer.Style.OCCUPIED;
+            points.add(point("d" + i, 59.10 + random.nextDouble() * 0.45, 17.70 + random.nextDouble() * 0.75, style));
+        }
+        MarkerClusterer clusterer = new MarkerClusterer();
+        for (int i = 0; i < 20; i++) clusterer.cluster(points, STOCKHOLM, 11); // JIT warm-up
+
+        List<Long> frameMicros = new ArrayList<>();
+        List<Integer> operations = new ArrayList<>();
+        int maxMarkers = 0;
+        Map<String, MarkerClusterer.MarkerSpec> rendered = Collections.emptyMap();
+        double centerLat = 59.33;
+        double centerLon = 18.06;
+        float zoom = 10;
+        for (int frame = 0; frame < 300; frame++) {
+            if (frame % 30 == 29) zoom = zoom >= 16 ? 10 : zoom + 1.5f;
+            // Pan around without leaving the data
+            centerLat = clamp(centerLat + (random.nextDouble() - 0.5) * 0.2 / Math.pow(2, zoom - 10), 59.15, 59.50);
+            centerLon = clamp(centerLon + (random.nextDouble() - 0.5) * 0.4 / Math.pow(2, zoom - 10), 17.75, 18.40);
+            for (int i = 0; i < 100; i++) {
+                int index = random.nextInt(points.size());
+                MarkerClusterer.Point old = points.get(index);
+                points.set(index, point(old.id, old.latitude + (random.nextDouble() - 0.5) * 0.002,
+                        old.longitude + (random.nextDouble() - 0.5) * 0.004, old.style));
+            }
+            // A 1080 x 2000 px screen at this zoom
+            double degreesPerPx = 360 / (256 * Math.pow(2, zoom));
+            double halfWidth = 540 * degreesPerPx;
+            double halfHeight = 1000 * degreesPerPx * Math.cos(Math.toRadians(centerLat));
+            MarkerClusterer.Viewport viewport = new MarkerClusterer.Viewport(centerLat - halfHeight,
+                    centerLon - halfWidth, centerLat + halfHeight, centerLon + halfWidth);
+
+            long start = System.nanoTime();
+            Map<String, MarkerClusterer.MarkerSpec> next = clusterer.cluster(points, viewport.padded(0.25), zoom);
+            MarkerDiff diff = MarkerDiff.between(rendered, next);
+            frameMicros.add((System.nanoTime() - start) / 1_000);
+            operations.add(diff.operations());
+            maxMarkers = Math.max(maxMarkers, next.size());
+            rendered = next;
+        }
+        Collections.sort(frameMicros);
+        Collections.sort(operations);
+
+        int naiveOperations = 2 * points.size();
+        long p95Micros = frameMicros.get(frameMicros.size() * 95 / 100);
+        int p95Operations = operations.get(operations.size() * 95 / 100);
+        // The UI thread touches a few hundred markers at most instead of all 10k
+        assertTrue("max markers " + maxMarkers, maxMarkers < 1_000);
+        assertTrue("p95 marker calls " + p95Operations, p95Operations * 10 < naiveOperations);
+        // Off the UI thread, but it should still keep up with camera moves
+        assertTrue("p95 frame " + p95Micros + " us", p95Micros < 50_000);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static MarkerClusterer.Point point(String id, double latitude, double longitude, MarkerClusterer.Style style) {
+        return new MarkerClusterer.Point(id, latitude, longitude, style);
+    }
+}
@@ -0,0 +1,30 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NewestRevisionConflictResolverTest {
+
+    @Test
+    public void laterFixWins() {
+        assertTrue(NewestRevisionConflictResolver.remoteWins(1_000, null, "2-b", 2_000, null, "2-a"));
+        assertFalse(NewestRevisionConflictResolver.remoteWins(2_000, null, "2-a", 1_000, null, "2-b"));
+    }
+
+    @Test
+    public void laterServerTimestampWins() {
+        assertTrue(NewestRevisionConflictResolver.remoteWins(0, "2025-06-28T22:50:55.905050+00:00", "3-b",
+                0, "2025-06-29T08:00:00.000000+00:00", "3-a"));
+        assertFalse(NewestRevisionConflictResolver.remoteWins(0, "2025-06-28T22:50:55.905050+00:00", "3-b",
+                0, null, "3-c"));
+    }
+
+    @Test
+    public void tiesPickTheSameRevisionOnBothSides() {
+        boolean onA = NewestRevisionConflictResolver.remoteWins(1_000, null, "2-a", 1_000, null, "2-b");
+        boolean onB = NewestRevisionConflictResolver.remoteWins(1_000, null, "2-b", 1_000, null, "2-a");
+        assertNotEquals(onA, onB);
+        assertTrue(onA);
+    }
+}
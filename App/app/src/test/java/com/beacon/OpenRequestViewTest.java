@@ -0,0 +1,126 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OpenRequestViewTest {
+
+    private static OpenRequestView.Entry entry(String id, String type, int severity, long requestedAt) {
+        return new OpenRequestView.Entry(id, "1-a", type, severity, requestedAt, null);
+    }
+
+    private static List<String> ids(List<OpenRequestView.Entry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (OpenRequestView.Entry entry : entries) ids.add(entry.id);
+        return ids;
+    }
+
+    @Test
+    public void ordersBySeverityThenAge() {
+        OpenRequestView view = new OpenRequestView();
+        view.put(entry("young", "Ambulance", 0, 3_000));
+        view.put(entry("old", "Ambulance", 0, 1_000));
+        view.put(entry("severe", "Ambulance", 2, 5_000));
+        view.put(entry("doctor", "Doctor", 2, 0));
+
+        assertEquals(List.of("severe", "old", "young"), ids(view.snapshot("Ambulance")));
+        assertEquals(List.of("doctor"), ids(view.snapshot("Doctor")));
+        assertTrue(view.snapshot("Fire Truck").isEmpty());
+    }
+
+    @Test
+    public void updatesReorderAndMoveBetweenTypes() {
+        OpenRequestView view = new OpenRequestView();
+        view.put(entry("a", "Ambulance", 0, 1_000));
+        view.put(entry("b", "Ambulance", 0, 2_000));
+
+        view.put(entry("b", "Ambulance", 3, 2_000));
+        assertEquals(List.of("b", "a"), ids(view.snapshot("Ambulance")));
+
+        view.put(entry("a", "Doctor", 0, 1_000));
+        assertEquals(List.of("b"), ids(view.snapshot("Ambulance")));
+        assertEquals(List.of("a"), ids(view.snapshot("Doctor")));
+
+        view.remove("b");
+        view.remove("missing");
+        assertTrue(view.snapshot("Ambulance").isEmpty());
+        assertEquals(1, view.size());
+    }
+
+    @Test
+    public void snapshotsAreStableUntilTheNextChange() {
+        OpenRequestView view = new OpenRequestView();
+        view.put(entry("a", "Ambulance", 0, 1_000));
+        List<OpenRequestView.Entry> first = view.snapshot("Ambulance");
+
+        assertSame(first, view.snapshot("Ambulance"));
+        view.put(entry("b", "Ambulance", 0, 2_000));
+        assertEquals(1, first.size());
+        assertEquals(2, view.snapshot("Ambulance").size());
+    }
+
+    @Test
+    public void offersFilterPerResponder() {
+        OpenRequestView view = new OpenRequestView();
+        view.put(new OpenRequestView.Entry("everyone", "1-a", "Ambulance", 0, 1_000, null));
+        view.put(new OpenRequestView.Entry("mine", "1-a", "Ambulance", 0, 2_000, List.of("7")));
+        view.put(new OpenRequestView.Entry("theirs", "1-a", "Ambulance", 0, 3_000, List.of("9")));
+
+        assertEquals(List.of("everyone", "mine"), ids(view.offeredTo("Ambulance", "7")));
+    }
+
+    @Test
+    public void nearnessIsAppliedWhenTheViewIsRead() {
+        OpenRequestView view = new OpenRequestView();
+        // Stockholm, Gothenburg, and a request without a fix
+        view.put(new OpenRequestView.Entry("here", "1-a", "Ambulance", 0, 1_000, null, 59.3293, 18.0686));
+        view.put(new OpenRequestView.Entry("far", "1-a", "Ambulance", 0, 2_000, null, 57.7089, 11.9746));
+        view.put(new OpenRequestView.Entry("unlocated", "1-a", "Ambulance", 0, 3_000, null));
+
+        assertEquals(List.of("here", "unlocated"), ids(view.offeredTo("Ambulance", "7", "u6sce")));
+        assertEquals(List.of("far", "unlocated"), ids(view.offeredTo("Ambulance", "7", GeoChannels.cellOf(57.7089, 11.9746))));
+        // Every request stays in the view, so moving back shows it again without a pull
+        assertEquals(3, view.offeredTo("Ambulance", "7", null).size());
+    }
+
+    @Test
+    public void singleEntryCheckAgreesWithTheListedView() {
+        OpenRequestView view = new OpenRequestView();
+        view.put(new OpenRequestView.Entry("here", "1-a", "Ambulance", 0, 1_000, null, 59.3293, 18.0686));
+        view.put(new OpenRequestView.Entry("far", "1-a", "Ambulance", 0, 2_000, null, 57.7089, 11.9746));
+        view.put(new OpenRequestView.Entry("theirs", "1-a", "Ambulance", 0, 3_000, List.of("9")));
+        view.put(new OpenRequestView.Entry("doctor", "1-a", "Doctor", 0, 4_000, null));
+
+        List<String> listed = ids(view.offeredTo("Ambulance", "7", "u6sce"));
+        for (OpenRequestView.Entry entry : view.entries()) {
+            assertEquals(entry.id, listed.contains(entry.id),
+                    OpenRequestView.isOfferedTo(entry, "Ambulance", "7", "u6sce"));
+        }
+    }
+
+    @Test
+    public void matchesASortedRebuildAfterRandomChurn() {
+        Random random = new Random(3);
+        OpenRequestView view = new OpenRequestView();
+        List<OpenRequestView.Entry> reference = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String id = "r" + random.nextInt(2_000);
+            reference.removeIf(e -> e.id.equals(id));
+            if (random.nextInt(4) == 0) {
+                view.remove(id);
+            } else {
+                OpenRequestView.Entry entry = entry(id, "Ambulance", random.nextInt(3), random.nextInt(100_000));
+                view.put(entry);
+                reference.add(entry);
+            }
+        }
+        reference.sort(OpenRequestView.PRIORITY);
+
+        assertEquals(ids(reference), ids(view.snapshot("Ambulance")));
+    }
+}
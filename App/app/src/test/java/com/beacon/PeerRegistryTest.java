@@ -0,0 +1,216 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PeerRegistryTest {
+
+    private static URI peer(int i) {
+        return URI.create("wss://10.0." + (i / 250) + "." + (i % 250 + 1) + ":55990/beacon");
+    }
+
+    @Test
+    public void upsert_dedupesSamePeer() {
+        PeerRegistry registry = new PeerRegistry(60_000);
+        assertTrue(registry.upsert("BeaconP2P-a", peer(1), 0));
+        assertFalse(registry.upsert("BeaconP2P-a", peer(1), 10));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void upsert_renamedServiceReplacesOldEntry() {
+        PeerRegistry registry = new PeerRegistry(60_000);
+        registry.upsert("BeaconP2P-a", peer(1), 0);
+        registry.upsert("BeaconP2P-a (2)", peer(1), 5);
+
+        assertEquals(1, registry.size());
+        assertFalse(registry.isKnownService("BeaconP2P-a"));
+        assertTrue(registry.isKnownService("BeaconP2P-a (2)"));
+    }
+
+    @Test
+    public void upsert_serviceMovedToNewAddress() {
+        PeerRegistry registry = new PeerRegistry(60_000);
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+
+        registry.upsert("BeaconP2P-a", peer(1), 0);
+        registry.upsert("BeaconP2P-a", peer(2), 5);
+
+        assertEquals(List.of(peer(2)), registry.snapshot());
+        assertEquals(2, listener.added.get());
+        assertEquals(1, listener.removed.get());
+    }
+
+    @Test
+    public void evictStale_removesOnlyExpiredPeers() {
+        PeerRegistry registry = new PeerRegistry(1_000);
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+
+        registry.upsert("old", peer(1), 0);
+        registry.upsert("fresh", peer(2), 900);
+        registry.touch(peer(1), 100);
+
+        assertEquals(1, registry.evictStale(1_500));
+        assertEquals(List.of(peer(2)), registry.snapshot());
+        assertFalse(registry.isKnownService("old"));
+        assertEquals(1, listener.removed.get());
+    }
+
+    @Test
+    public void reResolvedPeerOutlivesTheTtl() {
+        PeerRegistry registry = new PeerRegistry(1_000);
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+
+        // Never replicates, but resolves again on every refresh
+        registry.upsert("quiet", peer(1), 0);
+        for (long now = 600; now <= 6_000; now += 600) {
+            registry.upsert("quiet", peer(1), now);
+            assertEquals(0, registry.evictStale(now + 500));
+        }
+        assertEquals(List.of(peer(1)), registry.snapshot());
+
+        // Stops resolving: gone once the TTL runs out, back when it resolves again
+        assertEquals(1, registry.evictStale(7_100));
+        assertEquals(0, registry.size());
+        assertTrue(registry.upsert("quiet", peer(1), 8_000));
+        assertEquals(2, listener.added.get());
+        assertEquals(1, listener.removed.get());
+    }
+
+    @Test
+    public void clear_removesEveryPeerOnce() {
+        PeerRegistry registry = new PeerRegistry(60_000);
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+
+        registry.upsert("a", peer(1), 0);
+        registry.upsert("b", peer(2), 0);
+        registry.clear();
+        registry.clear();
+
+        assertEquals(0, registry.size());
+        assertFalse(registry.isKnownService("a"));
+        assertEquals(2, listener.removed.get());
+    }
+
+    @Test
+    public void remove_firesOnceAndForgetsService() {
+        PeerRegistry registry = new PeerRegistry(60_000);
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+
+        registry.upsert("a", peer(1), 0);
+        registry.remove("a");
+        registry.remove("a");
+
+        assertEquals(0, registry.size());
+        assertEquals(1, listener.removed.get());
+    }
+
+    @Test
+    public void concurrentUpserts_neverDuplicate() throws Exception {
+        PeerRegistry registry = new PeerRegistry(60_000);
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+
+        int threads = 16;
+        int peers = 200;
+        runConcurrently(threads, t -> {
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < peers; i++) {
+                    registry.upsert("BeaconP2P-" + i, peer(i), round);
+                }
+            }
+        });
+
+        assertEquals(peers, registry.size());
+        assertEquals(peers, new HashSet<>(registry.snapshot()).size());
+        assertEquals(peers, listener.added.get());
+        assertEquals(0, listener.removed.get());
+    }
+
+    @Test
+    public void concurrentChurn_eventsMatchFinalState() throws Exception {
+        PeerRegistry registry = new PeerRegistry(50);
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener);
+
+        int threads = 12;
+        int peers = 64;
+        runConcurrently(threads, t -> {
+            for (int round = 0; round < 2_000; round++) {
+                int i = (round * 31 + t * 7) % peers;
+                switch ((round + t) % 4) {
+                    case 0:
+                    case 1:
+                        registry.upsert("BeaconP2P-" + i, peer(i), round);
+                        break;
+                    case 2:
+                        registry.remove("BeaconP2P-" + i);
+                        break;
+                    default:
+                        registry.evictStale(round);
+                        if (round % 100 == 0) registry.clear();
+                        break;
+                }
+            }
+        });
+
+        Set<URI> snapshot = new HashSet<>(registry.snapshot());
+        assertEquals(registry.size(), snapshot.size());
+        assertTrue(registry.size() <= peers);
+        assertEquals(listener.added.get() - listener.removed.get(), registry.size());
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(int threads, Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    worker.run(thread);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    private static class RecordingListener implements PeerRegistry.Listener {
+        final AtomicInteger added = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+
+        @Override public void onPeerAdded(URI peerUri) {
+            added.incrementAndGet();
+        }
+
+        @Override public void onPeerRemoved(URI peerUri) {
+            removed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ReplicationPolicyTest {
+    private static final ReplicationPolicy.Conditions PLUGGED_WIFI =
+            new ReplicationPolicy.Conditions(true, 80, ReplicationPolicy.Network.UNMETERED);
+    private static final ReplicationPolicy.Conditions BATTERY_CELLULAR =
+            new ReplicationPolicy.Conditions(false, 60, ReplicationPolicy.Network.METERED);
+    private static final ReplicationPolicy.Conditions LOW_BATTERY_CELLULAR =
+            new ReplicationPolicy.Conditions(false, 15, ReplicationPolicy.Network.METERED);
+
+    @Test
+    public void modeFollowsPowerNetworkAndRole() {
+        ReplicationPolicy civilian = new ReplicationPolicy(false);
+        ReplicationPolicy responder = new ReplicationPolicy(true);
+
+        civilian.setConditions(PLUGGED_WIFI);
+        assertEquals(ReplicationPolicy.Mode.CONTINUOUS, civilian.mode(0));
+        civilian.setConditions(BATTERY_CELLULAR);
+        assertEquals(ReplicationPolicy.Mode.BATCHED, civilian.mode(0));
+        responder.setConditions(BATTERY_CELLULAR);
+        assertEquals(ReplicationPolicy.Mode.CONTINUOUS, responder.mode(0));
+        responder.setConditions(LOW_BATTERY_CELLULAR);
+        assertEquals(ReplicationPolicy.Mode.BATCHED, responder.mode(0));
+        civilian.setConditions(new ReplicationPolicy.Conditions(true, 80, ReplicationPolicy.Network.NONE));
+        assertEquals(ReplicationPolicy.Mode.OFFLINE, civilian.mode(0));
+    }
+
+    @Test
+    public void urgentWorkKeepsTheReplicatorContinuousForTheHotPeriod() {
+        ReplicationPolicy policy = new ReplicationPolicy(false);
+        policy.setConditions(BATTERY_CELLULAR);
+        policy.onLocalChange(false, 1_000);
+        assertEquals(ReplicationPolicy.Mode.BATCHED, policy.mode(1_000));
+
+        policy.onLocalChange(true, 2_000);
+        assertEquals(ReplicationPolicy.Mode.CONTINUOUS, policy.mode(2_000));
+        assertEquals(ReplicationPolicy.Mode.CONTINUOUS, policy.mode(2_000 + ReplicationPolicy.DEFAULT_HOT_MS - 1));
+        assertEquals(ReplicationPolicy.Mode.BATCHED, policy.mode(2_000 + ReplicationPolicy.DEFAULT_HOT_MS));
+
+        policy.onRemoteUrgent(1_000_000);
+        assertEquals(ReplicationPolicy.Mode.CONTINUOUS, policy.mode(1_000_001));
+    }
+
+    @Test
+    public void batchedOnlyNeverGoesContinuous() {
+        ReplicationPolicy policy = ReplicationPolicy.batchedOnly(60_000, 300_000, 3);
+        policy.setConditions(PLUGGED_WIFI);
+        policy.onLocalChange(true, 1_000);
+        policy.onRemoteUrgent(1_000);
+        assertEquals(ReplicationPolicy.Mode.BATCHED, policy.mode(1_000));
+        policy.setConditions(new ReplicationPolicy.Conditions(true, 80, ReplicationPolicy.Network.NONE));
+        assertEquals(ReplicationPolicy.Mode.OFFLINE, policy.mode(1_000));
+    }
+
+    @Test
+    public void windowsFollowTheLastSyncOrOpenEarlyWhenChangesPileUp() {
+        ReplicationPolicy policy = new ReplicationPolicy(60_000, 300_000, 0, 3, false);
+        policy.setConditions(BATTERY_CELLULAR);
+        policy.onSynced(10_000, 0);
+        assertEquals(70_000, policy.nextWindowMs(20_000));
+
+        policy.setConditions(LOW_BATTERY_CELLULAR);
+        assertEquals(310_000, policy.nextWindowMs(20_000));
+
+        for (int i = 0; i < 3; i++) policy.onLocalChange(false, 20_000);
+        assertEquals(20_000, policy.nextWindowMs(20_000));
+        // Changes saved while the window ran are still pending afterwards
+        policy.onLocalChange(false, 21_000);
+        policy.onSynced(20_000, 3);
+        assertEquals(1, policy.pending());
+        assertEquals(320_000, policy.nextWindowMs(21_000));
+    }
+
+    /**
+     * Four hours of a civilian requester and an on-duty responder, both with the same
+     * conditions. Other devices' changes reach each device's channels about every 30 seconds;
+     * the responder saves its own location document about once a minute; the requester raises
+     * an emergency about every 20 minutes. The radio model keeps the cellular radio in its
+     * high-power state for a 10 s tail after any transfer, a one-shot window costs a 1.5 s
+     * connect, and an open continuous socket sends a heartbeat every 5 minutes. Latency is
+     * from the requester saving a request to the responder's database having it.
+     */
+    @Test
+    public void adaptivePolicyCutsRadioTimeWithoutDelayingRequests() {
+        Result continuous = simulate(BATTERY_CELLULAR, 0, new Random(18));
+        Result fixed = simulate(BATTERY_CELLULAR, 1, new Random(18));
+        Result adaptive = simulate(BATTERY_CELLULAR, 2, new Random(18));
+        // The civilian device spends well under half the radio time of an always-open socket
+        assertTrue("adaptive " + adaptive + " | continuous " + continuous,
+                adaptive.requesterRadioMs * 2 < continuous.requesterRadioMs);
+        // ...and requests still arrive within a few seconds, where a plain window takes minutes
+        assertTrue("adaptive " + adaptive, adaptive.latencyPercentile(95) <= 5_000);
+        assertTrue("fixed window " + fixed, fixed.latencyPercentile(95) >= 60_000);
+        assertEquals(continuous.requests, adaptive.requests);
+    }
+
+    private static final long HORIZON_MS = 4 * 3_600_000L;
+    private static final long STEP_MS = 100;
+    private static final long TAIL_MS = 10_000;
+    private static final long CONNECT_MS = 1_500;
+    private static final long TRANSFER_MS = 300;
+    private static final long HEARTBEAT_MS = 300_000;
+    private static final long REMOTE_MEAN_MS = 30_000;
+    private static final long LOCATION_MEAN_MS = 60_000;
+    private static final long REQUEST_MEAN_MS = 20 * 60_000;
+
+    /** @param kind 0 always continuous, 1 one-shot every two minutes, 2 {@link ReplicationPolicy} */
+    private static ReplicationPolicy policy(int kind, boolean onDuty) {
+        if (kind == 0) {
+            return new ReplicationPolicy(onDuty) {
+                @NonNull
+                @Override
+                public Mode mode(long nowMs) {
+                    return Mode.CONTINUOUS;
+                }
+            };
+        }
+        if (kind == 1) {
+            return new ReplicationPolicy(ReplicationPolicy.DEFAULT_WINDOW_MS, ReplicationPolicy.DEFAULT_WINDOW_MS,
+                    0, Integer.MAX_VALUE, onDuty) {
+                @NonNull
+                @Override
+                public Mode mode(long nowMs) {
+                    return Mode.BATCHED;
+                }
+            };
+        }
+        return new ReplicationPolicy(onDuty);
+    }
+
+    private static Result simulate(ReplicationPolicy.Conditions conditions, int kind, Random random) {
+        List<Change> server = new ArrayList<>();
+        Device requester = new Device(policy(kind, false), conditions);
+        Device responder = new Device(policy(kind, true), conditions);
+        Device[] devices = {requester, responder};
+        Result result = new Result();
+
+        long nextRemote = exponential(random, REMOTE_MEAN_MS);
+        long nextLocation = exponential(random, LOCATION_MEAN_MS);
+        long nextRequest = exponential(random, REQUEST_MEAN_MS);
+        for (long t = 0; t < HORIZON_MS; t += STEP_MS) {
+            while (nextRemote <= t) {
+                // Another device's change, already on the server
+                server.add(new Change(null, "remote", -1, t));
+                nextRemote += exponential(random, REMOTE_MEAN_MS);
+            }
+            while (nextLocation <= t) {
+                responder.save(new Change(responder, "location", -1, t), false, t);
+                nextLocation += exponential(random, LOCATION_MEAN_MS);
+            }
+            while (nextRequest <= t) {
+                requester.save(new Change(requester, "request::" + result.requests, result.requests, t), true, t);
+                result.requests++;
+                nextRequest += exponential(random, REQUEST_MEAN_MS);
+            }
+            for (Device device : devices) {
+                for (Change change : device.step(t, server)) {
+                    if (device == responder && change.request >= 0) {
+                        result.latenciesMs.add(t - change.createdMs);
+                        device.policy.onRemoteUrgent(t);
+                    }
+                }
+            }
+        }
+        result.requesterRadioMs = requester.radioMs(HORIZON_MS);
+        result.responderRadioMs = responder.radioMs(HORIZON_MS);
+        result.responderRevisionsPushed = responder.revisionsPushed;
+        return result;
+    }
+
+    private static long exponential(Random random, long meanMs) {
+        return Math.max(STEP_MS, (long) (-Math.log(1 - random.nextDouble()) * meanMs));
+    }
+
+    private static final class Change {
+        final Device origin;
+        final String docId;
+        final int request;
+        final long createdMs;
+
+        Change(Device origin, String docId, int request, long createdMs) {
+            this.origin = origin;
+            this.docId = docId;
+            this.request = request;
+            this.createdMs = createdMs;
+        }
+    }
+
+    private static final class Device {
+        final ReplicationPolicy policy;
+        final List<Change> unpushed = new ArrayList<>();
+        int pulled;
+        boolean session;
+        long sessionReadyMs;
+        boolean window;
+        long windowStartedMs;
+        long windowReadyMs;
+        int windowPending;
+        long lastTrafficMs;
+        long radioUntilMs = Long.MIN_VALUE;
+        long radioMs;
+        long revisionsPushed;
+
+        Device(ReplicationPolicy policy, ReplicationPolicy.Conditions conditions) {
+            this.policy = policy;
+            policy.setConditions(conditions);
+        }
+
+        void save(Change change, boolean urgent, long t) {
+            unpushed.add(change);
+            policy.onLocalChange(urgent, t);
+        }
+
+        /** Advances one step; returns the changes pulled in it. */
+        List<Change> step(long t, List<Change> server) {
+            switch (policy.mode(t)) {
+                case CONTINUOUS:
+                    window = false;
+                    if (!session) {
+                        session = true;
+                        sessionReadyMs = t + CONNECT_MS;
+                        radio(t, CONNECT_MS);
+                    }
+                    if (t < sessionReadyMs) return Collections.emptyList();
+                    int pending = policy.pending();
+                    List<Change> pulled = sync(t, server);
+                    policy.onSynced(t, pending);
+                    if (t - lastTrafficMs >= HEARTBEAT_MS) {
+                        radio(t, STEP_MS);
+                        lastTrafficMs = t;
+                    }
+                    return pulled;
+                case BATCHED:
+                    session = false;
+                    if (!window && t >= policy.nextWindowMs(t)) {
+                        window = true;
+                        windowStartedMs = t;
+                        windowReadyMs = t + CONNECT_MS;
+                        windowPending = policy.pending();
+                        radio(t, CONNECT_MS + TRANSFER_MS);
+                    }
+                    if (!window || t < windowReadyMs) return Collections.emptyList();
+                    window = false;
+                    List<Change> batch = sync(t, server);
+                    policy.onSynced(windowStartedMs, windowPending);
+                    return batch;
+                default:
+                    session = false;
+                    window = false;
+                    return Collections.emptyList();
+            }
+        }
+
+        /** Pushes the latest revision of every changed document and pulls everything new. */
+        private List<Change> sync(long t, List<Change> server) {
+            boolean traffic = false;
+            if (!unpushed.isEmpty()) {
+                Set<String> documents = new HashSet<>();
+                for (Change change : unpushed) {
+                    if (documents.add(change.docId)) revisionsPushed++;
+                }
+                server.addAll(unpushed);
+                unpushed.clear();
+                traffic = true;
+            }
+            List<Change> pulled = new ArrayList<>();
+            for (; this.pulled < server.size(); this.pulled++) {
+                Change change = server.get(this.pulled);
+                if (change.origin != this) pulled.add(change);
+            }
+            if (!pulled.isEmpty()) traffic = true;
+            if (traffic) {
+                radio(t, TRANSFER_MS);
+                lastTrafficMs = t;
+            }
+            return pulled;
+        }
+
+        private void radio(long t, long durationMs) {
+            long until = t + durationMs + TAIL_MS;
+            if (t >= radioUntilMs) {
+                radioMs += until - t;
+            } else if (until > radioUntilMs) {
+                radioMs += until - radioUntilMs;
+            }
+            radioUntilMs = Math.max(radioUntilMs, until);
+        }
+
+        long radioMs(long horizonMs) {
+            // Tail past the end of the run is not counted
+            return radioMs - Math.max(0, radioUntilMs - horizonMs);
+        }
+    }
+
+    private static final class Result {
+        int requests;
+        final List<Long> latenciesMs = new ArrayList<>();
+        long requesterRadioMs;
+        long responderRadioMs;
+        long responderRevisionsPushed;
+
+        long latencyPercentile(int percentile) {
+            List<Long> sorted = new ArrayList<>(latenciesMs);
+            Collections.sort(sorted);
+            return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("radio requester=%.1f%% responder=%.1f%% request latency p50=%.1fs p95=%.1fs"
+                            + " (%d/%d delivered) responder revisions pushed=%d",
+                    100.0 * requesterRadioMs / HORIZON_MS, 100.0 * responderRadioMs / HORIZON_MS,
+                    latencyPercentile(50) / 1000.0, latencyPercentile(95) / 1000.0,
+                    latenciesMs.size(), requests, responderRevisionsPushed);
+        }
+    }
+}
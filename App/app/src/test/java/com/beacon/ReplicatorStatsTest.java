@@ -0,0 +1,76 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReplicatorStatsTest {
+
+    @Test
+    public void countsDocumentsAndFailuresSeparately() {
+        ReplicatorStats stats = new ReplicatorStats("sgw", 0);
+        stats.onDocumentsReplicated(true, 10, 2);
+        stats.onDocumentsReplicated(false, 5, 0);
+
+        assertEquals(8, stats.docsPushed());
+        assertEquals(5, stats.docsPulled());
+        assertEquals(2, stats.documentErrors.sum());
+    }
+
+    @Test
+    public void tracksTimeInLevelAndSyncCycles() {
+        ReplicatorStats stats = new ReplicatorStats("sgw", 0);
+        stats.onStatus(ReplicatorStats.CONNECTING, 0, 0, false, 100);
+        stats.onStatus(ReplicatorStats.BUSY, 0, 10, false, 300);
+        stats.onStatus(ReplicatorStats.BUSY, 5, 10, false, 400);
+        stats.onStatus(ReplicatorStats.IDLE, 10, 10, false, 1_100);
+
+        long[] times = stats.levelTimesMs(1_600);
+        assertEquals(100, times[ReplicatorStats.STOPPED]);
+        assertEquals(200, times[ReplicatorStats.CONNECTING]);
+        assertEquals(800, times[ReplicatorStats.BUSY]);
+        assertEquals(500, times[ReplicatorStats.IDLE]);
+        assertEquals(1, stats.syncCycleMs.count());
+        assertEquals("idle", stats.level());
+    }
+
+    @Test
+    public void lagGrowsFromLastIdle() {
+        ReplicatorStats stats = new ReplicatorStats("p2p", 0);
+        assertEquals(-1, stats.lagMs(50));
+
+        stats.onStatus(ReplicatorStats.IDLE, 0, 0, false, 100);
+        assertEquals(0, stats.lagMs(200));
+
+        stats.onStatus(ReplicatorStats.OFFLINE, 0, 0, true, 300);
+        assertEquals(900, stats.lagMs(1_200));
+        assertEquals(1, stats.errors());
+    }
+
+    @Test
+    public void ratesComeFromSampleTicks() {
+        ReplicatorStats stats = new ReplicatorStats("sgw", 0);
+        stats.sample(0);
+        stats.onDocumentsReplicated(false, 50, 0);
+        stats.sample(2_000);
+
+        StringBuilder json = new StringBuilder();
+        stats.appendJson(json, 2_000);
+        assertTrue(json.toString(), json.toString().contains("\"pull_per_sec\":25.0"));
+        // Reading a snapshot does not reset the rate
+        json.setLength(0);
+        stats.appendJson(json, 2_500);
+        assertTrue(json.toString().contains("\"pull_per_sec\":25.0"));
+    }
+
+    @Test
+    public void histogramPercentilesAreBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) histogram.record(3);
+        histogram.record(1_000);
+
+        assertEquals(100, histogram.count());
+        assertEquals(3, histogram.percentile(50));
+        assertEquals(1_023, histogram.percentile(100));
+    }
+}
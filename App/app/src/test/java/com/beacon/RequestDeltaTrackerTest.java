@@ -0,0 +1,69 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestDeltaTrackerTest {
+
+    private static RequestDeltaTracker.Delta batch(RequestDeltaTracker tracker, String... idsAndRevs) {
+        tracker.begin();
+        for (int i = 0; i < idsAndRevs.length; i += 2) {
+            // A null revision stands for a request the batch took out
+            if (idsAndRevs[i + 1] == null) tracker.drop(idsAndRevs[i]);
+            else tracker.offer(idsAndRevs[i], idsAndRevs[i + 1]);
+        }
+        return tracker.finish();
+    }
+
+    @Test
+    public void firstBatch_reportsEverythingAsAdded() {
+        RequestDeltaTracker tracker = new RequestDeltaTracker();
+        RequestDeltaTracker.Delta delta = batch(tracker, "a", "1-x", "b", "1-y");
+
+        assertEquals(List.of("a", "b"), delta.added);
+        assertTrue(delta.changed.isEmpty());
+        assertTrue(delta.removed.isEmpty());
+    }
+
+    @Test
+    public void unchangedRevisions_produceEmptyDelta() {
+        RequestDeltaTracker tracker = new RequestDeltaTracker();
+        batch(tracker, "a", "1-x", "b", "1-y");
+
+        assertTrue(batch(tracker, "b", "1-y", "a", "1-x").isEmpty());
+    }
+
+    @Test
+    public void reportsOnlyWhatTheBatchTouched() {
+        RequestDeltaTracker tracker = new RequestDeltaTracker();
+        batch(tracker, "a", "1-x", "b", "1-y", "c", "1-z");
+
+        RequestDeltaTracker.Delta delta = batch(tracker, "b", "2-y", "c", null, "d", "1-w");
+
+        assertEquals(List.of("d"), delta.added);
+        assertEquals(List.of("b"), delta.changed);
+        assertEquals(List.of("c"), delta.removed);
+        // "a" was not touched, so it is still shown
+        assertEquals(3, tracker.size());
+        assertTrue(tracker.ids().contains("a"));
+    }
+
+    @Test
+    public void droppingARequestNeverShownReportsNothing() {
+        RequestDeltaTracker tracker = new RequestDeltaTracker();
+
+        assertTrue(batch(tracker, "a", null).isEmpty());
+    }
+
+    @Test
+    public void removedRequestIsAddedAgainWhenItReturns() {
+        RequestDeltaTracker tracker = new RequestDeltaTracker();
+        batch(tracker, "a", "1-x");
+        assertEquals(List.of("a"), batch(tracker, "a", null).removed);
+
+        assertEquals(List.of("a"), batch(tracker, "a", "3-x").added);
+    }
+}
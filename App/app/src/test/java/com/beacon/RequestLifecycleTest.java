@@ -0,0 +1,90 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RequestLifecycleTest {
+
+    @Test
+    public void statusOnlyMovesForward() {
+        assertEquals("responded", RequestLifecycle.mergeStatus("open", "responded"));
+        assertEquals("responded", RequestLifecycle.mergeStatus("responded", "open"));
+        assertEquals("open", RequestLifecycle.mergeStatus(null, "open"));
+        assertNull(RequestLifecycle.mergeStatus(null, null));
+    }
+
+    @Test
+    public void earliestResponseWins() {
+        assertTrue(RequestLifecycle.remoteResponseWins("7", 2_000, "9", 1_000));
+        assertFalse(RequestLifecycle.remoteResponseWins("7", 1_000, "9", 2_000));
+        assertTrue(RequestLifecycle.remoteResponseWins(null, 0, "9", 2_000));
+        assertFalse(RequestLifecycle.remoteResponseWins("7", 2_000, null, 0));
+        // A response without a timestamp loses to one with
+        assertTrue(RequestLifecycle.remoteResponseWins("7", 0, "9", 2_000));
+    }
+
+    @Test
+    public void tiedResponsesPickTheSameWinnerOnBothSides() {
+        boolean onA = RequestLifecycle.remoteResponseWins("7", 1_000, "9", 1_000);
+        boolean onB = RequestLifecycle.remoteResponseWins("9", 1_000, "7", 1_000);
+        assertNotEquals(onA, onB);
+        assertFalse(onA);
+    }
+
+    @Test
+    public void lateLocationIsKeptAndBothSidesPickTheSameOne() {
+        assertTrue(RequestLifecycle.remoteLocationWins(null, "u6sce0t4z"));
+        assertFalse(RequestLifecycle.remoteLocationWins("u6sce0t4z", null));
+        assertFalse(RequestLifecycle.remoteLocationWins("u6sce0t4z", "u6sce0t4z"));
+        boolean onA = RequestLifecycle.remoteLocationWins("u6sce0t4z", "u6scd9xyz");
+        boolean onB = RequestLifecycle.remoteLocationWins("u6scd9xyz", "u6sce0t4z");
+        assertNotEquals(onA, onB);
+        assertTrue(onA);
+    }
+
+    @Test
+    public void earliestIgnoresMissingTimestamps() {
+        assertEquals(1_000, RequestLifecycle.earliest(1_000, 2_000));
+        assertEquals(2_000, RequestLifecycle.earliest(0, 2_000));
+        assertEquals(1_000, RequestLifecycle.earliest(1_000, 0));
+    }
+
+    @Test
+    public void statusIsDerivedFromClaims() {
+        assertEquals("open", RequestLifecycle.status(List.of()));
+        assertNull(RequestLifecycle.winner(List.of()));
+
+        List<RequestLifecycle.Claim> claims = List.of(
+                new RequestLifecycle.Claim("9", 2_000),
+                new RequestLifecycle.Claim("7", 1_000),
+                new RequestLifecycle.Claim("8", 1_000));
+        assertEquals("responded", RequestLifecycle.status(claims));
+        assertEquals("7", RequestLifecycle.winner(claims).responderId);
+    }
+
+    @Test
+    public void everyOrderOfClaimsPicksTheSameWinner() {
+        List<RequestLifecycle.Claim> claims = new ArrayList<>();
+        for (int i = 0; i < 6; i++) claims.add(new RequestLifecycle.Claim("r" + i, 1_000 + i % 2));
+        Random random = new Random(20);
+        for (int run = 0; run < 50; run++) {
+            Collections.shuffle(claims, random);
+            assertEquals("r0", RequestLifecycle.winner(claims).responderId);
+        }
+    }
+
+    @Test
+    public void claimAndOfferIdsAreScopedToTheirWriter() {
+        assertEquals("claim::req::7", RequestLifecycle.claimId("req", "7"));
+        assertNotEquals(RequestLifecycle.claimId("req", "7"), RequestLifecycle.claimId("req", "9"));
+        assertEquals("offer::req", RequestLifecycle.offerId("req"));
+        assertEquals("req", RequestLifecycle.requestIdOfOffer(RequestLifecycle.offerId("req")));
+        assertNull(RequestLifecycle.requestIdOfOffer("req"));
+    }
+}
@@ -0,0 +1,174 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class RequestOutboxTest {
+    private static final long T0 = 1_700_000_000_000L;
+    private static final String[] TYPES = {"Ambulance", "Doctor", "Fire Truck", "Rescue Team", "Generator", "Water Supply"};
+
+    @Test
+    public void idsAreDeterministicPerRequesterTypeAndBucket() {
+        assertEquals("request::alice::fire_truck::28333333", RequestOutbox.requestId("alice", "Fire Truck", T0 / 60_000));
+        assertEquals(RequestOutbox.requestId("alice", "Doctor", 7), RequestOutbox.requestId("alice", " doctor ", 7));
+        assertNotEquals(RequestOutbox.requestId("alice", "Doctor", 7), RequestOutbox.requestId("bob", "Doctor", 7));
+        assertNotEquals(RequestOutbox.requestId("alice", "Doctor", 7), RequestOutbox.requestId("alice", "Doctor", 8));
+    }
+
+    @Test
+    public void repeatedTapsWithinTheWindowAreCoalesced() {
+        RequestOutbox outbox = new RequestOutbox(60_000, 120_000);
+        assertEquals(RequestOutbox.Outcome.QUEUED, outbox.enqueue("alice", "Doctor", T0, null, null));
+        String id = outbox.lastId("alice", "Doctor");
+        // Crosses a bucket boundary but stays inside the window
+        assertEquals(RequestOutbox.Outcome.COALESCED, outbox.enqueue("alice", "Doctor", T0 + 90_000, 59.33, 18.07));
+        assertEquals(id, outbox.lastId("alice", "Doctor"));
+        assertEquals(RequestOutbox.Outcome.QUEUED, outbox.enqueue("alice", "Ambulance", T0 + 1_000, null, null));
+
+        List<RequestOutbox.Request> batch = outbox.drain();
+        assertEquals(2, batch.size());
+        assertEquals(id, batch.get(0).id);
+        // The repeat supplied the location the first tap lacked
+        assertTrue(batch.get(0).hasLocation());
+        assertEquals(0, outbox.pendingCount());
+
+        assertEquals(RequestOutbox.Outcome.QUEUED, outbox.enqueue("alice", "Doctor", T0 + 120_000, null, null));
+        assertNotEquals(id, outbox.lastId("alice", "Doctor"));
+        assertEquals(4, outbox.getTaps());
+        assertEquals(1, outbox.getCoalesced());
+    }
+
+    @Test
+    public void aRepeatBringsTheLocationARequestWasCommittedWithout() {
+        RequestOutbox outbox = new RequestOutbox();
+        outbox.enqueue("alice", "Doctor", T0, null, null);
+        String id = outbox.drain().get(0).id;
+
+        assertEquals(RequestOutbox.Outcome.LOCATED, outbox.enqueue("alice", "Doctor", T0 + 10_000, 59.33, 18.07));
+        List<RequestOutbox.Request> update = outbox.drain();
+        assertEquals(1, update.size());
+        assertEquals(id, update.get(0).id);
+        assertTrue(update.get(0).locationUpdate);
+        assertEquals(59.33, update.get(0).latitude, 0);
+        assertEquals(T0, update.get(0).requestedAt);
+        // Only the first location is applied
+        assertEquals(RequestOutbox.Outcome.COALESCED, outbox.enqueue("alice", "Doctor", T0 + 20_000, 59.40, 18.10));
+        assertEquals(0, outbox.pendingCount());
+    }
+
+    @Test
+    public void aTapAfterTheRequestWasClaimedStartsANewOne() {
+        RequestOutbox outbox = new RequestOutbox();
+        outbox.enqueue("alice", "Doctor", T0, 59.33, 18.07);
+        String first = outbox.drain().get(0).id;
+        outbox.settle(first, T0 + 20_000);
+
+        // Same bucket, so the deterministic ID would land on the claimed request
+        assertEquals(RequestOutbox.Outcome.QUEUED, outbox.enqueue("alice", "Doctor", T0 + 30_000, 59.33, 18.07));
+        String second = outbox.lastId("alice", "Doctor");
+        assertNotEquals(first, second);
+        assertEquals(RequestOutbox.Outcome.COALESCED, outbox.enqueue("alice", "Doctor", T0 + 35_000, 59.33, 18.07));
+        assertEquals(List.of(second), List.of(outbox.drain().get(0).id));
+
+        // Settling a request the outbox no longer remembers changes nothing
+        outbox.settle("request::bob::doctor::1", T0 + 40_000);
+        assertEquals(second, outbox.lastId("alice", "Doctor"));
+    }
+
+    @Test
+    public void aRestartedOutboxReusesTheIdWithinTheBucket() {
+        RequestOutbox before = new RequestOutbox();
+        before.enqueue("alice", "Doctor", T0, null, null);
+        RequestOutbox after = new RequestOutbox();
+        after.enqueue("alice", "Doctor", T0 + 5_000, null, null);
+        // Same document ID, so the writer finds it saved and skips it
+        assertEquals(before.lastId("alice", "Doctor"), after.lastId("alice", "Doctor"));
+    }
+
+    @Test
+    public void restoredRequestsGoBackAheadOfNewOnes() {
+        RequestOutbox outbox = new RequestOutbox();
+        outbox.enqueue("alice", "Doctor", T0, null, null);
+        List<RequestOutbox.Request> failed = outbox.drain();
+        outbox.enqueue("bob", "Doctor", T0 + 1_000, null, null);
+        outbox.restore(failed);
+
+        List<RequestOutbox.Request> retry = outbox.drain();
+        assertEquals(2, retry.size());
+        assertEquals("alice", retry.get(0).requesterId);
+        assertEquals("bob", retry.get(1).requesterId);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowShorterThanBucketIsRejected() {
+        new RequestOutbox(60_000, 30_000);
+    }
+
+    /**
+     * 500 requesters over an hour, each raising one to three real emergencies and then
+     * tapping again in a panic: up to 15 more times over the next 90 seconds. Without the
+     * outbox every tap was a new document replicated to every peer and responder.
+     */
+    @Test
+    public void tapStormCreatesOneDocumentPerEmergency() {
+        int requesters = 500;
+        Random random = new Random(14);
+        RequestOutbox outbox = new RequestOutbox();
+        Set<String> documents = new HashSet<>();
+        int emergencies = 0;
+        long taps = 0;
+        long legacyBytes = 0;
+        long outboxBytes = 0;
+
+        for (int r = 0; r < requesters; r++) {
+            String requester = "requester-" + r;
+            int count = 1 + random.nextInt(3);
+            for (int e = 0; e < count; e++) {
+                // Spread so a requester's emergencies of one type are not within one window
+                long start = T0 + e * 20 * 60_000L + random.nextInt(600_000);
+                String type = TYPES[random.nextInt(TYPES.length)];
+                double lat = 59.0 + random.nextDouble();
+                double lon = 18.0 + random.nextDouble();
+                emergencies++;
+
+                int repeats = random.nextInt(16);
+                for (int t = 0; t <= repeats; t++) {
+                    long at = start + (t == 0 ? 0 : random.nextInt(90_000));
+                    taps++;
+                    // The old save used a random UUID per tap
+                    String legacyId = new UUID(random.nextLong(), random.nextLong()).toString();
+                    legacyBytes += documentBytes(legacyId, requester, type, at, lat, lon);
+                    outbox.enqueue(requester, type, at, lat, lon);
+                }
+            }
+            for (RequestOutbox.Request request : outbox.drain()) {
+                if (documents.add(request.id)) {
+                    outboxBytes += documentBytes(request.id, request.requesterId, request.emergencyType,
+                            request.requestedAt, request.latitude, request.longitude);
+                }
+            }
+        }
+        assertEquals(emergencies, documents.size());
+        assertEquals(taps - emergencies, outbox.getCoalesced());
+        // The panic taps alone were more than five extra documents per emergency
+        assertTrue("taps " + taps + " for " + emergencies + " emergencies", taps - emergencies > 5L * emergencies);
+        assertTrue("replicated " + outboxBytes + " of " + legacyBytes + " bytes", outboxBytes * 5 < legacyBytes);
+    }
+
+    /** Approximate JSON body of a request document as it goes over the wire. */
+    private static long documentBytes(String id, String requester, String type, long at, double lat, double lon) {
+        String body = "{\"_id\":\"" + id + "\",\"_rev\":\"1-0123456789abcdef0123456789abcdef01234567\""
+                + ",\"type\":\"emergency_request\",\"emergency_type\":\"" + type + "\""
+                + ",\"latitude\":" + lat + ",\"longitude\":" + lon
+                + ",\"geohash\":\"" + GeoChannels.documentGeohash(lat, lon) + "\""
+                + ",\"status\":\"open\",\"requested_by\":\"" + requester + "\",\"requested_at\":" + at + "}";
+        return body.length();
+    }
+}
@@ -0,0 +1,106 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResponderSpatialIndexTest {
+    private static final double STOCKHOLM_LAT = 59.3293;
+    private static final double STOCKHOLM_LON = 18.0686;
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(1);
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            double lat = STOCKHOLM_LAT + (random.nextDouble() - 0.5) * 0.5;
+            double lon = STOCKHOLM_LON + (random.nextDouble() - 0.5) * 0.8;
+            points.add(new double[]{i, lat, lon});
+            index.upsert("r" + i, "Ambulance", true, lat, lon);
+        }
+
+        for (int query = 0; query < 200; query++) {
+            double lat = STOCKHOLM_LAT + (random.nextDouble() - 0.5) * 0.6;
+            double lon = STOCKHOLM_LON + (random.nextDouble() - 0.5) * 0.9;
+            int k = 1 + random.nextInt(10);
+
+            List<ResponderSpatialIndex.Hit> hits = index.nearest("Ambulance", lat, lon, k);
+            List<double[]> expected = new ArrayList<>(points);
+            expected.sort(Comparator.comparingDouble(p ->
+                    ResponderSpatialIndex.distanceMeters(lat, lon, p[1], p[2])));
+
+            assertEquals(k, hits.size());
+            for (int i = 0; i < k; i++) {
+                double expectedDistance = ResponderSpatialIndex.distanceMeters(lat, lon, expected.get(i)[1], expected.get(i)[2]);
+                assertEquals(expectedDistance, hits.get(i).distanceMeters, 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void nearestFindsSparseFarAwayResponders() {
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        index.upsert("gothenburg", "Doctor", true, 57.7089, 11.9746);
+        index.upsert("malmo", "Doctor", true, 55.6050, 13.0038);
+
+        List<ResponderSpatialIndex.Hit> hits = index.nearest("Doctor", STOCKHOLM_LAT, STOCKHOLM_LON, 5);
+
+        assertEquals(2, hits.size());
+        assertEquals("gothenburg", hits.get(0).responderId);
+        assertEquals(398_000, hits.get(0).distanceMeters, 10_000);
+    }
+
+    @Test
+    public void queriesArePartitionedByType() {
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        index.upsert("ambulance", "Ambulance", true, STOCKHOLM_LAT, STOCKHOLM_LON);
+        index.upsert("doctor", "Doctor", true, STOCKHOLM_LAT, STOCKHOLM_LON);
+
+        assertEquals("doctor", index.nearest("Doctor", STOCKHOLM_LAT, STOCKHOLM_LON, 3).get(0).responderId);
+        assertTrue(index.nearest("Fire Truck", STOCKHOLM_LAT, STOCKHOLM_LON, 3).isEmpty());
+    }
+
+    @Test
+    public void updatesMoveRetypeAndDropResponders() {
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        index.upsert("r1", "Ambulance", true, STOCKHOLM_LAT, STOCKHOLM_LON);
+        index.upsert("r2", "Ambulance", true, STOCKHOLM_LAT + 0.05, STOCKHOLM_LON);
+
+        // r1 drives away, r2 becomes nearest
+        index.upsert("r1", "Ambulance", true, STOCKHOLM_LAT + 0.2, STOCKHOLM_LON);
+        assertEquals("r2", index.nearest("Ambulance", STOCKHOLM_LAT, STOCKHOLM_LON, 1).get(0).responderId);
+
+        // Occupied responders leave the index
+        index.upsert("r2", "Ambulance", false, STOCKHOLM_LAT + 0.05, STOCKHOLM_LON);
+        assertEquals("r1", index.nearest("Ambulance", STOCKHOLM_LAT, STOCKHOLM_LON, 1).get(0).responderId);
+
+        index.upsert("r1", "Doctor", true, STOCKHOLM_LAT, STOCKHOLM_LON);
+        assertTrue(index.nearest("Ambulance", STOCKHOLM_LAT, STOCKHOLM_LON, 1).isEmpty());
+        assertEquals(1, index.size());
+
+        index.remove("r1");
+        assertEquals(0, index.size());
+        assertTrue(index.nearest("Doctor", STOCKHOLM_LAT, STOCKHOLM_LON, 1).isEmpty());
+    }
+
+    @Test
+    public void radiusQueryReturnsOnlyRespondersInsideNearestFirst() {
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        // Roughly 0.5, 1.1 and 3.3 km north
+        index.upsert("near", "Ambulance", true, STOCKHOLM_LAT + 0.0045, STOCKHOLM_LON);
+        index.upsert("mid", "Ambulance", true, STOCKHOLM_LAT + 0.01, STOCKHOLM_LON);
+        index.upsert("far", "Ambulance", true, STOCKHOLM_LAT + 0.03, STOCKHOLM_LON);
+
+        List<ResponderSpatialIndex.Hit> hits = index.withinRadius("Ambulance", STOCKHOLM_LAT, STOCKHOLM_LON, 2_000);
+
+        assertEquals(2, hits.size());
+        assertEquals("near", hits.get(0).responderId);
+        assertEquals("mid", hits.get(1).responderId);
+    }
+}
@@ -0,0 +1,50 @@
+package com.beacon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RetentionPolicyTest {
+    private static final long HOUR = 3_600_000L;
+    private final RetentionPolicy policy = new RetentionPolicy();
+
+    @Test
+    public void respondedRequestsExpireAfterTheirResponse() {
+        assertEquals(10 * HOUR + RetentionPolicy.DEFAULT_RESPONDED_TTL_MS,
+                policy.expiresAt("emergency_request", "responded", 10 * HOUR, 0, 12 * HOUR));
+        // No timestamp: counted from now
+        assertEquals(12 * HOUR + RetentionPolicy.DEFAULT_RESPONDED_TTL_MS,
+                policy.expiresAt("emergency_request", "responded", 0, 0, 12 * HOUR));
+    }
+
+    @Test
+    public void claimsExpireAfterTheyWereMade() {
+        assertEquals(10 * HOUR + RetentionPolicy.DEFAULT_RESPONDED_TTL_MS,
+                policy.expiresAt("request_claim", null, 10 * HOUR, 0, 12 * HOUR));
+        assertEquals(0, policy.expiresAt("request_offer", null, 0, 0, 12 * HOUR));
+    }
+
+    @Test
+    public void openRequestsAndUsersAreKept() {
+        assertEquals(0, policy.expiresAt("emergency_request", "open", 0, 0, HOUR));
+        assertEquals(0, policy.expiresAt("user", null, 0, HOUR, HOUR));
+        assertEquals(0, policy.expiresAt(null, null, 0, 0, HOUR));
+    }
+
+    @Test
+    public void positionsExpireAfterTheLastUpdate() {
+        assertEquals(3 * HOUR + RetentionPolicy.DEFAULT_LOCATION_TTL_MS,
+                policy.expiresAt("responder_location", null, 0, 3 * HOUR, 3 * HOUR + 5_000));
+    }
+
+    @Test
+    public void compactsOnTheIntervalOrEarlyAfterManyRemovals() {
+        RetentionPolicy policy = new RetentionPolicy(HOUR, HOUR, 6 * HOUR, 100);
+        assertTrue(policy.shouldCompact(0, 0, 6 * HOUR));
+        assertFalse(policy.shouldCompact(HOUR, 99, 3 * HOUR));
+        assertTrue(policy.shouldCompact(HOUR, 100, 3 * HOUR));
+        // Not twice within the minimum gap, however much was removed
+        assertFalse(policy.shouldCompact(HOUR, 10_000, HOUR + RetentionPolicy.MIN_COMPACT_GAP_MS - 1));
+        assertTrue(policy.shouldCompact(HOUR, 0, 7 * HOUR));
+    }
+}
@@ -0,0 +1,127 @@
+package com.beacon;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class StartupPipelineTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void stagesRunAfterTheirDependencies() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        StartupPipeline pipeline = new StartupPipeline(executor)
+                .add("init", () -> order.add("init"))
+                .add("open", () -> order.add("open"), "init")
+                .add("identity", () -> order.add("identity"), "init")
+                .add("listener", () -> order.add("listener"), "open", "identity");
+
+        pipeline.start(null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(4, order.size());
+        assertEquals("init", order.get(0));
+        assertEquals("listener", order.get(3));
+        assertEquals(List.of("init", "open", "identity", "listener"),
+                List.copyOf(pipeline.getStageDurationsMs().keySet()));
+    }
+
+    @Test
+    public void independentStagesOverlap() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        StartupPipeline.Stage waitForOther = () -> {
+            bothRunning.countDown();
+            assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+        };
+        StartupPipeline pipeline = new StartupPipeline(executor)
+                .add("database", waitForOther)
+                .add("tls", waitForOther);
+
+        pipeline.start(null).get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, pipeline.getStageDurationsMs().size());
+    }
+
+    @Test
+    public void failedStageSkipsDependentsOnly() throws Exception {
+        List<String> failed = new CopyOnWriteArrayList<>();
+        AtomicReference<Map<String, Long>> finished = new AtomicReference<>();
+        StartupPipeline pipeline = new StartupPipeline(executor)
+                .add("open", () -> { throw new IllegalStateException("disk full"); })
+                .add("indexes", () -> {}, "open")
+                .add("tls", () -> {});
+
+        pipeline.start(new StartupPipeline.Listener() {
+            @Override public void onStageFinished(String name, long durationMs, Throwable error) {
+                if (error != null) failed.add(name);
+            }
+
+            @Override public void onFinished(Map<String, Long> durationsMs) {
+                finished.set(durationsMs);
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("open"), failed);
+        assertEquals(List.of("open", "tls"), List.copyOf(finished.get().keySet()));
+    }
+
+    @Test
+    public void cancelSkipsStagesNotYetStarted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StartupPipeline pipeline = new StartupPipeline(executor)
+                .add("open", () -> assertTrue(release.await(5, TimeUnit.SECONDS)))
+                .add("replication", () -> fail("should not start"), "open");
+
+        CompletableFuture<Void> done = pipeline.start(null);
+        pipeline.cancel();
+        release.countDown();
+        done.get(5, TimeUnit.SECONDS);
+
+        assertFalse(pipeline.getStageDurationsMs().containsKey("replication"));
+    }
+
+    @Test
+    public void runningStageSeesTheCancellation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicBoolean seen = new AtomicBoolean();
+        StartupPipeline[] pipeline = new StartupPipeline[1];
+        pipeline[0] = new StartupPipeline(executor)
+                .add("listener", () -> {
+                    started.countDown();
+                    assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+                    seen.set(pipeline[0].isCancelled());
+                });
+
+        CompletableFuture<Void> done = pipeline[0].start(null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pipeline[0].cancel();
+        cancelled.countDown();
+        done.get(5, TimeUnit.SECONDS);
+
+        assertTrue(seen.get());
+        assertTrue(pipeline[0].getStageDurationsMs().containsKey("listener"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDependencyIsRejected() {
+        new StartupPipeline(executor).add("listener", () -> {}, "database");
+    }
+}
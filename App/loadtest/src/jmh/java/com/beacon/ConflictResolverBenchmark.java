@@ -0,0 +1,118 @@
+package com.beacon;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableDocument;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conflicts resolved per second by the field merge and by the whole-document timestamp
+ * resolver it replaced, on the same pair of request revisions. {@code ./gradlew :loadtest:jmh}
+ * runs it with the GC profiler, whose gc.alloc.rate.norm is the bytes allocated per conflict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConflictResolverBenchmark {
+    private final FieldMergeConflictResolver resolver = new SyncGatewayConflictResolver(null);
+    private Path directory;
+    private Database database;
+    private Document local;
+    private Document remote;
+
+    @Setup(Level.Trial)
+    public void setUp() throws CouchbaseLiteException, IOException {
+        CouchbaseLite.init();
+        directory = Files.createTempDirectory("resolver-benchmark");
+        DatabaseConfiguration config = new DatabaseConfiguration();
+        config.setDirectory(directory.toString());
+        database = new Database("resolver-benchmark", config);
+        Collection collection = database.getDefaultCollection();
+
+        // Same request edited on two devices: the remote side responded, the local side added a note
+        MutableDocument localRevision = request("local");
+        localRevision.setString("note", "second floor");
+        MutableDocument remoteRevision = request("remote");
+        remoteRevision.setString(DocumentKeys.STATUS, "responded");
+        remoteRevision.setString(DocumentKeys.RESPONDED_BY, "42");
+        remoteRevision.setLong(DocumentKeys.RESPONDED_AT, 1_700_000_060_000L);
+        remoteRevision.setString("responder_eta", "4 min");
+        collection.save(localRevision);
+        collection.save(remoteRevision);
+        local = collection.getDocument("local");
+        remote = collection.getDocument("remote");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws CouchbaseLiteException, IOException {
+        database.delete();
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Document legacyTimestamp() {
+        return legacyResolve("local", local, remote);
+    }
+
+    @Benchmark
+    public Document fieldMerge() {
+        return resolver.merge(local, remote);
+    }
+
+    private static MutableDocument request(String id) {
+        MutableDocument doc = new MutableDocument(id);
+        doc.setString(DocumentKeys.TYPE, "emergency_request");
+        doc.setString(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+        doc.setString(DocumentKeys.STATUS, "open");
+        doc.setString(DocumentKeys.REQUESTED_BY, "7");
+        doc.setLong(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L);
+        doc.setDouble(DocumentKeys.LATITUDE, 59.3293);
+        doc.setDouble(DocumentKeys.LONGITUDE, 18.0686);
+        return doc;
+    }
+
+    /** The resolver both replicators used before the field merge. */
+    private static Document legacyResolve(String docId, Document localDoc, Document remoteDoc) {
+        Map<String, Object> localMap = (localDoc != null) ? localDoc.toMap() : Collections.emptyMap();
+        Map<String, Object> remoteMap = (remoteDoc != null) ? remoteDoc.toMap() : Collections.emptyMap();
+        if (legacyTimestamp(localMap) <= legacyTimestamp(remoteMap)) {
+            return new MutableDocument(docId, localMap);
+        } else {
+            return new MutableDocument(docId, remoteMap);
+        }
+    }
+
+    private static long legacyTimestamp(Map<String, Object> map) {
+        Object respondedAt = map.get(DocumentKeys.RESPONDED_AT);
+        if (respondedAt instanceof Number) return ((Number) respondedAt).longValue();
+        Object requestedAt = map.get(DocumentKeys.REQUESTED_AT);
+        if (requestedAt instanceof Number) return ((Number) requestedAt).longValue();
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,101 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What one {@link LoadTest} run measured, written out as a single JSON object so runs can be
+ * compared by script.
+ */
+public final class LoadReport {
+    String topology;
+    int devices;
+    int requests;
+    int accepted;
+    int claimsWritten;
+    int claimsTaken;
+    int offersWritten;
+    long documentsWritten;
+    long documentsReplicated;
+    long resolverCalls;
+    long replicationErrors;
+    /** Requests on which every database names the same holder. */
+    int agreed;
+    long durationMs;
+    /** From the last local write until every database holds the same documents; -1 on timeout. */
+    long convergenceMs = -1;
+    final List<Long> acceptLatenciesMs = new ArrayList<>();
+    /** One per device, for the per-device breakdown. */
+    final List<ReplicatorStats> replicators = new ArrayList<>();
+    long endedAtMs;
+
+    /** Resolver calls per document written. */
+    public double conflictRate() {
+        return documentsWritten == 0 ? 0 : (double) resolverCalls / documentsWritten;
+    }
+
+    /** Request-to-acceptance latency as the requester sees it, nearest rank; -1 when none. */
+    public long latencyPercentileMs(int percentile) {
+        if (acceptLatenciesMs.isEmpty()) return -1;
+        List<Long> sorted = new ArrayList<>(acceptLatenciesMs);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    public long convergenceMs() {
+        return convergenceMs;
+    }
+
+    public int accepted() {
+        return accepted;
+    }
+
+    public int agreed() {
+        return agreed;
+    }
+
+    public long resolverCalls() {
+        return resolverCalls;
+    }
+
+    @NonNull
+    public String toJson() {
+        double seconds = Math.max(1, durationMs) / 1000.0;
+        StringBuilder json = new StringBuilder();
+        json.append("{\"topology\":\"").append(topology).append('"')
+                .append(",\"devices\":").append(devices)
+                .append(",\"requests\":").append(requests)
+                .append(",\"accepted\":").append(accepted)
+                .append(",\"agreed\":").append(agreed)
+                .append(",\"claims_written\":").append(claimsWritten)
+                .append(",\"claims_taken\":").append(claimsTaken)
+                .append(",\"offers_written\":").append(offersWritten)
+                .append(",\"documents_written\":").append(documentsWritten)
+                .append(",\"documents_replicated\":").append(documentsReplicated)
+                .append(",\"resolver_calls\":").append(resolverCalls)
+                .append(",\"conflict_rate\":").append(round(conflictRate()))
+                .append(",\"replication_errors\":").append(replicationErrors)
+                .append(",\"duration_ms\":").append(durationMs)
+                .append(",\"writes_per_sec\":").append(round(documentsWritten / seconds))
+                .append(",\"replicated_per_sec\":").append(round(documentsReplicated / seconds))
+                .append(",\"convergence_ms\":").append(convergenceMs)
+                .append(",\"accept_latency_ms\":{\"count\":").append(acceptLatenciesMs.size())
+                .append(",\"p50\":").append(latencyPercentileMs(50))
+                .append(",\"p99\":").append(latencyPercentileMs(99))
+                .append(",\"max\":").append(latencyPercentileMs(100)).append('}')
+                .append(",\"replicators\":[");
+        for (int i = 0; i < replicators.size(); i++) {
+            if (i > 0) json.append(',');
+            replicators.get(i).appendJson(json, endedAtMs);
+        }
+        return json.append("]}").toString();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,201 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Array;
+import com.couchbase.lite.MutableDictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A load-test run read from a JSONL file, one JSON object per line keyed by "op":
+ * <ul>
+ *     <li>{@code devices}: requesters, responders, topology ("hub" through a stand-in for
+ *     Sync Gateway, or "mesh" peer to peer)</li>
+ *     <li>{@code responders}: accept_delay_ms, accept_jitter_ms, accept_probability and the
+ *     area they are spread over (latitude, longitude, radius_m)</li>
+ *     <li>{@code dispatch}: wave_sizes and wave_timeout_ms for {@link DispatchEngine}</li>
+ *     <li>{@code run}: seed and converge_timeout_ms</li>
+ *     <li>{@code request}: one request at at_ms</li>
+ *     <li>{@code burst}: count requests from at_ms at rate_per_s, spread over the area</li>
+ * </ul>
+ * Missing fields keep their defaults. Requests are spread over requesters in turn.
+ */
+public final class LoadScenario {
+    public enum Topology { HUB, MESH }
+
+    /** One request a requester device saves. */
+    public static final class RequestEvent {
+        public final long atMs;
+        public final int requester;
+        public final String emergencyType;
+        public final int severity;
+        public final double latitude;
+        public final double longitude;
+
+        RequestEvent(long atMs, int requester, String emergencyType, int severity, double latitude, double longitude) {
+            this.atMs = atMs;
+            this.requester = requester;
+            this.emergencyType = emergencyType;
+            this.severity = severity;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    int requesters = 2;
+    int responders = 6;
+    Topology topology = Topology.HUB;
+    long acceptDelayMs = 500;
+    long acceptJitterMs = 1_500;
+    double acceptProbability = 1.0;
+    double latitude = 59.3293;
+    double longitude = 18.0686;
+    double radiusM = 3_000;
+    int[] waveSizes = DispatchEngine.DEFAULT_WAVE_SIZES;
+    long waveTimeoutMs = 5_000;
+    long seed = 1;
+    long convergeTimeoutMs = 120_000;
+    final List<RequestEvent> requests = new ArrayList<>();
+    /** Every emergency type a request uses; responders are given these in turn. */
+    final List<String> emergencyTypes = new ArrayList<>();
+
+    private LoadScenario() {}
+
+    @NonNull
+    public static LoadScenario read(@NonNull Path path) throws IOException {
+        return parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the line of an unknown op or bad value
+     */
+    @NonNull
+    public static LoadScenario parse(@NonNull List<String> lines) {
+        LoadScenario scenario = new LoadScenario();
+        List<MutableDictionary> events = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty()) continue;
+            MutableDictionary op;
+            try {
+                op = new MutableDictionary(line);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " is not a JSON object", e);
+            }
+            String name = op.getString("op");
+            if ("request".equals(name) || "burst".equals(name)) {
+                // Read after the settings, which may come later in the file
+                events.add(op);
+            } else if (!scenario.apply(name, op)) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": unknown op " + name);
+            }
+        }
+        if (scenario.requesters < 1 || scenario.responders < 1) {
+            throw new IllegalArgumentException("At least one requester and one responder are needed");
+        }
+        Random random = new Random(scenario.seed);
+        for (MutableDictionary event : events) scenario.add(event, random);
+        scenario.requests.sort(Comparator.comparingLong(e -> e.atMs));
+        if (scenario.emergencyTypes.isEmpty()) scenario.emergencyTypes.add("Ambulance");
+        return scenario;
+    }
+
+    public int requesters() {
+        return requesters;
+    }
+
+    public int responders() {
+        return responders;
+    }
+
+    @NonNull
+    public Topology topology() {
+        return topology;
+    }
+
+    @NonNull
+    public List<RequestEvent> requests() {
+        return Collections.unmodifiableList(requests);
+    }
+
+    private boolean apply(String name, MutableDictionary op) {
+        switch (name == null ? "" : name) {
+            case "devices":
+                requesters = intOr(op, "requesters", requesters);
+                responders = intOr(op, "responders", responders);
+                if (op.contains("topology")) topology = Topology.valueOf(op.getString("topology").toUpperCase());
+                return true;
+            case "responders":
+                acceptDelayMs = longOr(op, "accept_delay_ms", acceptDelayMs);
+                acceptJitterMs = longOr(op, "accept_jitter_ms", acceptJitterMs);
+                acceptProbability = doubleOr(op, "accept_probability", acceptProbability);
+                latitude = doubleOr(op, "latitude", latitude);
+                longitude = doubleOr(op, "longitude", longitude);
+                radiusM = doubleOr(op, "radius_m", radiusM);
+                return true;
+            case "dispatch":
+                Array sizes = op.getArray("wave_sizes");
+                if (sizes != null) {
+                    waveSizes = new int[sizes.count()];
+                    for (int i = 0; i < waveSizes.length; i++) waveSizes[i] = sizes.getInt(i);
+                }
+                waveTimeoutMs = longOr(op, "wave_timeout_ms", waveTimeoutMs);
+                return true;
+            case "run":
+                seed = longOr(op, "seed", seed);
+                convergeTimeoutMs = longOr(op, "converge_timeout_ms", convergeTimeoutMs);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void add(MutableDictionary event, Random random) {
+        long atMs = longOr(event, "at_ms", 0);
+        String type = event.contains("emergency_type") ? event.getString("emergency_type") : "Ambulance";
+        int severity = intOr(event, "severity", 1);
+        if (!emergencyTypes.contains(type)) emergencyTypes.add(type);
+        if ("request".equals(event.getString("op"))) {
+            requests.add(new RequestEvent(atMs, intOr(event, "requester", requests.size()) % requesters, type,
+                    severity, doubleOr(event, "latitude", latitude), doubleOr(event, "longitude", longitude)));
+            return;
+        }
+        int count = intOr(event, "count", 100);
+        double ratePerSecond = doubleOr(event, "rate_per_s", 10);
+        for (int i = 0; i < count; i++) {
+            double[] point = pointNear(random);
+            requests.add(new RequestEvent(atMs + (long) (i * 1_000 / ratePerSecond), requests.size() % requesters,
+                    type, severity, point[0], point[1]));
+        }
+    }
+
+    /** A uniformly random point within the responder area. */
+    double[] pointNear(Random random) {
+        double distanceM = radiusM * Math.sqrt(random.nextDouble());
+        double bearing = random.nextDouble() * 2 * Math.PI;
+        double dLat = distanceM * Math.cos(bearing) / 111_320.0;
+        double dLon = distanceM * Math.sin(bearing) / (111_320.0 * Math.cos(Math.toRadians(latitude)));
+        return new double[]{latitude + dLat, longitude + dLon};
+    }
+
+    private static int intOr(MutableDictionary op, String key, int fallback) {
+        return op.contains(key) ? op.getInt(key) : fallback;
+    }
+
+    private static long longOr(MutableDictionary op, String key, long fallback) {
+        return op.contains(key) ? op.getLong(key) : fallback;
+    }
+
+    private static double doubleOr(MutableDictionary op, String key, double fallback) {
+        return op.contains(key) ? op.getDouble(key) : fallback;
+    }
+}
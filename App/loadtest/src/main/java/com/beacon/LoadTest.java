@@ -0,0 +1,352 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Document;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link LoadScenario} against simulated devices in one process and reports
+ * convergence time, conflict rate, throughput and request-to-acceptance latency.
+ * Requesters save requests and dispatch them in waves with {@link DispatchEngine};
+ * responders claim what they are offered through {@link RequestClaims}, after a delay. All
+ * writes go through the same classes the app uses, and replication runs over real
+ * listeners on localhost.
+ * <p>
+ * Usage: {@code LoadTest <scenario.jsonl> [--out report.json]}
+ */
+public final class LoadTest {
+    private static final long POLL_MS = 50;
+    private static final long DISPATCH_TICK_MS = 250;
+    private static final long CONNECT_TIMEOUT_MS = 30_000;
+    private static final String SCHEDULED = "SCHEDULED";
+    private static final String DECLINED = "DECLINED";
+
+    private final LoadScenario scenario;
+    private final File directory;
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+    private final List<SimulatedDevice> requesters = new ArrayList<>();
+    private final List<SimulatedDevice> responders = new ArrayList<>();
+    private final ExecutorService changes = Executors.newFixedThreadPool(4);
+    private final ScheduledExecutorService acceptClock = Executors.newScheduledThreadPool(2);
+    /** One thread per requester: DispatchEngine is driven from a single thread. */
+    private final List<ScheduledExecutorService> dispatchers = new ArrayList<>();
+    private final List<DispatchEngine> engines = new ArrayList<>();
+
+    private final Map<String, Long> savedAtMs = new ConcurrentHashMap<>();
+    private final Map<String, Long> acceptedAtMs = new ConcurrentHashMap<>();
+    /** Per responder and request: the last claim result, or whether one is scheduled or declined. */
+    private final Map<String, String> attempts = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingAccepts = new AtomicInteger();
+    private final AtomicInteger saved = new AtomicInteger();
+    private final AtomicInteger claimsWritten = new AtomicInteger();
+    private final AtomicInteger claimsTaken = new AtomicInteger();
+    private final AtomicInteger offersWritten = new AtomicInteger();
+    private final AtomicLong lastWriteMs = new AtomicLong();
+
+    public LoadTest(@NonNull LoadScenario scenario, @NonNull File directory) {
+        this.scenario = scenario;
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: LoadTest <scenario.jsonl> [--out report.json]");
+            System.exit(2);
+        }
+        CouchbaseLite.init();
+        LoadScenario scenario = LoadScenario.read(Paths.get(args[0]));
+        Path directory = Files.createTempDirectory("beacon-loadtest");
+        LoadReport report = new LoadTest(scenario, directory.toFile()).run();
+        String json = report.toJson();
+        System.out.println(json);
+        if (args.length >= 3 && "--out".equals(args[1])) {
+            Files.write(Paths.get(args[2]), json.getBytes(StandardCharsets.UTF_8));
+        }
+        System.exit(0);
+    }
+
+    @NonNull
+    public LoadReport run() throws Exception {
+        try {
+            start();
+            return measure();
+        } finally {
+            stop();
+        }
+    }
+
+    private void start() throws Exception {
+        Random random = new Random(scenario.seed);
+        SimulatedDevice hub = null;
+        if (scenario.topology == LoadScenario.Topology.HUB) {
+            hub = add(new SimulatedDevice("hub", SimulatedDevice.Role.HUB, directory, null, 0, 0));
+        }
+        ResponderSpatialIndex index = new ResponderSpatialIndex();
+        for (int i = 0; i < scenario.responders; i++) {
+            String type = scenario.emergencyTypes.get(i % scenario.emergencyTypes.size());
+            double[] point = scenario.pointNear(random);
+            SimulatedDevice responder = add(new SimulatedDevice("responder-" + i, SimulatedDevice.Role.RESPONDER,
+                    directory, type, point[0], point[1]));
+            responders.add(responder);
+            index.upsert(responder.id, type, true, point[0], point[1]);
+        }
+        for (int i = 0; i < scenario.requesters; i++) {
+            requesters.add(add(new SimulatedDevice("requester-" + i, SimulatedDevice.Role.REQUESTER,
+                    directory, null, 0, 0)));
+            dispatchers.add(Executors.newSingleThreadScheduledExecutor());
+            engines.add(new DispatchEngine(index, scenario.waveSizes, scenario.waveTimeoutMs));
+        }
+
+        for (SimulatedDevice device : devices) {
+            if (device == hub) continue;
+            if (hub != null) {
+                device.connect(hub);
+                continue;
+            }
+            // One replicator per pair, started by the earlier device
+            for (SimulatedDevice peer : devices.subList(devices.indexOf(device) + 1, devices.size())) {
+                device.connect(peer);
+            }
+        }
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (!allIdle() && System.currentTimeMillis() < deadline) Thread.sleep(POLL_MS);
+
+        for (SimulatedDevice responder : responders) {
+            responder.collection.addChangeListener(changes, change -> {
+                for (String docId : change.getDocumentIDs()) onResponderChange(responder, docId);
+            });
+        }
+        for (int i = 0; i < requesters.size(); i++) {
+            SimulatedDevice requester = requesters.get(i);
+            ScheduledExecutorService dispatcher = dispatchers.get(i);
+            DispatchEngine engine = engines.get(i);
+            requester.collection.addChangeListener(changes, change -> {
+                for (String docId : change.getDocumentIDs()) onRequesterChange(requester, dispatcher, engine, docId);
+            });
+            dispatcher.scheduleWithFixedDelay(() -> dispatchDue(requester, engine),
+                    DISPATCH_TICK_MS, DISPATCH_TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private SimulatedDevice add(SimulatedDevice device) {
+        devices.add(device);
+        return device;
+    }
+
+    private LoadReport measure() throws InterruptedException, CouchbaseLiteException {
+        long startMs = System.currentTimeMillis();
+        List<LoadScenario.RequestEvent> events = scenario.requests();
+        for (int i = 0; i < events.size(); i++) {
+            LoadScenario.RequestEvent event = events.get(i);
+            int sequence = i;
+            dispatchers.get(event.requester).schedule(() -> saveRequest(event, sequence),
+                    event.atMs, TimeUnit.MILLISECONDS);
+        }
+
+        LoadReport report = new LoadReport();
+        long lastEventMs = events.isEmpty() ? 0 : events.get(events.size() - 1).atMs;
+        long deadline = startMs + lastEventMs + scenario.convergeTimeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(POLL_MS);
+            boolean settled = saved.get() == events.size() && pendingAccepts.get() == 0
+                    && acceptedAtMs.size() == events.size();
+            if (settled && converged()) {
+                report.convergenceMs = System.currentTimeMillis() - lastWriteMs.get();
+                break;
+            }
+        }
+        report.endedAtMs = System.currentTimeMillis();
+        report.durationMs = report.endedAtMs - startMs;
+
+        report.topology = scenario.topology.name().toLowerCase();
+        report.devices = devices.size();
+        report.requests = events.size();
+        report.accepted = acceptedAtMs.size();
+        report.claimsWritten = claimsWritten.get();
+        report.claimsTaken = claimsTaken.get();
+        report.offersWritten = offersWritten.get();
+        report.documentsWritten = saved.get() + claimsWritten.get() + offersWritten.get();
+        for (Map.Entry<String, Long> accepted : acceptedAtMs.entrySet()) {
+            Long savedAt = savedAtMs.get(accepted.getKey());
+            if (savedAt != null) report.acceptLatenciesMs.add(accepted.getValue() - savedAt);
+        }
+        for (SimulatedDevice device : devices) {
+            report.replicators.add(device.stats);
+            report.documentsReplicated += device.stats.docsPulled();
+            report.resolverCalls += device.stats.conflictsResolved();
+            report.replicationErrors += device.stats.errors();
+        }
+        report.agreed = agreed();
+        return report;
+    }
+
+    private void saveRequest(LoadScenario.RequestEvent event, int sequence) {
+        SimulatedDevice requester = requesters.get(event.requester);
+        try {
+            long now = System.currentTimeMillis();
+            String requestId = requester.saveRequest(event, sequence, now);
+            savedAtMs.put(requestId, now);
+            saved.incrementAndGet();
+            lastWriteMs.set(now);
+            DispatchEngine engine = engines.get(event.requester);
+            publish(requester, engine, engine.start(requestId, event.emergencyType,
+                    event.latitude, event.longitude, now));
+        } catch (CouchbaseLiteException e) {
+            System.err.println("Could not save a request on " + requester.id + ": " + e);
+        }
+    }
+
+    /** Runs on the requester's dispatcher thread. */
+    private void dispatchDue(SimulatedDevice requester, DispatchEngine engine) {
+        for (DispatchEngine.Offer offer : engine.due(System.currentTimeMillis())) {
+            publish(requester, engine, offer);
+        }
+    }
+
+    private void publish(SimulatedDevice requester, DispatchEngine engine, DispatchEngine.Offer offer) {
+        try {
+            if (!RequestClaims.publishOffer(requester.collection, offer)) {
+                engine.finish(offer.requestId);
+                return;
+            }
+            offersWritten.incrementAndGet();
+            lastWriteMs.set(System.currentTimeMillis());
+        } catch (CouchbaseLiteException e) {
+            System.err.println("Could not publish an offer on " + requester.id + ": " + e);
+            engine.retry(offer, System.currentTimeMillis());
+        }
+    }
+
+    private void onRequesterChange(SimulatedDevice requester, ScheduledExecutorService dispatcher,
+                                   DispatchEngine engine, String docId) {
+        try {
+            Document doc = requester.collection.getDocument(docId);
+            if (doc == null || !RequestLifecycle.CLAIM_TYPE.equals(doc.getString(DocumentKeys.TYPE))) return;
+            String requestId = doc.getString(DocumentKeys.REQUEST_ID);
+            if (!requester.id.equals(doc.getString(DocumentKeys.REQUESTED_BY))) return;
+            if (acceptedAtMs.putIfAbsent(requestId, System.currentTimeMillis()) == null) {
+                dispatcher.execute(() -> engine.finish(requestId));
+            }
+        } catch (CouchbaseLiteException e) {
+            System.err.println("Could not read " + docId + " on " + requester.id + ": " + e);
+        }
+    }
+
+    /** A request or its offer changed: try to claim it once per offer that names this responder. */
+    private void onResponderChange(SimulatedDevice responder, String docId) {
+        try {
+            Document doc = responder.collection.getDocument(docId);
+            if (doc == null) return;
+            String type = doc.getString(DocumentKeys.TYPE);
+            String requestId;
+            if ("emergency_request".equals(type)) {
+                requestId = docId;
+            } else if (RequestLifecycle.OFFER_TYPE.equals(type)) {
+                requestId = doc.getString(DocumentKeys.REQUEST_ID);
+            } else {
+                return;
+            }
+            Document request = responder.collection.getDocument(requestId);
+            if (request == null || !responder.responderType.equals(request.getString(DocumentKeys.EMERGENCY_TYPE))) return;
+
+            String key = responder.id + "|" + requestId;
+            String previous = attempts.get(key);
+            // Declined, scheduled, claimed or taken are final; only a refused offer is worth another look
+            if (previous != null && !RequestClaims.Result.NOT_OFFERED.name().equals(previous)) return;
+            Random random = new Random(scenario.seed * 31 + key.hashCode());
+            if (random.nextDouble() >= scenario.acceptProbability) {
+                attempts.put(key, DECLINED);
+                return;
+            }
+            boolean scheduled = previous == null
+                    ? attempts.putIfAbsent(key, SCHEDULED) == null
+                    : attempts.replace(key, previous, SCHEDULED);
+            if (!scheduled) return;
+            pendingAccepts.incrementAndGet();
+            long delay = scenario.acceptDelayMs + (long) (random.nextDouble() * scenario.acceptJitterMs);
+            acceptClock.schedule(() -> accept(responder, requestId, key), delay, TimeUnit.MILLISECONDS);
+        } catch (CouchbaseLiteException e) {
+            System.err.println("Could not read " + docId + " on " + responder.id + ": " + e);
+        }
+    }
+
+    private void accept(SimulatedDevice responder, String requestId, String key) {
+        try {
+            long now = System.currentTimeMillis();
+            boolean claimedBefore = responder.collection.getDocument(
+                    RequestLifecycle.claimId(requestId, responder.id)) != null;
+            RequestClaims.Result result = RequestClaims.claim(responder.collection, requestId, responder.id, now);
+            if (result == RequestClaims.Result.CLAIMED && !claimedBefore) {
+                claimsWritten.incrementAndGet();
+                lastWriteMs.set(now);
+            } else if (result == RequestClaims.Result.TAKEN) {
+                claimsTaken.incrementAndGet();
+            }
+            attempts.put(key, result.name());
+        } catch (CouchbaseLiteException e) {
+            attempts.put(key, RequestClaims.Result.NOT_OFFERED.name());
+            System.err.println("Could not claim " + requestId + " on " + responder.id + ": " + e);
+        } finally {
+            pendingAccepts.decrementAndGet();
+        }
+    }
+
+    private boolean allIdle() {
+        for (SimulatedDevice device : devices) {
+            if (!device.idle()) return false;
+        }
+        return true;
+    }
+
+    /** Every replicator caught up and every database holding the same number of documents. */
+    private boolean converged() {
+        if (!allIdle()) return false;
+        long count = devices.get(0).collection.getCount();
+        for (SimulatedDevice device : devices) {
+            if (device.collection.getCount() != count) return false;
+        }
+        return true;
+    }
+
+    private int agreed() throws CouchbaseLiteException {
+        int agreed = 0;
+        for (String requestId : savedAtMs.keySet()) {
+            String holder = null;
+            boolean same = true;
+            for (SimulatedDevice device : devices) {
+                RequestLifecycle.Claim winner = RequestClaims.winner(device.collection, requestId);
+                String deviceHolder = winner == null ? null : winner.responderId;
+                if (holder == null) holder = deviceHolder;
+                same &= deviceHolder != null && deviceHolder.equals(holder);
+            }
+            if (same) agreed++;
+        }
+        return agreed;
+    }
+
+    private void stop() throws CouchbaseLiteException, InterruptedException {
+        for (ScheduledExecutorService dispatcher : dispatchers) dispatcher.shutdownNow();
+        acceptClock.shutdownNow();
+        changes.shutdownNow();
+        for (SimulatedDevice device : devices) device.close();
+    }
+}
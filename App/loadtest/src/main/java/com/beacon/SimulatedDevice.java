@@ -0,0 +1,140 @@
+package com.beacon;
+
+import androidx.annotation.NonNull;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CollectionConfiguration;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.ReplicatedDocument;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorActivityLevel;
+import com.couchbase.lite.ReplicatorConfiguration;
+import com.couchbase.lite.ReplicatorType;
+import com.couchbase.lite.URLEndpoint;
+import com.couchbase.lite.URLEndpointListener;
+import com.couchbase.lite.URLEndpointListenerConfiguration;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated device: its own database behind a plain-text URL endpoint listener on
+ * localhost, continuous replicators to its peers with the app's conflict resolvers, and the
+ * app's request and claim writes. The hub stands in for Sync Gateway and only relays.
+ */
+final class SimulatedDevice {
+    enum Role { HUB, REQUESTER, RESPONDER }
+
+    final String id;
+    final Role role;
+    final Database database;
+    final Collection collection;
+    final URLEndpointListener listener;
+    final URI uri;
+    final ReplicatorStats stats;
+    /** Responders only: the emergency type it answers and where it is. */
+    final String responderType;
+    final double latitude;
+    final double longitude;
+    private final List<Replicator> replicators = new ArrayList<>();
+    private final Map<Replicator, ReplicatorActivityLevel> levels = new ConcurrentHashMap<>();
+
+    SimulatedDevice(@NonNull String id, @NonNull Role role, @NonNull File directory, String responderType,
+                    double latitude, double longitude) throws Exception {
+        this.id = id;
+        this.role = role;
+        this.responderType = responderType;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        DatabaseConfiguration config = new DatabaseConfiguration();
+        config.setDirectory(directory.getPath());
+        database = new Database(id, config);
+        // Requests, claims and offers are all the harness writes; they live where the app keeps them
+        BeaconCollections collections = BeaconCollections.open(database);
+        collection = collections.requests;
+        // The app's own indexes, which claimsFor relies on
+        QueryIndexes.ensure(collections);
+
+        URLEndpointListenerConfiguration listenerConfig = new URLEndpointListenerConfiguration(Set.of(collection));
+        listenerConfig.setPort(0);
+        listenerConfig.setDisableTls(true);
+        // As the app's P2P listener does
+        listenerConfig.setEnableDeltaSync(true);
+        listener = new URLEndpointListener(listenerConfig);
+        listener.start();
+        uri = new URI("ws://localhost:" + listener.getPort() + "/" + id);
+        stats = new ReplicatorStats(id, System.currentTimeMillis());
+    }
+
+    /**
+     * Replicates continuously with a peer, resolving as the app does toward that kind of peer.
+     */
+    void connect(@NonNull SimulatedDevice peer) {
+        CollectionConfiguration collectionConfig = new CollectionConfiguration();
+        collectionConfig.setConflictResolver(peer.role == Role.HUB
+                ? new SyncGatewayConflictResolver(stats) : new P2PConflictResolver(stats));
+        ReplicatorConfiguration config = new ReplicatorConfiguration(new URLEndpoint(peer.uri));
+        config.setType(ReplicatorType.PUSH_AND_PULL);
+        config.setContinuous(true);
+        config.addCollection(collection, collectionConfig);
+        Replicator replicator = new Replicator(config);
+        replicator.addChangeListener(change -> levels.put(replicator, change.getStatus().getActivityLevel()));
+        replicator.addDocumentReplicationListener(replication -> {
+            int failed = 0;
+            for (ReplicatedDocument doc : replication.getDocuments()) {
+                if (doc.getError() != null) failed++;
+            }
+            stats.onDocumentsReplicated(replication.isPush(), replication.getDocuments().size(), failed);
+        });
+        replicators.add(replicator);
+        levels.put(replicator, ReplicatorActivityLevel.CONNECTING);
+        replicator.start();
+    }
+
+    /** True when every replicator this device started is caught up. */
+    boolean idle() {
+        for (ReplicatorActivityLevel level : levels.values()) {
+            if (level != ReplicatorActivityLevel.IDLE) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Saves a request with RequestOutboxWriter's document, plus the scenario's severity, and
+     * returns its ID.
+     */
+    @NonNull
+    String saveRequest(@NonNull LoadScenario.RequestEvent event, int sequence, long nowMs)
+            throws CouchbaseLiteException {
+        String requestId = "request::" + id + "::" + sequence;
+        MutableDocument doc = RequestOutboxWriter.toDocument(new RequestOutbox.Request(requestId, id,
+                event.emergencyType, nowMs, event.latitude, event.longitude, false));
+        doc.setInt(DocumentKeys.SEVERITY, event.severity);
+        collection.save(doc);
+        return requestId;
+    }
+
+    void close() throws CouchbaseLiteException, InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(replicators.size());
+        for (Replicator replicator : replicators) {
+            replicator.addChangeListener(change -> {
+                if (change.getStatus().getActivityLevel() == ReplicatorActivityLevel.STOPPED) stopped.countDown();
+            });
+            replicator.stop();
+        }
+        stopped.await(10, TimeUnit.SECONDS);
+        for (Replicator replicator : replicators) replicator.close();
+        listener.stop();
+        database.delete();
+    }
+}
@@ -0,0 +1,131 @@
+package com.beacon;
+
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Generates, imports and exports JSON Lines snapshots with the app's {@link SnapshotImporter}
+ * and {@link SnapshotExporter}, and prints what each run cost as JSON.
+ * <p>
+ * Usage:
+ * <pre>
+ * SnapshotTool generate &lt;snapshot.jsonl&gt; &lt;documents&gt;
+ * SnapshotTool import &lt;snapshot.jsonl&gt; [--workers n] [--batch n] [--db dir]
+ * SnapshotTool export &lt;snapshot.jsonl&gt; --db dir
+ * </pre>
+ * Without {@code --db}, import writes to a fresh database in a temporary directory.
+ */
+public final class SnapshotTool {
+    private static final String[] TYPES = {"Ambulance", "Doctor", "Fire Truck", "Rescue Team", "Generator", "Water Supply"};
+    private static final String[] STATUSES = {"open", "responded", "responded", "responded"};
+
+    private SnapshotTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) usage();
+        Path snapshot = Paths.get(args[1]);
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int batch = SnapshotImporter.DEFAULT_BATCH_SIZE;
+        Path directory = null;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if ("--workers".equals(args[i])) workers = Integer.parseInt(args[i + 1]);
+            else if ("--batch".equals(args[i])) batch = Integer.parseInt(args[i + 1]);
+            else if ("--db".equals(args[i])) directory = Paths.get(args[i + 1]);
+        }
+
+        switch (args[0]) {
+            case "generate":
+                if (args.length < 3) usage();
+                long start = System.nanoTime();
+                generate(snapshot, Long.parseLong(args[2]));
+                System.out.println("{\"op\":\"generate\",\"docs\":" + args[2] + ",\"bytes\":" + Files.size(snapshot)
+                        + ",\"elapsed_ms\":" + (System.nanoTime() - start) / 1_000_000 + "}");
+                break;
+            case "import": {
+                CouchbaseLite.init();
+                if (directory == null) directory = Files.createTempDirectory("beacon-snapshot");
+                Database database = open(directory);
+                SnapshotImporter.Report report = new SnapshotImporter(database, BeaconCollections.open(database),
+                        workers, batch).importFrom(snapshot.toFile());
+                database.close();
+                System.out.println("{\"op\":\"import\",\"workers\":" + workers + ",\"batch\":" + batch
+                        + ",\"docs\":" + report.imported + ",\"kept\":" + report.kept
+                        + ",\"skipped\":" + report.skipped + ",\"rejected\":" + report.rejected
+                        + ",\"elapsed_ms\":" + report.elapsedMs + ",\"docs_per_s\":" + report.docsPerSecond()
+                        + ",\"heap_before_mb\":" + report.heapBeforeBytes / (1024 * 1024)
+                        + ",\"peak_heap_mb\":" + report.peakHeapBytes / (1024 * 1024) + "}");
+                break;
+            }
+            case "export": {
+                if (directory == null) usage();
+                CouchbaseLite.init();
+                Database database = open(directory);
+                SnapshotExporter.Report report = SnapshotExporter.exportTo(BeaconCollections.open(database), snapshot.toFile());
+                database.close();
+                System.out.println("{\"op\":\"export\",\"docs\":" + report.docs + ",\"bytes\":" + report.bytes
+                        + ",\"elapsed_ms\":" + report.elapsedMs + "}");
+                break;
+            }
+            default:
+                usage();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Mostly requests, with some users and positions, roughly the mix of a busy incident,
+     * plus one line in a hundred of a type the app does not store.
+     */
+    static void generate(Path snapshot, long documents) throws IOException {
+        try (Writer out = Files.newBufferedWriter(snapshot, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < documents; i++) {
+                out.write(line(i));
+                out.write('\n');
+            }
+        }
+    }
+
+    static String line(long i) {
+        String type = TYPES[(int) (i % TYPES.length)];
+        switch ((int) (i % 100)) {
+            case 0:
+                return "{\"_id\":\"user_credentials::" + i + "\",\"type\":\"user_credentials\"}";
+            case 1: case 2: case 3: case 4: case 5:
+                return "{\"_id\":\"user::" + i + "\",\"type\":\"user\",\"userId\":\"" + i
+                        + "\",\"userType\":\"responder\",\"responderType\":\"" + type + "\",\"status\":\"available\"}";
+            case 6: case 7: case 8: case 9: case 10:
+                double latitude = 59.33 + (i % 1000) * 1e-4;
+                double longitude = 18.06 + (i % 997) * 1e-4;
+                return "{\"_id\":\"responder_location::" + i + "\",\"type\":\"" + LocationThrottle.DOC_TYPE
+                        + "\",\"responder_id\":\"user::" + i + "\",\"latitude\":" + latitude + ",\"longitude\":" + longitude
+                        + ",\"geohash\":\"" + GeoChannels.documentGeohash(latitude, longitude)
+                        + "\",\"updated_at\":" + (1_700_000_000_000L + i) + "}";
+            default:
+                return "{\"_id\":\"request::" + i + "\",\"type\":\"emergency_request\",\"emergency_type\":\"" + type
+                        + "\",\"status\":\"" + STATUSES[(int) (i % STATUSES.length)] + "\",\"requested_by\":\"user-"
+                        + (i % 500) + "\",\"requested_at\":" + (1_700_000_000_000L + i) + ",\"geohash\":\"u6sce0t4w\"}";
+        }
+    }
+
+    private static Database open(Path directory) throws Exception {
+        DatabaseConfiguration config = new DatabaseConfiguration();
+        config.setDirectory(directory.toFile().getAbsolutePath());
+        return new Database("beacon", config);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: SnapshotTool generate <snapshot.jsonl> <documents>\n"
+                + "       SnapshotTool import <snapshot.jsonl> [--workers n] [--batch n] [--db dir]\n"
+                + "       SnapshotTool export <snapshot.jsonl> --db dir");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,25 @@
+package android.util;
+
+/**
+ * The calls the shared app classes make to Android's log, printed to standard error so those
+ * classes compile and run unchanged on the JVM.
+ */
+public final class Log {
+    private Log() {}
+
+    public static int i(String tag, String msg) {
+        System.err.println("I/" + tag + ": " + msg);
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        System.err.println("W/" + tag + ": " + msg);
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        System.err.println("E/" + tag + ": " + msg);
+        if (tr != null) tr.printStackTrace();
+        return 0;
+    }
+}
@@ -0,0 +1,168 @@
+package com.beacon;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableDocument;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the field merge for requests and the newest-revision pick for responder and location
+ * documents on real documents. Throughput and allocation per conflict are measured by
+ * {@code ConflictResolverBenchmark}; see {@code ./gradlew :loadtest:jmh}.
+ */
+public class ConflictResolverTest {
+    private static final String DB_NAME = "resolver-test";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final FieldMergeConflictResolver resolver = new SyncGatewayConflictResolver(null);
+    private Database database;
+    private Collection collection;
+    private Document local;
+    private Document remote;
+
+    @BeforeClass
+    public static void initCouchbaseLite() {
+        CouchbaseLite.init();
+    }
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        DatabaseConfiguration config = new DatabaseConfiguration();
+        config.setDirectory(folder.getRoot().getAbsolutePath());
+        database = new Database(DB_NAME, config);
+        collection = database.getDefaultCollection();
+
+        // Same request edited on two devices: the remote side responded, the local side added a note
+        MutableDocument localRevision = request("local");
+        localRevision.setString("note", "second floor");
+        MutableDocument remoteRevision = request("remote");
+        remoteRevision.setString(DocumentKeys.STATUS, "responded");
+        remoteRevision.setString(DocumentKeys.RESPONDED_BY, "42");
+        remoteRevision.setLong(DocumentKeys.RESPONDED_AT, 1_700_000_060_000L);
+        remoteRevision.setString("responder_eta", "4 min");
+        collection.save(localRevision);
+        collection.save(remoteRevision);
+        local = collection.getDocument("local");
+        remote = collection.getDocument("remote");
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void mergeKeepsBothSidesEdits() {
+        Document merged = resolver.merge(local, remote);
+
+        assertEquals("responded", merged.getString(DocumentKeys.STATUS));
+        assertEquals("42", merged.getString(DocumentKeys.RESPONDED_BY));
+        assertEquals(1_700_000_060_000L, merged.getLong(DocumentKeys.RESPONDED_AT));
+        assertEquals("second floor", merged.getString("note"));
+        assertEquals("4 min", merged.getString("responder_eta"));
+        assertEquals(1_700_000_000_000L, merged.getLong(DocumentKeys.REQUESTED_AT));
+    }
+
+    @Test
+    public void laterResponseDoesNotReplaceTheFirst() {
+        MutableDocument later = remote.toMutable();
+        later.setString(DocumentKeys.RESPONDED_BY, "43");
+        later.setLong(DocumentKeys.RESPONDED_AT, 1_700_000_090_000L);
+
+        Document merged = resolver.merge(remote, later);
+
+        assertEquals("42", merged.getString(DocumentKeys.RESPONDED_BY));
+        assertEquals(1_700_000_060_000L, merged.getLong(DocumentKeys.RESPONDED_AT));
+    }
+
+    @Test
+    public void lateLocationSurvivesAnOlderClientsResponse() {
+        // The requester added its first fix while an older client responded without one
+        MutableDocument unlocated = remote.toMutable();
+        unlocated.remove(DocumentKeys.LATITUDE);
+        unlocated.remove(DocumentKeys.LONGITUDE);
+        MutableDocument located = local.toMutable();
+        located.setDouble(DocumentKeys.LATITUDE, 57.7089);
+        located.setDouble(DocumentKeys.LONGITUDE, 11.9746);
+        located.setString(DocumentKeys.GEOHASH, GeoChannels.documentGeohash(57.7089, 11.9746));
+
+        Document merged = resolver.merge(unlocated, located);
+
+        assertEquals(57.7089, merged.getDouble(DocumentKeys.LATITUDE), 0);
+        assertEquals(11.9746, merged.getDouble(DocumentKeys.LONGITUDE), 0);
+        assertEquals(GeoChannels.documentGeohash(57.7089, 11.9746), merged.getString(DocumentKeys.GEOHASH));
+        assertEquals("42", merged.getString(DocumentKeys.RESPONDED_BY));
+    }
+
+    @Test
+    public void deletedSideLosesToTheSurvivor() {
+        assertSame(remote, resolver.merge(null, remote));
+        assertSame(local, resolver.merge(local, null));
+    }
+
+    @Test
+    public void newerPositionReplacesTheOlderWhole() throws CouchbaseLiteException {
+        NewestRevisionConflictResolver newest = new NewestRevisionConflictResolver(null);
+        Document older = saved("location::old", 59.3293, 1_700_000_000_000L);
+        Document newer = saved("location::new", 59.3301, 1_700_000_030_000L);
+
+        assertSame(newer, newest.pick(older, newer));
+        assertSame(newer, newest.pick(newer, older));
+        // No request rule touches it: no status appears on a position
+        assertFalse(newest.pick(older, newer).contains(DocumentKeys.STATUS));
+    }
+
+    @Test
+    public void laterServerTimestampWinsForUserDocuments() throws CouchbaseLiteException {
+        NewestRevisionConflictResolver newest = new NewestRevisionConflictResolver(null);
+        Document available = savedUser("user::available", "available", "2025-06-28T22:50:55.905050+00:00");
+        Document occupied = savedUser("user::occupied", "occupied", "2025-06-29T08:00:00.000000+00:00");
+
+        assertEquals("occupied", newest.pick(available, occupied).getString(DocumentKeys.USER_STATUS));
+        assertEquals("occupied", newest.pick(occupied, available).getString(DocumentKeys.USER_STATUS));
+    }
+
+    private Document saved(String id, double latitude, long updatedAt) throws CouchbaseLiteException {
+        MutableDocument doc = new MutableDocument(id);
+        doc.setString(DocumentKeys.TYPE, "responder_location");
+        doc.setDouble(DocumentKeys.LATITUDE, latitude);
+        doc.setDouble(DocumentKeys.LONGITUDE, 18.0686);
+        doc.setLong(DocumentKeys.UPDATED_AT, updatedAt);
+        collection.save(doc);
+        return collection.getDocument(id);
+    }
+
+    private Document savedUser(String id, String status, String lastUpdated) throws CouchbaseLiteException {
+        MutableDocument doc = new MutableDocument(id);
+        doc.setString(DocumentKeys.TYPE, "user");
+        doc.setString(DocumentKeys.USER_STATUS, status);
+        doc.setString(DocumentKeys.USER_LAST_UPDATED, lastUpdated);
+        collection.save(doc);
+        return collection.getDocument(id);
+    }
+
+    private static MutableDocument request(String id) {
+        MutableDocument doc = new MutableDocument(id);
+        doc.setString(DocumentKeys.TYPE, "emergency_request");
+        doc.setString(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+        doc.setString(DocumentKeys.STATUS, "open");
+        doc.setString(DocumentKeys.REQUESTED_BY, "7");
+        doc.setLong(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L);
+        doc.setDouble(DocumentKeys.LATITUDE, 59.3293);
+        doc.setDouble(DocumentKeys.LONGITUDE, 18.0686);
+        return doc;
+    }
+}
@@ -0,0 +1,65 @@
+package com.beacon;
+
+import com.couchbase.lite.CouchbaseLite;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoadTestTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void initCouchbaseLite() {
+        CouchbaseLite.init();
+    }
+
+    @Test
+    public void scenarioExpandsBurstsInTimeOrder() {
+        LoadScenario scenario = LoadScenario.parse(List.of(
+                "{\"op\":\"burst\",\"at_ms\":1000,\"count\":4,\"rate_per_s\":2,\"emergency_type\":\"Doctor\"}",
+                "",
+                "{\"op\":\"devices\",\"requesters\":3,\"responders\":5,\"topology\":\"mesh\"}",
+                "{\"op\":\"request\",\"at_ms\":1200,\"requester\":1,\"emergency_type\":\"Ambulance\"}"));
+
+        assertEquals(LoadScenario.Topology.MESH, scenario.topology());
+        assertEquals(3, scenario.requesters());
+        List<LoadScenario.RequestEvent> requests = scenario.requests();
+        assertEquals(5, requests.size());
+        assertEquals(1000, requests.get(0).atMs);
+        assertEquals(1200, requests.get(2).atMs);
+        assertEquals("Ambulance", requests.get(2).emergencyType);
+        assertEquals(2500, requests.get(4).atMs);
+        // Bursts take requesters in turn
+        assertEquals(0, requests.get(0).requester);
+        assertEquals(1, requests.get(1).requester);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOpsAreRejected() {
+        LoadScenario.parse(List.of("{\"op\":\"partition\"}"));
+    }
+
+    /** A small contended run end to end: every request is accepted once and nothing conflicts. */
+    @Test
+    public void everyRequestIsAcceptedWithoutConflicts() throws Exception {
+        LoadScenario scenario = LoadScenario.parse(List.of(
+                "{\"op\":\"devices\",\"requesters\":2,\"responders\":4,\"topology\":\"hub\"}",
+                "{\"op\":\"responders\",\"accept_delay_ms\":0,\"accept_jitter_ms\":100}",
+                "{\"op\":\"dispatch\",\"wave_sizes\":[4],\"wave_timeout_ms\":1000}",
+                "{\"op\":\"run\",\"converge_timeout_ms\":60000}",
+                "{\"op\":\"burst\",\"count\":10,\"rate_per_s\":20}"));
+
+        LoadReport report = new LoadTest(scenario, folder.newFolder()).run();
+        assertEquals(report.toJson(), 10, report.accepted());
+        assertEquals(report.toJson(), 10, report.agreed());
+        assertEquals(report.toJson(), 0, report.resolverCalls());
+        assertTrue(report.toJson(), report.convergenceMs() >= 0);
+    }
+}
@@ -0,0 +1,193 @@
+package com.beacon;
+
+import android.util.Log;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CollectionConfiguration;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.ReplicatedDocument;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorConfiguration;
+import com.couchbase.lite.ReplicatorType;
+import com.couchbase.lite.URLEndpoint;
+import com.couchbase.lite.URLEndpointListener;
+import com.couchbase.lite.URLEndpointListenerConfiguration;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs several local databases, each behind its own plain-text URL endpoint listener on
+ * localhost, wired either as a full mesh or through {@link P2PReplicatorPool} with a
+ * {@link GossipTopology}. Documents are created on random nodes and the test measures how long
+ * until every node has all of them, and how many documents the replicators moved.
+ * The timing runs only with {@code -Pbenchmark=true}.
+ */
+public class P2PTopologyBenchmarkTest {
+    private static final String TAG = "P2PTopologyBenchmark";
+    private static final long REBALANCE_MS = 1_000;
+    private static final long CONVERGE_TIMEOUT_MS = 300_000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final List<Node> nodes = new ArrayList<>();
+
+    @BeforeClass
+    public static void initCouchbaseLite() {
+        CouchbaseLite.init();
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        stopAll();
+    }
+
+    @Test
+    public void gossipConvergesOnLocalListeners() throws Exception {
+        Run run = run(6, 2, 30);
+        assertTrue(run.toString(), run.convergedMs >= 0);
+        // Two per node, plus the odd restart while listeners come up
+        assertTrue(run.toString(), run.replicatorsStarted < 6 * 6);
+    }
+
+    @Test
+    public void benchmarkFullMeshVersusGossip() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+
+        for (int size : new int[]{10, 50, 100}) {
+            Run mesh = run(size, size - 1, 100);
+            Run gossip = run(size, GossipTopology.DEFAULT_FANOUT, 100);
+            Log.i(TAG, String.format("nodes=%d full-mesh %s | gossip k=%d %s",
+                    size, mesh, GossipTopology.DEFAULT_FANOUT, gossip));
+        }
+    }
+
+    /** A fanout of {@code size - 1} is the full mesh: every node replicates with every other. */
+    private Run run(int size, int fanout, int documents) throws Exception {
+        stopAll();
+        Random random = new Random(size);
+        AtomicLong transferred = new AtomicLong();
+        String directory = folder.getRoot().getAbsolutePath();
+        for (int i = 0; i < size; i++) {
+            nodes.add(new Node(directory, "p2p-topology-" + i, fanout, random.nextLong(), transferred));
+        }
+        for (Node node : nodes) {
+            for (Node peer : nodes) {
+                if (peer != node) node.pool.addPeer(peer.uri);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        for (int d = 0; d < documents; d++) {
+            MutableDocument doc = new MutableDocument("request::" + d);
+            doc.setString(DocumentKeys.TYPE, "emergency_request");
+            doc.setString(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+            doc.setString(DocumentKeys.STATUS, "open");
+            doc.setString(DocumentKeys.REQUESTED_BY, "user-" + d);
+            doc.setLong(DocumentKeys.REQUESTED_AT, start + d);
+            nodes.get(random.nextInt(size)).collection.save(doc);
+        }
+
+        Run run = new Run();
+        while (System.currentTimeMillis() - start < CONVERGE_TIMEOUT_MS) {
+            if (converged(documents)) {
+                run.convergedMs = System.currentTimeMillis() - start;
+                break;
+            }
+            Thread.sleep(100);
+        }
+        run.documentsMoved = transferred.get();
+        for (Node node : nodes) run.replicatorsStarted += node.replicatorsStarted.get();
+        return run;
+    }
+
+    private boolean converged(int documents) {
+        for (Node node : nodes) {
+            if (node.collection.getCount() < documents) return false;
+        }
+        return true;
+    }
+
+    private void stopAll() throws CouchbaseLiteException {
+        for (Node node : nodes) node.pool.shutdown();
+        // Let the pools stop their replicators before the listeners and databases go
+        try {
+            Thread.sleep(nodes.isEmpty() ? 0 : 1_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Node node : nodes) {
+            node.listener.stop();
+            node.database.delete();
+        }
+        nodes.clear();
+    }
+
+    private static final class Node {
+        final Database database;
+        final Collection collection;
+        final URLEndpointListener listener;
+        final URI uri;
+        final P2PReplicatorPool pool;
+        final AtomicLong replicatorsStarted = new AtomicLong();
+
+        Node(String directory, String name, int fanout, long seed, AtomicLong transferred) throws Exception {
+            DatabaseConfiguration databaseConfig = new DatabaseConfiguration();
+            databaseConfig.setDirectory(directory);
+            database = new Database(name, databaseConfig);
+            collection = database.getDefaultCollection();
+            URLEndpointListenerConfiguration config = new URLEndpointListenerConfiguration(Set.of(collection));
+            config.setPort(0);
+            config.setDisableTls(true);
+            listener = new URLEndpointListener(config);
+            listener.start();
+            uri = new URI("ws://localhost:" + listener.getPort() + "/" + name);
+
+            GossipTopology<URI> topology = new GossipTopology<>(fanout, GossipTopology.DEFAULT_ROTATION_MS,
+                    1_000, 10_000, new Random(seed));
+            pool = new P2PReplicatorPool(peerUri -> {
+                ReplicatorConfiguration replicatorConfig = new ReplicatorConfiguration(new URLEndpoint(peerUri));
+                replicatorConfig.setType(ReplicatorType.PUSH_AND_PULL);
+                replicatorConfig.setContinuous(true);
+                replicatorConfig.addCollection(collection, new CollectionConfiguration());
+                Replicator replicator = new Replicator(replicatorConfig);
+                replicator.addDocumentReplicationListener(replication -> {
+                    for (ReplicatedDocument doc : replication.getDocuments()) {
+                        if (doc.getError() == null) transferred.incrementAndGet();
+                    }
+                });
+                replicatorsStarted.incrementAndGet();
+                return replicator;
+            }, topology, REBALANCE_MS);
+        }
+    }
+
+    private static final class Run {
+        long convergedMs = -1;
+        long documentsMoved;
+        long replicatorsStarted;
+
+        @Override
+        public String toString() {
+            return String.format("converged=%dms documents-moved=%d replicators-started=%d",
+                    convergedMs, documentsMoved, replicatorsStarted);
+        }
+    }
+}
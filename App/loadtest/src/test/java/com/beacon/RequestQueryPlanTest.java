@@ -0,0 +1,138 @@
+package com.beacon;
+
+import android.util.Log;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.CouchbaseLiteException;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.Query;
+import com.couchbase.lite.ResultSet;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fails when a hot query stops using an index. The seeded latency benchmarks only run with
+ * {@code -Pbenchmark=true} because the 1M case takes minutes.
+ */
+public class RequestQueryPlanTest {
+    private static final String TAG = "QueryBenchmark";
+    private static final String DB_NAME = "query-plan-test";
+    private static final String[] TYPES = {"Ambulance", "Doctor", "Fire Truck", "Rescue Team", "Generator", "Water Supply"};
+    private static final String[] STATUSES = {"open", "responded", "responded", "responded"};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private Database database;
+    private Collection collection;
+
+    @BeforeClass
+    public static void initCouchbaseLite() {
+        CouchbaseLite.init();
+    }
+
+    @Before
+    public void setUp() throws CouchbaseLiteException {
+        DatabaseConfiguration config = new DatabaseConfiguration();
+        config.setDirectory(folder.getRoot().getAbsolutePath());
+        database = new Database(DB_NAME, config);
+        collection = database.getDefaultCollection();
+        QueryIndexes.ensure(collection);
+    }
+
+    @After
+    public void tearDown() throws CouchbaseLiteException {
+        if (database != null) database.delete();
+    }
+
+    @Test
+    public void hotQueriesUseAnIndex() throws CouchbaseLiteException {
+        for (Map.Entry<String, Query> query : RequestQueries.hotQueries(collection, "Ambulance", "99").entrySet()) {
+            String plan = query.getValue().explain();
+            assertTrue(query.getKey() + " does not use an index:\n" + plan, plan.contains("USING INDEX idx_"));
+            assertFalse(query.getKey() + " scans the collection:\n" + plan, plan.contains("SCAN "));
+        }
+    }
+
+    @Test
+    public void scopedHotQueriesUseAnIndexOutsideLocations() throws CouchbaseLiteException {
+        BeaconCollections collections = BeaconCollections.open(database);
+        QueryIndexes.ensure(collections);
+        for (Map.Entry<String, Query> query : RequestQueries.hotQueries(collections, "Ambulance", "99").entrySet()) {
+            // Every document in the locations collection is a position; reading it whole is the plan
+            if ("responderLocations".equals(query.getKey())) continue;
+            String plan = query.getValue().explain();
+            assertTrue(query.getKey() + " does not use an index:\n" + plan, plan.contains("USING INDEX idx_"));
+            assertFalse(query.getKey() + " scans the collection:\n" + plan, plan.contains("SCAN "));
+        }
+        assertEquals(QueryIndexes.definitions(BeaconCollections.REQUESTS).keySet(), collections.requests.getIndexes());
+        assertTrue(collections.locations.getIndexes().isEmpty());
+    }
+
+    @Test
+    public void ensureIsIdempotentAndDropsOldVersions() throws CouchbaseLiteException {
+        collection.createIndex("idx_request_type_status_emergency_v0",
+                new com.couchbase.lite.ValueIndexConfiguration("type"));
+        QueryIndexes.ensure(collection);
+        QueryIndexes.ensure(collection);
+
+        assertEquals(QueryIndexes.definitions().keySet(), collection.getIndexes());
+    }
+
+    @Test
+    public void benchmarkOpenRequestsQuery() throws CouchbaseLiteException {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+
+        int seeded = 0;
+        for (int size : new int[]{10_000, 100_000, 1_000_000}) {
+            seed(seeded, size);
+            seeded = size;
+
+            Query query = RequestQueries.openRequestsForType(collection, "Ambulance", "99");
+            long[] samples = new long[15];
+            int rows = 0;
+            for (int i = 0; i < samples.length; i++) {
+                long start = System.nanoTime();
+                try (ResultSet results = query.execute()) {
+                    rows = results.allResults().size();
+                }
+                samples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+            Log.i(TAG, String.format("openRequestsForType docs=%d rows=%d p50=%.2fms max=%.2fms",
+                    size, rows, samples[samples.length / 2] / 1e6, samples[samples.length - 1] / 1e6));
+        }
+    }
+
+    private void seed(int from, int to) throws CouchbaseLiteException {
+        int batch = 10_000;
+        for (int start = from; start < to; start += batch) {
+            int end = Math.min(to, start + batch);
+            int first = start;
+            database.inBatch(() -> {
+                for (int i = first; i < end; i++) {
+                    MutableDocument doc = new MutableDocument("request::" + i);
+                    doc.setString(DocumentKeys.TYPE, "emergency_request");
+                    doc.setString(DocumentKeys.EMERGENCY_TYPE, TYPES[i % TYPES.length]);
+                    doc.setString(DocumentKeys.STATUS, STATUSES[i % STATUSES.length]);
+                    doc.setString(DocumentKeys.REQUESTED_BY, "user-" + (i % 500));
+                    doc.setLong(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L + i);
+                    collection.save(doc);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.beacon;
+
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.MutableDocument;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnapshotToolTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final List<Database> databases = new ArrayList<>();
+
+    @BeforeClass
+    public static void initCouchbaseLite() {
+        CouchbaseLite.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Database database : databases) database.delete();
+    }
+
+    @Test
+    public void importSortsDocumentsIntoCollectionsAndExportReadsBack() throws Exception {
+        File snapshot = folder.newFile("snapshot.jsonl");
+        SnapshotTool.generate(snapshot.toPath(), 1_000);
+        Files.write(snapshot.toPath(), "not json\n{\"type\":\"user\"}\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        Database database = open("import");
+        BeaconCollections collections = BeaconCollections.open(database);
+        SnapshotImporter.Report report = new SnapshotImporter(database, collections, 3, 64).importFrom(snapshot);
+
+        assertEquals(990, report.imported);
+        assertEquals(10, report.skipped);
+        assertEquals(2, report.rejected);
+        assertEquals(50, collections.responders.getCount());
+        assertEquals(50, collections.locations.getCount());
+        assertEquals(890, collections.requests.getCount());
+        assertEquals("Doctor", collections.requests.getDocument("request::13").getString(DocumentKeys.EMERGENCY_TYPE));
+        assertEquals(1_700_000_000_013L, collections.requests.getDocument("request::13").getLong(DocumentKeys.REQUESTED_AT));
+        // Generated lines use the long names and are stored with the short keys
+        assertFalse(collections.requests.getDocument("request::13").contains("emergency_type"));
+        assertNull(collections.requests.getDocument("request::13").getString(SnapshotImporter.ID_KEY));
+
+        File exported = folder.newFile("exported.jsonl");
+        assertEquals(990, SnapshotExporter.exportTo(collections, exported).docs);
+        Database copy = open("copy");
+        BeaconCollections copied = BeaconCollections.open(copy);
+        SnapshotImporter.Report again = new SnapshotImporter(copy, copied, 2, 100).importFrom(exported);
+        assertEquals(990, again.imported);
+        assertEquals(0, again.rejected);
+        assertEquals(collections.requests.getDocument("request::13").toMap(),
+                copied.requests.getDocument("request::13").toMap());
+    }
+
+    @Test
+    public void documentsAlreadyStoredAreKept() throws Exception {
+        Database database = open("kept");
+        BeaconCollections collections = BeaconCollections.open(database);
+        MutableDocument local = new MutableDocument("request::11");
+        local.setString(DocumentKeys.TYPE, "emergency_request");
+        local.setString(DocumentKeys.STATUS, "responded");
+        collections.requests.save(local);
+
+        File snapshot = folder.newFile("snapshot.jsonl");
+        SnapshotTool.generate(snapshot.toPath(), 20);
+        SnapshotImporter.Report report = new SnapshotImporter(database, collections).importFrom(snapshot);
+
+        assertEquals(1, report.kept);
+        assertEquals(18, report.imported);
+        assertEquals("responded", collections.requests.getDocument("request::11").getString(DocumentKeys.STATUS));
+        assertNull(collections.requests.getDocument("request::11").getString(DocumentKeys.EMERGENCY_TYPE));
+    }
+
+    @Test
+    public void exportedLinesCarryTheEscapedId() {
+        assertEquals("{\"_id\":\"a\\\"b\",\"x\":1}", SnapshotExporter.line("a\"b", "{\"x\":1}"));
+        assertEquals("{\"_id\":\"empty\"}", SnapshotExporter.line("empty", "{}"));
+    }
+
+    private Database open(String name) throws Exception {
+        DatabaseConfiguration config = new DatabaseConfiguration();
+        config.setDirectory(folder.getRoot().getAbsolutePath());
+        Database database = new Database(name, config);
+        databases.add(database);
+        return database;
+    }
+}
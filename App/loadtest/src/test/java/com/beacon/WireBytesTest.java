@@ -0,0 +1,314 @@
+package com.beacon;
+
+import com.couchbase.lite.Collection;
+import com.couchbase.lite.CollectionConfiguration;
+import com.couchbase.lite.CouchbaseLite;
+import com.couchbase.lite.Database;
+import com.couchbase.lite.DatabaseConfiguration;
+import com.couchbase.lite.Document;
+import com.couchbase.lite.MutableDocument;
+import com.couchbase.lite.Replicator;
+import com.couchbase.lite.ReplicatorActivityLevel;
+import com.couchbase.lite.ReplicatorConfiguration;
+import com.couchbase.lite.ReplicatorType;
+import com.couchbase.lite.URLEndpoint;
+import com.couchbase.lite.URLEndpointListener;
+import com.couchbase.lite.URLEndpointListenerConfiguration;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bytes on the wire for whole request lifecycles between a device and a listener standing in
+ * for Sync Gateway, counted by a TCP proxy between them: with the long property names and no
+ * delta sync as before, and with short keys and delta sync as now.
+ */
+public class WireBytesTest {
+    private static final int LIFECYCLES = 20;
+    private static final long AWAIT_MS = 30_000;
+    private static final String RESPONDER = "user::7";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final List<Database> databases = new ArrayList<>();
+
+    @BeforeClass
+    public static void initCouchbaseLite() {
+        CouchbaseLite.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Database database : databases) database.delete();
+    }
+
+    @Test
+    public void shortKeysAndDeltaSyncCutTheBytesPerLifecycle() throws Exception {
+        long before = bytesPerLifecycle(false, false);
+        long shortKeys = bytesPerLifecycle(true, false);
+        long delta = bytesPerLifecycle(false, true);
+        long after = bytesPerLifecycle(true, true);
+        assertTrue("short keys " + shortKeys + " B, long keys " + before + " B", shortKeys < before);
+        assertTrue("delta sync " + delta + " B, long keys " + before + " B", delta < before);
+        assertTrue("both " + after + " B, short keys " + shortKeys + " B", after < shortKeys);
+        assertTrue("both " + after + " B, delta sync " + delta + " B", after < delta);
+    }
+
+    /**
+     * The requester's device saves a request and two dispatch waves; the responder's claim, its
+     * status changes and three position updates arrive from the hub. Each step replicates
+     * before the next, as on a live link, so updates can travel as deltas.
+     */
+    private long bytesPerLifecycle(boolean compact, boolean deltaSync) throws Exception {
+        String name = (compact ? "short" : "long") + (deltaSync ? "-delta" : "");
+        Database hubDatabase = open("hub-" + name);
+        Database deviceDatabase = open("device-" + name);
+        BeaconCollections hub = BeaconCollections.open(hubDatabase);
+        BeaconCollections device = BeaconCollections.open(deviceDatabase);
+        save(hub.responders, RESPONDER, user("available"), compact);
+
+        URLEndpointListenerConfiguration listenerConfig = new URLEndpointListenerConfiguration(new HashSet<>(hub.all()));
+        listenerConfig.setPort(0);
+        listenerConfig.setDisableTls(true);
+        listenerConfig.setEnableDeltaSync(deltaSync);
+        URLEndpointListener listener = new URLEndpointListener(listenerConfig);
+        listener.start();
+        try (CountingProxy proxy = new CountingProxy(listener.getPort())) {
+            ReplicatorConfiguration config = new ReplicatorConfiguration(
+                    new URLEndpoint(new URI("ws://localhost:" + proxy.port() + "/" + hubDatabase.getName())));
+            config.setType(ReplicatorType.PUSH_AND_PULL);
+            config.setContinuous(true);
+            config.addCollections(device.all(), new CollectionConfiguration());
+            Replicator replicator = new Replicator(config);
+            replicator.start();
+            try {
+                awaitRevision(hub.responders, device.responders, RESPONDER);
+                awaitIdle(replicator);
+                proxy.reset();
+
+                for (int i = 0; i < LIFECYCLES; i++) {
+                    String requestId = "request::" + i;
+                    step(device.requests, hub.requests, requestId, request(i), compact);
+                    String offerId = RequestLifecycle.offerId(requestId);
+                    step(device.requests, hub.requests, offerId, offer(requestId, 1, List.of("user::7", "user::8")), compact);
+                    step(device.requests, hub.requests, offerId,
+                            offer(requestId, 2, List.of("user::7", "user::8", "user::9", "user::10")), compact);
+                    step(hub.requests, device.requests, RequestLifecycle.claimId(requestId, RESPONDER),
+                            claim(requestId, i), compact);
+                    step(hub.responders, device.responders, RESPONDER, user("occupied"), compact);
+                    for (int move = 1; move <= 3; move++) {
+                        step(hub.locations, device.locations, "location::" + RESPONDER,
+                                location(i, move), compact);
+                    }
+                    step(hub.responders, device.responders, RESPONDER, user("available"), compact);
+                }
+                awaitIdle(replicator);
+                return proxy.bytes() / LIFECYCLES;
+            } finally {
+                replicator.stop();
+                replicator.close();
+            }
+        } finally {
+            listener.stop();
+        }
+    }
+
+    private void step(Collection from, Collection to, String id, Map<String, Object> body, boolean compact)
+            throws Exception {
+        save(from, id, body, compact);
+        awaitRevision(from, to, id);
+    }
+
+    /** Saves a revision written with short keys, or with the long names they replaced. */
+    private static void save(Collection collection, String id, Map<String, Object> body, boolean compact)
+            throws Exception {
+        Map<String, Object> data = compact ? body : DocumentKeys.expand(body);
+        Document existing = collection.getDocument(id);
+        MutableDocument doc = existing != null ? existing.toMutable().setData(data) : new MutableDocument(id, data);
+        collection.save(doc);
+    }
+
+    private static void awaitRevision(Collection from, Collection to, String id) throws Exception {
+        String revision = from.getDocument(id).getRevisionID();
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (true) {
+            Document copy = to.getDocument(id);
+            if (copy != null && Objects.equals(revision, copy.getRevisionID())) return;
+            assertTrue("Revision " + revision + " of " + id + " did not replicate", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitIdle(Replicator replicator) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (replicator.getStatus().getActivityLevel() != ReplicatorActivityLevel.IDLE) {
+            assertTrue("Replicator did not go idle", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private Database open(String name) throws Exception {
+        DatabaseConfiguration config = new DatabaseConfiguration();
+        config.setDirectory(folder.getRoot().getAbsolutePath());
+        Database database = new Database(name, config);
+        databases.add(database);
+        return database;
+    }
+
+    private static Map<String, Object> request(int i) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put(DocumentKeys.TYPE, "emergency_request");
+        doc.put(DocumentKeys.EMERGENCY_TYPE, "Ambulance");
+        doc.put(DocumentKeys.LATITUDE, 59.3293 + i * 1e-4);
+        doc.put(DocumentKeys.LONGITUDE, 18.0686);
+        doc.put(DocumentKeys.GEOHASH, GeoChannels.documentGeohash(59.3293 + i * 1e-4, 18.0686));
+        doc.put(DocumentKeys.STATUS, RequestLifecycle.STATUS_OPEN);
+        doc.put(DocumentKeys.REQUESTED_BY, "user::101");
+        doc.put(DocumentKeys.REQUESTED_AT, 1_700_000_000_000L + i);
+        return doc;
+    }
+
+    private static Map<String, Object> offer(String requestId, int wave, List<String> responders) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put(DocumentKeys.TYPE, RequestLifecycle.OFFER_TYPE);
+        doc.put(DocumentKeys.REQUEST_ID, requestId);
+        doc.put(DocumentKeys.GEOHASH, "u6sce0t4w");
+        doc.put(DocumentKeys.OFFERED_TO, new ArrayList<>(responders));
+        doc.put(DocumentKeys.DISPATCH_WAVE, wave);
+        return doc;
+    }
+
+    private static Map<String, Object> claim(String requestId, int i) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put(DocumentKeys.TYPE, RequestLifecycle.CLAIM_TYPE);
+        doc.put(DocumentKeys.REQUEST_ID, requestId);
+        doc.put(DocumentKeys.RESPONDER_ID, RESPONDER);
+        doc.put(DocumentKeys.CLAIMED_AT, 1_700_000_030_000L + i);
+        doc.put(DocumentKeys.REQUESTED_BY, "user::101");
+        doc.put(DocumentKeys.GEOHASH, "u6sce0t4w");
+        return doc;
+    }
+
+    private static Map<String, Object> location(int i, int move) {
+        double latitude = 59.3293 + move * 1e-3;
+        double longitude = 18.0686 + i * 1e-4;
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put(DocumentKeys.TYPE, LocationThrottle.DOC_TYPE);
+        doc.put(DocumentKeys.RESPONDER_ID, RESPONDER);
+        doc.put(DocumentKeys.LATITUDE, latitude);
+        doc.put(DocumentKeys.LONGITUDE, longitude);
+        doc.put(DocumentKeys.ACCURACY, 8.5);
+        doc.put(DocumentKeys.GEOHASH, GeoChannels.documentGeohash(latitude, longitude));
+        doc.put(DocumentKeys.UPDATED_AT, 1_700_000_040_000L + i * 1_000L + move);
+        return doc;
+    }
+
+    /** A user document as the server-side tools write it; its names are the same in both encodings. */
+    private static Map<String, Object> user(String status) {
+        Map<String, Object> location = new LinkedHashMap<>();
+        location.put(DocumentKeys.USER_LATITUDE, 59.316316);
+        location.put(DocumentKeys.USER_LONGITUDE, 18.143951);
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put(DocumentKeys.TYPE, "user");
+        doc.put(DocumentKeys.USER_ID, "7");
+        doc.put("name", "Alice Johnson");
+        doc.put(DocumentKeys.USER_TYPE, "responder");
+        doc.put(DocumentKeys.RESPONDER_TYPE, "Ambulance");
+        doc.put(DocumentKeys.USER_LOCATION, location);
+        doc.put(DocumentKeys.USER_STATUS, status);
+        doc.put("lastUpdated", "2025-06-28T22:50:55.905050+00:00");
+        return doc;
+    }
+
+    /** Forwards TCP connections to a local port and counts the bytes in both directions. */
+    private static final class CountingProxy implements Closeable {
+        private final ServerSocket server;
+        private final int target;
+        private final AtomicLong bytes = new AtomicLong();
+        private final List<Socket> sockets = new ArrayList<>();
+
+        CountingProxy(int target) throws IOException {
+            this.target = target;
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::accept, "proxy-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        long bytes() {
+            return bytes.get();
+        }
+
+        void reset() {
+            bytes.set(0);
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket client = server.accept();
+                    Socket upstream = new Socket(InetAddress.getLoopbackAddress(), target);
+                    synchronized (sockets) {
+                        sockets.add(client);
+                        sockets.add(upstream);
+                    }
+                    pump(client, upstream);
+                    pump(upstream, client);
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+
+        private void pump(Socket from, Socket to) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[16 * 1024];
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        bytes.addAndGet(read);
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // Either side went away
+                }
+            }, "proxy-pump");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            synchronized (sockets) {
+                for (Socket socket : sockets) socket.close();
+            }
+        }
+    }
+}
@@ -38,6 +38,21 @@ if ! [ -f "$FILE" ]; then
   done
   echo "✅ Bucket $COUCHBASE_BUCKET is healthy!"
 
+  # One collection per kind of document; keep in step with BeaconCollections in the app
+  echo "⚙️  Creating scope beacon and its collections..."
+  /opt/couchbase/bin/couchbase-cli collection-manage -c localhost:8091 \
+    --username $COUCHBASE_ADMINISTRATOR_USERNAME \
+    --password $COUCHBASE_ADMINISTRATOR_PASSWORD \
+    --bucket $COUCHBASE_BUCKET \
+    --create-scope beacon
+  for COLLECTION in requests responders locations; do
+    /opt/couchbase/bin/couchbase-cli collection-manage -c localhost:8091 \
+      --username $COUCHBASE_ADMINISTRATOR_USERNAME \
+      --password $COUCHBASE_ADMINISTRATOR_PASSWORD \
+      --bucket $COUCHBASE_BUCKET \
+      --create-collection beacon.$COLLECTION
+  done
+
   echo "⚙️  Creating Sync Gateway user..."
   /opt/couchbase/bin/couchbase-cli user-manage \
     --cluster http://127.0.0.1 \
@@ -77,16 +92,16 @@ if ! [ -f "$FILE" ]; then
   echo "⚙️  Creating indexes..."
 
   /opt/couchbase/bin/cbq -u $COUCHBASE_ADMINISTRATOR_USERNAME -p $COUCHBASE_ADMINISTRATOR_PASSWORD -s \
-  "CREATE INDEX idx_beacon_location ON \`$COUCHBASE_BUCKET\`(location) WHERE type = 'user';"
+  "CREATE INDEX idx_beacon_location ON \`$COUCHBASE_BUCKET\`.beacon.responders(location) WHERE type = 'user';"
 
   /opt/couchbase/bin/cbq -u $COUCHBASE_ADMINISTRATOR_USERNAME -p $COUCHBASE_ADMINISTRATOR_PASSWORD -s \
-  "CREATE INDEX idx_beacon_userType ON \`$COUCHBASE_BUCKET\`(userType) WHERE type = 'user';"
+  "CREATE INDEX idx_beacon_userType ON \`$COUCHBASE_BUCKET\`.beacon.responders(userType) WHERE type = 'user';"
 
   /opt/couchbase/bin/cbq -u $COUCHBASE_ADMINISTRATOR_USERNAME -p $COUCHBASE_ADMINISTRATOR_PASSWORD -s \
-  "CREATE INDEX idx_beacon_responderType ON \`$COUCHBASE_BUCKET\`(responderType) WHERE type = 'user';"
+  "CREATE INDEX idx_beacon_responderType ON \`$COUCHBASE_BUCKET\`.beacon.responders(responderType) WHERE type = 'user';"
 
   /opt/couchbase/bin/cbq -u $COUCHBASE_ADMINISTRATOR_USERNAME -p $COUCHBASE_ADMINISTRATOR_PASSWORD -s \
-  "CREATE INDEX idx_beacon_status ON \`$COUCHBASE_BUCKET\`(status) WHERE type = 'user';"
+  "CREATE INDEX idx_beacon_status ON \`$COUCHBASE_BUCKET\`.beacon.responders(status) WHERE type = 'user';"
 
   /opt/couchbase/bin/cbq -u $COUCHBASE_ADMINISTRATOR_USERNAME -p $COUCHBASE_ADMINISTRATOR_PASSWORD -s \
   "CREATE INDEX idx_beacon_username ON \`$COUCHBASE_BUCKET\`(username) WHERE type = 'user_credentials';"
@@ -94,8 +109,9 @@ if ! [ -f "$FILE" ]; then
   echo "Creating primary and geo composite indexes..."
   /opt/couchbase/bin/cbq -u "$COUCHBASE_ADMINISTRATOR_USERNAME" -p "$COUCHBASE_ADMINISTRATOR_PASSWORD" << EOF
   CREATE PRIMARY INDEX IF NOT EXISTS ON \`$COUCHBASE_BUCKET\`;
+  CREATE PRIMARY INDEX IF NOT EXISTS ON \`$COUCHBASE_BUCKET\`.beacon.responders;
   CREATE INDEX IF NOT EXISTS idx_beacon_lat_lon
-    ON \`$COUCHBASE_BUCKET\`(\`location\`.\`lat\`, \`location\`.\`lon\`)
+    ON \`$COUCHBASE_BUCKET\`.beacon.responders(\`location\`.\`lat\`, \`location\`.\`lon\`)
     WHERE type = "user" AND userType = "responder";
 EOF
 
@@ -107,7 +123,8 @@ EOF
         -c http://localhost:8091 \
         -u $COUCHBASE_ADMINISTRATOR_USERNAME \
         -p $COUCHBASE_ADMINISTRATOR_PASSWORD \
-        -d "file:///opt/couchbase/init/users.json" -b $COUCHBASE_BUCKET -g "user::%userId%"
+        -d "file:///opt/couchbase/init/users.json" -b $COUCHBASE_BUCKET \
+        --scope-collection-exp beacon.responders -g "user::%userId%"
 
 
       # /opt/couchbase/bin/cbimport json --format list \
@@ -5,6 +5,46 @@ from couchbase.options import ClusterOptions
 from couchbase.auth import PasswordAuthenticator
 from couchbase.exceptions import CouchbaseException
 
+# Documents live in the beacon scope, one collection per kind; keep in step with
+# BeaconCollections in the app
+SCOPE = "beacon"
+COLLECTIONS = {
+    "user": "responders",
+    "emergency_request": "requests",
+    "request_claim": "requests",
+    "request_offer": "requests",
+    "responder_location": "locations",
+}
+
+# Short property names for the documents the app writes; user documents keep theirs.
+# Keep in step with DocumentKeys in the app
+SHORT_KEYS = {
+    "emergency_type": "et",
+    "status": "st",
+    "requested_by": "rb",
+    "requested_at": "ra",
+    "severity": "sv",
+    "responded_by": "sb",
+    "responded_at": "sa",
+    "request_id": "rq",
+    "responder_id": "rs",
+    "claimed_at": "ca",
+    "offered_to": "ot",
+    "dispatch_wave": "dw",
+    "latitude": "lat",
+    "longitude": "lon",
+    "geohash": "gh",
+    "accuracy": "acc",
+    "updated_at": "ua",
+}
+COMPACT_TYPES = {"emergency_request", "request_claim", "request_offer", "responder_location"}
+
+
+def compact(doc):
+    if doc.get("type") not in COMPACT_TYPES:
+        return doc
+    return {SHORT_KEYS.get(key, key): value for key, value in doc.items()}
+
 # Map type to document ID key
 DOC_ID_KEYS = {
     "user": "userId",
@@ -17,7 +57,7 @@ def seed_data(json_file_path, bucket_name, cluster_conn_str, username, password)
             PasswordAuthenticator(username, password)
         ))
         bucket = cluster.bucket(bucket_name)
-        collection = bucket.default_collection()
+        scope = bucket.scope(SCOPE)
         
         with open(json_file_path, 'r', encoding='utf-8') as f:
             docs = json.load(f)
@@ -44,7 +84,9 @@ def seed_data(json_file_path, bucket_name, cluster_conn_str, username, password)
                 # Fallback: use type + idx as ID
                 doc_id = f"{doc_type}::{idx+1}"
 
-            collection.upsert(doc_id, doc)
+            collection_name = COLLECTIONS.get(doc_type)
+            collection = scope.collection(collection_name) if collection_name else bucket.default_collection()
+            collection.upsert(doc_id, compact(doc))
             print(f"Inserted/Updated document ID: {doc_id}")
 
         print("Seeding completed successfully.")